@@ -0,0 +1,86 @@
+package edu.uci.cs237.tippersedge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the add and read paths of {@link SampleRingBuffer}, the sample cache of {@link AbstractSampleHandler},
+ * both uncontended and with a writer racing readers (as is the case when the upload stage caches samples while
+ * filter workers read the latest sample).
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleRingBufferBenchmark {
+
+    /**
+     * Capacity of the cache; 300 is what {@link Main} uses.
+     */
+    @Param({"300"})
+    public int capacity;
+
+    private SampleRingBuffer<Integer> mCache;
+
+    private final Integer mSample = 42;
+
+    @Setup
+    public void setup() {
+        mCache = new SampleRingBuffer<>(capacity);
+        // Start from a full cache such that every add evicts, as in steady state.
+        for (int i = 0; i < capacity; i++) {
+            mCache.add(i);
+        }
+    }
+
+    @Benchmark
+    @Group("uncontendedAdd")
+    public Integer add() {
+        return mCache.add(mSample);
+    }
+
+    @Benchmark
+    @Group("uncontendedLatest")
+    public Integer latest() {
+        return mCache.latest();
+    }
+
+    @Benchmark
+    @Group("uncontendedSnapshot")
+    public List<Integer> snapshot() {
+        return mCache.snapshot();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Integer contendedAdd() {
+        return mCache.add(mSample);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public Integer contendedLatest() {
+        return mCache.latest();
+    }
+
+}
@@ -0,0 +1,62 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates JPEG images for benchmarks: variants of the bundled eagle image, each with an object (a filled rectangle)
+ * at a different position such that consecutive variants are different scenes to the pre-filter.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class BenchmarkFrames {
+
+    private BenchmarkFrames() {
+        // Make constructor private in order to prevent instantiation of class.
+    }
+
+    /**
+     * Create JPEG encoded variants of the eagle image.
+     * @param count The number of variants. Variant 0 is the unmodified image.
+     * @return the raw JPEG bytes of each variant.
+     * @throws IOException if the eagle image could not be read.
+     */
+    static List<byte[]> createVariants(int count) throws IOException {
+        BufferedImage original;
+        try (InputStream input = BenchmarkFrames.class.getResourceAsStream("/img/eagle.jpg")) {
+            original = ImageIO.read(input);
+        }
+        List<byte[]> variants = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BufferedImage img = new BufferedImage(original.getWidth(), original.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = img.createGraphics();
+            g.drawImage(original, 0, 0, null);
+            if (i > 0) {
+                // Large enough to exceed PixelDiffPreFilter's default change threshold.
+                int size = Math.min(img.getWidth(), img.getHeight()) / 4;
+                g.setColor(i % 2 == 0 ? Color.RED : Color.BLUE);
+                g.fillRect((i * size / 3) % (img.getWidth() - size), (i * size / 5) % (img.getHeight() - size), size, size);
+            }
+            g.dispose();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageIO.write(img, "jpg", output);
+            variants.add(output.toByteArray());
+        }
+        return variants;
+    }
+
+    /**
+     * Wrap raw JPEG bytes in an in-memory frame. The bytes are shared, not copied, so they must not be modified.
+     */
+    static CameraFrame toFrame(byte[] jpeg, String spillDirectory) {
+        return CameraFrame.inMemory(jpeg, jpeg.length, null, spillDirectory, System.currentTimeMillis());
+    }
+
+}
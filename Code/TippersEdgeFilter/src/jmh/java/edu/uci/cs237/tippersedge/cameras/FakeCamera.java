@@ -0,0 +1,49 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.SampleProvider;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for {@link CameraRestClient} in benchmarks: serves in-memory frames from a fixed list of JPEGs, in
+ * round-robin order, after a configurable latency.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+class FakeCamera implements SampleProvider<CameraFrame> {
+
+    private final List<byte[]> mJpegs;
+
+    private final String mSpillDirectory;
+
+    private final long mLatencyNanos;
+
+    private int mNext;
+
+    /**
+     * Create a new {@code FakeCamera}.
+     * @param jpegs The images to serve.
+     * @param spillDirectory Where frames are written when a file is required.
+     * @param latencyMicros The time each invocation of {@link #sample()} takes.
+     */
+    FakeCamera(List<byte[]> jpegs, String spillDirectory, long latencyMicros) {
+        mJpegs = jpegs;
+        mSpillDirectory = spillDirectory;
+        mLatencyNanos = latencyMicros * 1000;
+    }
+
+    @Override
+    public synchronized CameraFrame sample() {
+        long deadline = System.nanoTime() + mLatencyNanos;
+        long remaining = mLatencyNanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        byte[] jpeg = mJpegs.get(mNext);
+        mNext = (mNext + 1) % mJpegs.size();
+        return BenchmarkFrames.toFrame(jpeg, mSpillDirectory);
+    }
+
+}
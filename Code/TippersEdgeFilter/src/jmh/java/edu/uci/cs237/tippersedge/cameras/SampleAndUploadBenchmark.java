@@ -0,0 +1,81 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.darknet.FakeDetector;
+import edu.uci.cs237.tippersedge.sensoria.MockImageUploader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures an end-to-end {@link CameraSampleHandler#sampleAndUpload()}: sampling a {@link FakeCamera}, comparing the
+ * frame to the cached frame using the pre-filter and a {@link FakeDetector}, uploading approved frames using a
+ * {@link MockImageUploader}, and caching (and evicting) frames.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleAndUploadBenchmark {
+
+    /**
+     * The number of distinct images served by the camera in round-robin order. Consecutive images are different
+     * scenes, so every frame is escalated to (fake) object detection.
+     */
+    @Param({"8"})
+    public int distinctFrames;
+
+    @Param({"0", "20000"})
+    public long cameraLatencyMicros;
+
+    @Param({"0", "5000"})
+    public long detectionLatencyMicros;
+
+    private File mSpillDirectory;
+
+    private CameraSampleHandler mHandler;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mSpillDirectory = Files.createTempDirectory("e2e-benchmark").toFile();
+        FakeCamera camera = new FakeCamera(BenchmarkFrames.createVariants(distinctFrames), mSpillDirectory.getPath(),
+                cameraLatencyMicros);
+        mHandler = new CameraSampleHandler(camera, 300, Long.MAX_VALUE, new FakeDetector(detectionLatencyMicros),
+                new PixelDiffPreFilter(), new MockImageUploader());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] spilled = mSpillDirectory.listFiles();
+        if (spilled != null) {
+            for (File f : spilled) {
+                f.delete();
+            }
+        }
+        mSpillDirectory.delete();
+    }
+
+    @Benchmark
+    public void sampleAndUpload() {
+        mHandler.sampleAndUpload();
+    }
+
+}
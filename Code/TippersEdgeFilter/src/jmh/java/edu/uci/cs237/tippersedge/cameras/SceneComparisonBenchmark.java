@@ -0,0 +1,108 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.darknet.FakeDetector;
+import edu.uci.cs237.tippersedge.sensoria.MockImageUploader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CameraSampleHandler#shouldIncludeSample(CameraFrame)}, i.e., the comparison of a new frame to the
+ * most recently cached frame, with Darknet replaced by a {@link FakeDetector}.
+ * <p>
+ * In the {@code identical} scenario, the new frame has the same contents as the cached frame, so the pre-filter (if
+ * any) short-circuits and detection results are served from the detection cache. In the {@code changed} scenario,
+ * every new frame is a different scene, so every frame is escalated to (fake) object detection.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneComparisonBenchmark {
+
+    /**
+     * Number of distinct new frames cycled through in the {@code changed} scenario. Exceeds the handler's detection
+     * cache such that every detection is a miss.
+     */
+    private static final int CHANGED_VARIANTS = 33;
+
+    @Param({"identical", "changed"})
+    public String scenario;
+
+    @Param({"true", "false"})
+    public boolean preFilter;
+
+    @Param({"0", "5000"})
+    public long detectionLatencyMicros;
+
+    private File mSpillDirectory;
+
+    private CameraSampleHandler mHandler;
+
+    private final List<CameraFrame> mNewFrames = new ArrayList<>();
+
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mSpillDirectory = Files.createTempDirectory("scene-benchmark").toFile();
+        List<byte[]> variants = BenchmarkFrames.createVariants(CHANGED_VARIANTS + 1);
+        // The first sample is approved (the cache is empty) and becomes the cached frame all new frames compare to.
+        FakeCamera camera = new FakeCamera(Collections.singletonList(variants.get(0)), mSpillDirectory.getPath(), 0);
+        mHandler = new CameraSampleHandler(camera, 2, Long.MAX_VALUE, new FakeDetector(detectionLatencyMicros),
+                preFilter ? new PixelDiffPreFilter() : null, new MockImageUploader());
+        mHandler.sampleAndUpload();
+        if (scenario.equals("identical")) {
+            mNewFrames.add(BenchmarkFrames.toFrame(variants.get(0), mSpillDirectory.getPath()));
+        } else {
+            for (byte[] variant : variants.subList(1, variants.size())) {
+                mNewFrames.add(BenchmarkFrames.toFrame(variant, mSpillDirectory.getPath()));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (CameraFrame frame : mNewFrames) {
+            frame.release();
+        }
+        File[] spilled = mSpillDirectory.listFiles();
+        if (spilled != null) {
+            for (File f : spilled) {
+                f.delete();
+            }
+        }
+        mSpillDirectory.delete();
+    }
+
+    @Benchmark
+    public boolean shouldIncludeSample() {
+        CameraFrame frame = mNewFrames.get(mNext);
+        mNext = (mNext + 1) % mNewFrames.size();
+        return mHandler.shouldIncludeSample(frame);
+    }
+
+}
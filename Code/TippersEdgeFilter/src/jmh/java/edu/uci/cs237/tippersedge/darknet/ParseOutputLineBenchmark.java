@@ -0,0 +1,63 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DarknetProcess#parseOutputLine(String)} on a transcript of Darknet's output for a single image, i.e.,
+ * on a mix of lines that do and do not describe detected objects.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseOutputLineBenchmark {
+
+    /**
+     * Output of {@code ./darknet detect cfg/yolov3.cfg yolov3.weights data/dog.jpg} (abbreviated).
+     */
+    private static final String[] TRANSCRIPT = {
+            "layer     filters    size              input                output",
+            "    0 conv     32  3 x 3 / 1   416 x 416 x   3   ->   416 x 416 x  32  0.299 BFLOPs",
+            "  105 conv    255  1 x 1 / 1    52 x  52 x 256   ->    52 x  52 x 255  0.353 BFLOPs",
+            "  106 yolo",
+            "Loading weights from yolov3.weights...Done!",
+            "data/dog.jpg: Predicted in 22.104291 seconds.",
+            "dog: 100%",
+            "truck: 92%",
+            "bicycle: 99%",
+            "traffic light: 85%",
+    };
+
+    @Benchmark
+    public void parseTranscript(Blackhole blackhole) {
+        for (String line : TRANSCRIPT) {
+            blackhole.consume(DarknetProcess.parseOutputLine(line));
+        }
+    }
+
+    @Benchmark
+    public DarknetProcess.DetectedObject parseDetectionLine() {
+        return DarknetProcess.parseOutputLine(TRANSCRIPT[7]);
+    }
+
+    @Benchmark
+    public DarknetProcess.DetectedObject parseLayerLine() {
+        return DarknetProcess.parseOutputLine(TRANSCRIPT[1]);
+    }
+
+}
@@ -0,0 +1,73 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import edu.uci.cs237.tippersedge.sensoria.MockNumericUploader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a tick of the boxed {@link NumericSampleHandler} with a tick of the primitive {@link DoubleSampleHandler}
+ * for a noisy sensor whose readings mostly fall within the deadband. Run with {@code -prof gc} to compare the garbage
+ * produced per tick, which should be zero for {@link DoubleSampleHandler}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericSampleAndUploadBenchmark {
+
+    private static final double DEADBAND = 1.0;
+
+    private NumericSampleHandler mBoxedHandler;
+
+    private DoubleSampleHandler mPrimitiveHandler;
+
+    /**
+     * Drives the fake sensor: a sawtooth that leaves the deadband every few readings.
+     */
+    private long mTick;
+
+    @Setup
+    public void setup() {
+        mBoxedHandler = new NumericSampleHandler("boxed", () -> reading(), Long.MAX_VALUE,
+                new DeadbandFilter(DEADBAND), new MockNumericUploader());
+        mPrimitiveHandler = new DoubleSampleHandler("primitive", this::reading,
+                DoubleSampleHandler.DEFAULT_SAMPLE_CACHE_SIZE, Long.MAX_VALUE, new DeadbandFilter(DEADBAND),
+                new MockNumericUploader());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mBoxedHandler.stopPeriodicSampling(false, 0);
+        mPrimitiveHandler.stopPeriodicSampling(false, 0);
+    }
+
+    @Benchmark
+    public void boxed() {
+        mBoxedHandler.sampleAndUpload();
+    }
+
+    @Benchmark
+    public void primitive() {
+        mPrimitiveHandler.sampleAndUpload();
+    }
+
+    private double reading() {
+        return (mTick++ % 16) * 0.25;
+    }
+
+}
@@ -1,8 +1,12 @@
 package edu.uci.cs237.tippersedge;
 
+import java.util.Objects;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * An {@link AbstractSampleHandler} that <em>periodically</em> samples the sensor and uploads the sensor reading to a
@@ -14,9 +18,37 @@ import java.util.concurrent.TimeUnit;
  */
 public abstract class AbstractPeriodicSampleHandler<S> extends  AbstractSampleHandler<S> {
 
-    private final ScheduledExecutorService mScheduledExecutor;
+    private static final Logger LOGGER = Logger.getLogger(AbstractPeriodicSampleHandler.class.getName());
+
+    /**
+     * Schedules the ticks on an executor that is either owned by this handler or shared with other handlers.
+     */
+    private final TickScheduler mTicks;
     private final long mSampleRateMillis;
 
+    /**
+     * Tick of a handler on a shared executor, which {@link #stopPeriodicSampling(boolean, long)} can wait for without
+     * shutting down the executor.
+     */
+    private final Runnable mSharedTick;
+
+    /**
+     * Runs sampling, filtering and uploading as separate stages, or {@code null} if every tick runs
+     * {@link AbstractSampleHandler#sampleAndUpload()} in its entirety.
+     */
+    private final SamplePipeline<S> mPipeline;
+
+    /**
+     * Configuration of {@link #mPipeline}, or {@code null} if this handler is not pipelined.
+     */
+    private final PipelineConfig mPipelineConfig;
+
+    /**
+     * Adapts the sampling period to the activity of the sensed scene, or {@code null} if the sampling period only
+     * depends on {@link #mSampleRateMillis} (and, possibly, {@link #mPipelineConfig}).
+     */
+    private volatile AdaptiveSamplingPolicy mSamplingPolicy;
+
     public AbstractPeriodicSampleHandler(SampleProvider<S> sampleProvider, int sampleCacheSize, long sampleRateMillis) {
         super(sampleProvider, sampleCacheSize);
         /*
@@ -26,15 +58,136 @@ public abstract class AbstractPeriodicSampleHandler<S> extends  AbstractSampleHa
          *
          * TODO not sure if this solution will actually work, probably will on many-core CPU, but not on my dual-core.
          */
-        mScheduledExecutor = Executors.newScheduledThreadPool(10);
+        mTicks = new TickScheduler(Executors.newScheduledThreadPool(10), true);
+        mSharedTick = null;
+        mSampleRateMillis = sampleRateMillis;
+        mPipeline = null;
+        mPipelineConfig = null;
+    }
+
+    /**
+     * Create an {@code AbstractPeriodicSampleHandler} whose ticks run on an executor shared with other handlers, e.g.,
+     * one handler per camera. A handler then costs a periodic task rather than a thread pool of its own. Each tick
+     * runs {@link AbstractSampleHandler#sampleAndUpload()} in its entirety, so the shared executor should have enough
+     * threads to cover the handlers' ticks that are blocked on filtering at any given time.
+     * @param sampleProvider Provider of sensor readings (samples).
+     * @param sampleCacheSize The maximum number of cached samples.
+     * @param sampleRateMillis The sampling period.
+     * @param sharedScheduledExecutor The executor on which ticks are scheduled. It is <em>not</em> shut down by
+     *                                {@link #stopPeriodicSampling(boolean, long)}.
+     */
+    public AbstractPeriodicSampleHandler(SampleProvider<S> sampleProvider, int sampleCacheSize, long sampleRateMillis,
+                                         ScheduledExecutorService sharedScheduledExecutor) {
+        super(sampleProvider, sampleCacheSize);
+        mTicks = new TickScheduler(
+                Objects.requireNonNull(sharedScheduledExecutor, "sharedScheduledExecutor cannot be null"), false);
+        mSharedTick = mTicks.exclusive(this::sampleAndUpload);
+        mSampleRateMillis = sampleRateMillis;
+        mPipeline = null;
+        mPipelineConfig = null;
+    }
+
+    /**
+     * Create an {@code AbstractPeriodicSampleHandler} that runs sampling, filtering and uploading as separate stages
+     * with bounded queues in between. The sampling period is then upheld regardless of how long filtering and
+     * uploading take, and the number of samples held in memory is bounded when the filter cannot keep up.
+     * Use {@link PipelineConfig#latestFrameWins(int)} to always analyze the most recent sample.
+     * @param sampleProvider Provider of sensor readings (samples).
+     * @param sampleCacheSize The maximum number of cached samples.
+     * @param sampleRateMillis The sampling period.
+     * @param pipelineConfig Configuration of the stages.
+     */
+    public AbstractPeriodicSampleHandler(SampleProvider<S> sampleProvider, int sampleCacheSize, long sampleRateMillis,
+                                         PipelineConfig pipelineConfig) {
+        super(sampleProvider, sampleCacheSize);
+        // Ticks merely hand off work to the sampling stage, so a single thread suffices.
+        mTicks = new TickScheduler(Executors.newSingleThreadScheduledExecutor(), true);
+        mSharedTick = null;
         mSampleRateMillis = sampleRateMillis;
+        mPipeline = new SamplePipeline<>(this, pipelineConfig);
+        mPipelineConfig = pipelineConfig;
+        mMetrics.gauge("filterQueueDepth", mPipeline::getFilterQueueDepth);
+        mMetrics.gauge("uploadQueueDepth", mPipeline::getUploadQueueDepth);
+        mMetrics.gauge("skippedTicks", mPipeline::getSkippedTickCount);
+        mMetrics.gauge("skippedFrames", mPipeline::getSkippedFrameCount);
+        mMetrics.gauge("droppedSamples", mPipeline::getDroppedSampleCount);
+    }
+
+    /**
+     * Adapt the sampling period to the activity of the sensed scene, e.g., to sample a camera less often while its
+     * scene is static. Must be invoked before {@link #startPeriodicSampling()}. The policy's minimum period replaces
+     * the sampling period passed to the constructor. The current period is exported as {@code samplePeriodMillis}.
+     * @param samplingPolicy Decides the period of each tick based on the history of {@link #mSampleCache}. Must not
+     *                       be shared with other handlers.
+     */
+    public void setAdaptiveSampling(AdaptiveSamplingPolicy samplingPolicy) {
+        mSamplingPolicy = Objects.requireNonNull(samplingPolicy, "samplingPolicy cannot be null");
+        mMetrics.gauge("samplePeriodMillis", samplingPolicy::getPeriodMillis);
     }
 
     /**
      * Starts periodic sampling and upload.
      */
     public void startPeriodicSampling() {
-        mScheduledExecutor.scheduleAtFixedRate(() -> this.sampleAndUpload(), 0, mSampleRateMillis, TimeUnit.MILLISECONDS);
+        if (mPipeline != null) {
+            mPipeline.start();
+        }
+        if (mSamplingPolicy != null || (mPipeline != null && mPipelineConfig.isAdaptiveSampleRate())) {
+            mTicks.schedule(this::adaptiveTick, 0);
+        } else if (mPipeline != null) {
+            mTicks.scheduleAtFixedRate(mPipeline::tick, mSampleRateMillis);
+        } else if (mSharedTick != null) {
+            mTicks.scheduleAtFixedRate(mSharedTick, mSampleRateMillis);
+        } else {
+            mTicks.scheduleAtFixedRate(this::sampleAndUpload, mSampleRateMillis);
+        }
+    }
+
+    /**
+     * Tick of the adaptive sampling modes: run this tick, then schedule the next tick according to the scene activity
+     * (if there is a {@link #mSamplingPolicy}) and the measured filter time (if the pipeline is adaptive).
+     * The next tick is only scheduled once this tick has run, such that the ticks of a handler never overlap (as with
+     * {@link ScheduledExecutorService#scheduleAtFixedRate}). The time this tick took is subtracted from the delay, so
+     * the sampling period is only stretched by ticks that take longer than the period.
+     */
+    private void adaptiveTick() {
+        if (mTicks.isStopped()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (mPipeline != null) {
+                mPipeline.tick();
+            } else if (mSharedTick != null) {
+                mSharedTick.run();
+            } else {
+                sampleAndUpload();
+            }
+        } finally {
+            scheduleAdaptiveTick(start);
+        }
+    }
+
+    /**
+     * Schedule the next adaptive tick.
+     * @param tickStartNanos The {@link System#nanoTime()} at which the current tick started.
+     */
+    private void scheduleAdaptiveTick(long tickStartNanos) {
+        if (mTicks.isStopped()) {
+            return;
+        }
+        AdaptiveSamplingPolicy samplingPolicy = mSamplingPolicy;
+        long delayMillis = samplingPolicy != null ?
+                samplingPolicy.nextPeriodMillis(mSampleCache.getAppendCount()) : mSampleRateMillis;
+        if (mPipeline != null && mPipelineConfig.isAdaptiveSampleRate()) {
+            delayMillis = mPipeline.nextTickDelayMillis(delayMillis);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - tickStartNanos);
+        try {
+            mTicks.schedule(this::adaptiveTick, Math.max(0, delayMillis - elapsedMillis));
+        } catch (RejectedExecutionException e) {
+            // Sampling has been stopped.
+        }
     }
 
     /**
@@ -44,14 +197,88 @@ public abstract class AbstractPeriodicSampleHandler<S> extends  AbstractSampleHa
      *                      Ignored if {@code awaitTermination} is {@code false}.
      */
     public void stopPeriodicSampling(boolean awaitTermination, long timeoutMillis) {
-        mScheduledExecutor.shutdown();
+        mTicks.stop();
+        if (mPipeline != null) {
+            // Queued samples are still filtered and uploaded; the stages drain in order.
+            mPipeline.stop();
+        }
         if (awaitTermination) {
             try {
-                mScheduledExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+                long deadline = System.currentTimeMillis() + timeoutMillis;
+                mTicks.awaitTermination(timeoutMillis);
+                if (mPipeline != null) {
+                    mPipeline.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()));
+                }
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.WARNING, "[ Interrupted while waiting for sampling to stop ]", e);
             }
         }
     }
 
+    /**
+     * Get the number of sampling ticks that were skipped because all sampling workers were busy.
+     * Always {@code 0} unless this handler was configured with a {@link PipelineConfig}.
+     * @return the number of skipped sampling ticks.
+     */
+    public long getSkippedTickCount() {
+        return mPipeline != null ? mPipeline.getSkippedTickCount() : 0;
+    }
+
+    /**
+     * Get the number of samples discarded by the {@link OverflowPolicy} because a pipeline stage could not keep up.
+     * Always {@code 0} unless this handler was configured with a {@link PipelineConfig}.
+     * @return the number of samples dropped between pipeline stages.
+     */
+    public long getDroppedSampleCount() {
+        return mPipeline != null ? mPipeline.getDroppedSampleCount() : 0;
+    }
+
+    /**
+     * Get the number of samples that were never filtered because they were replaced by a newer sample (in
+     * latest-frame-wins mode) or otherwise dropped by the filter queue's {@link OverflowPolicy}.
+     * Always {@code 0} unless this handler was configured with a {@link PipelineConfig}.
+     * @return the number of skipped samples.
+     */
+    public long getSkippedFrameCount() {
+        return mPipeline != null ? mPipeline.getSkippedFrameCount() : 0;
+    }
+
+    /**
+     * Get the age of the most recently filtered sample at the time its inclusion decision was made, i.e., the time
+     * from sampling to decision.
+     * Always {@code 0} unless this handler was configured with a {@link PipelineConfig}.
+     * @return the age of the most recently filtered sample in milliseconds.
+     */
+    public long getLastFrameAgeMillis() {
+        return mPipeline != null ? mPipeline.getLastFrameAgeMillis() : 0;
+    }
+
+    /**
+     * Get the mean age of samples at the time their inclusion decisions were made.
+     * Always {@code 0} unless this handler was configured with a {@link PipelineConfig}.
+     * @return the mean time from sampling to decision in milliseconds.
+     */
+    public long getMeanFrameAgeMillis() {
+        return mPipeline != null ? mPipeline.getMeanFrameAgeMillis() : 0;
+    }
+
+    /**
+     * Get the number of samples waiting to be filtered.
+     * Always {@code 0} unless this handler was configured with a {@link PipelineConfig}.
+     * @return the number of samples waiting to be filtered.
+     */
+    public int getFilterQueueDepth() {
+        return mPipeline != null ? mPipeline.getFilterQueueDepth() : 0;
+    }
+
+    /**
+     * Get the number of approved samples waiting to be uploaded.
+     * Always {@code 0} unless this handler was configured with a {@link PipelineConfig}.
+     * @return the number of approved samples waiting to be uploaded.
+     */
+    public int getUploadQueueDepth() {
+        return mPipeline != null ? mPipeline.getUploadQueueDepth() : 0;
+    }
+
 }
@@ -1,7 +1,13 @@
 package edu.uci.cs237.tippersedge;
 
-import java.util.ArrayList;
-import java.util.List;
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+import edu.uci.cs237.tippersedge.spool.UploadSpool;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * <p>
@@ -14,16 +20,17 @@ import java.util.List;
  *
  * Previous samples are cached in {@link #mSampleCache}, providing subclasses with the opportunity to consider recent
  * samples in their implementations of {@link #shouldIncludeSample(Object)}.
+ * <p>
+ * Every step is instrumented; see {@link #getMetrics()}. Per-sample debug output is logged at {@link Level#FINE}, and
+ * is only formatted if that level is enabled for the handler's logger.
+ * </p>
  *
  * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
  * @param <S> A class that encapsulates/models the sample/reading data obtained from the sensor.
  */
 public abstract class AbstractSampleHandler<S> {
 
-    /**
-     * Flag for toggling console debug output on/off.
-     */
-    private static final boolean ENABLE_DEBUG_OUTPUT = true;
+    private static final Logger LOGGER = Logger.getLogger(AbstractSampleHandler.class.getName());
 
     /**
      * Provider of sensor readings (samples), e.g., a {@link edu.uci.cs237.tippersedge.cameras.CameraRestClient} is a
@@ -32,47 +39,78 @@ public abstract class AbstractSampleHandler<S> {
     protected final SampleProvider<S> mSampleProvider;
 
     /**
-     * Fixed-size cache of included samples, i.e., samples that were (attempted) uploaded to TIPPERS backend.
+     * Fixed-size cache of included samples, i.e., samples that were successfully uploaded to TIPPERS backend.
      * Exposed to subclasses such that sample inclusion logic in subclasses may consider past samples.
-     * In multithreaded environments, access to this variable should be in synchronized blocks using the variable itself
-     * as the lock.
+     * The cache is a lock-free ring buffer, so it is safe to access from multiple threads without synchronization.
      * For example, the following code could be an implementation of {@link #shouldIncludeSample(Object)} which only
      * uploads a new sensor reading if it differs from the previous one:
      *
      * <pre>
      * public boolean shouldIncludeSample(S sample) {
-     *     synchronized(mSampleCache) {
-     *         if (mSampleCache.size() > 0) {
-     *             // There are cached samples, compare this and the previous sample, and only upload this sample if
-     *             // it differs from the previous one.
-     *             return !mSampleCache.get(mSampleCache.size()-1).equals(sample);
-     *         }
-     *         return true;
-     *     }
+     *     S previous = mSampleCache.latest();
+     *     // If there is a cached sample, compare this and the previous sample, and only upload this sample if it
+     *     // differs from the previous one.
+     *     return previous == null || !previous.equals(sample);
      * }
      * </pre>
      *
-     * Courtesy of <a href="https://stackoverflow.com/a/21047889/1214974">https://stackoverflow.com/a/21047889/1214974</a>.
-     */
-    protected final List<S> mSampleCache = new ArrayList<S>() {
-        @Override
-        public boolean add(S s) {
-            boolean added = super.add(s);
-            if (size() > AbstractSampleHandler.this.mSampleCacheSize) {
-                removeRange(0, size() - AbstractSampleHandler.this.mSampleCacheSize);
-            }
-            return added;
-        }
-    };
+     * Use {@link SampleRingBuffer#snapshot()} to consider more than the most recent sample.
+     */
+    protected final SampleRingBuffer<S> mSampleCache;
 
     /**
      * The maximum number of elements in {@link #mSampleCache}.
      */
     protected final int mSampleCacheSize;
 
+    /**
+     * The metrics of this handler. Subclasses may add their own metrics.
+     */
+    protected final MetricSet mMetrics = new MetricSet();
+
+    private final LatencyHistogram mSampleLatency;
+    private final Counter mSampleFailures;
+    private final LatencyHistogram mFilterLatency;
+    private final Counter mIncluded;
+    private final Counter mRejected;
+    private final LatencyHistogram mUploadLatency;
+    private final Counter mUploadFailures;
+
+    /**
+     * Spools approved samples before upload, or {@code null} if samples are uploaded directly.
+     */
+    private volatile UploadSpool<S> mUploadSpool;
+
     public AbstractSampleHandler(SampleProvider<S> sampleProvider, int sampleCacheSize) {
         mSampleProvider = sampleProvider;
         mSampleCacheSize = sampleCacheSize;
+        mSampleCache = new SampleRingBuffer<>(sampleCacheSize);
+        mSampleLatency = mMetrics.histogram("sample");
+        mSampleFailures = mMetrics.counter("sampleFailures");
+        mFilterLatency = mMetrics.histogram("filter");
+        mIncluded = mMetrics.counter("included");
+        mRejected = mMetrics.counter("rejected");
+        mUploadLatency = mMetrics.histogram("upload");
+        mUploadFailures = mMetrics.counter("uploadFailures");
+        // The fraction of filtered samples that were not uploaded, i.e., the backend traffic saved by the filter.
+        mMetrics.gauge("filterRatio", () -> {
+            long rejected = mRejected.get();
+            long decisions = rejected + mIncluded.get();
+            return decisions == 0 ? 0.0 : (double) rejected / decisions;
+        });
+        mMetrics.gauge("sampleCacheSize", mSampleCache::size);
+    }
+
+    /**
+     * Get the metrics of this handler: the time spent sampling ({@code sample}), filtering ({@code filter}) and
+     * uploading ({@code upload}), the number of samples that could not be read ({@code sampleFailures}), that were
+     * included ({@code included}) or rejected ({@code rejected}) by the filter, and whose upload failed
+     * ({@code uploadFailures}), and the fraction of filtered samples that were rejected ({@code filterRatio}).
+     * Register the returned set with a {@link edu.uci.cs237.tippersedge.metrics.MetricsRegistry} to export it.
+     * @return the metrics of this handler.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
     }
 
     /**
@@ -81,25 +119,137 @@ public abstract class AbstractSampleHandler<S> {
      * the return value of {@link #shouldIncludeSample(Object)}).
      */
     public void sampleAndUpload() {
-        S sample = mSampleProvider.sample();
+        S sample = takeSample();
+        if (sample == null) {
+            return;
+        }
+        boolean include;
+        try {
+            include = filterSample(sample);
+        } catch (RuntimeException e) {
+            // Release the sample (e.g., its pooled buffer or spilled file) before the failure propagates.
+            onSampleDiscarded(sample);
+            throw e;
+        }
+        if (include) {
+            // Sample is valid and should be included.
+            uploadAndCache(sample);
+        } else {
+            onSampleDiscarded(sample);
+        }
+    }
 
-        if (ENABLE_DEBUG_OUTPUT && sample != null) {
-            System.out.println(String.format("[ New sample read: '%s' ]", sample.toString()));
+    /**
+     * Sample the {@link SampleProvider} associated with this {@code AbstractSampleHandler}.
+     * This is the first step of {@link #sampleAndUpload()}, exposed separately such that the steps can be run as
+     * separate stages by a {@link SamplePipeline}.
+     * @return The new sample or {@code null} if no data is available or an error occurred.
+     */
+    S takeSample() {
+        long start = System.nanoTime();
+        S sample = mSampleProvider.sample();
+        mSampleLatency.recordSince(start);
+        if (sample == null) {
+            mSampleFailures.increment();
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("[ New sample read: '%s' ]", sample.toString()));
         }
+        return sample;
+    }
 
-        if (sample != null && shouldIncludeSample(sample)) {
-            // Sample is valid and should be included.
-            // Attempt upload sample to TIPPERS backend db.
-            boolean uploaded = uploadSample(sample);
-            if (ENABLE_DEBUG_OUTPUT) {
-                String output = uploaded ? String.format("[ Upload of '%s' SUCCEEDED ]", sample) :
-                        String.format("[ Upload of '%s' FAILED ]", sample);
-                System.out.println(output);
-            }
+    /**
+     * Decide if a sample should be included using {@link #shouldIncludeSample(Object)}, recording the time taken and
+     * the decision. This is the middle step of {@link #sampleAndUpload()}, exposed separately such that the steps can
+     * be run as separate stages by a {@link SamplePipeline}.
+     * @param sample The sample to test for inclusion.
+     * @return {@code true} if the sample should be included, {@code false} if it should be discarded.
+     */
+    boolean filterSample(S sample) {
+        long start = System.nanoTime();
+        boolean include = shouldIncludeSample(sample);
+        mFilterLatency.recordSince(start);
+        (include ? mIncluded : mRejected).increment();
+        return include;
+    }
+
+    /**
+     * Upload a sample that has been chosen for inclusion to the TIPPERS backend, and cache it if the upload succeeds.
+     * This is the last step of {@link #sampleAndUpload()}, exposed separately such that the steps can be run as
+     * separate stages by a {@link SamplePipeline}. If {@link #uploadSampleAsync(Object)} is asynchronous, this method
+     * returns before the upload completes, and the sample is cached (or discarded) by the thread that completes it.
+     * <p>
+     * If an {@link UploadSpool} has been set, the sample is instead appended to the spool and cached right away; the
+     * spool's drainer uploads it. The sample is only uploaded directly if it cannot be spooled.
+     * </p>
+     * @param sample The sample to upload.
+     */
+    void uploadAndCache(S sample) {
+        UploadSpool<S> spool = mUploadSpool;
+        if (spool != null && spool.append(sample)) {
+            // The sample is bound to be uploaded, so later samples are to be compared against it.
+            cache(sample);
+            return;
+        }
+        upload(sample).whenComplete((uploaded, error) -> {
             if (uploaded) {
                 // Only cache sample if sample was persisted at the backend.
-                mSampleCache.add(sample);
+                cache(sample);
+            } else {
+                onSampleDiscarded(sample);
+            }
+        });
+    }
+
+    /**
+     * Spool approved samples on disk before they are uploaded, such that they survive backend outages and restarts.
+     * Starts the spool's drainer, which uploads the spooled samples using {@link #uploadSampleAsync(Object)}.
+     * The caller remains responsible for closing the spool (after sampling has stopped).
+     * @param spool The spool. Must not be used by other handlers.
+     */
+    public void setUploadSpool(UploadSpool<S> spool) {
+        spool.startDraining(this::upload, this::onSampleDiscarded);
+        mUploadSpool = spool;
+        mMetrics.register("spool", spool.getMetrics());
+    }
+
+    /**
+     * Upload a sample using {@link #uploadSampleAsync(Object)}, recording the time taken and the outcome.
+     * @return A future that completes with {@code true} if the upload succeeded. Never completes exceptionally.
+     */
+    private CompletableFuture<Boolean> upload(S sample) {
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> upload;
+        try {
+            upload = uploadSampleAsync(sample);
+        } catch (RuntimeException e) {
+            upload = new CompletableFuture<>();
+            upload.completeExceptionally(e);
+        }
+        return upload.handle((result, error) -> {
+            if (error != null) {
+                LOGGER.log(Level.WARNING, String.format("[ Upload of '%s' threw ]", sample), error);
             }
+            boolean uploaded = error == null && Boolean.TRUE.equals(result);
+            mUploadLatency.recordSince(start);
+            if (!uploaded) {
+                mUploadFailures.increment();
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(uploaded ? String.format("[ Upload of '%s' SUCCEEDED ]", sample) :
+                        String.format("[ Upload of '%s' FAILED ]", sample));
+            }
+            return uploaded;
+        });
+    }
+
+    /**
+     * Add a sample to {@link #mSampleCache}, discarding the sample it evicts (if any).
+     */
+    private void cache(S sample) {
+        onSampleIncluded(sample);
+        S evicted = mSampleCache.add(sample);
+        if (evicted != null) {
+            onSampleDiscarded(evicted);
         }
     }
 
@@ -112,6 +262,29 @@ public abstract class AbstractSampleHandler<S> {
      */
     abstract protected boolean shouldIncludeSample(S sample);
 
+    /**
+     * Invoked when an included sample is bound to reach the TIPPERS backend (i.e., it was uploaded or spooled), right
+     * before it is added to {@link #mSampleCache}. Subclasses whose samples are stored locally may use this to keep
+     * included samples (while rejected samples are cleaned up by {@link #onSampleDiscarded(Object)}). The default
+     * implementation does nothing.
+     *
+     * @param sample The included sample.
+     */
+    protected void onSampleIncluded(S sample) {
+    }
+
+    /**
+     * Invoked when a sample leaves this handler's custody: when it is rejected by {@link #shouldIncludeSample(Object)},
+     * when its upload fails, when it is dropped by a pipeline stage that cannot keep up, when it is evicted from
+     * {@link #mSampleCache}, and when the upload of a copy read back from the {@link UploadSpool} completes.
+     * Subclasses whose samples hold resources (e.g., pooled buffers or files) should release them here. The default
+     * implementation does nothing.
+     *
+     * @param sample The discarded sample.
+     */
+    protected void onSampleDiscarded(S sample) {
+    }
+
     /**
      * Uploads the sample to the TIPPERS backend. Subclasses should implement this method so that it targets the endpoint
      * designated for the sample type S.
@@ -120,4 +293,17 @@ public abstract class AbstractSampleHandler<S> {
      * @return {@code true} if the sample was successfully uploaded, {@code false} otherwise (e.g., in case of network error).
      */
     abstract protected boolean uploadSample(S sample);
+
+    /**
+     * Uploads the sample to the TIPPERS backend without blocking the calling thread. Subclasses whose uploader
+     * supports asynchronous (e.g., batched) uploads should override this method; the default implementation invokes
+     * {@link #uploadSample(Object)} synchronously. The sample must remain valid until the returned future completes.
+     *
+     * @param sample The sample to be uploaded to the TIPPERS backend.
+     * @return A future that completes with {@code true} if the sample was successfully uploaded, {@code false}
+     * otherwise.
+     */
+    protected CompletableFuture<Boolean> uploadSampleAsync(S sample) {
+        return CompletableFuture.completedFuture(uploadSample(sample));
+    }
 }
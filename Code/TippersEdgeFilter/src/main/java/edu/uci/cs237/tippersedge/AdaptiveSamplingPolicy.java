@@ -0,0 +1,124 @@
+package edu.uci.cs237.tippersedge;
+
+/**
+ * Adapts the sampling period of an {@link AbstractPeriodicSampleHandler} to the activity of the sensed scene: as long
+ * as new samples keep being included (i.e., keep being appended to the handler's sample cache), the sensor is sampled
+ * at the minimum period; once the scene goes static, the period is multiplied by a backoff factor on every tick until
+ * it reaches the maximum period. A single included sample brings the period back to the minimum.
+ * <p>
+ * A quiet sensor (e.g., a camera watching an empty hallway at night) hence costs a fraction of the reads and
+ * object detections of a busy one, while a change in a quiet scene is still caught within the maximum period.
+ * </p>
+ * <p>
+ * A policy holds the state of a single handler and must not be shared. It is thread safe.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class AdaptiveSamplingPolicy {
+
+    /**
+     * Default factor by which the sampling period is stretched on every tick without activity.
+     */
+    public static final double DEFAULT_BACKOFF_FACTOR = 2.0;
+
+    private final long mMinPeriodMillis;
+
+    private final long mMaxPeriodMillis;
+
+    private final double mBackoffFactor;
+
+    /**
+     * The current sampling period. Guarded by {@code this}.
+     */
+    private long mPeriodMillis;
+
+    /**
+     * The sample cache's append count at the previous tick, or {@code -1} before the first tick. Guarded by
+     * {@code this}.
+     */
+    private long mLastAppendCount = -1;
+
+    /**
+     * Create an {@code AdaptiveSamplingPolicy} using {@link #DEFAULT_BACKOFF_FACTOR}.
+     * @param minPeriodMillis The sampling period while the scene is active.
+     * @param maxPeriodMillis The longest sampling period, reached after the scene has been static for a while.
+     */
+    public AdaptiveSamplingPolicy(long minPeriodMillis, long maxPeriodMillis) {
+        this(minPeriodMillis, maxPeriodMillis, DEFAULT_BACKOFF_FACTOR);
+    }
+
+    /**
+     * Create a new {@code AdaptiveSamplingPolicy}.
+     * @param minPeriodMillis The sampling period while the scene is active.
+     * @param maxPeriodMillis The longest sampling period, reached after the scene has been static for a while.
+     * @param backoffFactor The factor (greater than 1) by which the sampling period is stretched on every tick
+     *                      without activity.
+     */
+    public AdaptiveSamplingPolicy(long minPeriodMillis, long maxPeriodMillis, double backoffFactor) {
+        if (minPeriodMillis < 1) {
+            throw new IllegalArgumentException("minPeriodMillis must be positive");
+        }
+        if (maxPeriodMillis < minPeriodMillis) {
+            throw new IllegalArgumentException("maxPeriodMillis cannot be less than minPeriodMillis");
+        }
+        if (!(backoffFactor > 1)) {
+            throw new IllegalArgumentException("backoffFactor must be greater than 1");
+        }
+        mMinPeriodMillis = minPeriodMillis;
+        mMaxPeriodMillis = maxPeriodMillis;
+        mBackoffFactor = backoffFactor;
+        mPeriodMillis = minPeriodMillis;
+    }
+
+    /**
+     * Compute the delay until the next tick.
+     * @param appendCount The total number of samples ever appended to the handler's sample cache (see
+     *                    {@link SampleRingBuffer#getAppendCount()}).
+     * @return the delay until the next tick in milliseconds.
+     */
+    public synchronized long nextPeriodMillis(long appendCount) {
+        if (mLastAppendCount >= 0 && appendCount == mLastAppendCount) {
+            // Nothing was included since the previous tick: back off.
+            mPeriodMillis = (long) Math.min(mMaxPeriodMillis, Math.ceil(mPeriodMillis * mBackoffFactor));
+        } else {
+            // First tick, or the scene changed since the previous tick.
+            mPeriodMillis = mMinPeriodMillis;
+        }
+        mLastAppendCount = appendCount;
+        return mPeriodMillis;
+    }
+
+    /**
+     * Get the current sampling period.
+     * @return the current sampling period in milliseconds.
+     */
+    public synchronized long getPeriodMillis() {
+        return mPeriodMillis;
+    }
+
+    /**
+     * Get the sampling period while the scene is active.
+     * @return the minimum sampling period in milliseconds.
+     */
+    public long getMinPeriodMillis() {
+        return mMinPeriodMillis;
+    }
+
+    /**
+     * Get the longest sampling period.
+     * @return the maximum sampling period in milliseconds.
+     */
+    public long getMaxPeriodMillis() {
+        return mMaxPeriodMillis;
+    }
+
+    /**
+     * Get the factor by which the sampling period is stretched on every tick without activity.
+     * @return the backoff factor.
+     */
+    public double getBackoffFactor() {
+        return mBackoffFactor;
+    }
+
+}
@@ -0,0 +1,130 @@
+package edu.uci.cs237.tippersedge;
+
+/**
+ * A fixed-capacity ring buffer of time-stamped {@code double} readings; the primitive counterpart of
+ * {@link SampleRingBuffer}. Readings and timestamps are held in two primitive arrays allocated up front, so appending
+ * never allocates and the buffer keeps no objects alive. Once the buffer is full, every new reading overwrites the
+ * oldest one.
+ * <p>
+ * All operations are O(1) (except for {@link #copyValues(double[])}) and synchronized on the buffer. As a buffer is
+ * written by a single sensor's handler, the lock is (almost) never contended.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class DoubleRingBuffer {
+
+    private final double[] mValues;
+
+    private final long[] mTimestamps;
+
+    /**
+     * The total number of readings ever appended. The next reading is written at {@code mAppendCount % capacity}.
+     */
+    private long mAppendCount = 0;
+
+    /**
+     * Create a new {@code DoubleRingBuffer}.
+     * @param capacity The maximum number of readings held by the buffer.
+     */
+    public DoubleRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mValues = new double[capacity];
+        mTimestamps = new long[capacity];
+    }
+
+    /**
+     * Append a reading, overwriting the oldest reading if the buffer is full.
+     * @param timestampMillis When the reading was taken (epoch milliseconds).
+     * @param value The reading.
+     */
+    public synchronized void add(long timestampMillis, double value) {
+        int slot = (int) (mAppendCount % mValues.length);
+        mValues[slot] = value;
+        mTimestamps[slot] = timestampMillis;
+        mAppendCount++;
+    }
+
+    /**
+     * Get the number of readings currently held by the buffer.
+     * @return the number of readings currently held by the buffer.
+     */
+    public synchronized int size() {
+        return (int) Math.min(mAppendCount, mValues.length);
+    }
+
+    /**
+     * Get the maximum number of readings held by the buffer.
+     * @return the maximum number of readings held by the buffer.
+     */
+    public int capacity() {
+        return mValues.length;
+    }
+
+    /**
+     * Get the total number of readings ever appended to the buffer.
+     * @return the total number of readings ever appended to the buffer.
+     */
+    public synchronized long getAppendCount() {
+        return mAppendCount;
+    }
+
+    /**
+     * Get a buffered reading.
+     * @param index The index of the reading, from {@code 0} (the oldest buffered reading) to {@code size() - 1} (the
+     *              most recent reading).
+     * @return the reading.
+     * @throws IndexOutOfBoundsException if there is no reading at {@code index}.
+     */
+    public synchronized double valueAt(int index) {
+        return mValues[slotOf(index)];
+    }
+
+    /**
+     * Get when a buffered reading was taken.
+     * @param index The index of the reading, from {@code 0} (the oldest buffered reading) to {@code size() - 1} (the
+     *              most recent reading).
+     * @return when the reading was taken (epoch milliseconds).
+     * @throws IndexOutOfBoundsException if there is no reading at {@code index}.
+     */
+    public synchronized long timestampAt(int index) {
+        return mTimestamps[slotOf(index)];
+    }
+
+    /**
+     * Get the most recent reading.
+     * @return the most recent reading, or {@link Double#NaN} if the buffer is empty.
+     */
+    public synchronized double latestValue() {
+        return mAppendCount == 0 ? Double.NaN : mValues[(int) ((mAppendCount - 1) % mValues.length)];
+    }
+
+    /**
+     * Copy the buffered readings, ordered from oldest to newest, into a caller-provided array such that the array can
+     * be reused.
+     * @param destination The array to copy into; must hold at least {@link #capacity()} elements.
+     * @return the number of readings copied.
+     */
+    public synchronized int copyValues(double[] destination) {
+        int size = size();
+        if (destination.length < size) {
+            throw new IllegalArgumentException("destination is too small");
+        }
+        int oldest = (int) ((mAppendCount - size) % mValues.length);
+        int head = Math.min(size, mValues.length - oldest);
+        System.arraycopy(mValues, oldest, destination, 0, head);
+        System.arraycopy(mValues, 0, destination, head, size - head);
+        return size;
+    }
+
+    private int slotOf(int index) {
+        int size = size();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+        }
+        return (int) ((mAppendCount - size + index) % mValues.length);
+    }
+
+}
@@ -0,0 +1,19 @@
+package edu.uci.cs237.tippersedge;
+
+/**
+ * A {@link SampleProvider} specialized for sensors whose readings are single numbers (e.g., temperature, humidity or
+ * occupancy counts). Readings are returned as primitive {@code double}s, so sampling allocates nothing, which matters
+ * for sensors sampled hundreds of times per second.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+@FunctionalInterface
+public interface DoubleSampleProvider {
+
+    /**
+     * Sample the sensor (retrieve a new reading).
+     * @return The new reading or {@link Double#NaN} if no data is available or an error occurred.
+     */
+    double sampleAsDouble();
+
+}
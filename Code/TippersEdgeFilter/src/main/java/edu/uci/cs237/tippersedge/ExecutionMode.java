@@ -0,0 +1,63 @@
+package edu.uci.cs237.tippersedge;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The kinds of threads that run the ticks of sample handlers sharing a scheduled executor (e.g., the cameras of a
+ * {@link edu.uci.cs237.tippersedge.cameras.MultiCameraSampler}).
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public enum ExecutionMode {
+
+    /**
+     * Run ticks on a fixed number of platform threads. A tick occupies its thread while it is blocked on the sensor,
+     * on object detection or on an upload, so the number of threads bounds the number of handlers that can make
+     * progress at the same time.
+     */
+    PLATFORM,
+
+    /**
+     * Run each tick on a virtual thread of its own. A tick that is blocked on the sensor, on object detection or on an upload only
+     * holds on to its (small, heap allocated) stack, so hundreds of handlers can be blocked at the same time without
+     * tying up hundreds of platform threads. CPU-bound work must then be bounded separately, e.g., object detection by
+     * the dispatcher threads of a {@link edu.uci.cs237.tippersedge.darknet.FairDetectionScheduler} (see
+     * {@link edu.uci.cs237.tippersedge.darknet.DarknetConfig#getDetectionPermits()}).
+     */
+    VIRTUAL;
+
+    /**
+     * Create a scheduled executor that runs the ticks of several sample handlers.
+     * <p>
+     * For {@link #PLATFORM}, {@code platformThreads} platform threads are created, which bound the number of ticks
+     * that run at the same time. For {@link #VIRTUAL}, a single platform thread keeps time for all handlers and each
+     * tick that is due runs on a new virtual thread; virtual threads are not pooled, so {@code platformThreads} is
+     * ignored.
+     * </p>
+     * @param name The name prefix of the threads.
+     * @param platformThreads The number of platform threads that run ticks in {@link #PLATFORM} mode.
+     * @return the scheduled executor. The caller is responsible for shutting it down.
+     */
+    public ScheduledExecutorService newScheduledExecutor(String name, int platformThreads) {
+        if (platformThreads < 1) {
+            throw new IllegalArgumentException("platformThreads must be positive");
+        }
+        if (this == PLATFORM) {
+            return Executors.newScheduledThreadPool(platformThreads, Thread.ofPlatform().name(name + "-", 1).factory());
+        }
+        return new VirtualTickExecutor(name);
+    }
+
+    /**
+     * Parse the name of a mode as it appears in a properties file.
+     * @param name The name of the mode, case insensitive (e.g., {@code virtual}).
+     * @return the mode with the given name.
+     * @throws IllegalArgumentException if there is no mode with the given name.
+     */
+    public static ExecutionMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+}
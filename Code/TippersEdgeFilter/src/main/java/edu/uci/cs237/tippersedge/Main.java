@@ -1,13 +1,37 @@
 package edu.uci.cs237.tippersedge;
 
+import edu.uci.cs237.tippersedge.cameras.CameraConfig;
+import edu.uci.cs237.tippersedge.cameras.CameraFrame;
+import edu.uci.cs237.tippersedge.cameras.CameraFrameCodec;
 import edu.uci.cs237.tippersedge.cameras.CameraRestClient;
 import edu.uci.cs237.tippersedge.cameras.CameraSampleHandler;
+import edu.uci.cs237.tippersedge.cameras.CameraSettings;
+import edu.uci.cs237.tippersedge.cameras.FramePreprocessor;
+import edu.uci.cs237.tippersedge.cameras.ImageRetentionManager;
+import edu.uci.cs237.tippersedge.cameras.MultiCameraSampler;
+import edu.uci.cs237.tippersedge.cameras.PixelDiffPreFilter;
 import edu.uci.cs237.tippersedge.darknet.DarknetConfig;
 import edu.uci.cs237.tippersedge.darknet.DarknetProcess;
+import edu.uci.cs237.tippersedge.darknet.Detector;
+import edu.uci.cs237.tippersedge.darknet.FairDetectionScheduler;
+import edu.uci.cs237.tippersedge.darknet.FakeDetector;
+import edu.uci.cs237.tippersedge.darknet.OpenCvDetector;
+import edu.uci.cs237.tippersedge.darknet.SceneComparator;
+import edu.uci.cs237.tippersedge.metrics.JmxMetricsExporter;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+import edu.uci.cs237.tippersedge.metrics.MetricsConfig;
+import edu.uci.cs237.tippersedge.metrics.MetricsHttpServer;
+import edu.uci.cs237.tippersedge.metrics.MetricsRegistry;
+import edu.uci.cs237.tippersedge.sensoria.BatchingImageUploader;
 import edu.uci.cs237.tippersedge.sensoria.MockImageUploader;
+import edu.uci.cs237.tippersedge.simulation.FrameRecording;
+import edu.uci.cs237.tippersedge.simulation.ReplayFrameProvider;
+import edu.uci.cs237.tippersedge.spool.SpoolConfig;
+import edu.uci.cs237.tippersedge.spool.UploadSpool;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
 import java.io.File;
+import javax.management.JMException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -44,17 +68,104 @@ public class Main {
         */
 
 
-        CameraSampleHandler cameraSampleHandler = new CameraSampleHandler(new CameraRestClient(),
+        MetricsRegistry metricsRegistry = MetricsRegistry.getDefault();
+        // Resident Darknet processes (or in-process networks) only load the network weights once, so we can afford to
+        // sample frequently.
+        Detector detector = createDetector(metricsRegistry);
+        MetricsHttpServer metricsHttpServer = exportMetrics(metricsRegistry);
+        SceneComparator sceneComparator = new SceneComparator(DarknetConfig.getSceneMinConfidence(),
+                DarknetConfig.getSceneConfidenceTolerance(), DarknetConfig.getSceneMinIntersectionOverUnion());
+        // Uploads are batched and sent in the background such that filter threads do not wait for the backend.
+        BatchingImageUploader imageUploader = new BatchingImageUploader(new MockImageUploader());
+        metricsRegistry.register("uploader", imageUploader.getMetrics());
+        ImageRetentionManager retentionManager = createRetentionManager(metricsRegistry);
+        if (CameraConfig.getCameras().size() > 1 || CameraConfig.getExecutionMode() == ExecutionMode.VIRTUAL) {
+            // Multi-camera mode: all cameras share the sampling threads and the Darknet processes. A single camera is
+            // sampled this way too when ticks run on virtual threads.
+            // The detection scheduler's dispatchers bound the number of concurrent detections.
+            int detectionConcurrency = Math.max(1, DarknetConfig.getDarknetWorkerCount());
+            if (CameraConfig.getExecutionMode() == ExecutionMode.VIRTUAL) {
+                // However many cameras wait for detection, do not run more (CPU-bound) detections than there are cores.
+                detectionConcurrency = Math.max(1, Math.min(detectionConcurrency, DarknetConfig.getDetectionPermits()));
+            }
+            MultiCameraSampler multiCameraSampler = new MultiCameraSampler(300, detector, detectionConcurrency,
+                    PixelDiffPreFilter::new, imageUploader);
+            List<UploadSpool<CameraFrame>> spools = new ArrayList<>();
+            for (CameraSampleHandler handler : multiCameraSampler.getHandlers().values()) {
+                handler.setSceneComparator(sceneComparator);
+                if (retentionManager != null) {
+                    handler.setRetentionManager(retentionManager);
+                }
+            }
+            for (CameraSettings camera : CameraConfig.getCameras()) {
+                UploadSpool<CameraFrame> spool = openSpool(camera,
+                        multiCameraSampler.getHandlers().get(camera.getId()));
+                if (spool != null) {
+                    spools.add(spool);
+                }
+            }
+            metricsRegistry.register("cameras", multiCameraSampler.getMetrics());
+            // Also shut down in order if the JVM is asked to exit (e.g., by a restart or a rolling update).
+            ShutdownSequence shutdown = newShutdownSequence(
+                    timeoutMillis -> multiCameraSampler.stopPeriodicSampling(true, timeoutMillis), detector, spools,
+                    imageUploader, metricsHttpServer).installShutdownHook();
+            multiCameraSampler.startPeriodicSampling();
+            Thread.sleep(15 * 20_000);
+            shutdown.run();
+            return;
+        }
+        // Run detection on as many threads as there are Darknet processes (times the batch size, such that batches can
+        // fill up), and always analyze the freshest frame.
+        int detectionConcurrency = Math.max(1, DarknetConfig.getDarknetWorkerCount());
+        int detectionBatchSize = DarknetConfig.getDetectionBatchSize();
+        PipelineConfig pipelineConfig = PipelineConfig.latestFrameWins(detectionConcurrency * detectionBatchSize);
+        FairDetectionScheduler detectionScheduler = null;
+        Detector cameraDetector = detector;
+        if (detectionBatchSize > 1) {
+            // Gather the frames that are analyzed concurrently into batches.
+            detectionScheduler = new FairDetectionScheduler(detector, detectionConcurrency, detectionBatchSize,
+                    DarknetConfig.getDetectionLingerMillis());
+            metricsRegistry.register("detectionScheduler", detectionScheduler.getMetrics());
+            cameraDetector = detectionScheduler.forSource(CameraConfig.getCameras().get(0).getId());
+        }
+        CameraRestClient cameraRestClient = new CameraRestClient();
+        CameraSampleHandler cameraSampleHandler = new CameraSampleHandler(cameraRestClient,
                 300,
-                30_000,
-                DarknetConfig.getDarknetDirectory(),
-                new MockImageUploader()
+                CameraConfig.getCameras().get(0).getSampleRateMillis(),
+                pipelineConfig,
+                cameraDetector,
+                new PixelDiffPreFilter(),
+                imageUploader
         );
+        cameraSampleHandler.setSceneComparator(sceneComparator);
+        if (retentionManager != null) {
+            cameraSampleHandler.setRetentionManager(retentionManager);
+        }
+        CameraSettings camera = CameraConfig.getCameras().get(0);
+        if (camera.isAdaptiveSampling()) {
+            // Sample less often while the scene is static.
+            cameraSampleHandler.setAdaptiveSampling(camera.newSamplingPolicy());
+        }
+        if (camera.getPreprocessing().isEnabled()) {
+            // Only hand the regions of interest, downscaled to the network's input size, to the detector.
+            cameraSampleHandler.setFramePreprocessor(new FramePreprocessor(camera.getPreprocessing(),
+                    camera.getSpillDirectory()));
+        }
+        UploadSpool<CameraFrame> spool = openSpool(CameraConfig.getCameras().get(0), cameraSampleHandler);
+        metricsRegistry.register("camera", cameraSampleHandler.getMetrics());
+        FairDetectionScheduler batchingScheduler = detectionScheduler;
+        ShutdownSequence shutdown = newShutdownSequence(timeoutMillis -> {
+            // Wait for ongoing ticks, which includes draining the pipeline's queues.
+            cameraSampleHandler.stopPeriodicSampling(true, timeoutMillis);
+            if (batchingScheduler != null) {
+                batchingScheduler.close();
+            }
+            cameraRestClient.close();
+        }, detector, spool != null ? Collections.singletonList(spool) : Collections.emptyList(), imageUploader,
+                metricsHttpServer).installShutdownHook();
         cameraSampleHandler.startPeriodicSampling();
         Thread.sleep(15 * 20_000);
-        // Terminate sampling and wait (block) for 30 seconds for tasks to terminate.
-        // TODO this seems to ignore the fact that Darknet is still running
-        cameraSampleHandler.stopPeriodicSampling(true, 30_000);
+        shutdown.run();
 
 
         /*
@@ -89,6 +200,131 @@ public class Main {
 
     }
 
+    /**
+     * Create the object detection engine selected by {@link DarknetConfig#getDetectorBackend()}, and register its
+     * metrics with {@code metricsRegistry}.
+     * @param metricsRegistry The registry to register the metrics of the detector with.
+     * @return the detector.
+     * @throws IOException if the in-process backend could not load the network.
+     */
+    private static Detector createDetector(MetricsRegistry metricsRegistry) throws IOException {
+        switch (DarknetConfig.getDetectorBackend()) {
+            case OPENCV:
+                OpenCvDetector openCvDetector = new OpenCvDetector(DarknetConfig.getDarknetDirectory(),
+                        Math.max(1, DarknetConfig.getDarknetWorkerCount()), DarknetConfig.getDetectorInputSize(),
+                        DarknetConfig.getDetectorConfidenceThreshold(), DarknetConfig.getDetectorNmsThreshold());
+                metricsRegistry.register("detector", openCvDetector.getMetrics());
+                return openCvDetector;
+            case FAKE:
+                return new FakeDetector(DarknetConfig.getFakeDetectorLatencyMillis() * 1000);
+            case DARKNET:
+            default:
+                DarknetProcess darknetProcess = new DarknetProcess(DarknetConfig.getDarknetDirectory(),
+                        DarknetConfig.getDarknetWorkerCount(), DarknetConfig.getDarknetTimeoutMillis(),
+                        DarknetConfig.isDarknetExtOutput());
+                metricsRegistry.register("darknet", darknetProcess.getMetrics());
+                return darknetProcess;
+        }
+    }
+
+    /**
+     * Create the sequence that shuts down the application in pipeline order: sampling (and filtering) is stopped
+     * first, then the detections in progress are given time to complete before the detector's child processes are
+     * terminated, and finally the approved images are flushed from the spools and uploaded.
+     * @param stopSampling Stops sampling, waiting for ongoing ticks to complete.
+     * @param detector The detector shared by the cameras.
+     * @param spools The upload spools of the cameras.
+     * @param imageUploader Uploads the approved images.
+     * @param metricsHttpServer Serves the metrics, or {@code null}.
+     * @return the sequence. Invoke {@link ShutdownSequence#run()} to shut down.
+     */
+    private static ShutdownSequence newShutdownSequence(ShutdownSequence.Stage stopSampling, Detector detector,
+                                                        List<UploadSpool<CameraFrame>> spools,
+                                                        BatchingImageUploader imageUploader,
+                                                        MetricsHttpServer metricsHttpServer) {
+        return new ShutdownSequence()
+                .then("sampling", 30_000, stopSampling)
+                .then("detector", 10_000, detector::close)
+                .then("upload spools", 5_000, timeoutMillis -> {
+                    for (UploadSpool<CameraFrame> spool : spools) {
+                        spool.close(timeoutMillis);
+                    }
+                })
+                .then("uploader", 30_000, imageUploader::close)
+                .then("metrics server", 0, timeoutMillis -> {
+                    if (metricsHttpServer != null) {
+                        metricsHttpServer.close();
+                    }
+                });
+    }
+
+    /**
+     * Create the manager that keeps the images of included frames within the budget specified by
+     * {@link CameraConfig}, taking over the images left behind by previous runs.
+     * @return the manager, or {@code null} if images are kept in memory or if no budget is configured.
+     */
+    private static ImageRetentionManager createRetentionManager(MetricsRegistry metricsRegistry) {
+        if (CameraConfig.isZeroDisk() ||
+                (CameraConfig.getRetentionMaxBytes() == 0 && CameraConfig.getRetentionMaxAgeMillis() == 0)) {
+            return null;
+        }
+        ImageRetentionManager retentionManager = new ImageRetentionManager(CameraConfig.getRetentionMaxBytes(),
+                CameraConfig.getRetentionMaxAgeMillis());
+        for (CameraSettings camera : CameraConfig.getCameras()) {
+            retentionManager.scan(camera.getOutputDirectory());
+        }
+        metricsRegistry.register("retention", retentionManager.getMetrics());
+        return retentionManager;
+    }
+
+    /**
+     * Open the upload spool of a camera and attach it to the camera's handler, if enabled by {@link SpoolConfig}.
+     * Failure to open the spool is not fatal; the handler then uploads approved images directly.
+     * @param camera The camera.
+     * @param handler The handler of the camera.
+     * @return the spool, or {@code null} if the spool is disabled or could not be opened.
+     */
+    private static UploadSpool<CameraFrame> openSpool(CameraSettings camera, CameraSampleHandler handler) {
+        if (!SpoolConfig.isEnabled()) {
+            return null;
+        }
+        try {
+            UploadSpool<CameraFrame> spool = new UploadSpool<>(new File(SpoolConfig.getDirectory(), camera.getId()),
+                    new CameraFrameCodec(camera.getSpillDirectory()), SpoolConfig.getSegmentBytes(),
+                    SpoolConfig.getMaxBytes(), SpoolConfig.getMaxAgeMillis(), SpoolConfig.isSync(),
+                    SpoolConfig.getDrainWindow());
+            handler.setUploadSpool(spool);
+            return spool;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Expose the metrics through JMX and HTTP as specified by {@link MetricsConfig}.
+     * Failure to export the metrics is not fatal.
+     * @param metrics The metrics to expose.
+     * @return the HTTP server serving the metrics, or {@code null} if the metrics are not served over HTTP.
+     */
+    private static MetricsHttpServer exportMetrics(MetricSet metrics) {
+        if (MetricsConfig.isJmxEnabled()) {
+            try {
+                JmxMetricsExporter.register(metrics);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+        if (MetricsConfig.getHttpPort() >= 0) {
+            try {
+                return new MetricsHttpServer(metrics, MetricsConfig.getHttpBindAddress(), MetricsConfig.getHttpPort());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
     /**
      * Benchmark darknet by computing the average time it takes to execute darknet on each .jpg image in the given directory.
      * @param imgDir The directory where the files to be used in the benchmark reside.
@@ -122,25 +358,13 @@ public class Main {
         // double avgExecTimeMillis = executionTimes.stream().reduce((l1, l2) -> l1 + l2).get() / new Double(count);
     }
 
-    static void testInclusionLogic(String imgDir) {
-        final List<String> images = getListOfJpgImagesInDir(imgDir, Integer.MAX_VALUE);
-        Collections.sort(images);
-        // Overwrite the standard rest client to just return images from a local directory.
-        CameraRestClient crc = new CameraRestClient() {
-
-            private int count = 0;
-
-            @Override
-            public String sample() {
-                return images.get(count++);
-            }
-
-        };
-        CameraSampleHandler csh = new CameraSampleHandler(crc, images.size() / 2, 1_000_000_000, DarknetConfig.getDarknetDirectory(), new MockImageUploader());
-        int i = 0;
-        while (i < images.size()) {
+    static void testInclusionLogic(String imgDir) throws IOException {
+        // Replay the images in the local directory (in the order of their names) rather than sample a camera.
+        FrameRecording recording = FrameRecording.fromDirectory(imgDir, Integer.MAX_VALUE);
+        ReplayFrameProvider replay = new ReplayFrameProvider(recording, 0, false, System.getProperty("java.io.tmpdir"));
+        CameraSampleHandler csh = new CameraSampleHandler(replay, recording.size() / 2, 1_000_000_000, DarknetConfig.getDarknetDirectory(), new MockImageUploader());
+        for (int i = 0; i < recording.size(); i++) {
             csh.sampleAndUpload();
-            i++;
         }
     }
 
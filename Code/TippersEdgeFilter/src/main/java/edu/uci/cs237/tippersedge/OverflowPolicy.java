@@ -0,0 +1,27 @@
+package edu.uci.cs237.tippersedge;
+
+/**
+ * Determines what happens when a sample is handed to a pipeline stage (see {@link PipelineConfig}) whose queue is full,
+ * i.e., when a downstream stage (typically object detection) cannot keep up with the rate at which samples arrive.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discard the oldest queued sample to make room for the new sample. Favors fresh samples.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the new sample, leaving the queue untouched.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Block the upstream stage until there is room in the queue. No samples are lost between stages, but sampling may
+     * be delayed (and sampling ticks may be skipped) while detection is behind.
+     */
+    BLOCK
+
+}
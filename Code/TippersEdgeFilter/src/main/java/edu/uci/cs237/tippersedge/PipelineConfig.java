@@ -0,0 +1,177 @@
+package edu.uci.cs237.tippersedge;
+
+import java.util.Objects;
+
+/**
+ * Configuration of the staged sample &rarr; filter &rarr; upload pipeline of an {@link AbstractPeriodicSampleHandler}.
+ * <p>
+ * In pipelined mode, each of the three steps of {@link AbstractSampleHandler#sampleAndUpload()} runs as a separate
+ * stage with its own worker threads:
+ * </p>
+ * <ol>
+ *     <li>
+ *         <em>Sampling</em>: on every tick of the sampling period, a sampling worker reads the {@link SampleProvider}.
+ *         If all sampling workers are still busy with earlier ticks, the tick is skipped such that the sampling rate
+ *         never drifts.
+ *     </li>
+ *     <li>
+ *         <em>Filtering</em>: filter workers take samples from a bounded queue and invoke
+ *         {@link AbstractSampleHandler#shouldIncludeSample(Object)}.
+ *     </li>
+ *     <li>
+ *         <em>Uploading</em>: upload workers take approved samples from a bounded queue and invoke
+ *         {@link AbstractSampleHandler#uploadSample(Object)}.
+ *     </li>
+ * </ol>
+ * The {@link OverflowPolicy} of each queue determines what happens when the queue is full.
+ * <p>
+ * Optionally, the sampling period can adapt to the measured filter (detection) time, such that sampling never runs
+ * (much) faster than the filter stage can consume samples. See {@link #latestFrameWins(int)} for a configuration
+ * that combines this with always analyzing the most recent sample.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class PipelineConfig {
+
+    /**
+     * Capacity of the upload queue of {@link #latestFrameWins(int)} configurations.
+     */
+    private static final int LATEST_FRAME_WINS_UPLOAD_QUEUE_CAPACITY = 16;
+
+    private final int mSamplingWorkers;
+    private final int mFilterWorkers;
+    private final int mFilterQueueCapacity;
+    private final int mUploadWorkers;
+    private final int mUploadQueueCapacity;
+    private final OverflowPolicy mFilterOverflowPolicy;
+    private final OverflowPolicy mUploadOverflowPolicy;
+    private final boolean mAdaptiveSampleRate;
+
+    /**
+     * Create a new {@code PipelineConfig} that applies the same {@link OverflowPolicy} to both queues and samples at
+     * a fixed rate.
+     * @param samplingWorkers The maximum number of concurrent reads of the {@link SampleProvider}.
+     * @param filterWorkers The number of threads that decide if samples should be included.
+     * @param filterQueueCapacity The maximum number of samples waiting to be filtered.
+     * @param uploadWorkers The number of threads that upload approved samples.
+     * @param uploadQueueCapacity The maximum number of approved samples waiting to be uploaded.
+     * @param overflowPolicy What to do when a sample arrives at a full queue.
+     */
+    public PipelineConfig(int samplingWorkers, int filterWorkers, int filterQueueCapacity, int uploadWorkers,
+                          int uploadQueueCapacity, OverflowPolicy overflowPolicy) {
+        this(samplingWorkers, filterWorkers, filterQueueCapacity, overflowPolicy, uploadWorkers, uploadQueueCapacity,
+                overflowPolicy, false);
+    }
+
+    /**
+     * Create a new {@code PipelineConfig}.
+     * @param samplingWorkers The maximum number of concurrent reads of the {@link SampleProvider}.
+     * @param filterWorkers The number of threads that decide if samples should be included.
+     * @param filterQueueCapacity The maximum number of samples waiting to be filtered.
+     * @param filterOverflowPolicy What to do when a sample arrives at a full filter queue.
+     * @param uploadWorkers The number of threads that upload approved samples.
+     * @param uploadQueueCapacity The maximum number of approved samples waiting to be uploaded.
+     * @param uploadOverflowPolicy What to do when an approved sample arrives at a full upload queue.
+     * @param adaptiveSampleRate If {@code true}, the sampling period is stretched whenever filtering a sample takes
+     *                           longer than the nominal sampling period divided by the number of filter workers.
+     */
+    public PipelineConfig(int samplingWorkers, int filterWorkers, int filterQueueCapacity,
+                          OverflowPolicy filterOverflowPolicy, int uploadWorkers, int uploadQueueCapacity,
+                          OverflowPolicy uploadOverflowPolicy, boolean adaptiveSampleRate) {
+        mSamplingWorkers = requirePositive(samplingWorkers, "samplingWorkers");
+        mFilterWorkers = requirePositive(filterWorkers, "filterWorkers");
+        mFilterQueueCapacity = requirePositive(filterQueueCapacity, "filterQueueCapacity");
+        mUploadWorkers = requirePositive(uploadWorkers, "uploadWorkers");
+        mUploadQueueCapacity = requirePositive(uploadQueueCapacity, "uploadQueueCapacity");
+        mFilterOverflowPolicy = Objects.requireNonNull(filterOverflowPolicy, "filterOverflowPolicy cannot be null");
+        mUploadOverflowPolicy = Objects.requireNonNull(uploadOverflowPolicy, "uploadOverflowPolicy cannot be null");
+        mAdaptiveSampleRate = adaptiveSampleRate;
+    }
+
+    /**
+     * Create a "latest-frame-wins" configuration: at most {@code maxInFlight} samples are filtered concurrently, a
+     * single slot holds the next sample to filter, and a newly read sample replaces any older sample still waiting in
+     * that slot. Samples are hence never analyzed after a fresher sample is available, and the sampling period adapts
+     * to the measured filter time so that the sensor is not read (much) more often than samples can be analyzed.
+     * Approved samples are never dropped on their way to the upload stage.
+     * @param maxInFlight The maximum number of samples filtered concurrently (e.g., the number of Darknet processes).
+     * @return a latest-frame-wins {@code PipelineConfig}.
+     */
+    public static PipelineConfig latestFrameWins(int maxInFlight) {
+        return new PipelineConfig(1, maxInFlight, 1, OverflowPolicy.DROP_OLDEST,
+                1, LATEST_FRAME_WINS_UPLOAD_QUEUE_CAPACITY, OverflowPolicy.BLOCK, true);
+    }
+
+    /**
+     * Get the maximum number of concurrent reads of the {@link SampleProvider}.
+     * @return the maximum number of concurrent reads of the {@link SampleProvider}.
+     */
+    public int getSamplingWorkers() {
+        return mSamplingWorkers;
+    }
+
+    /**
+     * Get the number of threads that decide if samples should be included.
+     * @return the number of threads that decide if samples should be included.
+     */
+    public int getFilterWorkers() {
+        return mFilterWorkers;
+    }
+
+    /**
+     * Get the maximum number of samples waiting to be filtered.
+     * @return the maximum number of samples waiting to be filtered.
+     */
+    public int getFilterQueueCapacity() {
+        return mFilterQueueCapacity;
+    }
+
+    /**
+     * Get the number of threads that upload approved samples.
+     * @return the number of threads that upload approved samples.
+     */
+    public int getUploadWorkers() {
+        return mUploadWorkers;
+    }
+
+    /**
+     * Get the maximum number of approved samples waiting to be uploaded.
+     * @return the maximum number of approved samples waiting to be uploaded.
+     */
+    public int getUploadQueueCapacity() {
+        return mUploadQueueCapacity;
+    }
+
+    /**
+     * Get what to do when a sample arrives at a full filter queue.
+     * @return what to do when a sample arrives at a full filter queue.
+     */
+    public OverflowPolicy getFilterOverflowPolicy() {
+        return mFilterOverflowPolicy;
+    }
+
+    /**
+     * Get what to do when an approved sample arrives at a full upload queue.
+     * @return what to do when an approved sample arrives at a full upload queue.
+     */
+    public OverflowPolicy getUploadOverflowPolicy() {
+        return mUploadOverflowPolicy;
+    }
+
+    /**
+     * Check if the sampling period adapts to the measured filter time.
+     * @return {@code true} if the sampling period adapts to the measured filter time.
+     */
+    public boolean isAdaptiveSampleRate() {
+        return mAdaptiveSampleRate;
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be positive");
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,203 @@
+package edu.uci.cs237.tippersedge;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A stage of a {@link SamplePipeline}: a bounded queue drained by a fixed number of worker threads.
+ * <p>
+ * A stage terminates in an orderly fashion: once {@link #finish()} has been invoked (signalling that upstream will
+ * submit no more items), the workers drain the queue and then exit. When the last worker exits, the downstream stage
+ * (if any) is finished in turn, such that an entire pipeline drains from front to back.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ * @param <T> The type of items processed by the stage.
+ */
+final class PipelineStage<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(PipelineStage.class.getName());
+
+    /**
+     * How often idle workers check if the stage has been finished.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    private final String mName;
+
+    private final BlockingQueue<T> mQueue;
+
+    private final OverflowPolicy mOverflowPolicy;
+
+    /**
+     * Invoked by the workers for each item taken off the queue.
+     */
+    private final Consumer<T> mProcessor;
+
+    /**
+     * Invoked for each item dropped due to the {@link OverflowPolicy}, and for each item whose processor threw (such
+     * that its resources, e.g., a pooled buffer or a spilled file, are released).
+     */
+    private final Consumer<T> mDropListener;
+
+    /**
+     * The stage to finish once this stage has terminated, or {@code null} if this is the last stage.
+     */
+    private final PipelineStage<?> mDownstream;
+
+    private final Thread[] mWorkers;
+
+    private final AtomicInteger mLiveWorkers = new AtomicInteger();
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    private final Object mTerminationLock = new Object();
+
+    private volatile boolean mUpstreamDone = false;
+
+    PipelineStage(String name, int workers, int capacity, OverflowPolicy overflowPolicy, Consumer<T> processor,
+                  Consumer<T> dropListener, PipelineStage<?> downstream) {
+        mName = name;
+        mQueue = new ArrayBlockingQueue<>(capacity);
+        mOverflowPolicy = overflowPolicy;
+        mProcessor = processor;
+        mDropListener = dropListener;
+        mDownstream = downstream;
+        mWorkers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            mWorkers[i] = new Thread(this::work, String.format("%s-%d", name, i + 1));
+        }
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    void start() {
+        mLiveWorkers.set(mWorkers.length);
+        for (Thread worker : mWorkers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Hand an item to this stage, applying the stage's {@link OverflowPolicy} if its queue is full.
+     * @param item The item to enqueue.
+     * @return {@code true} if the item was enqueued, {@code false} if it was dropped.
+     * @throws InterruptedException if interrupted while blocking for room in the queue.
+     */
+    boolean submit(T item) throws InterruptedException {
+        switch (mOverflowPolicy) {
+            case BLOCK:
+                mQueue.put(item);
+                return true;
+            case DROP_NEWEST:
+                if (mQueue.offer(item)) {
+                    return true;
+                }
+                mDropped.incrementAndGet();
+                mDropListener.accept(item);
+                return false;
+            case DROP_OLDEST:
+            default:
+                while (!mQueue.offer(item)) {
+                    T oldest = mQueue.poll();
+                    if (oldest != null) {
+                        mDropped.incrementAndGet();
+                        mDropListener.accept(oldest);
+                    }
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Signal that upstream will submit no more items. The workers exit once the queue has been drained.
+     */
+    void finish() {
+        mUpstreamDone = true;
+    }
+
+    /**
+     * Block until this stage and all downstream stages have terminated or the timeout expires.
+     * @param timeoutMillis The maximum number of milliseconds to wait.
+     * @return {@code true} if all stages terminated, {@code false} if the timeout expired first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (mTerminationLock) {
+            long remaining;
+            while (mLiveWorkers.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                mTerminationLock.wait(remaining);
+            }
+        }
+        if (mLiveWorkers.get() > 0) {
+            return false;
+        }
+        return mDownstream == null
+                || mDownstream.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    /**
+     * Get the number of items currently waiting in this stage's queue.
+     * @return the number of items currently waiting in this stage's queue.
+     */
+    int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * Get the number of items dropped due to the {@link OverflowPolicy}.
+     * @return the number of items dropped due to the {@link OverflowPolicy}.
+     */
+    long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Release an item whose processor threw. Processors must hence not release an item before they throw.
+     */
+    private void release(T item) {
+        try {
+            mDropListener.accept(item);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("[ %s: exception while releasing '%s' ]", mName, item), e);
+        }
+    }
+
+    private void work() {
+        try {
+            while (!mUpstreamDone || !mQueue.isEmpty()) {
+                T item = mQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item != null) {
+                    try {
+                        mProcessor.accept(item);
+                    } catch (RuntimeException e) {
+                        // Keep the worker alive: a single bad sample should not take down the stage.
+                        LOGGER.log(Level.WARNING,
+                                String.format("[ %s: exception while processing '%s' ]", mName, item), e);
+                        release(item);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Forced shutdown: exit without draining the queue.
+        } finally {
+            if (mLiveWorkers.decrementAndGet() == 0) {
+                synchronized (mTerminationLock) {
+                    mTerminationLock.notifyAll();
+                }
+                if (mDownstream != null) {
+                    mDownstream.finish();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+package edu.uci.cs237.tippersedge;
+
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the sample &rarr; filter &rarr; upload steps of an {@link AbstractSampleHandler} as separate stages with bounded
+ * queues in between. See {@link PipelineConfig} for a description of the stages.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ * @param <S> A class that encapsulates/models the sample/reading data obtained from the sensor.
+ */
+final class SamplePipeline<S> {
+
+    /**
+     * Weight of the most recent measurement in the moving average of the filter time.
+     */
+    private static final double FILTER_TIME_SMOOTHING = 0.2;
+
+    private final AbstractSampleHandler<S> mHandler;
+
+    private final PipelineConfig mConfig;
+
+    /**
+     * Reads the sample provider. Has no queue: a tick that finds all sampling workers busy is skipped.
+     */
+    private final ThreadPoolExecutor mSamplingWorkers;
+
+    private final PipelineStage<QueuedSample<S>> mFilterStage;
+
+    private final PipelineStage<S> mUploadStage;
+
+    private final AtomicLong mSkippedTicks = new AtomicLong();
+
+    /**
+     * The number of samples that have been filtered, i.e., the number of inclusion decisions made.
+     */
+    private final AtomicLong mDecisions = new AtomicLong();
+
+    /**
+     * The sum of the ages of all samples at the time their inclusion decisions were made.
+     */
+    private final AtomicLong mFrameAgeSumNanos = new AtomicLong();
+
+    private volatile long mLastFrameAgeNanos = 0;
+
+    /**
+     * Distribution of the ages of samples at the time their inclusion decisions were made.
+     */
+    private final LatencyHistogram mFrameAge;
+
+    /**
+     * Exponentially weighted moving average of the time spent in {@link AbstractSampleHandler#shouldIncludeSample}.
+     * Guarded by {@code this}.
+     */
+    private double mMeanFilterNanos = 0;
+
+    SamplePipeline(AbstractSampleHandler<S> handler, PipelineConfig config) {
+        mHandler = handler;
+        mConfig = config;
+        mFrameAge = handler.mMetrics.histogram("frameAge");
+        mUploadStage = new PipelineStage<>("pipeline-upload", config.getUploadWorkers(),
+                config.getUploadQueueCapacity(), config.getUploadOverflowPolicy(), mHandler::uploadAndCache,
+                mHandler::onSampleDiscarded, null);
+        mFilterStage = new PipelineStage<>("pipeline-filter", config.getFilterWorkers(),
+                config.getFilterQueueCapacity(), config.getFilterOverflowPolicy(), this::filter,
+                queued -> mHandler.onSampleDiscarded(queued.mSample), mUploadStage);
+        AtomicInteger threadCount = new AtomicInteger();
+        mSamplingWorkers = new ThreadPoolExecutor(config.getSamplingWorkers(), config.getSamplingWorkers(),
+                0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                r -> new Thread(r, String.format("pipeline-sample-%d", threadCount.incrementAndGet()))) {
+            @Override
+            protected void terminated() {
+                // No more samples will be produced, so let the filter stage drain and terminate.
+                mFilterStage.finish();
+            }
+        };
+    }
+
+    /**
+     * Start the filter and upload stages.
+     */
+    void start() {
+        mUploadStage.start();
+        mFilterStage.start();
+    }
+
+    /**
+     * Sample the sensor on an idle sampling worker, or skip this tick if all sampling workers are busy.
+     */
+    void tick() {
+        try {
+            mSamplingWorkers.execute(this::sample);
+        } catch (RejectedExecutionException e) {
+            mSkippedTicks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop accepting ticks and let the stages drain in order: sampling, then filtering, then uploading.
+     */
+    void stop() {
+        mSamplingWorkers.shutdown();
+    }
+
+    /**
+     * Block until all stages have drained and terminated or the timeout expires.
+     * @param timeoutMillis The maximum number of milliseconds to wait.
+     * @return {@code true} if the pipeline terminated, {@code false} if the timeout expired first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        return mSamplingWorkers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)
+                && mFilterStage.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    /**
+     * Compute the delay until the next tick for adaptive sampling: the nominal sampling period, stretched to the mean
+     * filter time divided by the number of filter workers (i.e., the rate at which the filter stage consumes samples)
+     * if the filter stage is slower than the nominal sampling rate.
+     * @param sampleRateMillis The nominal sampling period.
+     * @return the delay until the next tick in milliseconds.
+     */
+    long nextTickDelayMillis(long sampleRateMillis) {
+        double meanFilterNanos;
+        synchronized (this) {
+            meanFilterNanos = mMeanFilterNanos;
+        }
+        long filterPeriodMillis = (long) (meanFilterNanos / 1_000_000 / mConfig.getFilterWorkers());
+        return Math.max(sampleRateMillis, filterPeriodMillis);
+    }
+
+    long getSkippedFrameCount() {
+        return mFilterStage.getDroppedCount();
+    }
+
+    long getLastFrameAgeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mLastFrameAgeNanos);
+    }
+
+    long getMeanFrameAgeMillis() {
+        long decisions = mDecisions.get();
+        return decisions == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(mFrameAgeSumNanos.get() / decisions);
+    }
+
+    long getSkippedTickCount() {
+        return mSkippedTicks.get();
+    }
+
+    int getFilterQueueDepth() {
+        return mFilterStage.getQueueDepth();
+    }
+
+    int getUploadQueueDepth() {
+        return mUploadStage.getQueueDepth();
+    }
+
+    long getDroppedSampleCount() {
+        return mFilterStage.getDroppedCount() + mUploadStage.getDroppedCount();
+    }
+
+    private void sample() {
+        S sample = mHandler.takeSample();
+        if (sample != null) {
+            try {
+                mFilterStage.submit(new QueuedSample<>(sample, System.nanoTime()));
+            } catch (InterruptedException e) {
+                mHandler.onSampleDiscarded(sample);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Filter a sample and hand it to the upload stage if included. If the filter throws, the filter stage releases the
+     * sample through its drop listener.
+     */
+    private void filter(QueuedSample<S> queued) {
+        long start = System.nanoTime();
+        boolean include = mHandler.filterSample(queued.mSample);
+        long decided = System.nanoTime();
+        recordDecision(decided - queued.mSampledAtNanos, decided - start);
+        if (!include) {
+            mHandler.onSampleDiscarded(queued.mSample);
+            return;
+        }
+        try {
+            mUploadStage.submit(queued.mSample);
+        } catch (InterruptedException e) {
+            mHandler.onSampleDiscarded(queued.mSample);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordDecision(long frameAgeNanos, long filterNanos) {
+        mLastFrameAgeNanos = frameAgeNanos;
+        mFrameAge.record(frameAgeNanos);
+        mFrameAgeSumNanos.addAndGet(frameAgeNanos);
+        long decisions = mDecisions.incrementAndGet();
+        synchronized (this) {
+            mMeanFilterNanos = decisions == 1 ? filterNanos :
+                    FILTER_TIME_SMOOTHING * filterNanos + (1 - FILTER_TIME_SMOOTHING) * mMeanFilterNanos;
+        }
+    }
+
+    /**
+     * A sample waiting to be filtered, along with the time at which it was read from the sensor.
+     */
+    private static final class QueuedSample<S> {
+
+        private final S mSample;
+        private final long mSampledAtNanos;
+
+        private QueuedSample(S sample, long sampledAtNanos) {
+            mSample = sample;
+            mSampledAtNanos = sampledAtNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(mSample);
+        }
+    }
+
+}
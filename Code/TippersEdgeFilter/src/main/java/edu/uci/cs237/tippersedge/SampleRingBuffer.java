@@ -0,0 +1,147 @@
+package edu.uci.cs237.tippersedge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity, lock-free ring buffer holding the most recent samples. Once the buffer is full, every new sample
+ * overwrites the oldest one.
+ * <p>
+ * All operations are safe for concurrent use without external synchronization:
+ * </p>
+ * <ul>
+ *     <li>{@link #add(Object)} is O(1): it never shifts or copies the buffer.</li>
+ *     <li>{@link #latest()} is a single volatile read.</li>
+ *     <li>
+ *         {@link #snapshot()} returns a copy of the buffered samples, ordered from oldest to newest. Samples that are
+ *         overwritten by concurrent appends while the snapshot is taken are left out.
+ *     </li>
+ * </ul>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ * @param <S> The type of the buffered samples.
+ */
+public final class SampleRingBuffer<S> {
+
+    private final AtomicReferenceArray<Entry<S>> mSlots;
+
+    /**
+     * The sequence number to assign to the next appended sample. Equals the total number of appends.
+     */
+    private final AtomicLong mNextSeq = new AtomicLong();
+
+    /**
+     * The entry with the highest sequence number written so far.
+     */
+    private final AtomicReference<Entry<S>> mLatest = new AtomicReference<>();
+
+    /**
+     * Create a new {@code SampleRingBuffer}.
+     * @param capacity The maximum number of samples held by the buffer.
+     */
+    public SampleRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mSlots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Append a sample, overwriting the oldest sample if the buffer is full.
+     * @param sample The sample to append.
+     * @return The sample that was overwritten (evicted) to make room for {@code sample}, or {@code null} if no sample
+     * was evicted.
+     */
+    public S add(S sample) {
+        long seq = mNextSeq.getAndIncrement();
+        Entry<S> entry = new Entry<>(seq, sample);
+        int slot = (int) (seq % mSlots.length());
+        Entry<S> evicted;
+        while (true) {
+            Entry<S> current = mSlots.get(slot);
+            if (current != null && current.mSeq > seq) {
+                // A later append (at least a full lap ahead) already claimed the slot; this sample is evicted at once.
+                return sample;
+            }
+            if (mSlots.compareAndSet(slot, current, entry)) {
+                evicted = current;
+                break;
+            }
+        }
+        while (true) {
+            Entry<S> latest = mLatest.get();
+            if ((latest != null && latest.mSeq > seq) || mLatest.compareAndSet(latest, entry)) {
+                break;
+            }
+        }
+        return evicted == null ? null : evicted.mSample;
+    }
+
+    /**
+     * Get the most recently appended sample.
+     * @return the most recently appended sample, or {@code null} if the buffer is empty.
+     */
+    public S latest() {
+        Entry<S> latest = mLatest.get();
+        return latest == null ? null : latest.mSample;
+    }
+
+    /**
+     * Get a copy of the buffered samples.
+     * @return An unmodifiable list of the buffered samples, ordered from oldest to newest.
+     */
+    public List<S> snapshot() {
+        long end = mNextSeq.get();
+        long start = Math.max(0, end - mSlots.length());
+        List<S> samples = new ArrayList<>((int) (end - start));
+        for (long seq = start; seq < end; seq++) {
+            Entry<S> entry = mSlots.get((int) (seq % mSlots.length()));
+            // Skip slots that have not been written yet or that have since been overwritten.
+            if (entry != null && entry.mSeq == seq) {
+                samples.add(entry.mSample);
+            }
+        }
+        return Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * Get the number of buffered samples.
+     * @return the number of buffered samples.
+     */
+    public int size() {
+        return (int) Math.min(mNextSeq.get(), mSlots.length());
+    }
+
+    /**
+     * Get the maximum number of samples held by the buffer.
+     * @return the maximum number of samples held by the buffer.
+     */
+    public int capacity() {
+        return mSlots.length();
+    }
+
+    /**
+     * Get the total number of samples ever appended to the buffer. Useful for detecting if any samples were appended
+     * between two points in time.
+     * @return the total number of samples ever appended to the buffer.
+     */
+    public long getAppendCount() {
+        return mNextSeq.get();
+    }
+
+    private static final class Entry<S> {
+
+        private final long mSeq;
+        private final S mSample;
+
+        private Entry(long seq, S sample) {
+            mSeq = seq;
+            mSample = sample;
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package edu.uci.cs237.tippersedge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shuts down the components of the application in the order in which samples flow through them, such that every
+ * component has drained into the next before the next is stopped: first sampling (and filtering) is stopped, then the
+ * detector is given time to complete the detections in progress (and its child processes are terminated), and finally
+ * the approved samples are flushed to the backend.
+ * <p>
+ * Every stage is given its own timeout, and a stage that fails or times out does not prevent the later stages from
+ * running. The sequence runs at most once, either when {@link #run()} is invoked or, if {@link #installShutdownHook()}
+ * was invoked, when the JVM is asked to exit (e.g., when the node is restarted or a rolling update sends a
+ * {@code SIGTERM}), whichever comes first.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class ShutdownSequence implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(ShutdownSequence.class.getName());
+
+    /**
+     * Stops a component.
+     */
+    @FunctionalInterface
+    public interface Stage {
+
+        /**
+         * Stop the component, waiting at most {@code timeoutMillis} for it to drain.
+         * @param timeoutMillis The maximum time to wait.
+         * @throws Exception if the component could not be stopped cleanly. The remaining stages are run regardless.
+         */
+        void stop(long timeoutMillis) throws Exception;
+
+    }
+
+    private final List<NamedStage> mStages = new ArrayList<>();
+
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+
+    private final CountDownLatch mCompleted = new CountDownLatch(1);
+
+    /**
+     * Append a stage to the sequence. Stages run in the order they are added.
+     * @param name Describes the stage in log messages.
+     * @param timeoutMillis The maximum time the stage may wait for its component to drain.
+     * @param stage Stops the component.
+     * @return this {@code ShutdownSequence}.
+     */
+    public synchronized ShutdownSequence then(String name, long timeoutMillis, Stage stage) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis cannot be negative");
+        }
+        mStages.add(new NamedStage(Objects.requireNonNull(name, "name cannot be null"), timeoutMillis,
+                Objects.requireNonNull(stage, "stage cannot be null")));
+        return this;
+    }
+
+    /**
+     * Run the sequence when the JVM is asked to exit, unless it has already run by then.
+     * @return this {@code ShutdownSequence}.
+     */
+    public ShutdownSequence installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this, "shutdown"));
+        return this;
+    }
+
+    /**
+     * Run the stages in order, unless the sequence has already been started. Blocks until all stages have completed
+     * (or timed out), also if the sequence was started by another thread.
+     */
+    @Override
+    public void run() {
+        if (!mStarted.compareAndSet(false, true)) {
+            // E.g., the JVM is asked to exit while the sequence runs; do not let it exit before the sequence completes.
+            try {
+                mCompleted.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        try {
+            runStages();
+        } finally {
+            mCompleted.countDown();
+        }
+    }
+
+    private void runStages() {
+        List<NamedStage> stages;
+        synchronized (this) {
+            stages = new ArrayList<>(mStages);
+        }
+        boolean interrupted = false;
+        for (NamedStage stage : stages) {
+            long start = System.currentTimeMillis();
+            try {
+                stage.mStage.stop(stage.mTimeoutMillis);
+            } catch (InterruptedException e) {
+                // Carry on such that the later stages still release their resources; restore the flag afterwards.
+                LOGGER.log(Level.WARNING, String.format("[ Interrupted while stopping %s ]", stage.mName), e);
+                interrupted = true;
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, String.format("[ Could not stop %s cleanly ]", stage.mName), e);
+            }
+            LOGGER.info(String.format("[ Stopped %s in %d ms ]", stage.mName, System.currentTimeMillis() - start));
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class NamedStage {
+
+        private final String mName;
+
+        private final long mTimeoutMillis;
+
+        private final Stage mStage;
+
+        private NamedStage(String name, long timeoutMillis, Stage stage) {
+            mName = name;
+            mTimeoutMillis = timeoutMillis;
+            mStage = stage;
+        }
+    }
+
+}
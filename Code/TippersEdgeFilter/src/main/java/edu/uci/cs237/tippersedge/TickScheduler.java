@@ -0,0 +1,144 @@
+package edu.uci.cs237.tippersedge;
+
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the ticks of a periodic sample handler on a scheduled executor that is either owned by the handler or
+ * shared with other handlers, and stops them again. Used by {@link AbstractPeriodicSampleHandler} and
+ * {@link edu.uci.cs237.tippersedge.numeric.DoubleSampleHandler}.
+ * <p>
+ * On a shared executor, the executor cannot be shut down to stop a handler. Ticks are hence run through
+ * {@link #exclusive(Runnable)}, which skips ticks once the handler has been stopped and holds a permit while a tick
+ * runs, such that {@link #awaitTermination(long)} can wait for the ongoing tick instead.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class TickScheduler {
+
+    private final ScheduledExecutorService mScheduledExecutor;
+
+    /**
+     * {@code true} if {@link #mScheduledExecutor} was created by (and should hence be shut down by) the handler,
+     * {@code false} if it is shared with other handlers.
+     */
+    private final boolean mOwnsScheduledExecutor;
+
+    /**
+     * The scheduled (next) tick, or {@code null} if no tick has been scheduled.
+     */
+    private volatile ScheduledFuture<?> mSamplingTask;
+
+    /**
+     * Set when sampling is stopped, such that a tick that already started does not sample (on a shared executor) or
+     * schedule another tick (in adaptive mode).
+     */
+    private volatile boolean mStopped;
+
+    /**
+     * Held while an {@link #exclusive(Runnable)} tick runs.
+     */
+    private final Semaphore mTickPermit = new Semaphore(1);
+
+    /**
+     * Create a new {@code TickScheduler}.
+     * @param scheduledExecutor The executor on which ticks are scheduled.
+     * @param ownsScheduledExecutor {@code true} if {@code scheduledExecutor} is to be shut down by {@link #stop()},
+     *                              {@code false} if it is shared with other handlers.
+     */
+    public TickScheduler(ScheduledExecutorService scheduledExecutor, boolean ownsScheduledExecutor) {
+        mScheduledExecutor = Objects.requireNonNull(scheduledExecutor, "scheduledExecutor cannot be null");
+        mOwnsScheduledExecutor = ownsScheduledExecutor;
+    }
+
+    /**
+     * Check if {@link #stop()} has been invoked.
+     * @return {@code true} if sampling has been stopped.
+     */
+    public boolean isStopped() {
+        return mStopped;
+    }
+
+    /**
+     * Run {@code tick} every period, starting right away.
+     * @param tick The tick.
+     * @param periodMillis The sampling period.
+     */
+    public void scheduleAtFixedRate(Runnable tick, long periodMillis) {
+        mSamplingTask = mScheduledExecutor.scheduleAtFixedRate(tick, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run {@code tick} once after the given delay, e.g., to schedule the next tick of an adaptive handler.
+     * @param tick The tick.
+     * @param delayMillis The delay.
+     * @throws RejectedExecutionException if the (owned) executor has been shut down by {@link #stop()}.
+     */
+    public void schedule(Runnable tick, long delayMillis) {
+        ScheduledFuture<?> samplingTask = mScheduledExecutor.schedule(tick, delayMillis, TimeUnit.MILLISECONDS);
+        mSamplingTask = samplingTask;
+        if (mStopped) {
+            // Raced with stop(), which may have cancelled the previous tick rather than this one.
+            samplingTask.cancel(false);
+        }
+    }
+
+    /**
+     * Wrap a tick such that it does not run once sampling has been stopped, and such that {@link #awaitTermination(long)}
+     * can wait for it on a shared executor. Create the wrapper once rather than per tick.
+     * @param tick The tick.
+     * @return the wrapped tick.
+     */
+    public Runnable exclusive(Runnable tick) {
+        Objects.requireNonNull(tick, "tick cannot be null");
+        return () -> {
+            mTickPermit.acquireUninterruptibly();
+            try {
+                if (!mStopped) {
+                    tick.run();
+                }
+            } finally {
+                mTickPermit.release();
+            }
+        };
+    }
+
+    /**
+     * Stop scheduling ticks: cancel the (next) tick, such that a delayed adaptive tick does not hold up the executor's
+     * termination, and shut down the executor if it is owned. The ongoing tick (if any) is not interrupted.
+     */
+    public void stop() {
+        mStopped = true;
+        ScheduledFuture<?> samplingTask = mSamplingTask;
+        if (samplingTask != null) {
+            samplingTask.cancel(false);
+        }
+        if (mOwnsScheduledExecutor) {
+            mScheduledExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Wait for the ongoing tick (if any) to finish after {@link #stop()}: the termination of an owned executor, or the
+     * end of the ongoing {@link #exclusive(Runnable)} tick on a shared executor.
+     * @param timeoutMillis The maximum time to wait.
+     * @return {@code true} if the ongoing tick finished in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        if (mOwnsScheduledExecutor) {
+            return mScheduledExecutor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        if (mTickPermit.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            mTickPermit.release();
+            return true;
+        }
+        return false;
+    }
+
+}
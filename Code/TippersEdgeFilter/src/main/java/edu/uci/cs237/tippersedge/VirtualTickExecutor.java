@@ -0,0 +1,148 @@
+package edu.uci.cs237.tippersedge;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The scheduled executor of {@link ExecutionMode#VIRTUAL}: a single platform thread keeps time, and each task that is
+ * due runs on a new virtual thread of its own. Virtual threads are not pooled, so there is no bound on the number of
+ * ticks that are blocked (on a sensor, on object detection or on an upload) at the same time.
+ * <p>
+ * A periodic task is scheduled for its next run only once its current run has completed, on the virtual thread. As
+ * with a {@link ScheduledThreadPoolExecutor}, the runs of a periodic task hence never overlap; a run that takes longer
+ * than the period delays the next one.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class VirtualTickExecutor extends ScheduledThreadPoolExecutor {
+
+    /**
+     * Runs the tasks that are due, one virtual thread per task. Shut down once the timing thread has terminated, such
+     * that delayed tasks that still run after {@link #shutdown()} have a thread to run on.
+     */
+    private final ExecutorService mTickExecutor;
+
+    /**
+     * Create a new {@code VirtualTickExecutor}.
+     * @param name The name prefix of the timing thread and of the virtual threads.
+     */
+    VirtualTickExecutor(String name) {
+        super(1, Thread.ofPlatform().name(name + "-timer-", 1).factory());
+        mTickExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
+        return new VirtualTask<>(task);
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Callable<V> callable, RunnableScheduledFuture<V> task) {
+        return new VirtualTask<>(task);
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        mTickExecutor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = super.shutdownNow();
+        mTickExecutor.shutdownNow();
+        return pending;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return super.isTerminated() && mTickExecutor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return super.awaitTermination(timeout, unit) &&
+                mTickExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A task whose runs are handed off from the timing thread to a virtual thread. The wrapped task re-schedules
+     * itself (i.e., this wrapper) when a periodic run completes.
+     */
+    private final class VirtualTask<V> implements RunnableScheduledFuture<V> {
+
+        private final RunnableScheduledFuture<V> mTask;
+
+        private VirtualTask(RunnableScheduledFuture<V> task) {
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mTickExecutor.execute(mTask);
+            } catch (RejectedExecutionException e) {
+                // The executor has been shut down forcibly.
+                mTask.cancel(false);
+            }
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return mTask.isPeriodic();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return mTask.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return mTask.compareTo(other instanceof VirtualTask ? ((VirtualTask<?>) other).mTask : other);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = mTask.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                // Drop the ticks of stopped handlers from the queue right away rather than when they are due.
+                remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mTask.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return mTask.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return mTask.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return mTask.get(timeout, unit);
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of (decoded) {@link BufferedImage}s, allowing the images of discarded frames to be reused for new frames
+ * rather than allocating (and garbage collecting) several megabytes of pixels for every frame. Images are pooled by
+ * size; as the frames of a camera all have the same size, a pool typically holds images of one or two sizes only.
+ * <p>
+ * All images are of type {@link BufferedImage#TYPE_3BYTE_BGR}, the type the JPEG decoder produces for color images.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class BufferedImagePool {
+
+    /**
+     * Default maximum number of idle images of each size kept in the pool.
+     */
+    public static final int DEFAULT_MAX_POOLED_IMAGES = 4;
+
+    private final int mMaxPooledImages;
+
+    /**
+     * Idle images, keyed by their width and height. Guarded by {@code this}.
+     */
+    private final Map<Long, Deque<BufferedImage>> mIdleImages = new HashMap<>();
+
+    /**
+     * Create a {@code BufferedImagePool} using {@link #DEFAULT_MAX_POOLED_IMAGES}.
+     */
+    public BufferedImagePool() {
+        this(DEFAULT_MAX_POOLED_IMAGES);
+    }
+
+    /**
+     * Create a new {@code BufferedImagePool}.
+     * @param maxPooledImages The maximum number of idle images of each size kept in the pool. Images released while
+     *                        the pool is full are left to the garbage collector.
+     */
+    public BufferedImagePool(int maxPooledImages) {
+        if (maxPooledImages < 1) {
+            throw new IllegalArgumentException("maxPooledImages must be positive");
+        }
+        mMaxPooledImages = maxPooledImages;
+    }
+
+    /**
+     * Get an image of the given size, reusing an idle image if possible.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return An image of type {@link BufferedImage#TYPE_3BYTE_BGR} of the given size. Its pixels are undefined.
+     */
+    public BufferedImage acquire(int width, int height) {
+        synchronized (this) {
+            Deque<BufferedImage> idle = mIdleImages.get(keyOf(width, height));
+            if (idle != null && !idle.isEmpty()) {
+                return idle.pollFirst();
+            }
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    /**
+     * Return an image to the pool. The caller must not use the image afterwards. Images not created by this pool
+     * (e.g., images of another type) are left to the garbage collector.
+     * @param image The image to return.
+     */
+    public void release(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            return;
+        }
+        synchronized (this) {
+            Deque<BufferedImage> idle = mIdleImages.computeIfAbsent(keyOf(image.getWidth(), image.getHeight()),
+                    key -> new ArrayDeque<>());
+            if (idle.size() < mMaxPooledImages) {
+                idle.addFirst(image);
+            }
+        }
+    }
+
+    private static Long keyOf(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+}
@@ -1,6 +1,14 @@
 package edu.uci.cs237.tippersedge.cameras;
 
+import edu.uci.cs237.tippersedge.AdaptiveSamplingPolicy;
+import edu.uci.cs237.tippersedge.ExecutionMode;
+
+import java.awt.Rectangle;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.MissingResourceException;
 import java.util.Objects;
 import java.util.Properties;
@@ -21,13 +29,81 @@ public final class CameraConfig {
     private static final String CAMERA_USERNAME_KEY = "cameraUsername";
     private static final String CAMERA_PASSWORD_KEY = "cameraPassword";
     private static final String CAMERA_OUTPUT_DIR_KEY = "cameraOutputDir";
+    private static final String CAMERA_ZERO_DISK_KEY = "cameraZeroDisk";
+    private static final String CAMERA_SPILL_DIR_KEY = "cameraSpillDir";
+    private static final String CAMERA_CONNECT_TIMEOUT_KEY = "cameraConnectTimeoutMillis";
+    private static final String CAMERA_READ_TIMEOUT_KEY = "cameraReadTimeoutMillis";
+    private static final String CAMERA_SAMPLE_RATE_KEY = "cameraSampleRateMillis";
+    /**
+     * The longest sampling period, used while a camera's scene is static; by default equal to the sampling period
+     * (i.e., cameras are sampled at a fixed rate). Also the default for cameras that do not specify their own.
+     */
+    private static final String CAMERA_MAX_SAMPLE_RATE_KEY = "cameraMaxSampleRateMillis";
+    private static final String CAMERA_SAMPLE_BACKOFF_FACTOR_KEY = "cameraSampleBackoffFactor";
+    private static final String CAMERA_SCHEDULER_THREADS_KEY = "cameraSchedulerThreads";
+    /**
+     * The kind of threads that run the cameras' ticks: {@code platform} or {@code virtual}; see {@link ExecutionMode}.
+     */
+    private static final String CAMERA_EXECUTION_MODE_KEY = "cameraExecutionMode";
+    /**
+     * Budget for the images of included frames kept in the output directories of all cameras: the maximum total size
+     * and the maximum age of the images; 0 for no limit. The images of rejected frames are always deleted.
+     */
+    private static final String CAMERA_RETENTION_MAX_BYTES_KEY = "cameraRetentionMaxBytes";
+    private static final String CAMERA_RETENTION_MAX_AGE_KEY = "cameraRetentionMaxAgeMillis";
+    /**
+     * Regions of interest and masks are semicolon separated lists of rectangles in image coordinates, each given as
+     * {@code x,y,width,height}, e.g., {@code 0,200,640,280;900,0,200,720}.
+     */
+    private static final String CAMERA_ROI_KEY = "cameraRoi";
+    private static final String CAMERA_MASK_KEY = "cameraMask";
+    /**
+     * The maximum width and height of images handed to the detector, typically the network's input size; 0 to
+     * disable downscaling. Also the default for cameras that do not specify their own.
+     */
+    private static final String CAMERA_DETECTION_SIZE_KEY = "cameraDetectionSize";
+    /**
+     * Comma separated list of camera identifiers. For each identifier {@code <id>}, the camera is configured using the
+     * keys {@code camera.<id>.url}, {@code camera.<id>.username}, {@code camera.<id>.password} and, optionally,
+     * {@code camera.<id>.sampleRateMillis}, {@code camera.<id>.maxSampleRateMillis}, {@code camera.<id>.outputDir},
+     * {@code camera.<id>.roi}, {@code camera.<id>.mask} and {@code camera.<id>.detectionSize}.
+     */
+    private static final String CAMERAS_KEY = "cameras";
+    private static final String CAMERA_KEY_PREFIX = "camera.";
+    private static final String PER_CAMERA_URL_KEY_SUFFIX = ".url";
+    private static final String PER_CAMERA_USERNAME_KEY_SUFFIX = ".username";
+    private static final String PER_CAMERA_PASSWORD_KEY_SUFFIX = ".password";
+    private static final String PER_CAMERA_SAMPLE_RATE_KEY_SUFFIX = ".sampleRateMillis";
+    private static final String PER_CAMERA_MAX_SAMPLE_RATE_KEY_SUFFIX = ".maxSampleRateMillis";
+    private static final String PER_CAMERA_OUTPUT_DIR_KEY_SUFFIX = ".outputDir";
+    private static final String PER_CAMERA_ROI_KEY_SUFFIX = ".roi";
+    private static final String PER_CAMERA_MASK_KEY_SUFFIX = ".mask";
+    private static final String PER_CAMERA_DETECTION_SIZE_KEY_SUFFIX = ".detectionSize";
     // ===== End keys used in properties file =====
 
+    /**
+     * Identifier of the camera configured using the legacy single-camera keys.
+     */
+    public static final String DEFAULT_CAMERA_ID = "default";
+
     // ==== Begin cached values of PROPERTIES contents ====
     private static final String CAMERA_URL;
     private static final String CAMERA_USERNAME;
     private static final String CAMERA_PASSWORD;
     private static final String CAMERA_OUTPUT_DIR;
+    private static final boolean CAMERA_ZERO_DISK;
+    private static final String CAMERA_SPILL_DIR;
+    private static final long CAMERA_CONNECT_TIMEOUT;
+    private static final long CAMERA_READ_TIMEOUT;
+    private static final long CAMERA_SAMPLE_RATE;
+    private static final Long CAMERA_MAX_SAMPLE_RATE;
+    private static final double CAMERA_SAMPLE_BACKOFF_FACTOR;
+    private static final int CAMERA_SCHEDULER_THREADS;
+    private static final ExecutionMode CAMERA_EXECUTION_MODE;
+    private static final long CAMERA_RETENTION_MAX_BYTES;
+    private static final long CAMERA_RETENTION_MAX_AGE;
+    private static final int CAMERA_DETECTION_SIZE;
+    private static final List<CameraSettings> CAMERAS;
     // ===== End cached values of PROPERTIES contents =====
 
     static {
@@ -35,14 +111,52 @@ public final class CameraConfig {
         try {
             PROPERTIES.load(CameraConfig.class.getResourceAsStream(RESOURCE_FILENAME));
             // Throw NPE if required keys not present in config file.
-            CAMERA_URL = Objects.requireNonNull(PROPERTIES.getProperty(CAMERA_URL_KEY),
-                    String.format("No value for key '%s' in properties file '%s'", CAMERA_URL_KEY, RESOURCE_FILENAME));
-            CAMERA_USERNAME = Objects.requireNonNull(PROPERTIES.getProperty(CAMERA_USERNAME_KEY),
-                    String.format("No value for key '%s' in properties file '%s'", CAMERA_USERNAME_KEY, RESOURCE_FILENAME));
-            CAMERA_PASSWORD = Objects.requireNonNull(PROPERTIES.getProperty(CAMERA_PASSWORD_KEY),
-                    String.format("No value for key '%s' in properties file '%s'", CAMERA_PASSWORD_KEY, RESOURCE_FILENAME));
-            CAMERA_OUTPUT_DIR = Objects.requireNonNull(PROPERTIES.getProperty(CAMERA_OUTPUT_DIR_KEY),
-                    String.format("No value for key '%s' in properties file '%s'", CAMERA_OUTPUT_DIR_KEY, RESOURCE_FILENAME));
+            CAMERA_OUTPUT_DIR = requireProperty(CAMERA_OUTPUT_DIR_KEY);
+            // Optional keys.
+            CAMERA_ZERO_DISK = Boolean.parseBoolean(PROPERTIES.getProperty(CAMERA_ZERO_DISK_KEY, "false"));
+            CAMERA_SPILL_DIR = PROPERTIES.getProperty(CAMERA_SPILL_DIR_KEY, CAMERA_OUTPUT_DIR);
+            CAMERA_CONNECT_TIMEOUT = Long.parseLong(PROPERTIES.getProperty(CAMERA_CONNECT_TIMEOUT_KEY, "5000"));
+            CAMERA_READ_TIMEOUT = Long.parseLong(PROPERTIES.getProperty(CAMERA_READ_TIMEOUT_KEY, "10000"));
+            CAMERA_SAMPLE_RATE = Long.parseLong(PROPERTIES.getProperty(CAMERA_SAMPLE_RATE_KEY, "5000"));
+            String maxSampleRate = PROPERTIES.getProperty(CAMERA_MAX_SAMPLE_RATE_KEY);
+            CAMERA_MAX_SAMPLE_RATE = maxSampleRate != null ? Long.valueOf(maxSampleRate) : null;
+            CAMERA_SAMPLE_BACKOFF_FACTOR = Double.parseDouble(PROPERTIES.getProperty(CAMERA_SAMPLE_BACKOFF_FACTOR_KEY,
+                    Double.toString(AdaptiveSamplingPolicy.DEFAULT_BACKOFF_FACTOR)));
+            CAMERA_SCHEDULER_THREADS = Integer.parseInt(PROPERTIES.getProperty(CAMERA_SCHEDULER_THREADS_KEY, "4"));
+            CAMERA_EXECUTION_MODE = ExecutionMode.fromName(PROPERTIES.getProperty(CAMERA_EXECUTION_MODE_KEY,
+                    ExecutionMode.PLATFORM.name()));
+            CAMERA_RETENTION_MAX_BYTES = Long.parseLong(PROPERTIES.getProperty(CAMERA_RETENTION_MAX_BYTES_KEY, "0"));
+            CAMERA_RETENTION_MAX_AGE = Long.parseLong(PROPERTIES.getProperty(CAMERA_RETENTION_MAX_AGE_KEY, "0"));
+            CAMERA_DETECTION_SIZE = Integer.parseInt(PROPERTIES.getProperty(CAMERA_DETECTION_SIZE_KEY, "0"));
+            String cameraIds = PROPERTIES.getProperty(CAMERAS_KEY);
+            if (cameraIds == null) {
+                // Legacy single-camera configuration: the camera keys are required.
+                CAMERA_URL = requireProperty(CAMERA_URL_KEY);
+                CAMERA_USERNAME = requireProperty(CAMERA_USERNAME_KEY);
+                CAMERA_PASSWORD = requireProperty(CAMERA_PASSWORD_KEY);
+                CAMERAS = Collections.singletonList(new CameraSettings(DEFAULT_CAMERA_ID, CAMERA_URL, CAMERA_USERNAME,
+                        CAMERA_PASSWORD, CAMERA_SAMPLE_RATE, CAMERA_OUTPUT_DIR, CAMERA_SPILL_DIR,
+                        new FramePreprocessing(parseRectangles(PROPERTIES.getProperty(CAMERA_ROI_KEY)),
+                                parseRectangles(PROPERTIES.getProperty(CAMERA_MASK_KEY)), CAMERA_DETECTION_SIZE),
+                        maxSampleRateOf(CAMERA_SAMPLE_RATE), CAMERA_SAMPLE_BACKOFF_FACTOR));
+            } else {
+                List<CameraSettings> cameras = new ArrayList<>();
+                for (String id : cameraIds.split(",")) {
+                    id = id.trim();
+                    if (!id.isEmpty()) {
+                        cameras.add(loadCamera(id));
+                    }
+                }
+                if (cameras.isEmpty()) {
+                    throw new IllegalArgumentException(String.format("No cameras listed for key '%s' in properties file '%s'",
+                            CAMERAS_KEY, RESOURCE_FILENAME));
+                }
+                CAMERAS = Collections.unmodifiableList(cameras);
+                // The single-camera getters refer to the first listed camera.
+                CAMERA_URL = CAMERAS.get(0).getUrl();
+                CAMERA_USERNAME = CAMERAS.get(0).getUsername();
+                CAMERA_PASSWORD = CAMERAS.get(0).getPassword();
+            }
         } catch (IOException e) {
             e.printStackTrace();
             throw new MissingResourceException(
@@ -57,7 +171,7 @@ public final class CameraConfig {
     }
 
     /**
-     * Get the URL for the camera's REST endpoint.
+     * Get the URL for the camera's REST endpoint. If several cameras are configured, this is the first camera.
      * @return the URL for the camera's REST endpoint.
      */
     public static String getCameraUrl() {
@@ -88,4 +202,161 @@ public final class CameraConfig {
         return CAMERA_OUTPUT_DIR;
     }
 
+    /**
+     * Check if images downloaded from the camera are to be kept in memory rather than stored in the output directory.
+     * @return {@code true} if images downloaded from the camera are to be kept in memory.
+     */
+    public static boolean isZeroDisk() {
+        return CAMERA_ZERO_DISK;
+    }
+
+    /**
+     * Get the local directory where in-memory images are written when a file is required (e.g., for Darknet).
+     * Preferably a tmpfs such as {@code /dev/shm}. Defaults to the output directory.
+     * @return the local directory where in-memory images are written when a file is required.
+     */
+    public static String getCameraSpillDirectory() {
+        return CAMERA_SPILL_DIR;
+    }
+
+    /**
+     * Get the maximum time to wait for a connection to the camera to be established.
+     * @return the connect timeout in milliseconds (defaults to 5 seconds).
+     */
+    public static long getConnectTimeoutMillis() {
+        return CAMERA_CONNECT_TIMEOUT;
+    }
+
+    /**
+     * Get the maximum time to wait for data from the camera on an established connection.
+     * @return the read timeout in milliseconds (defaults to 10 seconds).
+     */
+    public static long getReadTimeoutMillis() {
+        return CAMERA_READ_TIMEOUT;
+    }
+
+    /**
+     * Get the cameras to be sampled. If the configuration does not list any cameras, a single camera with identifier
+     * {@link #DEFAULT_CAMERA_ID} is configured using the single-camera keys.
+     * @return an unmodifiable list of the configured cameras.
+     */
+    public static List<CameraSettings> getCameras() {
+        return CAMERAS;
+    }
+
+    /**
+     * Get the default sampling period of cameras that do not specify their own.
+     * @return the default sampling period in milliseconds (defaults to 5 seconds).
+     */
+    public static long getDefaultSampleRateMillis() {
+        return CAMERA_SAMPLE_RATE;
+    }
+
+    /**
+     * Get the number of threads shared by all cameras for sampling and filtering in multi-camera mode. Ignored in
+     * {@link ExecutionMode#VIRTUAL} mode, where each tick runs on a virtual thread of its own.
+     * @return the number of threads shared by all cameras (defaults to 4).
+     */
+    public static int getSchedulerThreadCount() {
+        return CAMERA_SCHEDULER_THREADS;
+    }
+
+    /**
+     * Get the kind of threads that run the cameras' ticks. In {@link ExecutionMode#VIRTUAL} mode, all cameras (even a
+     * single one) are sampled as in multi-camera mode, on virtual threads.
+     * @return the kind of threads that run the cameras' ticks (defaults to {@link ExecutionMode#PLATFORM}).
+     */
+    public static ExecutionMode getExecutionMode() {
+        return CAMERA_EXECUTION_MODE;
+    }
+
+    /**
+     * Get the maximum total size of the images of included frames kept in the output directories of all cameras.
+     * @return the maximum total size in bytes, or 0 if unlimited (the default).
+     */
+    public static long getRetentionMaxBytes() {
+        return CAMERA_RETENTION_MAX_BYTES;
+    }
+
+    /**
+     * Get the maximum age of the images of included frames kept in the output directories of all cameras.
+     * @return the maximum age in milliseconds, or 0 if unlimited (the default).
+     */
+    public static long getRetentionMaxAgeMillis() {
+        return CAMERA_RETENTION_MAX_AGE;
+    }
+
+    /**
+     * Get the default maximum width and height of images handed to the detector, for cameras that do not specify
+     * their own; see {@link CameraSettings#getPreprocessing()}.
+     * @return the default maximum width and height in pixels, or 0 if images are not downscaled (the default).
+     */
+    public static int getDefaultDetectionSize() {
+        return CAMERA_DETECTION_SIZE;
+    }
+
+    private static String requireProperty(String key) {
+        return Objects.requireNonNull(PROPERTIES.getProperty(key),
+                String.format("No value for key '%s' in properties file '%s'", key, RESOURCE_FILENAME));
+    }
+
+    /**
+     * Load the configuration of the camera with identifier {@code id}. Images of the camera are stored in (and spilled
+     * to) a subdirectory named after the camera unless the camera specifies its own output directory.
+     */
+    private static CameraSettings loadCamera(String id) {
+        String prefix = CAMERA_KEY_PREFIX + id;
+        long sampleRate = Long.parseLong(PROPERTIES.getProperty(prefix + PER_CAMERA_SAMPLE_RATE_KEY_SUFFIX,
+                Long.toString(CAMERA_SAMPLE_RATE)));
+        String maxSampleRate = PROPERTIES.getProperty(prefix + PER_CAMERA_MAX_SAMPLE_RATE_KEY_SUFFIX);
+        return new CameraSettings(id,
+                requireProperty(prefix + PER_CAMERA_URL_KEY_SUFFIX),
+                requireProperty(prefix + PER_CAMERA_USERNAME_KEY_SUFFIX),
+                requireProperty(prefix + PER_CAMERA_PASSWORD_KEY_SUFFIX),
+                sampleRate,
+                PROPERTIES.getProperty(prefix + PER_CAMERA_OUTPUT_DIR_KEY_SUFFIX,
+                        new File(CAMERA_OUTPUT_DIR, id).getPath()),
+                new File(CAMERA_SPILL_DIR, id).getPath(),
+                new FramePreprocessing(parseRectangles(PROPERTIES.getProperty(prefix + PER_CAMERA_ROI_KEY_SUFFIX)),
+                        parseRectangles(PROPERTIES.getProperty(prefix + PER_CAMERA_MASK_KEY_SUFFIX)),
+                        Integer.parseInt(PROPERTIES.getProperty(prefix + PER_CAMERA_DETECTION_SIZE_KEY_SUFFIX,
+                                Integer.toString(CAMERA_DETECTION_SIZE)))),
+                maxSampleRate != null ? Long.parseLong(maxSampleRate) : maxSampleRateOf(sampleRate),
+                CAMERA_SAMPLE_BACKOFF_FACTOR);
+    }
+
+    /**
+     * Get the longest sampling period of a camera that does not specify its own: the configured default, but never
+     * less than the camera's sampling period (such that a camera sampled less often than the default is sampled at a
+     * fixed rate).
+     */
+    private static long maxSampleRateOf(long sampleRateMillis) {
+        return CAMERA_MAX_SAMPLE_RATE != null ? Math.max(CAMERA_MAX_SAMPLE_RATE, sampleRateMillis) : sampleRateMillis;
+    }
+
+    /**
+     * Parse a semicolon separated list of rectangles, each given as {@code x,y,width,height}.
+     * @param value The list of rectangles, or {@code null} if the key is not present.
+     * @return the rectangles; empty if {@code value} is {@code null} or blank.
+     */
+    private static List<Rectangle> parseRectangles(String value) {
+        List<Rectangle> rectangles = new ArrayList<>();
+        if (value == null) {
+            return rectangles;
+        }
+        for (String rectangle : value.split(";")) {
+            if (rectangle.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = rectangle.split(",");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException(String.format("Malformed rectangle '%s' in properties file '%s'; expected x,y,width,height",
+                        rectangle, RESOURCE_FILENAME));
+            }
+            rectangles.add(new Rectangle(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                    Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim())));
+        }
+        return rectangles;
+    }
+
 }
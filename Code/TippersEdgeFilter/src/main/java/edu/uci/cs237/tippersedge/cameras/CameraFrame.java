@@ -0,0 +1,279 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.darknet.ImageInput;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A single image (frame) sampled from a camera, along with its metadata.
+ * <p>
+ * A frame is either <em>in-memory</em>, i.e., its raw JPEG bytes are held in a (pooled) buffer, or <em>file-backed</em>,
+ * i.e., it refers to a JPEG on disk. In-memory frames are only written ("spilled") to disk when a file is required, e.g.,
+ * because an external process such as Darknet needs to read the image; see {@link #getFilepath()}. In-process
+ * detectors read in-memory frames straight from memory, as a frame is an {@link ImageInput}.
+ * </p>
+ * <p>
+ * Frames are reference counted such that pooled buffers, spilled files and the files of rejected frames can be
+ * reclaimed as soon as a frame is no longer used. A frame is created with a reference count of one, owned by whoever
+ * created it. Threads that want to use a frame they do not own (e.g., a frame read from a sample cache) must
+ * {@link #retain()} it first and {@link #release()} it when done.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class CameraFrame implements ImageInput {
+
+    /**
+     * Makes names of spilled files unique, even for frames sampled within the same millisecond.
+     */
+    private static final AtomicLong SPILL_COUNTER = new AtomicLong();
+
+    /**
+     * Holds the raw JPEG bytes of an in-memory frame, {@code null} for a file-backed frame.
+     */
+    private final byte[] mBuffer;
+
+    /**
+     * The number of valid bytes in {@link #mBuffer}.
+     */
+    private final int mLength;
+
+    /**
+     * The pool to return {@link #mBuffer} to when the frame is released, or {@code null} if not pooled.
+     */
+    private final FrameBufferPool mBufferPool;
+
+    /**
+     * The directory in which in-memory frames are spilled, {@code null} for a file-backed frame.
+     */
+    private final String mSpillDirectory;
+
+    /**
+     * When the frame was sampled (epoch milliseconds).
+     */
+    private final long mTimestampMillis;
+
+    private final AtomicInteger mRefCount = new AtomicInteger(1);
+
+    /**
+     * The location of the frame on disk, or {@code null} if the frame has not (yet) been spilled.
+     * Guarded by {@code this}.
+     */
+    private String mFilepath;
+
+    /**
+     * {@code true} if {@link #mFilepath} belongs to this frame (and should hence be deleted along with the frame), i.e.,
+     * if it was created by spilling this frame, or if the frame was created using {@link #ownedFile(String)} and its
+     * file has not been {@link #keepFile() kept}. Guarded by {@code this}.
+     */
+    private boolean mOwnsFile;
+
+    /**
+     * Lazily computed hash of the frame's contents. Guarded by {@code this}.
+     */
+    private Long mContentHash;
+
+    private CameraFrame(byte[] buffer, int length, FrameBufferPool bufferPool, String spillDirectory, String filepath,
+                        long timestampMillis) {
+        mBuffer = buffer;
+        mLength = length;
+        mBufferPool = bufferPool;
+        mSpillDirectory = spillDirectory;
+        mFilepath = filepath;
+        mTimestampMillis = timestampMillis;
+    }
+
+    /**
+     * Create an in-memory frame.
+     * @param buffer Holds the raw JPEG bytes starting at index 0. The frame takes ownership of the buffer.
+     * @param length The number of valid bytes in {@code buffer}.
+     * @param bufferPool The pool to return {@code buffer} to when the frame is released, or {@code null}.
+     * @param spillDirectory The directory in which the frame is written if a file is required (preferably a tmpfs).
+     * @param timestampMillis When the frame was sampled (epoch milliseconds).
+     * @return The new frame.
+     */
+    public static CameraFrame inMemory(byte[] buffer, int length, FrameBufferPool bufferPool, String spillDirectory,
+                                       long timestampMillis) {
+        if (length < 0 || length > buffer.length) {
+            throw new IllegalArgumentException("length out of bounds");
+        }
+        return new CameraFrame(buffer, length, bufferPool,
+                Objects.requireNonNull(spillDirectory, "spillDirectory cannot be null"), null, timestampMillis);
+    }
+
+    /**
+     * Create a file-backed frame. Releasing the frame never deletes its file.
+     * @param filepath The full path to the JPEG.
+     * @return The new frame, time stamped with the file's modification time.
+     */
+    public static CameraFrame fromFile(String filepath) {
+        return new CameraFrame(null, 0, null, null, Objects.requireNonNull(filepath, "filepath cannot be null"),
+                new File(filepath).lastModified());
+    }
+
+    /**
+     * Create a file-backed frame that owns its file: unless the file is {@link #keepFile() kept}, e.g., because the
+     * frame was uploaded, the file is deleted when the frame is released. Use this for frames that are written to
+     * disk only to be analyzed, such that rejected frames do not accumulate on disk.
+     * @param filepath The full path to the JPEG.
+     * @return The new frame, time stamped with the file's modification time.
+     */
+    public static CameraFrame ownedFile(String filepath) {
+        CameraFrame frame = fromFile(filepath);
+        frame.mOwnsFile = true;
+        return frame;
+    }
+
+    /**
+     * Get when the frame was sampled.
+     * @return when the frame was sampled (epoch milliseconds).
+     */
+    public long getTimestampMillis() {
+        return mTimestampMillis;
+    }
+
+    /**
+     * Check if the raw bytes of this frame are held in memory.
+     * @return {@code true} if this is an in-memory frame.
+     */
+    public boolean isInMemory() {
+        return mBuffer != null;
+    }
+
+    /**
+     * Open a stream that reads the raw JPEG bytes of the frame. In-memory frames are read without touching the disk.
+     * @return A stream of the raw JPEG bytes. The caller must close it.
+     * @throws IOException if the file of a file-backed frame could not be opened.
+     */
+    @Override
+    public InputStream openStream() throws IOException {
+        if (mBuffer != null) {
+            return new ByteArrayInputStream(mBuffer, 0, mLength);
+        }
+        return new FileInputStream(mFilepath);
+    }
+
+    /**
+     * Get the location of this frame on disk, spilling an in-memory frame to its spill directory on first invocation.
+     * The spilled file is deleted when the frame is released.
+     * @return the full path to a JPEG file holding this frame.
+     * @throws IOException if the frame could not be spilled.
+     */
+    @Override
+    public synchronized String getFilepath() throws IOException {
+        if (mFilepath == null) {
+            File dir = new File(mSpillDirectory);
+            dir.mkdirs();
+            File file = new File(dir, String.format("img%d-%d.jpg", mTimestampMillis, SPILL_COUNTER.incrementAndGet()));
+            try (OutputStream output = new FileOutputStream(file)) {
+                output.write(mBuffer, 0, mLength);
+            }
+            mFilepath = file.getAbsolutePath();
+            mOwnsFile = true;
+        }
+        return mFilepath;
+    }
+
+    /**
+     * Get a hash of the contents of this frame, suitable for detecting if two frames are identical.
+     * @return a CRC32 of the raw JPEG bytes.
+     * @throws IOException if the file of a file-backed frame could not be read.
+     */
+    @Override
+    public synchronized long getContentHash() throws IOException {
+        if (mContentHash == null) {
+            CRC32 crc = new CRC32();
+            if (mBuffer != null) {
+                crc.update(mBuffer, 0, mLength);
+            } else {
+                try (InputStream input = openStream()) {
+                    byte[] buffer = new byte[8192];
+                    int readBytes;
+                    while ((readBytes = input.read(buffer)) != -1) {
+                        crc.update(buffer, 0, readBytes);
+                    }
+                }
+            }
+            mContentHash = crc.getValue();
+        }
+        return mContentHash;
+    }
+
+    /**
+     * Keep the file of a frame created using {@link #ownedFile(String)} when the frame is released. Ownership of the
+     * file passes to the caller, e.g., an {@link ImageRetentionManager}.
+     * @return {@code true} if this frame owned its file, {@code false} if this is an in-memory frame or if it did not
+     *         own its file in the first place (in which case nothing changes).
+     */
+    public synchronized boolean keepFile() {
+        if (mBuffer != null || !mOwnsFile) {
+            return false;
+        }
+        mOwnsFile = false;
+        return true;
+    }
+
+    /**
+     * Check if this frame is still in use, i.e., if it has not yet been released by all of its owners.
+     * @return {@code true} if there is at least one reference to this frame.
+     */
+    public boolean isReferenced() {
+        return mRefCount.get() > 0;
+    }
+
+    /**
+     * Acquire a reference to this frame.
+     * @return {@code true} if a reference was acquired, {@code false} if the frame has already been released by all
+     * of its owners (in which case it must not be used).
+     */
+    public boolean retain() {
+        while (true) {
+            int count = mRefCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (mRefCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give up a reference to this frame. When the last reference is released, the frame's buffer is returned to its
+     * pool and its spilled or owned file (if any) is deleted.
+     */
+    public void release() {
+        int count = mRefCount.decrementAndGet();
+        if (count == 0) {
+            synchronized (this) {
+                if (mOwnsFile) {
+                    new File(mFilepath).delete();
+                }
+            }
+            if (mBufferPool != null) {
+                mBufferPool.release(mBuffer);
+            }
+        } else if (count < 0) {
+            throw new IllegalStateException("CameraFrame released more times than retained");
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (mFilepath != null) {
+            return mFilepath;
+        }
+        return String.format("in-memory frame (%d bytes) sampled at %d", mLength, mTimestampMillis);
+    }
+
+}
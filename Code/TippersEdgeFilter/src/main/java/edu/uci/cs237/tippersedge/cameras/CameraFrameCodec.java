@@ -0,0 +1,60 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.spool.SpoolCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Stores {@link CameraFrame}s in an {@link edu.uci.cs237.tippersedge.spool.UploadSpool}: the raw JPEG bytes followed by
+ * the time the frame was sampled. Frames are decoded as in-memory frames that use the decoded bytes as their buffer, so
+ * decoding does not copy the image.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class CameraFrameCodec implements SpoolCodec<CameraFrame> {
+
+    /**
+     * The size of the trailing timestamp.
+     */
+    private static final int TIMESTAMP_BYTES = Long.BYTES;
+
+    private final String mSpillDirectory;
+
+    /**
+     * Create a new {@code CameraFrameCodec}.
+     * @param spillDirectory The directory in which decoded frames are written if a file is required, e.g., to upload
+     *                       the frame.
+     */
+    public CameraFrameCodec(String spillDirectory) {
+        mSpillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory cannot be null");
+    }
+
+    @Override
+    public byte[] encode(CameraFrame frame) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64 * 1024);
+        try (InputStream input = frame.openStream()) {
+            byte[] buffer = new byte[8192];
+            int readBytes;
+            while ((readBytes = input.read(buffer)) != -1) {
+                output.write(buffer, 0, readBytes);
+            }
+        }
+        output.write(ByteBuffer.allocate(TIMESTAMP_BYTES).putLong(frame.getTimestampMillis()).array());
+        return output.toByteArray();
+    }
+
+    @Override
+    public CameraFrame decode(byte[] payload) throws IOException {
+        if (payload.length < TIMESTAMP_BYTES) {
+            throw new IOException("Truncated camera frame");
+        }
+        int length = payload.length - TIMESTAMP_BYTES;
+        long timestampMillis = ByteBuffer.wrap(payload, length, TIMESTAMP_BYTES).getLong();
+        return CameraFrame.inMemory(payload, length, null, mSpillDirectory, timestampMillis);
+    }
+
+}
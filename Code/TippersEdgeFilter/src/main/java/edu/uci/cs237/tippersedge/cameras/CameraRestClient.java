@@ -2,51 +2,211 @@ package edu.uci.cs237.tippersedge.cameras;
 
 import edu.uci.cs237.tippersedge.SampleProvider;
 
+import javax.imageio.ImageIO;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.Authenticator;
-import java.net.PasswordAuthentication;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Concrete implementation of {@link ImageSupplier} targeting a real REST endpoint.
+ * <p>
+ * A single JAX-RS {@link Client} is shared by all requests, and every response is fully consumed and closed such that
+ * the underlying HTTP connection is returned to the keep-alive pool (maintained per camera endpoint, i.e., per
+ * host and port) and reused for the next frame. Call {@link #close()} to release the client's resources.
+ * </p>
+ * <p>
+ * Each instance samples a single camera. When sampling many cameras, the instances should share a JAX-RS client and a
+ * {@link FrameBufferPool}; see {@link #CameraRestClient(CameraSettings, boolean, Client, FrameBufferPool)}.
+ * </p>
  *
  * @author Janus Varmarken {@literal <jvarmark@uci.edu>}.
  */
-public class CameraRestClient implements ImageSupplier, SampleProvider<String> {
+public class CameraRestClient implements ImageSupplier, SampleProvider<CameraFrame> {
+
+    private static final Logger LOGGER = Logger.getLogger(CameraRestClient.class.getName());
 
     /**
-     * Cameras require HTTP Basic authentication, so an authenticator must be provided.
+     * The camera sampled by {@link #sample()}.
      */
-    private final Authenticator mAuthenticator = new Authenticator() {
-        @Override
-        protected PasswordAuthentication getPasswordAuthentication() {
-            return new PasswordAuthentication(CameraConfig.getCameraUsername(), CameraConfig.getCameraPassword().toCharArray());
-        }
-    };
+    private final CameraSettings mCamera;
+
+    /**
+     * Cameras require HTTP Basic authentication. The credentials are sent preemptively with every request (rather than
+     * installing a JVM-wide {@link java.net.Authenticator}) such that cameras with different credentials can be sampled
+     * by the same JVM.
+     */
+    private final String mAuthorization;
+
+    /**
+     * If {@code true}, sampled images are kept in memory rather than stored in the output directory.
+     */
+    private final boolean mZeroDisk;
+
+    /**
+     * Buffers for in-memory images.
+     */
+    private final FrameBufferPool mBufferPool;
+
+    /**
+     * The JAX-RS client shared by all requests. Creating a client is expensive, and reusing it allows connections to
+     * be kept alive between requests.
+     */
+    private final Client mRestClient;
+
+    /**
+     * {@code true} if {@link #mRestClient} was created by (and should hence be closed by) this instance.
+     */
+    private final boolean mOwnsRestClient;
 
+    /**
+     * Cached web targets, keyed by URL.
+     */
+    private final Map<String, WebTarget> mWebTargets = new ConcurrentHashMap<>();
+
+    /**
+     * Create a {@code CameraRestClient} that keeps sampled images in memory if so specified by {@link CameraConfig}.
+     */
     public CameraRestClient() {
-        // Set system default authenticator.
-        Authenticator.setDefault(mAuthenticator);
+        this(CameraConfig.isZeroDisk());
+    }
+
+    /**
+     * Create a {@code CameraRestClient} for the (first) camera specified by {@link CameraConfig}.
+     * @param zeroDisk If {@code true}, {@link #sample()} keeps images in memory and only writes them to
+     *                 {@link CameraConfig#getCameraSpillDirectory()} if a file is required. If {@code false}, every
+     *                 image is stored in {@link CameraConfig#getCameraOutputDirectory()}.
+     */
+    public CameraRestClient(boolean zeroDisk) {
+        this(CameraConfig.getCameras().get(0), zeroDisk);
+    }
+
+    /**
+     * Create a {@code CameraRestClient} for the given camera with its own JAX-RS client and buffer pool.
+     * @param camera The camera sampled by {@link #sample()}.
+     * @param zeroDisk If {@code true}, {@link #sample()} keeps images in memory and only writes them to the camera's
+     *                 spill directory if a file is required. If {@code false}, every image is stored in the camera's
+     *                 output directory.
+     */
+    public CameraRestClient(CameraSettings camera, boolean zeroDisk) {
+        this(camera, zeroDisk, newRestClient(), new FrameBufferPool(), true);
+    }
+
+    /**
+     * Create a {@code CameraRestClient} for the given camera that shares its JAX-RS client and buffer pool with other
+     * cameras. Use this constructor when sampling many cameras such that they share the connection pool.
+     * @param camera The camera sampled by {@link #sample()}.
+     * @param zeroDisk If {@code true}, {@link #sample()} keeps images in memory and only writes them to the camera's
+     *                 spill directory if a file is required. If {@code false}, every image is stored in the camera's
+     *                 output directory.
+     * @param restClient The JAX-RS client used for requests, e.g., created using {@link #newRestClient()}. It is
+     *                   <em>not</em> closed by {@link #close()}.
+     * @param bufferPool Buffers for in-memory images.
+     */
+    public CameraRestClient(CameraSettings camera, boolean zeroDisk, Client restClient, FrameBufferPool bufferPool) {
+        this(camera, zeroDisk, restClient, bufferPool, false);
+    }
+
+    private CameraRestClient(CameraSettings camera, boolean zeroDisk, Client restClient, FrameBufferPool bufferPool,
+                             boolean ownsRestClient) {
+        mCamera = Objects.requireNonNull(camera, "camera cannot be null");
+        String credentials = camera.getUsername() + ":" + camera.getPassword();
+        mAuthorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        mZeroDisk = zeroDisk;
+        mRestClient = Objects.requireNonNull(restClient, "restClient cannot be null");
+        mBufferPool = Objects.requireNonNull(bufferPool, "bufferPool cannot be null");
+        mOwnsRestClient = ownsRestClient;
+    }
+
+    /**
+     * Create a JAX-RS client configured with the timeouts specified by {@link CameraConfig}.
+     * @return a new JAX-RS client. The caller must close it.
+     */
+    public static Client newRestClient() {
+        return ClientBuilder.newBuilder()
+                .connectTimeout(CameraConfig.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(CameraConfig.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Get the camera sampled by this client.
+     * @return the camera sampled by {@link #sample()}.
+     */
+    public CameraSettings getCamera() {
+        return mCamera;
     }
 
     @Override
     public BufferedImage downloadImage(String webTargetUrl) throws IOException {
-        throw new UnsupportedOperationException("Work in progress, not yet implemented");
+        CameraFrame frame = downloadFrame(webTargetUrl);
+        try (InputStream input = frame.openStream()) {
+            return ImageIO.read(input);
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Override
+    public CameraFrame downloadFrame(String webTargetUrl) throws IOException {
+        long timestamp = Instant.now().toEpochMilli();
+        // Size the buffer according to the Content-Length header if present, and grow it as needed otherwise.
+        byte[] buffer = null;
+        int length = 0;
+        try (Response response = request(webTargetUrl);
+             InputStream input = response.readEntity(InputStream.class)) {
+            buffer = mBufferPool.acquire(Math.max(response.getLength(), 0));
+            while (true) {
+                if (length == buffer.length) {
+                    // Only grow once there is more to read, such that a buffer sized to the Content-Length exactly
+                    // is not replaced (and copied) at the end of the stream.
+                    int next = input.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    byte[] larger = mBufferPool.acquire(2 * buffer.length);
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    mBufferPool.release(buffer);
+                    buffer = larger;
+                    buffer[length++] = (byte) next;
+                }
+                int readBytes = input.read(buffer, length, buffer.length - length);
+                if (readBytes == -1) {
+                    break;
+                }
+                length += readBytes;
+            }
+        } catch (IOException|RuntimeException e) {
+            if (buffer != null) {
+                mBufferPool.release(buffer);
+            }
+            throw e;
+        }
+        return CameraFrame.inMemory(buffer, length, mBufferPool, mCamera.getSpillDirectory(), timestamp);
     }
 
     @Override
     public boolean downloadAndStoreImage(String webTargetUrl, String fileName) throws IOException {
-        Client restClient = ClientBuilder.newClient();
-        Response response = restClient.target(webTargetUrl).request("image/jpeg").get();
         // Create directories on filepath if they do not already exist.
         new File(fileName).getParentFile().mkdirs();
-        // Use try-with-resource to automatically close streams upon leaving try block.
-        try (BufferedInputStream input = new BufferedInputStream(response.readEntity(InputStream.class));
-             BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(fileName))) {
+        // Use try-with-resource to automatically close the response and streams upon leaving try block.
+        // The entity stream is copied straight to the file, so the image is never held in memory in its entirety.
+        try (Response response = request(webTargetUrl);
+             InputStream input = response.readEntity(InputStream.class);
+             OutputStream output = new FileOutputStream(fileName)) {
             byte[] buffer = new byte[8192];
             int readBytes;
             while ((readBytes = input.read(buffer)) != -1) {
@@ -55,13 +215,53 @@ public class CameraRestClient implements ImageSupplier, SampleProvider<String> {
             output.flush();
             return true;
         } catch (IOException ioe) {
-            ioe.printStackTrace();
+            LOGGER.log(Level.WARNING, String.format("[ Could not store img of camera '%s' as '%s' ]", mCamera.getId(),
+                    fileName), ioe);
             return false;
         }
     }
 
+    /**
+     * Release the resources held by this client, including pooled connections (unless the JAX-RS client is shared).
+     */
+    public void close() {
+        if (mOwnsRestClient) {
+            mRestClient.close();
+        }
+    }
+
+    /**
+     * Issue a GET request for a JPEG image.
+     * @param webTargetUrl REST Endpoint that serves the image.
+     * @return The (successful) response. The caller must close it.
+     * @throws IOException if the request failed or the response status does not indicate success.
+     */
+    private Response request(String webTargetUrl) throws IOException {
+        WebTarget target = mWebTargets.computeIfAbsent(webTargetUrl, mRestClient::target);
+        Response response;
+        try {
+            response = target.request("image/jpeg").header(HttpHeaders.AUTHORIZATION, mAuthorization).get();
+        } catch (ProcessingException e) {
+            // E.g., connection refused or timed out.
+            throw new IOException(String.format("Request to '%s' failed", webTargetUrl), e);
+        }
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            response.close();
+            throw new IOException(String.format("Request to '%s' failed with status %d", webTargetUrl, response.getStatus()));
+        }
+        return response;
+    }
+
     @Override
-    public String sample() {
+    public CameraFrame sample() {
+        if (mZeroDisk) {
+            try {
+                return downloadFrame(mCamera.getUrl());
+            } catch (IOException exc) {
+                LOGGER.log(Level.WARNING, String.format("[ Could not sample camera '%s' ]", mCamera.getId()), exc);
+                return null;
+            }
+        }
         /*
          * Put images in specified folder.
          * An image is named using the pattern 'imgXXX.jpg' where XXX is the current system epoch (millisecond
@@ -71,13 +271,19 @@ public class CameraRestClient implements ImageSupplier, SampleProvider<String> {
          * almost certainly be greater than a single millisecond.
          */
         String imgFilename = String.format("%s/img%d.jpg",
-                CameraConfig.getCameraOutputDirectory(), Instant.now().toEpochMilli());
+                mCamera.getOutputDirectory(), Instant.now().toEpochMilli());
         boolean imgDownloaded;
         try {
-            imgDownloaded = downloadAndStoreImage(CameraConfig.getCameraUrl(), imgFilename);
-            return imgDownloaded ? imgFilename : null;
+            imgDownloaded = downloadAndStoreImage(mCamera.getUrl(), imgFilename);
+            if (!imgDownloaded) {
+                // Do not leave a partially written image behind.
+                new File(imgFilename).delete();
+                return null;
+            }
+            // The frame's file is deleted along with the frame unless the frame is kept (i.e., uploaded).
+            return CameraFrame.ownedFile(imgFilename);
         } catch (IOException exc) {
-            exc.printStackTrace();
+            LOGGER.log(Level.WARNING, String.format("[ Could not sample camera '%s' ]", mCamera.getId()), exc);
             return null;
         }
     }
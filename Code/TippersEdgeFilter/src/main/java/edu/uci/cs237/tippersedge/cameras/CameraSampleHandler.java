@@ -1,46 +1,185 @@
 package edu.uci.cs237.tippersedge.cameras;
 
 import edu.uci.cs237.tippersedge.AbstractPeriodicSampleHandler;
+import edu.uci.cs237.tippersedge.PipelineConfig;
+import edu.uci.cs237.tippersedge.SampleProvider;
 import edu.uci.cs237.tippersedge.darknet.DarknetProcess;
+import edu.uci.cs237.tippersedge.darknet.DetectionCache;
+import edu.uci.cs237.tippersedge.darknet.Detector;
+import edu.uci.cs237.tippersedge.darknet.SceneComparator;
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
 import edu.uci.cs237.tippersedge.sensoria.ImageUploader;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A concrete implementation of {@link AbstractPeriodicSampleHandler} for images shot by the surveillance cameras.
  *
  * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
  */
-public class CameraSampleHandler extends AbstractPeriodicSampleHandler<String> {
+public class CameraSampleHandler extends AbstractPeriodicSampleHandler<CameraFrame> {
+
+    private static final Logger LOGGER = Logger.getLogger(CameraSampleHandler.class.getName());
 
     /**
-     * Flag for toggling console debug output on/off.
+     * The number of images whose detected objects are memoized.
+     * Only the most-recently cached image and the new image are compared, so a handful of entries suffice.
      */
-    private static final boolean ENABLE_DEBUG_OUTPUT = true;
+    private static final int DETECTION_CACHE_SIZE = 16;
 
     /**
      * Provides object detection capabilities.
+     * Detection results are memoized, such that an image that is first analyzed as the new image and later serves as
+     * the previous image is only passed to Darknet once.
+     */
+    private final DetectionCache mDetectionCache;
+
+    /**
+     * Cheap test applied before object detection, or {@code null} if all images are to be passed to Darknet.
      */
-    private final DarknetProcess mDarknetProcess;
+    private final FramePreFilter mPreFilter;
 
     /**
      * REST client for uploading images that are to slip through the filter.
      */
     private final ImageUploader mImageUploader;
 
-    public CameraSampleHandler(CameraRestClient cameraRestClient, int sampleCacheSize, long sampleRateMillis, String darknetDir, ImageUploader restClient) {
+    /**
+     * Decides if the objects detected in the new image represent the same scene as those of the previous image.
+     */
+    private volatile SceneComparator mSceneComparator = new SceneComparator();
+
+    /**
+     * Prepares images for object detection, or {@code null} if images are handed to the detector as is.
+     */
+    private volatile FramePreprocessor mFramePreprocessor;
+
+    /**
+     * Bounds the disk space taken up by included images, or {@code null} if included images are kept indefinitely.
+     */
+    private volatile ImageRetentionManager mRetentionManager;
+
+    /**
+     * The number of images found identical to the previous image by the pre-filter.
+     */
+    private final Counter mPreFilterShortCircuited = mMetrics.counter("preFilterShortCircuited");
+
+    /**
+     * Time spent obtaining the detected objects of the previous and the new image (including cache hits).
+     */
+    private final LatencyHistogram mDetectionLatency = mMetrics.histogram("detection");
+
+    public CameraSampleHandler(SampleProvider<CameraFrame> cameraRestClient, int sampleCacheSize, long sampleRateMillis, String darknetDir, ImageUploader restClient) {
+        this(cameraRestClient, sampleCacheSize, sampleRateMillis, new DarknetProcess(darknetDir), restClient);
+    }
+
+    public CameraSampleHandler(SampleProvider<CameraFrame> cameraRestClient, int sampleCacheSize, long sampleRateMillis, Detector detector, ImageUploader restClient) {
+        this(cameraRestClient, sampleCacheSize, sampleRateMillis, detector, null, restClient);
+    }
+
+    /**
+     * Create a new {@code CameraSampleHandler}.
+     * @param cameraRestClient Provides the images.
+     * @param sampleCacheSize The maximum number of cached images.
+     * @param sampleRateMillis The sampling period.
+     * @param detector Performs object detection, e.g., a {@link DarknetProcess}.
+     * @param preFilter A cheap test that decides if a new image should be passed to Darknet at all, or {@code null} to
+     *                  pass every image to Darknet.
+     * @param restClient Uploads images that are to slip through the filter.
+     */
+    public CameraSampleHandler(SampleProvider<CameraFrame> cameraRestClient, int sampleCacheSize, long sampleRateMillis, Detector detector, FramePreFilter preFilter, ImageUploader restClient) {
         super(cameraRestClient, sampleCacheSize, sampleRateMillis);
-        mDarknetProcess = new DarknetProcess(darknetDir);
+        mDetectionCache = new DetectionCache(detector, DETECTION_CACHE_SIZE);
+        mPreFilter = preFilter;
         mImageUploader = restClient;
+        registerDetectionCacheMetrics();
+    }
+
+    /**
+     * Create a new {@code CameraSampleHandler} that runs sampling, object detection and upload as separate pipeline
+     * stages.
+     * @param cameraRestClient Provides the images.
+     * @param sampleCacheSize The maximum number of cached images.
+     * @param sampleRateMillis The sampling period.
+     * @param pipelineConfig Configuration of the pipeline stages.
+     * @param detector Performs object detection, e.g., a {@link DarknetProcess}.
+     * @param preFilter A cheap test that decides if a new image should be passed to Darknet at all, or {@code null} to
+     *                  pass every image to Darknet.
+     * @param restClient Uploads images that are to slip through the filter.
+     */
+    public CameraSampleHandler(SampleProvider<CameraFrame> cameraRestClient, int sampleCacheSize, long sampleRateMillis, PipelineConfig pipelineConfig, Detector detector, FramePreFilter preFilter, ImageUploader restClient) {
+        super(cameraRestClient, sampleCacheSize, sampleRateMillis, pipelineConfig);
+        mDetectionCache = new DetectionCache(detector, DETECTION_CACHE_SIZE);
+        mPreFilter = preFilter;
+        mImageUploader = restClient;
+        registerDetectionCacheMetrics();
+    }
+
+    /**
+     * Create a new {@code CameraSampleHandler} whose ticks run on an executor shared with the handlers of other
+     * cameras; see {@link MultiCameraSampler}.
+     * @param cameraRestClient Provides the images.
+     * @param sampleCacheSize The maximum number of cached images.
+     * @param sampleRateMillis The sampling period.
+     * @param sharedScheduledExecutor The executor on which ticks are scheduled.
+     * @param detector Performs object detection, typically a detector shared by all cameras (see
+     *                 {@link edu.uci.cs237.tippersedge.darknet.FairDetectionScheduler#forSource(String)}).
+     * @param preFilter A cheap test that decides if a new image should be passed to Darknet at all, or {@code null} to
+     *                  pass every image to Darknet.
+     * @param restClient Uploads images that are to slip through the filter.
+     */
+    public CameraSampleHandler(SampleProvider<CameraFrame> cameraRestClient, int sampleCacheSize, long sampleRateMillis, ScheduledExecutorService sharedScheduledExecutor, Detector detector, FramePreFilter preFilter, ImageUploader restClient) {
+        super(cameraRestClient, sampleCacheSize, sampleRateMillis, sharedScheduledExecutor);
+        mDetectionCache = new DetectionCache(detector, DETECTION_CACHE_SIZE);
+        mPreFilter = preFilter;
+        mImageUploader = restClient;
+        registerDetectionCacheMetrics();
+    }
+
+    /**
+     * Replace the {@link SceneComparator} (which has the default tolerances unless set), e.g., to tolerate larger
+     * fluctuations in the detector's output.
+     * @param sceneComparator Decides if the objects detected in the new image represent the same scene as those of
+     *                        the previous image.
+     */
+    public void setSceneComparator(SceneComparator sceneComparator) {
+        mSceneComparator = Objects.requireNonNull(sceneComparator, "sceneComparator cannot be null");
+    }
+
+    /**
+     * Crop, downscale and/or mask images before they are handed to the detector. The uploaded images are unaffected.
+     * @param framePreprocessor Prepares images for object detection, typically one per camera. Its metrics are
+     *                          registered with those of this handler (as {@code preprocessor}).
+     */
+    public void setFramePreprocessor(FramePreprocessor framePreprocessor) {
+        mFramePreprocessor = Objects.requireNonNull(framePreprocessor, "framePreprocessor cannot be null");
+        mMetrics.register("preprocessor", framePreprocessor.getMetrics());
+    }
+
+    /**
+     * Keep the files of included images within a budget rather than indefinitely. The files of rejected images are
+     * deleted regardless.
+     * @param retentionManager Decides which files of included images to delete, possibly shared with other handlers.
+     */
+    public void setRetentionManager(ImageRetentionManager retentionManager) {
+        mRetentionManager = Objects.requireNonNull(retentionManager, "retentionManager cannot be null");
+    }
+
+    private void registerDetectionCacheMetrics() {
+        mMetrics.gauge("detectionCacheHits", mDetectionCache::getHitCount);
+        mMetrics.gauge("detectionCacheMisses", mDetectionCache::getMissCount);
     }
 
     @Override
-    protected boolean shouldIncludeSample(String sample) {
+    protected boolean shouldIncludeSample(CameraFrame sample) {
         /*
-         * TODO implement comparison of last image and new image here.
-         * For now, we simply use a basic comparison that checks if the scene is exactly the same.
-         *
          * TODO currently, AbstractSampleHandler does not add samples to its cache until after they are succesfully
          * uploaded. This is problematic as Darknet takes approximately 13-15 seconds to execute on Janus' MBP.
          * As we sample every ~2 seconds or so, we are essentially comparing the new image to the least-recently cached
@@ -49,62 +188,132 @@ public class CameraSampleHandler extends AbstractPeriodicSampleHandler<String> {
          * On the other hand, this might cause issues as we are thereby possibly comparing the new image to an image
          * that will never be uploaded.... hmm... ideas?
          */
-        String previousImg = null;
-        synchronized (mSampleCache) {
-            if (mSampleCache.size() > 0) {
-                // Get the location of the most-recently cached image.
-                previousImg = mSampleCache.get(mSampleCache.size()-1);
-            }
-        }
-        /*
-         * Note that we should NOT perform object detection nor upload of the image inside the synchronized block as
-         * these are very slow operations that would cause other threads, which access the list, to block for a long
-         * time.
-         */
-        if(previousImg == null) {
+        // Get the most-recently cached image. It must be retained while in use as it may be evicted from the cache
+        // (and hence released) by another thread in the meantime.
+        CameraFrame previousImg = mSampleCache.latest();
+        if(previousImg == null || !previousImg.retain()) {
             // No previously cached image, so definitely upload this one.
-            if (ENABLE_DEBUG_OUTPUT) {
-                System.out.println(String.format("[ No previous img in cache; approving upload of img '%s' ]", sample));
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("[ No previous img in cache; approving upload of img '%s' ]", sample));
             }
             return true;
         }
         try {
-            List<DarknetProcess.DetectedObject> oldScene = mDarknetProcess.exec(previousImg);
-            List<DarknetProcess.DetectedObject> newScene = mDarknetProcess.exec(sample);
-            if (oldScene.size() != newScene.size()) {
-                // Scenes definitely differ as there is a different number of objects in the two.
-                if (ENABLE_DEBUG_OUTPUT) {
-                    System.out.println(String.format("[ Number of detected objects in previous img and new img differ; approving upload of img '%s' ]", sample));
-                }
-                return true;
+            ImageRetentionManager retentionManager = mRetentionManager;
+            if (retentionManager != null) {
+                retentionManager.touch(previousImg);
             }
-            int matchedObjects = 0;
+            return compareScenes(previousImg, sample);
+        } finally {
+            previousImg.release();
+        }
+    }
 
-            for (int i  = 0; i < oldScene.size(); i++) {
-                    if (oldScene.get(i).equals(newScene.get(i)))
-                        matchedObjects++;
+    /**
+     * Compare the scene of the new image to that of the previous image.
+     * @return {@code true} if the new image should be uploaded.
+     */
+    private boolean compareScenes(CameraFrame previousImg, CameraFrame sample) {
+        if (mPreFilter != null && !preFilterHasChanged(previousImg, sample)) {
+            mPreFilterShortCircuited.increment();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("[ Pre-filter found previous img and new img identical; disapproving upload of img '%s' ]", sample));
             }
-            boolean identical = matchedObjects == oldScene.size();
-  
-            if (ENABLE_DEBUG_OUTPUT) {
+            return false;
+        }
+        FramePreprocessor preprocessor = mFramePreprocessor;
+        PreprocessedFrame previousInput = null;
+        PreprocessedFrame sampleInput = null;
+        try {
+            long start = System.nanoTime();
+            // Frames are handed to the detector as is, such that in-process detectors need not spill in-memory frames.
+            // Preprocessed frames are only derived on a detection cache miss.
+            List<DarknetProcess.DetectedObject> oldScene;
+            List<DarknetProcess.DetectedObject> newScene;
+            if (preprocessor == null) {
+                oldScene = mDetectionCache.exec(previousImg);
+                newScene = mDetectionCache.exec(sample);
+            } else {
+                previousInput = new PreprocessedFrame(previousImg, preprocessor);
+                sampleInput = new PreprocessedFrame(sample, preprocessor);
+                oldScene = mDetectionCache.exec(previousInput);
+                newScene = mDetectionCache.exec(sampleInput);
+            }
+            mDetectionLatency.recordSince(start);
+            SceneComparator.SceneDiff diff = mSceneComparator.compare(oldScene, newScene);
+            boolean identical = diff.isUnchanged();
+            if (LOGGER.isLoggable(Level.FINE)) {
                 if (identical) {
-                    System.out.println(String.format("[ Previous img and new img identical; disapproving upload of img '%s' ]", sample));
+                    LOGGER.fine(String.format("[ Previous img and new img identical; disapproving upload of img '%s' ]", sample));
                 } else {
-                    System.out.println(String.format("[ Previous img and new img represent different scenes; approving upload of img '%s' ]", sample));
+                    LOGGER.fine(String.format("[ Previous img and new img represent different scenes %s; approving upload of img '%s' ]", diff, sample));
                 }
             }
             // Only upload this image if there is a discrepancy between the objects of the new and the old scene.
             return !identical;
         } catch (IOException|InterruptedException e) {
-            e.printStackTrace();
             // Always upload on error -- TODO: better strategy?
-            System.out.println(String.format("[ EXCEPTION during shouldIncludeSample; approving upload of img '%s' ]", sample));
+            LOGGER.log(Level.WARNING, String.format("[ EXCEPTION during shouldIncludeSample; approving upload of img '%s' ]", sample), e);
+            return true;
+        } finally {
+            if (previousInput != null) {
+                previousInput.release();
+            }
+            if (sampleInput != null) {
+                sampleInput.release();
+            }
+        }
+    }
+
+    /**
+     * Apply the pre-filter, escalating the new image to object detection if the pre-filter fails.
+     */
+    private boolean preFilterHasChanged(CameraFrame previousImg, CameraFrame sample) {
+        try {
+            return mPreFilter.hasChanged(previousImg, sample);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("[ EXCEPTION during pre-filtering; escalating img '%s' to object " +
+                    "detection ]", sample), e);
             return true;
         }
     }
 
     @Override
-    protected boolean uploadSample(String imgFilepath) {
-        return mImageUploader.uploadImage(imgFilepath);
+    protected boolean uploadSample(CameraFrame frame) {
+        try {
+            return mImageUploader.uploadImage(frame.getFilepath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("[ EXCEPTION during upload of img '%s' ]", frame), e);
+            return false;
+        }
+    }
+
+    @Override
+    protected CompletableFuture<Boolean> uploadSampleAsync(CameraFrame frame) {
+        try {
+            // The frame is not released until the upload completes, so its file remains in place until then.
+            return mImageUploader.uploadImageAsync(frame.getFilepath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("[ EXCEPTION during upload of img '%s' ]", frame), e);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    @Override
+    protected void onSampleIncluded(CameraFrame frame) {
+        // Keep the frame's file (if it has one) once the frame is released, possibly within a budget.
+        ImageRetentionManager retentionManager = mRetentionManager;
+        if (retentionManager != null) {
+            retentionManager.retain(frame);
+        } else {
+            frame.keepFile();
+        }
+    }
+
+    @Override
+    protected void onSampleDiscarded(CameraFrame frame) {
+        // Return the frame's buffer to its pool and delete its spilled file (if any), or the file of a frame that was
+        // never included.
+        frame.release();
     }
 }
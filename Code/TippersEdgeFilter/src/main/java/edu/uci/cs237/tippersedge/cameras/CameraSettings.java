@@ -0,0 +1,201 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.AdaptiveSamplingPolicy;
+
+import java.util.Objects;
+
+/**
+ * The configuration of a single camera: where to fetch its images, how to authenticate, how often to sample it, and
+ * where to store its images. Instances are created by {@link CameraConfig}, one per configured camera.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class CameraSettings {
+
+    private final String mId;
+    private final String mUrl;
+    private final String mUsername;
+    private final String mPassword;
+    private final long mSampleRateMillis;
+    private final String mOutputDirectory;
+    private final String mSpillDirectory;
+    private final FramePreprocessing mPreprocessing;
+    private final long mMaxSampleRateMillis;
+    private final double mSampleBackoffFactor;
+
+    /**
+     * Create a new {@code CameraSettings} for a camera whose images are handed to the detector unchanged.
+     * @param id Identifies the camera among all configured cameras.
+     * @param url The URL for the camera's REST endpoint.
+     * @param username The username required for the camera's REST endpoint.
+     * @param password The password required for the camera's REST endpoint.
+     * @param sampleRateMillis The sampling period of the camera.
+     * @param outputDirectory The local directory where images downloaded from the camera are to be stored.
+     * @param spillDirectory The local directory where in-memory images are written when a file is required.
+     */
+    public CameraSettings(String id, String url, String username, String password, long sampleRateMillis,
+                          String outputDirectory, String spillDirectory) {
+        this(id, url, username, password, sampleRateMillis, outputDirectory, spillDirectory, FramePreprocessing.NONE);
+    }
+
+    /**
+     * Create a new {@code CameraSettings} for a camera that is sampled at a fixed rate.
+     * @param id Identifies the camera among all configured cameras.
+     * @param url The URL for the camera's REST endpoint.
+     * @param username The username required for the camera's REST endpoint.
+     * @param password The password required for the camera's REST endpoint.
+     * @param sampleRateMillis The sampling period of the camera.
+     * @param outputDirectory The local directory where images downloaded from the camera are to be stored.
+     * @param spillDirectory The local directory where in-memory images are written when a file is required.
+     * @param preprocessing How the camera's images are prepared for object detection.
+     */
+    public CameraSettings(String id, String url, String username, String password, long sampleRateMillis,
+                          String outputDirectory, String spillDirectory, FramePreprocessing preprocessing) {
+        this(id, url, username, password, sampleRateMillis, outputDirectory, spillDirectory, preprocessing,
+                sampleRateMillis, AdaptiveSamplingPolicy.DEFAULT_BACKOFF_FACTOR);
+    }
+
+    /**
+     * Create a new {@code CameraSettings}.
+     * @param id Identifies the camera among all configured cameras.
+     * @param url The URL for the camera's REST endpoint.
+     * @param username The username required for the camera's REST endpoint.
+     * @param password The password required for the camera's REST endpoint.
+     * @param sampleRateMillis The sampling period of the camera while its scene is active.
+     * @param outputDirectory The local directory where images downloaded from the camera are to be stored.
+     * @param spillDirectory The local directory where in-memory images are written when a file is required.
+     * @param preprocessing How the camera's images are prepared for object detection.
+     * @param maxSampleRateMillis The longest sampling period of the camera, used while its scene is static. Use
+     *                            {@code sampleRateMillis} to sample at a fixed rate.
+     * @param sampleBackoffFactor The factor by which the sampling period is stretched on every sample without
+     *                            activity; see {@link AdaptiveSamplingPolicy}.
+     */
+    public CameraSettings(String id, String url, String username, String password, long sampleRateMillis,
+                          String outputDirectory, String spillDirectory, FramePreprocessing preprocessing,
+                          long maxSampleRateMillis, double sampleBackoffFactor) {
+        if (sampleRateMillis < 1) {
+            throw new IllegalArgumentException("sampleRateMillis must be positive");
+        }
+        if (maxSampleRateMillis < sampleRateMillis) {
+            throw new IllegalArgumentException("maxSampleRateMillis cannot be less than sampleRateMillis");
+        }
+        if (!(sampleBackoffFactor > 1)) {
+            throw new IllegalArgumentException("sampleBackoffFactor must be greater than 1");
+        }
+        mId = Objects.requireNonNull(id, "id cannot be null");
+        mUrl = Objects.requireNonNull(url, "url cannot be null");
+        mUsername = Objects.requireNonNull(username, "username cannot be null");
+        mPassword = Objects.requireNonNull(password, "password cannot be null");
+        mSampleRateMillis = sampleRateMillis;
+        mOutputDirectory = Objects.requireNonNull(outputDirectory, "outputDirectory cannot be null");
+        mSpillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory cannot be null");
+        mPreprocessing = Objects.requireNonNull(preprocessing, "preprocessing cannot be null");
+        mMaxSampleRateMillis = maxSampleRateMillis;
+        mSampleBackoffFactor = sampleBackoffFactor;
+    }
+
+    /**
+     * Get the identifier of the camera.
+     * @return the identifier of the camera.
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * Get the URL for the camera's REST endpoint.
+     * @return the URL for the camera's REST endpoint.
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * Get the username required for the camera's REST endpoint.
+     * @return the username required for the camera's REST endpoint.
+     */
+    public String getUsername() {
+        return mUsername;
+    }
+
+    /**
+     * Get the password required for the camera's REST endpoint.
+     * @return the password required for the camera's REST endpoint.
+     */
+    public String getPassword() {
+        return mPassword;
+    }
+
+    /**
+     * Get the sampling period of the camera (while its scene is active, if sampling is adaptive).
+     * @return the sampling period of the camera in milliseconds.
+     */
+    public long getSampleRateMillis() {
+        return mSampleRateMillis;
+    }
+
+    /**
+     * Get the longest sampling period of the camera, used while its scene is static.
+     * @return the longest sampling period of the camera in milliseconds; equal to {@link #getSampleRateMillis()} if
+     *         the camera is sampled at a fixed rate.
+     */
+    public long getMaxSampleRateMillis() {
+        return mMaxSampleRateMillis;
+    }
+
+    /**
+     * Get the factor by which the sampling period is stretched on every sample without activity.
+     * @return the backoff factor of the sampling period.
+     */
+    public double getSampleBackoffFactor() {
+        return mSampleBackoffFactor;
+    }
+
+    /**
+     * Check if the sampling period of the camera adapts to the activity of its scene.
+     * @return {@code true} if the longest sampling period exceeds the sampling period.
+     */
+    public boolean isAdaptiveSampling() {
+        return mMaxSampleRateMillis > mSampleRateMillis;
+    }
+
+    /**
+     * Create a policy that adapts the sampling period of the camera to the activity of its scene; see
+     * {@link edu.uci.cs237.tippersedge.AbstractPeriodicSampleHandler#setAdaptiveSampling(AdaptiveSamplingPolicy)}.
+     * @return a new policy, to be used by a single handler.
+     */
+    public AdaptiveSamplingPolicy newSamplingPolicy() {
+        return new AdaptiveSamplingPolicy(mSampleRateMillis, mMaxSampleRateMillis, mSampleBackoffFactor);
+    }
+
+    /**
+     * Get the local directory where images downloaded from the camera are to be stored.
+     * @return the local directory where images downloaded from the camera are to be stored.
+     */
+    public String getOutputDirectory() {
+        return mOutputDirectory;
+    }
+
+    /**
+     * Get the local directory where in-memory images from the camera are written when a file is required.
+     * @return the local directory where in-memory images are written when a file is required.
+     */
+    public String getSpillDirectory() {
+        return mSpillDirectory;
+    }
+
+    /**
+     * Get how the camera's images are prepared for object detection.
+     * @return how the camera's images are prepared for object detection; {@link FramePreprocessing#NONE} if they are
+     *         handed to the detector unchanged.
+     */
+    public FramePreprocessing getPreprocessing() {
+        return mPreprocessing;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("camera '%s' (%s)", mId, mUrl);
+    }
+
+}
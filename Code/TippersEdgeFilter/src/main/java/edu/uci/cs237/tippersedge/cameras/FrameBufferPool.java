@@ -0,0 +1,71 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of byte arrays that hold raw (encoded) camera frames, allowing the buffers of discarded frames to be reused
+ * for new frames rather than allocating (and garbage collecting) a new buffer for every frame.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class FrameBufferPool {
+
+    /**
+     * Default size of newly allocated buffers; large enough for a typical surveillance camera JPEG.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 512 * 1024;
+
+    /**
+     * Default maximum number of idle buffers kept in the pool.
+     */
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 32;
+
+    private final int mBufferSize;
+
+    private final BlockingQueue<byte[]> mIdleBuffers;
+
+    /**
+     * Create a {@code FrameBufferPool} using {@link #DEFAULT_BUFFER_SIZE} and {@link #DEFAULT_MAX_POOLED_BUFFERS}.
+     */
+    public FrameBufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * Create a new {@code FrameBufferPool}.
+     * @param bufferSize The size of newly allocated buffers.
+     * @param maxPooledBuffers The maximum number of idle buffers kept in the pool. Buffers released while the pool is
+     *                         full are left to the garbage collector.
+     */
+    public FrameBufferPool(int bufferSize, int maxPooledBuffers) {
+        if (bufferSize < 1 || maxPooledBuffers < 1) {
+            throw new IllegalArgumentException("bufferSize and maxPooledBuffers must be positive");
+        }
+        mBufferSize = bufferSize;
+        mIdleBuffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    /**
+     * Get a buffer of at least the given size, reusing an idle buffer if possible.
+     * @param minCapacity The minimum size of the buffer.
+     * @return A buffer of at least {@code minCapacity} bytes. Its contents are undefined.
+     */
+    public byte[] acquire(int minCapacity) {
+        byte[] buffer = mIdleBuffers.poll();
+        if (buffer != null && buffer.length >= minCapacity) {
+            return buffer;
+        }
+        // Too small (e.g., the camera resolution was raised): let it be garbage collected and allocate a larger one.
+        return new byte[Math.max(minCapacity, mBufferSize)];
+    }
+
+    /**
+     * Return a buffer to the pool. The caller must not use the buffer afterwards.
+     * @param buffer The buffer to return.
+     */
+    public void release(byte[] buffer) {
+        mIdleBuffers.offer(buffer);
+    }
+
+}
@@ -0,0 +1,24 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import java.io.IOException;
+
+/**
+ * A cheap test that is applied before (expensive) object detection in order to weed out frames that are (nearly)
+ * identical to the previous frame. Only frames that pass the pre-filter are escalated to Darknet.
+ * Allows for dependency injection such that {@link CameraSampleHandler} can be configured with different pre-filters.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public interface FramePreFilter {
+
+    /**
+     * Decide if the new frame differs enough from the previous frame to warrant object detection.
+     * @param previousFrame The previous frame.
+     * @param newFrame The new frame.
+     * @return {@code true} if the new frame should be escalated to object detection, {@code false} if it can safely be
+     * considered identical to the previous frame.
+     * @throws IOException if either frame could not be read.
+     */
+    boolean hasChanged(CameraFrame previousFrame, CameraFrame newFrame) throws IOException;
+
+}
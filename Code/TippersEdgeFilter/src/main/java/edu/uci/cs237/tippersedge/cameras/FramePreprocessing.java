@@ -0,0 +1,102 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Describes how the frames of a camera are prepared for object detection (see {@link FramePreprocessor}): which parts
+ * of the frame matter (the regions of interest), which parts never matter (the masks, e.g., a static poster that is
+ * repeatedly mistaken for a person), and how large the frame handed to the detector may be.
+ * <p>
+ * Regions and masks are given in the coordinates of the frames as delivered by the camera. Instances are immutable.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class FramePreprocessing {
+
+    /**
+     * Frames are handed to the detector unchanged.
+     */
+    public static final FramePreprocessing NONE = new FramePreprocessing(Collections.emptyList(),
+            Collections.emptyList(), 0);
+
+    private final List<Rectangle> mRegionsOfInterest;
+
+    private final List<Rectangle> mMasks;
+
+    private final int mMaxSize;
+
+    /**
+     * Create a new {@code FramePreprocessing}.
+     * @param regionsOfInterest The parts of the frame to be analyzed. The frame is cropped to the smallest rectangle
+     *                          that contains all regions, and anything in that rectangle outside the regions is
+     *                          blanked out. If empty, the whole frame is analyzed.
+     * @param masks The parts of the frame to be blanked out before object detection.
+     * @param maxSize The maximum width and height (in pixels) of the frame handed to the detector, typically the input
+     *                size of the network. Larger (cropped) frames are downscaled, preserving their aspect ratio. Use
+     *                {@code 0} to keep the (cropped) frame's size.
+     */
+    public FramePreprocessing(List<Rectangle> regionsOfInterest, List<Rectangle> masks, int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize cannot be negative");
+        }
+        mRegionsOfInterest = copyOf(regionsOfInterest);
+        mMasks = copyOf(masks);
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Get the parts of the frame to be analyzed.
+     * @return a copy of the regions of interest; empty if the whole frame is to be analyzed.
+     */
+    public List<Rectangle> getRegionsOfInterest() {
+        return copyOf(mRegionsOfInterest);
+    }
+
+    /**
+     * Get the parts of the frame to be blanked out before object detection.
+     * @return a copy of the masks.
+     */
+    public List<Rectangle> getMasks() {
+        return copyOf(mMasks);
+    }
+
+    /**
+     * Get the maximum width and height of the frame handed to the detector.
+     * @return the maximum width and height in pixels, or {@code 0} if frames are not downscaled.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Check if frames are changed at all before object detection.
+     * @return {@code true} if frames are cropped, masked or downscaled.
+     */
+    public boolean isEnabled() {
+        return !mRegionsOfInterest.isEmpty() || !mMasks.isEmpty() || mMaxSize > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[ FramePreprocessing: regions of interest %s, masks %s, max size %d ]",
+                mRegionsOfInterest, mMasks, mMaxSize);
+    }
+
+    private static List<Rectangle> copyOf(List<Rectangle> rectangles) {
+        List<Rectangle> copy = new ArrayList<>(rectangles.size());
+        for (Rectangle rectangle : rectangles) {
+            Objects.requireNonNull(rectangle, "rectangles cannot contain null");
+            if (rectangle.isEmpty()) {
+                throw new IllegalArgumentException(String.format("Empty rectangle %s", rectangle));
+            }
+            copy.add(new Rectangle(rectangle));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+}
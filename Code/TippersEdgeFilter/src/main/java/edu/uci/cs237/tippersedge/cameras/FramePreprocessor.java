@@ -0,0 +1,327 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Prepares the frames of a camera for object detection as described by its {@link FramePreprocessing}: the frame is
+ * cropped to its regions of interest, downscaled to (at most) the input size of the network, and static areas are
+ * masked. The detector hence decodes and analyzes far fewer pixels, and a smaller file is spilled to disk when the
+ * detector needs one.
+ * <p>
+ * Cropping and most of the downscaling is done by the JPEG decoder (using a source region and source subsampling), so
+ * the full-resolution frame is never decoded. The decoded and the scaled images are drawn from a
+ * {@link BufferedImagePool}, and the re-encoded JPEG is held in a pooled buffer, so no large objects are allocated per
+ * frame. A {@code FramePreprocessor} is thread safe.
+ * </p>
+ * <p>
+ * Note that the objects detected in a preprocessed frame are located in the coordinates of the preprocessed frame.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class FramePreprocessor {
+
+    /**
+     * Default JPEG quality (between 0 and 1) of preprocessed frames. High enough not to affect object detection.
+     */
+    public static final float DEFAULT_JPEG_QUALITY = 0.9f;
+
+    /**
+     * Size of the buffers holding preprocessed frames. A downscaled frame is a few dozen kilobytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of buffers kept in the pool; enough for the frames compared by a few concurrent ticks.
+     */
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private final FramePreprocessing mPreprocessing;
+
+    private final String mSpillDirectory;
+
+    private final float mJpegQuality;
+
+    private final FrameBufferPool mBufferPool = new FrameBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+    private final BufferedImagePool mImagePool = new BufferedImagePool();
+
+    private final MetricSet mMetrics = new MetricSet();
+
+    /**
+     * Time spent decoding, transforming and re-encoding a frame.
+     */
+    private final LatencyHistogram mPreprocessLatency = mMetrics.histogram("preprocess");
+
+    private final Counter mPreprocessFailures = mMetrics.counter("preprocessFailures");
+
+    /**
+     * Create a {@code FramePreprocessor} using {@link #DEFAULT_JPEG_QUALITY}.
+     * @param preprocessing How frames are to be prepared.
+     * @param spillDirectory The directory in which preprocessed frames are written if the detector requires a file.
+     */
+    public FramePreprocessor(FramePreprocessing preprocessing, String spillDirectory) {
+        this(preprocessing, spillDirectory, DEFAULT_JPEG_QUALITY);
+    }
+
+    /**
+     * Create a new {@code FramePreprocessor}.
+     * @param preprocessing How frames are to be prepared.
+     * @param spillDirectory The directory in which preprocessed frames are written if the detector requires a file.
+     * @param jpegQuality The JPEG quality (between 0 and 1) of preprocessed frames.
+     */
+    public FramePreprocessor(FramePreprocessing preprocessing, String spillDirectory, float jpegQuality) {
+        if (jpegQuality <= 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("jpegQuality must be greater than 0 and at most 1");
+        }
+        mPreprocessing = Objects.requireNonNull(preprocessing, "preprocessing cannot be null");
+        mSpillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory cannot be null");
+        mJpegQuality = jpegQuality;
+    }
+
+    /**
+     * Get how frames are prepared.
+     * @return how frames are prepared.
+     */
+    public FramePreprocessing getPreprocessing() {
+        return mPreprocessing;
+    }
+
+    /**
+     * Get the metrics of this {@code FramePreprocessor}: the time spent per frame ({@code preprocess}) and the number
+     * of frames that could not be preprocessed ({@code preprocessFailures}).
+     * @return the metrics of this {@code FramePreprocessor}.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Prepare a frame for object detection.
+     * @param frame The frame as delivered by the camera. It is not modified, nor released.
+     * @return A new in-memory frame with the same timestamp as {@code frame}, owned by the caller (who must
+     *         {@link CameraFrame#release() release} it).
+     * @throws IOException if the frame cannot be decoded, or if it does not overlap any region of interest.
+     */
+    public CameraFrame preprocess(CameraFrame frame) throws IOException {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            CameraFrame preprocessed = transform(frame);
+            succeeded = true;
+            return preprocessed;
+        } finally {
+            mPreprocessLatency.recordSince(start);
+            if (!succeeded) {
+                mPreprocessFailures.increment();
+            }
+        }
+    }
+
+    private CameraFrame transform(CameraFrame frame) throws IOException {
+        BufferedImage decoded = null;
+        BufferedImage scaled = null;
+        try (InputStream source = frame.openStream();
+             ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                throw new IOException(String.format("Could not open image '%s'", frame));
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException(String.format("Unsupported image format: '%s'", frame));
+            }
+            ImageReader reader = readers.next();
+            Rectangle crop;
+            try {
+                reader.setInput(input, true, true);
+                crop = cropOf(reader.getWidth(0), reader.getHeight(0));
+                if (crop.isEmpty()) {
+                    throw new IOException(String.format("No region of interest lies within image '%s'", frame));
+                }
+                // Let the decoder skip the pixels that would be scaled away anyway, but never decode below the target
+                // size, such that the final (bilinear) step only has to scale by a factor below two.
+                Rectangle target = targetOf(crop);
+                int subsampling = Math.max(1, Math.min(crop.width / target.width, crop.height / target.height));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(crop);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                decoded = mImagePool.acquire((crop.width + subsampling - 1) / subsampling,
+                        (crop.height + subsampling - 1) / subsampling);
+                param.setDestination(decoded);
+                try {
+                    reader.read(0, param);
+                } catch (IIOException e) {
+                    // The decoder cannot write into a color image (e.g., a grayscale JPEG): let it allocate an image.
+                    mImagePool.release(decoded);
+                    decoded = null;
+                    param.setDestination(null);
+                    decoded = reader.read(0, param);
+                }
+                scaled = mImagePool.acquire(target.width, target.height);
+            } finally {
+                reader.dispose();
+            }
+            draw(decoded, scaled, crop);
+            return encode(scaled, frame.getTimestampMillis());
+        } finally {
+            if (decoded != null) {
+                mImagePool.release(decoded);
+            }
+            if (scaled != null) {
+                mImagePool.release(scaled);
+            }
+        }
+    }
+
+    /**
+     * Compute the part of an image of the given size that is decoded: the smallest rectangle that contains all regions
+     * of interest, clipped to the image.
+     */
+    private Rectangle cropOf(int width, int height) {
+        Rectangle image = new Rectangle(0, 0, width, height);
+        List<Rectangle> regions = mPreprocessing.getRegionsOfInterest();
+        if (regions.isEmpty()) {
+            return image;
+        }
+        Rectangle bounds = new Rectangle(regions.get(0));
+        for (Rectangle region : regions) {
+            bounds.add(region);
+        }
+        return bounds.intersection(image);
+    }
+
+    /**
+     * Compute the size of the preprocessed frame: the crop, downscaled (never upscaled) such that neither its width
+     * nor its height exceeds the configured maximum size.
+     */
+    private Rectangle targetOf(Rectangle crop) {
+        int maxSize = mPreprocessing.getMaxSize();
+        double scale = maxSize == 0 ? 1.0 : Math.min(1.0, (double) maxSize / Math.max(crop.width, crop.height));
+        return new Rectangle(Math.max(1, (int) Math.round(crop.width * scale)),
+                Math.max(1, (int) Math.round(crop.height * scale)));
+    }
+
+    /**
+     * Scale the decoded crop into the target image and black out everything outside the regions of interest and
+     * inside the masks.
+     */
+    private void draw(BufferedImage decoded, BufferedImage target, Rectangle crop) {
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(decoded, 0, 0, target.getWidth(), target.getHeight(), null);
+            // From here on, draw in the coordinates of the original frame.
+            graphics.scale((double) target.getWidth() / crop.width, (double) target.getHeight() / crop.height);
+            graphics.translate(-crop.x, -crop.y);
+            graphics.setColor(Color.BLACK);
+            List<Rectangle> regions = mPreprocessing.getRegionsOfInterest();
+            if (regions.size() > 1) {
+                Area outside = new Area(crop);
+                for (Rectangle region : regions) {
+                    outside.subtract(new Area(region));
+                }
+                graphics.fill(outside);
+            }
+            for (Rectangle mask : mPreprocessing.getMasks()) {
+                graphics.fill(mask);
+            }
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    private CameraFrame encode(BufferedImage image, long timestampMillis) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG encoder available");
+        }
+        ImageWriter writer = writers.next();
+        PooledBufferOutputStream output = new PooledBufferOutputStream(mBufferPool);
+        boolean succeeded = false;
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(mJpegQuality);
+            try (ImageOutputStream imageOutput = new MemoryCacheImageOutputStream(output)) {
+                writer.setOutput(imageOutput);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            CameraFrame frame = CameraFrame.inMemory(output.mBuffer, output.mLength, mBufferPool, mSpillDirectory,
+                    timestampMillis);
+            succeeded = true;
+            return frame;
+        } finally {
+            writer.dispose();
+            if (!succeeded) {
+                mBufferPool.release(output.mBuffer);
+            }
+        }
+    }
+
+    /**
+     * Writes into a buffer drawn from a {@link FrameBufferPool}, replacing it with a larger one when full. Ownership
+     * of the final buffer passes to whoever reads {@link #mBuffer}.
+     */
+    private static final class PooledBufferOutputStream extends OutputStream {
+
+        private final FrameBufferPool mBufferPool;
+
+        private byte[] mBuffer;
+
+        private int mLength = 0;
+
+        private PooledBufferOutputStream(FrameBufferPool bufferPool) {
+            mBufferPool = bufferPool;
+            mBuffer = bufferPool.acquire(0);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(mLength + 1);
+            mBuffer[mLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(mLength + len);
+            System.arraycopy(b, off, mBuffer, mLength, len);
+            mLength += len;
+        }
+
+        private void ensureCapacity(int minCapacity) {
+            if (minCapacity <= mBuffer.length) {
+                return;
+            }
+            byte[] larger = mBufferPool.acquire(Math.max(minCapacity, mBuffer.length * 2));
+            System.arraycopy(mBuffer, 0, larger, 0, mLength);
+            mBufferPool.release(mBuffer);
+            mBuffer = larger;
+        }
+    }
+
+}
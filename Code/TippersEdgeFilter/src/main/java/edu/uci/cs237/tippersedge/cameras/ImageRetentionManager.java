@@ -0,0 +1,244 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Bounds the disk space taken up by the images kept in the cameras' output directories. Frames that are rejected by
+ * the filter delete their own files (see {@link CameraFrame#ownedFile(String)}); the files of included frames are
+ * handed to this manager, which deletes the least-recently used files whenever the retained images exceed a byte
+ * budget, as well as any files older than an age budget.
+ * <p>
+ * A file is never deleted while its frame is still in use (see {@link CameraFrame#isReferenced()}), in particular
+ * while the frame is held by a handler's sample cache and may hence be compared against as the previous image. The
+ * budgets may hence be exceeded by (at most) the images held by the sample caches. A single manager may be shared by
+ * several cameras, such that the budget applies to all of them. It is thread safe.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class ImageRetentionManager {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageRetentionManager.class.getName());
+
+    /**
+     * The names of the images written by {@link CameraRestClient#sample()}. Spilled frames, whose names carry a
+     * sequence number, are not matched as they are deleted along with their frames.
+     */
+    private static final Pattern IMAGE_FILENAME = Pattern.compile("img\\d+\\.jpg");
+
+    private final long mMaxBytes;
+
+    private final long mMaxAgeMillis;
+
+    /**
+     * The retained images in least-recently used order, keyed by path. Guarded by {@code this}.
+     */
+    private final Map<String, RetainedImage> mImages = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The total size of {@link #mImages}. Guarded by {@code this}.
+     */
+    private long mRetainedBytes = 0;
+
+    private final MetricSet mMetrics = new MetricSet();
+
+    private final Counter mEvictedImages = mMetrics.counter("evictedImages");
+
+    private final Counter mEvictedBytes = mMetrics.counter("evictedBytes");
+
+    /**
+     * Create a new {@code ImageRetentionManager}.
+     * @param maxBytes The maximum total size of the retained images, or {@code 0} for no limit.
+     * @param maxAgeMillis The maximum age of retained images (by the time they were sampled), or {@code 0} for no
+     *                     limit.
+     */
+    public ImageRetentionManager(long maxBytes, long maxAgeMillis) {
+        if (maxBytes < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("maxBytes and maxAgeMillis cannot be negative");
+        }
+        mMaxBytes = maxBytes;
+        mMaxAgeMillis = maxAgeMillis;
+        mMetrics.gauge("retainedImages", this::getRetainedImageCount);
+        mMetrics.gauge("retainedBytes", this::getRetainedBytes);
+    }
+
+    /**
+     * Get the metrics of this {@code ImageRetentionManager}: the number and total size of the retained images
+     * ({@code retainedImages}, {@code retainedBytes}), and the number and total size of the images deleted to stay
+     * within budget ({@code evictedImages}, {@code evictedBytes}).
+     * @return the metrics of this {@code ImageRetentionManager}.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Put the images left in a directory by a previous run under management (oldest first), and delete the images
+     * that exceed the budget. Invoke this once per output directory before sampling starts.
+     * @param directory The output directory of a camera. Only images named like those written by
+     *                  {@link CameraRestClient#sample()} are considered.
+     */
+    public void scan(String directory) {
+        File[] files = new File(directory).listFiles((dir, name) -> IMAGE_FILENAME.matcher(name).matches());
+        if (files == null) {
+            // The directory does not exist (yet).
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File file : files) {
+                add(new RetainedImage(file.getPath(), file.length(), file.lastModified(), null));
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Put the file of an included frame under management, and delete the images that exceed the budget.
+     * @param frame The included frame. Ignored unless it owns its file (see {@link CameraFrame#ownedFile(String)}), in
+     *              which case the file is {@link CameraFrame#keepFile() kept} when the frame is released.
+     */
+    public void retain(CameraFrame frame) {
+        if (!frame.keepFile()) {
+            return;
+        }
+        String filepath;
+        try {
+            filepath = frame.getFilepath();
+        } catch (IOException e) {
+            // Cannot happen for a file-backed frame.
+            throw new IllegalStateException(e);
+        }
+        synchronized (this) {
+            add(new RetainedImage(filepath, new File(filepath).length(), frame.getTimestampMillis(), frame));
+        }
+        evict();
+    }
+
+    /**
+     * Mark the file of a frame as recently used (e.g., because it was compared against), such that it is evicted
+     * after less recently used images.
+     * @param frame The frame.
+     */
+    public void touch(CameraFrame frame) {
+        if (frame.isInMemory()) {
+            return;
+        }
+        try {
+            String filepath = frame.getFilepath();
+            synchronized (this) {
+                // Reading an entry of an access-ordered map moves it to the most-recently used end.
+                mImages.get(filepath);
+            }
+        } catch (IOException e) {
+            // Cannot happen for a file-backed frame.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the number of retained images.
+     * @return the number of retained images.
+     */
+    public synchronized int getRetainedImageCount() {
+        return mImages.size();
+    }
+
+    /**
+     * Get the total size of the retained images.
+     * @return the total size of the retained images in bytes.
+     */
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    private void add(RetainedImage image) {
+        RetainedImage previous = mImages.put(image.mFilepath, image);
+        if (previous != null) {
+            mRetainedBytes -= previous.mBytes;
+        }
+        mRetainedBytes += image.mBytes;
+    }
+
+    /**
+     * Delete least-recently used images while over the byte budget, and images older than the age budget, skipping
+     * images whose frames are still in use. Files are deleted outside the lock.
+     */
+    private void evict() {
+        List<RetainedImage> evicted = new ArrayList<>();
+        synchronized (this) {
+            long expiry = mMaxAgeMillis > 0 ? System.currentTimeMillis() - mMaxAgeMillis : Long.MIN_VALUE;
+            Iterator<RetainedImage> images = mImages.values().iterator();
+            while (images.hasNext()) {
+                RetainedImage image = images.next();
+                boolean overBudget = mMaxBytes > 0 && mRetainedBytes > mMaxBytes;
+                if (!overBudget && mMaxAgeMillis == 0) {
+                    // Only the age budget requires looking past the least-recently used images.
+                    break;
+                }
+                if (!overBudget && image.mTimestampMillis >= expiry) {
+                    continue;
+                }
+                if (image.mFrame != null) {
+                    if (image.mFrame.isReferenced()) {
+                        // Pinned, e.g., by a sample cache.
+                        continue;
+                    }
+                    // Released frames are never used again; let them be garbage collected.
+                    image.mFrame = null;
+                }
+                images.remove();
+                mRetainedBytes -= image.mBytes;
+                evicted.add(image);
+            }
+        }
+        for (RetainedImage image : evicted) {
+            if (!new File(image.mFilepath).delete() && new File(image.mFilepath).exists()) {
+                LOGGER.warning(String.format("[ Could not delete retained img '%s' ]", image.mFilepath));
+                continue;
+            }
+            mEvictedImages.increment();
+            mEvictedBytes.add(image.mBytes);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("[ Deleted retained img '%s' ]", image.mFilepath));
+            }
+        }
+    }
+
+    private static final class RetainedImage {
+
+        private final String mFilepath;
+
+        private final long mBytes;
+
+        private final long mTimestampMillis;
+
+        /**
+         * The frame of the image, or {@code null} if released (or if the image was found by {@link #scan(String)}).
+         * Guarded by the enclosing manager.
+         */
+        private CameraFrame mFrame;
+
+        private RetainedImage(String filepath, long bytes, long timestampMillis, CameraFrame frame) {
+            mFilepath = filepath;
+            mBytes = bytes;
+            mTimestampMillis = timestampMillis;
+            mFrame = frame;
+        }
+    }
+
+}
@@ -20,6 +20,14 @@ public interface ImageSupplier {
      */
     BufferedImage downloadImage(String webTargetUrl) throws IOException;
 
+    /**
+     * Download an image from a REST endpoint into memory without decoding it.
+     * @param webTargetUrl REST Endpoint that serves the image to be downloaded.
+     * @return An in-memory {@link CameraFrame} holding the raw (encoded) image, or {@code null} if the download failed.
+     * @throws IOException
+     */
+    CameraFrame downloadFrame(String webTargetUrl) throws IOException;
+
 
     /**
      * Download an image from a REST endpoint and store it on disk.
@@ -2,6 +2,7 @@ package edu.uci.cs237.tippersedge.cameras;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -24,6 +25,21 @@ public class MockImageSupplier implements ImageSupplier {
         }
     }
 
+    @Override
+    public CameraFrame downloadFrame(String webTargetUrl) throws IOException {
+        try (InputStream resourceInputStream = MockImageSupplier.class.getResourceAsStream("/img/eagle.jpg")) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int readBytes;
+            while ((readBytes = resourceInputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, readBytes);
+            }
+            byte[] bytes = output.toByteArray();
+            return CameraFrame.inMemory(bytes, bytes.length, null, System.getProperty("java.io.tmpdir"),
+                    System.currentTimeMillis());
+        }
+    }
+
     @Override
     public boolean downloadAndStoreImage(String webTargetUrl, String fileName) throws IOException {
         return true;
@@ -0,0 +1,185 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.ExecutionMode;
+import edu.uci.cs237.tippersedge.darknet.DarknetConfig;
+import edu.uci.cs237.tippersedge.darknet.Detector;
+import edu.uci.cs237.tippersedge.darknet.FairDetectionScheduler;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+import edu.uci.cs237.tippersedge.sensoria.ImageUploader;
+
+import javax.ws.rs.client.Client;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Samples several cameras, each with its own {@link CameraSampleHandler} (and hence its own sampling rate and sample
+ * cache), while sharing everything that is expensive:
+ * <ul>
+ *     <li>the threads that run the handlers' ticks (a single {@link ScheduledExecutorService}, backed by platform or
+ *     virtual threads depending on the {@link ExecutionMode});</li>
+ *     <li>the JAX-RS client (and hence its connection pool) and the buffers for in-memory images;</li>
+ *     <li>the object detector, which serves the cameras in round-robin order through a {@link FairDetectionScheduler}
+ *     such that a busy camera cannot starve the others, and which may analyze the images of several cameras in a
+ *     single batch.</li>
+ * </ul>
+ * Adding a camera hence costs a periodic task and a {@link CameraRestClient}, not another thread pool and another set
+ * of Darknet processes.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class MultiCameraSampler {
+
+    private final ScheduledExecutorService mScheduledExecutor;
+
+    private final Client mRestClient;
+
+    private final FairDetectionScheduler mDetectionScheduler;
+
+    private final List<CameraRestClient> mCameraRestClients = new ArrayList<>();
+
+    /**
+     * The handlers, keyed by camera identifier, in the order the cameras were specified.
+     */
+    private final Map<String, CameraSampleHandler> mHandlers = new LinkedHashMap<>();
+
+    /**
+     * Create a {@code MultiCameraSampler} for the cameras specified by {@link CameraConfig}.
+     * @param sampleCacheSize The maximum number of cached images per camera.
+     * @param detector Performs object detection for all cameras. It is not closed by this class.
+     * @param detectionConcurrency The maximum number of concurrent invocations of {@code detector}, e.g., the number of
+     *                             resident Darknet processes.
+     * @param preFilterFactory Creates the pre-filter of each camera, or {@code null} to pass every image to Darknet.
+     * @param imageUploader Uploads images that are to slip through the filter.
+     */
+    public MultiCameraSampler(int sampleCacheSize, Detector detector, int detectionConcurrency,
+                              Supplier<? extends FramePreFilter> preFilterFactory, ImageUploader imageUploader) {
+        this(CameraConfig.getCameras(), CameraConfig.isZeroDisk(), CameraConfig.getExecutionMode(),
+                CameraConfig.getSchedulerThreadCount(), sampleCacheSize, detector, detectionConcurrency,
+                DarknetConfig.getDetectionBatchSize(), DarknetConfig.getDetectionLingerMillis(), preFilterFactory,
+                imageUploader);
+    }
+
+    /**
+     * Create a new {@code MultiCameraSampler}.
+     * @param cameras The cameras to sample.
+     * @param zeroDisk If {@code true}, images are kept in memory and only written to disk if a file is required.
+     * @param executionMode The kind of threads that run the cameras' ticks.
+     * @param schedulerThreads The number of threads shared by all cameras for sampling and filtering. A thread is
+     *                         occupied by a camera while the camera's image awaits object detection, so this should
+     *                         at least be {@code detectionConcurrency * detectionBatchSize}. Ignored in
+     *                         {@link ExecutionMode#VIRTUAL} mode, where each tick runs on a virtual thread of its own.
+     *                         Must be positive regardless.
+     * @param sampleCacheSize The maximum number of cached images per camera.
+     * @param detector Performs object detection for all cameras. It is not closed by this class.
+     * @param detectionConcurrency The maximum number of concurrent invocations of {@code detector}, e.g., the number of
+     *                             resident Darknet processes.
+     * @param detectionBatchSize The maximum number of images (from any cameras) handed to {@code detector} at once.
+     *                           Use {@code 1} to disable batching.
+     * @param detectionLingerMillis The maximum time to wait for a batch of images to fill up.
+     * @param preFilterFactory Creates the pre-filter of each camera, or {@code null} to pass every image to Darknet.
+     * @param imageUploader Uploads images that are to slip through the filter.
+     */
+    public MultiCameraSampler(List<CameraSettings> cameras, boolean zeroDisk, ExecutionMode executionMode,
+                              int schedulerThreads, int sampleCacheSize, Detector detector, int detectionConcurrency,
+                              int detectionBatchSize, long detectionLingerMillis,
+                              Supplier<? extends FramePreFilter> preFilterFactory, ImageUploader imageUploader) {
+        if (schedulerThreads < 1) {
+            throw new IllegalArgumentException("schedulerThreads must be positive");
+        }
+        mScheduledExecutor = executionMode.newScheduledExecutor("camera-tick", schedulerThreads);
+        mRestClient = CameraRestClient.newRestClient();
+        mDetectionScheduler = new FairDetectionScheduler(detector, detectionConcurrency, detectionBatchSize,
+                detectionLingerMillis);
+        FrameBufferPool bufferPool = new FrameBufferPool();
+        for (CameraSettings camera : cameras) {
+            if (mHandlers.containsKey(camera.getId())) {
+                throw new IllegalArgumentException(String.format("Duplicate camera id '%s'", camera.getId()));
+            }
+            CameraRestClient cameraRestClient = new CameraRestClient(camera, zeroDisk, mRestClient, bufferPool);
+            mCameraRestClients.add(cameraRestClient);
+            // Pre-filters cache state about the previous frame, so every camera gets its own.
+            FramePreFilter preFilter = preFilterFactory != null ? preFilterFactory.get() : null;
+            CameraSampleHandler handler = new CameraSampleHandler(cameraRestClient, sampleCacheSize,
+                    camera.getSampleRateMillis(), mScheduledExecutor, mDetectionScheduler.forSource(camera.getId()),
+                    preFilter, imageUploader);
+            if (camera.isAdaptiveSampling()) {
+                handler.setAdaptiveSampling(camera.newSamplingPolicy());
+            }
+            if (camera.getPreprocessing().isEnabled()) {
+                handler.setFramePreprocessor(new FramePreprocessor(camera.getPreprocessing(),
+                        camera.getSpillDirectory()));
+            }
+            mHandlers.put(camera.getId(), handler);
+        }
+    }
+
+    /**
+     * Starts periodic sampling of all cameras.
+     */
+    public void startPeriodicSampling() {
+        for (CameraSampleHandler handler : mHandlers.values()) {
+            handler.startPeriodicSampling();
+        }
+    }
+
+    /**
+     * Stops periodic sampling of all cameras and releases the shared resources (except for the detector).
+     * @param awaitTermination Set to {@code true} if caller wishes to block while waiting for ongoing ticks to finish.
+     * @param timeoutMillis The maximum number of milliseconds to wait for ongoing ticks to finish.
+     *                      Ignored if {@code awaitTermination} is {@code false}.
+     */
+    public void stopPeriodicSampling(boolean awaitTermination, long timeoutMillis) {
+        // Stop all cameras first such that no camera starts a new tick while we wait for the others.
+        for (CameraSampleHandler handler : mHandlers.values()) {
+            handler.stopPeriodicSampling(false, 0);
+        }
+        if (awaitTermination) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            for (CameraSampleHandler handler : mHandlers.values()) {
+                handler.stopPeriodicSampling(true, Math.max(0, deadline - System.currentTimeMillis()));
+            }
+        }
+        mScheduledExecutor.shutdown();
+        mDetectionScheduler.close();
+        for (CameraRestClient cameraRestClient : mCameraRestClients) {
+            cameraRestClient.close();
+        }
+        mRestClient.close();
+    }
+
+    /**
+     * Get the handlers of the cameras.
+     * @return an unmodifiable map from camera identifier to the camera's handler.
+     */
+    public Map<String, CameraSampleHandler> getHandlers() {
+        return Collections.unmodifiableMap(mHandlers);
+    }
+
+    /**
+     * Get the metrics of all cameras (keyed by camera identifier) and of the detection scheduler
+     * ({@code detectionScheduler}).
+     * @return the metrics of all cameras and of the detection scheduler.
+     */
+    public MetricSet getMetrics() {
+        MetricSet metrics = new MetricSet();
+        for (Map.Entry<String, CameraSampleHandler> entry : mHandlers.entrySet()) {
+            metrics.register(entry.getKey(), entry.getValue().getMetrics());
+        }
+        metrics.register("detectionScheduler", mDetectionScheduler.getMetrics());
+        return metrics;
+    }
+
+    /**
+     * Get the scheduler that shares the detector between the cameras.
+     * @return the scheduler that shares the detector between the cameras.
+     */
+    public FairDetectionScheduler getDetectionScheduler() {
+        return mDetectionScheduler;
+    }
+
+}
@@ -0,0 +1,199 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link FramePreFilter} that compares downscaled grayscale versions ("thumbnails") of the two images pixel by pixel.
+ * A thumbnail pixel is considered changed if its intensity differs by more than a configurable threshold, and the new
+ * image is escalated to object detection if the fraction of changed pixels exceeds a configurable threshold.
+ * <p>
+ * Thumbnails are cheap to compute as JPEGs are decoded with source subsampling (directly from memory for in-memory
+ * frames), and the thumbnails of recently seen frames are cached, so the previous frame is usually not decoded again.
+ * The filter keeps track of how many frames it has short-circuited (and escalated) such that its thresholds can be
+ * tuned against the cost of object detection.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class PixelDiffPreFilter implements FramePreFilter {
+
+    /**
+     * Default minimum difference in intensity (on a scale from 0 to 255) for a thumbnail pixel to be considered changed.
+     * Chosen to be above the noise level of JPEG compression and sensor noise in low light.
+     */
+    public static final int DEFAULT_PIXEL_THRESHOLD = 24;
+
+    /**
+     * Default fraction of thumbnail pixels that must change for the new image to be escalated to object detection.
+     */
+    public static final double DEFAULT_CHANGED_FRACTION = 0.02;
+
+    /**
+     * Width and height of the thumbnails.
+     */
+    private static final int THUMBNAIL_SIZE = 32;
+
+    /**
+     * The number of thumbnails to cache.
+     */
+    private static final int THUMBNAIL_CACHE_SIZE = 16;
+
+    private final int mPixelThreshold;
+
+    private final double mChangedFraction;
+
+    /**
+     * Thumbnails of recently seen frames, keyed by the frames' content hashes. Access must be synchronized on the map
+     * itself.
+     */
+    private final Map<Long, byte[]> mThumbnails = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > THUMBNAIL_CACHE_SIZE;
+        }
+    };
+
+    private final AtomicLong mShortCircuited = new AtomicLong();
+    private final AtomicLong mEscalated = new AtomicLong();
+
+    /**
+     * Create a {@code PixelDiffPreFilter} using {@link #DEFAULT_PIXEL_THRESHOLD} and {@link #DEFAULT_CHANGED_FRACTION}.
+     */
+    public PixelDiffPreFilter() {
+        this(DEFAULT_PIXEL_THRESHOLD, DEFAULT_CHANGED_FRACTION);
+    }
+
+    /**
+     * Create a new {@code PixelDiffPreFilter}.
+     * @param pixelThreshold The minimum difference in intensity (on a scale from 0 to 255) for a thumbnail pixel to be
+     *                       considered changed.
+     * @param changedFraction The fraction of thumbnail pixels (between 0 and 1) that must change for the new image to
+     *                        be escalated to object detection.
+     */
+    public PixelDiffPreFilter(int pixelThreshold, double changedFraction) {
+        if (pixelThreshold < 0 || pixelThreshold > 255) {
+            throw new IllegalArgumentException("pixelThreshold must be between 0 and 255");
+        }
+        if (changedFraction < 0 || changedFraction > 1) {
+            throw new IllegalArgumentException("changedFraction must be between 0 and 1");
+        }
+        mPixelThreshold = pixelThreshold;
+        mChangedFraction = changedFraction;
+    }
+
+    @Override
+    public boolean hasChanged(CameraFrame previousFrame, CameraFrame newFrame) throws IOException {
+        byte[] previous = getThumbnail(previousFrame);
+        byte[] next = getThumbnail(newFrame);
+        int changedPixels = 0;
+        for (int i = 0; i < previous.length; i++) {
+            if (Math.abs((previous[i] & 0xff) - (next[i] & 0xff)) > mPixelThreshold) {
+                changedPixels++;
+            }
+        }
+        boolean changed = changedPixels > mChangedFraction * previous.length;
+        if (changed) {
+            mEscalated.incrementAndGet();
+        } else {
+            mShortCircuited.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * Get the number of frames that this pre-filter deemed identical to the previous frame, i.e., the number of times
+     * object detection was skipped.
+     * @return the number of frames that were short-circuited.
+     */
+    public long getShortCircuitedCount() {
+        return mShortCircuited.get();
+    }
+
+    /**
+     * Get the number of frames that this pre-filter escalated to object detection.
+     * @return the number of frames that were escalated.
+     */
+    public long getEscalatedCount() {
+        return mEscalated.get();
+    }
+
+    private byte[] getThumbnail(CameraFrame frame) throws IOException {
+        Long key = frame.getContentHash();
+        synchronized (mThumbnails) {
+            byte[] cached = mThumbnails.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Compute the thumbnail outside the synchronized block as decoding is (relatively) slow.
+        byte[] pixels;
+        try (InputStream input = frame.openStream()) {
+            pixels = computeThumbnail(input, frame);
+        }
+        synchronized (mThumbnails) {
+            mThumbnails.put(key, pixels);
+        }
+        return pixels;
+    }
+
+    /**
+     * Decode the image and downscale it to a {@code THUMBNAIL_SIZE x THUMBNAIL_SIZE} grayscale image by averaging the
+     * intensities of the pixels that map to each thumbnail pixel.
+     */
+    private static byte[] computeThumbnail(InputStream source, CameraFrame frame) throws IOException {
+        BufferedImage img;
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                throw new IOException(String.format("Could not open image '%s'", frame));
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException(String.format("Unsupported image format: '%s'", frame));
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // Let the decoder skip pixels we would average away anyway, but keep a few samples per thumbnail pixel.
+                int subsampling = Math.max(1,
+                        Math.min(reader.getWidth(0), reader.getHeight(0)) / (THUMBNAIL_SIZE * 4));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                img = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        int width = img.getWidth();
+        int height = img.getHeight();
+        int[] sums = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+        int[] counts = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            img.getRGB(0, y, width, 1, row, 0, width);
+            int rowOffset = (y * THUMBNAIL_SIZE / height) * THUMBNAIL_SIZE;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int luma = (299 * ((rgb >> 16) & 0xff) + 587 * ((rgb >> 8) & 0xff) + 114 * (rgb & 0xff)) / 1000;
+                int i = rowOffset + x * THUMBNAIL_SIZE / width;
+                sums[i] += luma;
+                counts[i]++;
+            }
+        }
+        byte[] pixels = new byte[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (counts[i] == 0 ? 0 : sums[i] / counts[i]);
+        }
+        return pixels;
+    }
+
+}
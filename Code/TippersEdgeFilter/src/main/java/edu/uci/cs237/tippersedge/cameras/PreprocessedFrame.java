@@ -0,0 +1,108 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.darknet.ImageInput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The image handed to the detector in place of a {@link CameraFrame} when a {@link FramePreprocessor} is configured.
+ * The frame is only preprocessed once the detector actually reads the image, so no work is done for a frame whose
+ * detected objects are already memoized by a {@link edu.uci.cs237.tippersedge.darknet.DetectionCache}. For the same
+ * reason, a {@code PreprocessedFrame} is equal to, and has the same content hash as, every other
+ * {@code PreprocessedFrame} of the same original frame.
+ * <p>
+ * If the frame cannot be preprocessed, the original frame is handed to the detector instead.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class PreprocessedFrame implements ImageInput {
+
+    private static final Logger LOGGER = Logger.getLogger(PreprocessedFrame.class.getName());
+
+    private final CameraFrame mOriginal;
+
+    private final FramePreprocessor mPreprocessor;
+
+    /**
+     * The preprocessed frame, or {@code null} if not (yet) preprocessed. Guarded by {@code this}.
+     */
+    private CameraFrame mPreprocessed;
+
+    /**
+     * {@code true} if preprocessing failed and the original frame is used instead. Guarded by {@code this}.
+     */
+    private boolean mFailed;
+
+    /**
+     * Create a new {@code PreprocessedFrame}.
+     * @param original The frame as delivered by the camera. The caller must hold a reference to it until this
+     *                 {@code PreprocessedFrame} is {@link #release() released}.
+     * @param preprocessor Prepares {@code original} for object detection.
+     */
+    PreprocessedFrame(CameraFrame original, FramePreprocessor preprocessor) {
+        mOriginal = original;
+        mPreprocessor = preprocessor;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return image().openStream();
+    }
+
+    @Override
+    public String getFilepath() throws IOException {
+        return image().getFilepath();
+    }
+
+    /**
+     * Get the content hash of the original frame, such that detection results are memoized per original frame.
+     * @return the content hash of the original frame.
+     * @throws IOException if the file of a file-backed original frame could not be read.
+     */
+    @Override
+    public long getContentHash() throws IOException {
+        return mOriginal.getContentHash();
+    }
+
+    /**
+     * Release the preprocessed frame (if any). The original frame is not released.
+     */
+    synchronized void release() {
+        if (mPreprocessed != null) {
+            mPreprocessed.release();
+            mPreprocessed = null;
+        }
+    }
+
+    private synchronized ImageInput image() {
+        if (mPreprocessed == null && !mFailed) {
+            try {
+                mPreprocessed = mPreprocessor.preprocess(mOriginal);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("[ Could not preprocess img '%s'; detecting objects in original img ]", mOriginal), e);
+                mFailed = true;
+            }
+        }
+        return mPreprocessed != null ? mPreprocessed : mOriginal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PreprocessedFrame && ((PreprocessedFrame) o).mOriginal == mOriginal;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(mOriginal);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("preprocessed %s", mOriginal);
+    }
+
+}
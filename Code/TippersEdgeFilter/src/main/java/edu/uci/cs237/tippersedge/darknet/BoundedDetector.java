@@ -0,0 +1,142 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A {@link Detector} that bounds the number of concurrent invocations of another {@link Detector} using a (fair)
+ * semaphore. Object detection is CPU-bound, so when it is invoked from virtual threads (see
+ * {@link edu.uci.cs237.tippersedge.ExecutionMode#VIRTUAL}), which are not bounded in number, the detections beyond
+ * the number of cores would only compete for the same cores (and for memory) while delaying each other. Callers that
+ * do not get a permit right away wait (in arrival order) without holding on to a platform thread.
+ * <p>
+ * Use it for callers that invoke a detector directly. Do not wrap the detector of a {@link FairDetectionScheduler}:
+ * the scheduler's dispatcher threads already bound the number of concurrent invocations, and a dispatcher blocked on
+ * a permit would hold up the requests the scheduler believes it is serving. Size the scheduler's concurrency instead.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class BoundedDetector implements Detector {
+
+    private final Detector mDetector;
+
+    private final Semaphore mPermits;
+
+    private final MetricSet mMetrics = new MetricSet();
+
+    private final LatencyHistogram mPermitWait = mMetrics.histogram("permitWait");
+
+    /**
+     * Create a {@code BoundedDetector} that allows as many concurrent detections as there are cores.
+     * @param detector Performs the actual object detection.
+     */
+    public BoundedDetector(Detector detector) {
+        this(detector, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new {@code BoundedDetector}.
+     * @param detector Performs the actual object detection.
+     * @param permits The maximum number of concurrent invocations of {@code detector}. A batch counts as a single
+     *                invocation.
+     */
+    public BoundedDetector(Detector detector, int permits) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        mDetector = Objects.requireNonNull(detector, "detector cannot be null");
+        mPermits = new Semaphore(permits, true);
+        mMetrics.gauge("availablePermits", mPermits::availablePermits);
+        mMetrics.gauge("waiting", mPermits::getQueueLength);
+    }
+
+    /**
+     * Get the metrics of this {@code BoundedDetector}: the time spent waiting for a permit ({@code permitWait}), the
+     * number of permits not in use ({@code availablePermits}) and the number of callers waiting for a permit
+     * ({@code waiting}).
+     * @return the metrics of this {@code BoundedDetector}.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(String imageFilepath) throws IOException, InterruptedException {
+        acquire();
+        try {
+            return mDetector.exec(imageFilepath);
+        } finally {
+            mPermits.release();
+        }
+    }
+
+    @Override
+    public void exec(String imageFilepath, DetectionListener listener) throws IOException, InterruptedException {
+        acquire();
+        try {
+            mDetector.exec(imageFilepath, listener);
+        } finally {
+            mPermits.release();
+        }
+    }
+
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(ImageInput image) throws IOException, InterruptedException {
+        acquire();
+        try {
+            return mDetector.exec(image);
+        } finally {
+            mPermits.release();
+        }
+    }
+
+    @Override
+    public void exec(ImageInput image, DetectionListener listener) throws IOException, InterruptedException {
+        acquire();
+        try {
+            mDetector.exec(image, listener);
+        } finally {
+            mPermits.release();
+        }
+    }
+
+    @Override
+    public List<List<DarknetProcess.DetectedObject>> detectBatch(List<? extends ImageInput> images)
+            throws IOException, InterruptedException {
+        acquire();
+        try {
+            return mDetector.detectBatch(images);
+        } finally {
+            mPermits.release();
+        }
+    }
+
+    /**
+     * Closes the underlying detector.
+     */
+    @Override
+    public void close() {
+        mDetector.close();
+    }
+
+    /**
+     * Closes the underlying detector, letting the detections in progress complete.
+     */
+    @Override
+    public boolean close(long timeoutMillis) throws InterruptedException {
+        return mDetector.close(timeoutMillis);
+    }
+
+    private void acquire() throws InterruptedException {
+        long start = System.nanoTime();
+        mPermits.acquire();
+        mPermitWait.recordSince(start);
+    }
+
+}
@@ -0,0 +1,110 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+/**
+ * The rectangle enclosing a detected object, in pixel coordinates of the image with the origin at the top left corner.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class BoundingBox {
+
+    private final int mLeft;
+    private final int mTop;
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * Create a new {@code BoundingBox}.
+     * @param left The x coordinate of the left edge (may be negative if the object extends beyond the image).
+     * @param top The y coordinate of the top edge (may be negative if the object extends beyond the image).
+     * @param width The width of the box.
+     * @param height The height of the box.
+     */
+    public BoundingBox(int left, int top, int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("width and height cannot be negative");
+        }
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Get the x coordinate of the left edge.
+     * @return the x coordinate of the left edge.
+     */
+    public int getLeft() {
+        return mLeft;
+    }
+
+    /**
+     * Get the y coordinate of the top edge.
+     * @return the y coordinate of the top edge.
+     */
+    public int getTop() {
+        return mTop;
+    }
+
+    /**
+     * Get the width of the box.
+     * @return the width of the box.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get the height of the box.
+     * @return the height of the box.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get the area of the box.
+     * @return the area of the box in square pixels.
+     */
+    public long getArea() {
+        return (long) mWidth * mHeight;
+    }
+
+    /**
+     * Compute the intersection over union (Jaccard index) of this box and another box, i.e., how well the two boxes
+     * agree on the position and size of an object.
+     * @param other The other box.
+     * @return a value between {@code 0} (disjoint boxes) and {@code 1} (identical boxes).
+     */
+    public double intersectionOverUnion(BoundingBox other) {
+        long intersectionWidth = Math.min((long) mLeft + mWidth, (long) other.mLeft + other.mWidth) -
+                Math.max(mLeft, other.mLeft);
+        long intersectionHeight = Math.min((long) mTop + mHeight, (long) other.mTop + other.mHeight) -
+                Math.max(mTop, other.mTop);
+        if (intersectionWidth <= 0 || intersectionHeight <= 0) {
+            return 0;
+        }
+        long intersection = intersectionWidth * intersectionHeight;
+        long union = getArea() + other.getArea() - intersection;
+        return union == 0 ? 1 : (double) intersection / union;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof BoundingBox)) {
+            return false;
+        }
+        BoundingBox other = (BoundingBox) obj;
+        return mLeft == other.mLeft && mTop == other.mTop && mWidth == other.mWidth && mHeight == other.mHeight;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((mLeft * 31 + mTop) * 31 + mWidth) * 31 + mHeight;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(left: %d, top: %d, width: %d, height: %d)", mLeft, mTop, mWidth, mHeight);
+    }
+
+}
@@ -18,10 +18,38 @@ public class DarknetConfig {
 
     // ==== Begin keys used in properties file ====
     private static final String DARKNET_DIR_KEY = "darknetDir";
+    private static final String DARKNET_WORKERS_KEY = "darknetWorkers";
+    private static final String DARKNET_TIMEOUT_KEY = "darknetTimeoutMillis";
+    private static final String DARKNET_EXT_OUTPUT_KEY = "darknetExtOutput";
+    private static final String SCENE_MIN_CONFIDENCE_KEY = "sceneMinConfidence";
+    private static final String SCENE_CONFIDENCE_TOLERANCE_KEY = "sceneConfidenceTolerance";
+    private static final String SCENE_MIN_IOU_KEY = "sceneMinIntersectionOverUnion";
+    private static final String DETECTOR_KEY = "detector";
+    private static final String DETECTOR_INPUT_SIZE_KEY = "detectorInputSize";
+    private static final String DETECTOR_CONFIDENCE_THRESHOLD_KEY = "detectorConfidenceThreshold";
+    private static final String DETECTOR_NMS_THRESHOLD_KEY = "detectorNmsThreshold";
+    private static final String FAKE_DETECTOR_LATENCY_KEY = "fakeDetectorLatencyMillis";
+    private static final String DETECTION_BATCH_SIZE_KEY = "detectionBatchSize";
+    private static final String DETECTION_LINGER_KEY = "detectionLingerMillis";
+    private static final String DETECTION_PERMITS_KEY = "detectionPermits";
     // ===== End keys used in properties file =====
 
     // ==== Begin cached values of PROPERTIES contents ====
     private static final String DARKNET_DIR;
+    private static final int DARKNET_WORKERS;
+    private static final long DARKNET_TIMEOUT;
+    private static final boolean DARKNET_EXT_OUTPUT;
+    private static final int SCENE_MIN_CONFIDENCE;
+    private static final int SCENE_CONFIDENCE_TOLERANCE;
+    private static final double SCENE_MIN_IOU;
+    private static final DetectorBackend DETECTOR;
+    private static final int DETECTOR_INPUT_SIZE;
+    private static final double DETECTOR_CONFIDENCE_THRESHOLD;
+    private static final double DETECTOR_NMS_THRESHOLD;
+    private static final long FAKE_DETECTOR_LATENCY;
+    private static final int DETECTION_BATCH_SIZE;
+    private static final long DETECTION_LINGER;
+    private static final int DETECTION_PERMITS;
     // ===== End cached values of PROPERTIES contents =====
 
     static {
@@ -30,6 +58,37 @@ public class DarknetConfig {
             PROPERTIES.load(DarknetConfig.class.getResourceAsStream(DARKNET_CONFIG_FILENAME));
             DARKNET_DIR = Objects.requireNonNull(PROPERTIES.getProperty(DARKNET_DIR_KEY, null),
                     String.format("No value for key '%s' in properties file '%s'", DARKNET_DIR_KEY, DARKNET_CONFIG_FILENAME));
+            // Optional key; default to a single resident Darknet process.
+            DARKNET_WORKERS = Integer.parseInt(PROPERTIES.getProperty(DARKNET_WORKERS_KEY, "1"));
+            // Optional key; 0 disables the timeout.
+            DARKNET_TIMEOUT = Long.parseLong(PROPERTIES.getProperty(DARKNET_TIMEOUT_KEY,
+                    Long.toString(DarknetProcess.DEFAULT_TIMEOUT_MILLIS)));
+            // Optional key; off by default as only AlexeyAB's fork of Darknet understands -ext_output.
+            DARKNET_EXT_OUTPUT = Boolean.parseBoolean(PROPERTIES.getProperty(DARKNET_EXT_OUTPUT_KEY, "false"));
+            // Optional keys; see SceneComparator for the defaults.
+            SCENE_MIN_CONFIDENCE = Integer.parseInt(PROPERTIES.getProperty(SCENE_MIN_CONFIDENCE_KEY,
+                    Integer.toString(SceneComparator.DEFAULT_MIN_CONFIDENCE)));
+            SCENE_CONFIDENCE_TOLERANCE = Integer.parseInt(PROPERTIES.getProperty(SCENE_CONFIDENCE_TOLERANCE_KEY,
+                    Integer.toString(SceneComparator.DEFAULT_CONFIDENCE_TOLERANCE)));
+            SCENE_MIN_IOU = Double.parseDouble(PROPERTIES.getProperty(SCENE_MIN_IOU_KEY,
+                    Double.toString(SceneComparator.DEFAULT_MIN_INTERSECTION_OVER_UNION)));
+            // Optional key; default to running the Darknet command line tool.
+            DETECTOR = DetectorBackend.fromName(PROPERTIES.getProperty(DETECTOR_KEY, DetectorBackend.DARKNET.name()));
+            // Optional keys used by the in-process backend only; see OpenCvDetector for the defaults.
+            DETECTOR_INPUT_SIZE = Integer.parseInt(PROPERTIES.getProperty(DETECTOR_INPUT_SIZE_KEY,
+                    Integer.toString(OpenCvDetector.DEFAULT_INPUT_SIZE)));
+            DETECTOR_CONFIDENCE_THRESHOLD = Double.parseDouble(PROPERTIES.getProperty(DETECTOR_CONFIDENCE_THRESHOLD_KEY,
+                    Double.toString(OpenCvDetector.DEFAULT_CONFIDENCE_THRESHOLD)));
+            DETECTOR_NMS_THRESHOLD = Double.parseDouble(PROPERTIES.getProperty(DETECTOR_NMS_THRESHOLD_KEY,
+                    Double.toString(OpenCvDetector.DEFAULT_NMS_THRESHOLD)));
+            // Optional key used by the fake backend only.
+            FAKE_DETECTOR_LATENCY = Long.parseLong(PROPERTIES.getProperty(FAKE_DETECTOR_LATENCY_KEY, "0"));
+            // Optional keys; default to analyzing images one at a time.
+            DETECTION_BATCH_SIZE = Integer.parseInt(PROPERTIES.getProperty(DETECTION_BATCH_SIZE_KEY, "1"));
+            DETECTION_LINGER = Long.parseLong(PROPERTIES.getProperty(DETECTION_LINGER_KEY, "0"));
+            // Optional key; default to one detection per core.
+            DETECTION_PERMITS = Integer.parseInt(PROPERTIES.getProperty(DETECTION_PERMITS_KEY,
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
         } catch (IOException e) {
             e.printStackTrace();
             throw new MissingResourceException(
@@ -53,4 +112,127 @@ public class DarknetConfig {
         return DARKNET_DIR;
     }
 
+    /**
+     * Get the number of resident Darknet processes to use for object detection. For the in-process backend, this is
+     * the number of networks to load (at least one).
+     * @return the number of resident Darknet processes, or {@code 0} if a new Darknet process is to be spawned for
+     * every image.
+     */
+    public static int getDarknetWorkerCount() {
+        return DARKNET_WORKERS;
+    }
+
+    /**
+     * Get the maximum time Darknet may spend on a single image before it is killed.
+     * @return the timeout in milliseconds (defaults to {@link DarknetProcess#DEFAULT_TIMEOUT_MILLIS}), or {@code 0} if
+     * Darknet may take as long as it likes.
+     */
+    public static long getDarknetTimeoutMillis() {
+        return DARKNET_TIMEOUT;
+    }
+
+    /**
+     * Check if Darknet is to be invoked with {@code -ext_output} such that it reports the bounding box of every
+     * detected object. Only AlexeyAB's fork of Darknet supports this flag; the original Darknet mistakes it for the
+     * image path. Without bounding boxes, the {@link SceneComparator} cannot tell objects apart by position, so a
+     * person walking through the scene goes unnoticed as long as the number of persons stays the same.
+     * @return {@code true} if Darknet is to report bounding boxes (defaults to {@code false}).
+     */
+    public static boolean isDarknetExtOutput() {
+        return DARKNET_EXT_OUTPUT;
+    }
+
+    /**
+     * Get the minimum confidence of detected objects that are considered when comparing scenes.
+     * @return the minimum confidence (percentage) of objects considered by the {@link SceneComparator}.
+     */
+    public static int getSceneMinConfidence() {
+        return SCENE_MIN_CONFIDENCE;
+    }
+
+    /**
+     * Get the maximum difference in confidence between two detections of the same object in consecutive scenes.
+     * @return the confidence tolerance (percentage points) of the {@link SceneComparator}.
+     */
+    public static int getSceneConfidenceTolerance() {
+        return SCENE_CONFIDENCE_TOLERANCE;
+    }
+
+    /**
+     * Get the minimum overlap of the bounding boxes of two detections of the same object in consecutive scenes.
+     * @return the minimum intersection over union (between 0 and 1) of the {@link SceneComparator}.
+     */
+    public static double getSceneMinIntersectionOverUnion() {
+        return SCENE_MIN_IOU;
+    }
+
+    /**
+     * Get the engine that performs object detection.
+     * @return the engine that performs object detection (defaults to {@link DetectorBackend#DARKNET}).
+     */
+    public static DetectorBackend getDetectorBackend() {
+        return DETECTOR;
+    }
+
+    /**
+     * Get the width and height that the in-process backend scales images to before feeding them to the network.
+     * @return the input size of the network (defaults to {@link OpenCvDetector#DEFAULT_INPUT_SIZE}).
+     */
+    public static int getDetectorInputSize() {
+        return DETECTOR_INPUT_SIZE;
+    }
+
+    /**
+     * Get the minimum confidence of the objects reported by the in-process backend.
+     * @return the confidence threshold, between 0 and 1 (defaults to
+     * {@link OpenCvDetector#DEFAULT_CONFIDENCE_THRESHOLD}).
+     */
+    public static double getDetectorConfidenceThreshold() {
+        return DETECTOR_CONFIDENCE_THRESHOLD;
+    }
+
+    /**
+     * Get the maximum overlap of two objects of the same type reported by the in-process backend.
+     * @return the non-maximum suppression threshold, between 0 and 1 (defaults to
+     * {@link OpenCvDetector#DEFAULT_NMS_THRESHOLD}).
+     */
+    public static double getDetectorNmsThreshold() {
+        return DETECTOR_NMS_THRESHOLD;
+    }
+
+    /**
+     * Get the time the fake backend takes per image.
+     * @return the simulated detection latency in milliseconds (defaults to {@code 0}).
+     */
+    public static long getFakeDetectorLatencyMillis() {
+        return FAKE_DETECTOR_LATENCY;
+    }
+
+    /**
+     * Get the maximum number of images handed to the detector in a single call. Only the in-process backend analyzes
+     * a batch in a single inference call; the other backends analyze the images of a batch one at a time.
+     * @return the maximum batch size (defaults to {@code 1}, i.e., no batching).
+     */
+    public static int getDetectionBatchSize() {
+        return DETECTION_BATCH_SIZE;
+    }
+
+    /**
+     * Get the maximum time to wait for more images when fewer images than the batch size await object detection.
+     * @return the linger time in milliseconds (defaults to {@code 0}, i.e., images are dispatched right away).
+     */
+    public static long getDetectionLingerMillis() {
+        return DETECTION_LINGER;
+    }
+
+    /**
+     * Get the maximum number of concurrent detections when ticks run on virtual threads. The cameras' detections are
+     * then dispatched by at most this many threads of their {@link FairDetectionScheduler} (and by no more threads
+     * than there are Darknet workers).
+     * @return the maximum number of concurrent detections (defaults to the number of cores).
+     */
+    public static int getDetectionPermits() {
+        return DETECTION_PERMITS;
+    }
+
 }
@@ -0,0 +1,89 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads Darknet's std.out as it is produced, reporting each detected object to a {@link DetectionListener} as soon as
+ * the line describing it is complete.
+ * <p>
+ * Output is read in bulk into a reused buffer and lines are parsed in place by
+ * {@link DarknetProcess#parseOutputLine(CharSequence)}, so lines that do not describe a detected object (the majority)
+ * are consumed without allocating. Not thread safe.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class DarknetOutputReader {
+
+    private final Reader mReader;
+
+    private final char[] mBuffer = new char[8192];
+
+    /**
+     * The range of {@link #mBuffer} that has been read but not yet consumed.
+     */
+    private int mPosition;
+    private int mLimit;
+
+    /**
+     * The current (incomplete) line.
+     */
+    private final StringBuilder mLine = new StringBuilder(128);
+
+    /**
+     * Create a new {@code DarknetOutputReader}.
+     * @param stdout Darknet's std.out.
+     */
+    DarknetOutputReader(InputStream stdout) {
+        mReader = new InputStreamReader(stdout, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read until the prompt (which is not newline terminated) or the end of the output, reporting detected objects
+     * along the way.
+     * @param prompt The prompt to read until, or {@code null} to read until the end of the output.
+     * @param listener Receives the detected objects, or {@code null} if the output should be ignored.
+     * @return {@code true} if the prompt was seen, {@code false} if the end of the output was reached.
+     * @throws IOException if the output could not be read.
+     */
+    boolean readUntil(String prompt, DetectionListener listener) throws IOException {
+        while (true) {
+            if (mPosition == mLimit) {
+                mLimit = mReader.read(mBuffer);
+                mPosition = 0;
+                if (mLimit == -1) {
+                    mLimit = 0;
+                    // A final line without a newline.
+                    endLine(listener);
+                    return false;
+                }
+            }
+            char c = mBuffer[mPosition++];
+            if (c == '\n') {
+                endLine(listener);
+                continue;
+            }
+            mLine.append(c);
+            // The prompt is not newline terminated, so check for it as characters arrive.
+            if (prompt != null && mLine.length() == prompt.length() && prompt.contentEquals(mLine)) {
+                mLine.setLength(0);
+                return true;
+            }
+        }
+    }
+
+    private void endLine(DetectionListener listener) {
+        if (listener != null && mLine.length() > 0) {
+            DarknetProcess.DetectedObject detectedObj = DarknetProcess.parseOutputLine(mLine);
+            if (detectedObj != null) {
+                listener.onObjectDetected(detectedObj);
+            }
+        }
+        mLine.setLength(0);
+    }
+
+}
@@ -1,27 +1,51 @@
 package edu.uci.cs237.tippersedge.darknet;
 
-import java.io.BufferedReader;
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * Utility class for invoking the Darknet command line tool
  * (see <a href="https://pjreddie.com/darknet/yolo/">https://pjreddie.com/darknet/yolo/</a>).
  * Darknet performs (real-time) object detection in images.
+ * <p>
+ * The original Darknet only reports the name and confidence of detected objects. Bounding boxes, and hence the
+ * {@link SceneComparator}'s intersection over union check, require AlexeyAB's fork of Darknet invoked with
+ * {@code -ext_output} (see {@link #DarknetProcess(String, int, long, boolean)}), or the {@link OpenCvDetector}.
+ * </p>
  *
  * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
  */
-public class DarknetProcess {
+public class DarknetProcess implements Detector {
+
+    private static final Logger LOGGER = Logger.getLogger(DarknetProcess.class.getName());
+
+    /**
+     * The default maximum time Darknet may spend on a single image before it is considered hung and killed.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5 * 60_000;
 
     /**
-     * Regex pattern for detecting percentages in a string (e.g., of the form '92%').
+     * The time resident Darknet processes are given to exit once their std.in has been closed.
      */
-    private static final Pattern PERCENTAGE_PATTERN = Pattern.compile("\\d+%");
+    private static final long EXIT_GRACE_MILLIS = 2_000;
+
+    /**
+     * Labels of the bounding box fields, in the order Darknet prints them.
+     */
+    private static final String[] BOUNDING_BOX_LABELS = { "left_x:", "top_y:", "width:", "height:" };
 
     /**
      * The directory where Darknet resides.
@@ -33,65 +57,426 @@ public class DarknetProcess {
      */
     private final ProcessBuilder mProcessBuilder;
 
+    /**
+     * Pool of resident Darknet processes, or {@code null} if a new Darknet process is to be spawned for every image.
+     */
+    private final DarknetWorkerPool mWorkerPool;
+
+    /**
+     * The maximum time Darknet may spend on a single image, or {@code 0} for no limit.
+     */
+    private final long mTimeoutMillis;
+
+    /**
+     * Whether Darknet is invoked with {@code -ext_output}, i.e., reports bounding boxes.
+     */
+    private final boolean mExtOutput;
+
+    /**
+     * The live Darknet processes started by this {@code DarknetProcess}, resident as well as spawned for a single
+     * image.
+     */
+    private final Set<Process> mChildren = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The number of invocations of {@link #exec(String, DetectionListener)} in progress. Guarded by {@code this}.
+     */
+    private int mInFlight = 0;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean mClosed = false;
+
+    private final MetricSet mMetrics = new MetricSet();
+
+    /**
+     * Time spent per invocation of {@link #exec(String)}, including time spent waiting for an idle resident process.
+     */
+    private final LatencyHistogram mExecLatency = mMetrics.histogram("exec");
+
+    private final Counter mExecFailures = mMetrics.counter("execFailures");
+
+    private final Counter mExecTimeouts = mMetrics.counter("execTimeouts");
+
+    /**
+     * Create a {@code DarknetProcess} that spawns a new Darknet process for every image.
+     * Note that this implies that Darknet reloads the network weights for every image, which dominates the execution
+     * time. Prefer {@link #DarknetProcess(String, int)} for anything but one-off invocations.
+     * @param darknetDir The directory where Darknet resides.
+     */
     public DarknetProcess(String darknetDir) {
+        this(darknetDir, 0);
+    }
+
+    /**
+     * Create a {@code DarknetProcess} that dispatches images to a pool of resident Darknet processes which only load
+     * the network weights once.
+     * @param darknetDir The directory where Darknet resides.
+     * @param residentWorkers The maximum number of resident Darknet processes (i.e., the maximum number of images
+     *                        processed in parallel). If {@code 0}, a new Darknet process is spawned for every image.
+     */
+    public DarknetProcess(String darknetDir, int residentWorkers) {
+        this(darknetDir, residentWorkers, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Create a {@code DarknetProcess} that dispatches images to a pool of resident Darknet processes which only load
+     * the network weights once.
+     * @param darknetDir The directory where Darknet resides.
+     * @param residentWorkers The maximum number of resident Darknet processes (i.e., the maximum number of images
+     *                        processed in parallel). If {@code 0}, a new Darknet process is spawned for every image.
+     * @param timeoutMillis The maximum time Darknet may spend on a single image (including loading the network
+     *                      weights, for processes that are spawned for a single image), or {@code 0} for no limit.
+     *                      A Darknet process that exceeds it is killed.
+     */
+    public DarknetProcess(String darknetDir, int residentWorkers, long timeoutMillis) {
+        this(darknetDir, residentWorkers, timeoutMillis, false);
+    }
+
+    /**
+     * Create a {@code DarknetProcess} that dispatches images to a pool of resident Darknet processes which only load
+     * the network weights once.
+     * @param darknetDir The directory where Darknet resides.
+     * @param residentWorkers The maximum number of resident Darknet processes (i.e., the maximum number of images
+     *                        processed in parallel). If {@code 0}, a new Darknet process is spawned for every image.
+     * @param timeoutMillis The maximum time Darknet may spend on a single image (including loading the network
+     *                      weights, for processes that are spawned for a single image), or {@code 0} for no limit.
+     *                      A Darknet process that exceeds it is killed.
+     * @param extOutput {@code true} to invoke Darknet with {@code -ext_output} such that it reports the bounding box
+     *                  of every detected object. Requires AlexeyAB's fork of Darknet.
+     */
+    public DarknetProcess(String darknetDir, int residentWorkers, long timeoutMillis, boolean extOutput) {
+        if (residentWorkers < 0) {
+            throw new IllegalArgumentException("residentWorkers cannot be negative");
+        }
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis cannot be negative");
+        }
         mDarknetDir = darknetDir;
+        mTimeoutMillis = timeoutMillis;
+        mExtOutput = extOutput;
         mProcessBuilder = new ProcessBuilder();
         mProcessBuilder.directory(new File(darknetDir));
+        mWorkerPool = residentWorkers > 0 ?
+                new DarknetWorkerPool(darknetDir, residentWorkers, timeoutMillis, extOutput, mChildren) : null;
+        mMetrics.gauge("inFlight", this::getInFlightCount);
+        mMetrics.gauge("liveProcesses", mChildren::size);
     }
 
     /**
-     * Spawn an instance of Darknet and execute it on the image specified by {@code imageFilepath}.
+     * Execute Darknet on the image specified by {@code imageFilepath}.
+     * If this {@code DarknetProcess} was configured with resident workers, the image is dispatched to an idle worker
+     * (blocking until one becomes available), otherwise a new instance of Darknet is spawned.
      * @param imageFilepath The full path to the image on which object detection is to be performed.
      * @return A list of objects detected by Darknet.
-     * @throws IOException
-     * @throws InterruptedException
+     * @throws IOException if Darknet failed, or was killed ({@link InterruptedIOException}) as it exceeded the timeout.
+     * @throws InterruptedException if interrupted while waiting for an idle worker.
      */
+    @Override
     public List<DetectedObject> exec(String imageFilepath) throws IOException, InterruptedException {
-        mProcessBuilder.command("./darknet", "detect", "cfg/yolov3.cfg", "yolov3.weights", imageFilepath);
-        Process darknet = mProcessBuilder.start();
-        // Can do a Process.waitFor() here if we want the process to terminate before reading its output.
-        // However, without it, we get outut as it arrives on the fly which provides better indication of progress.
-        try(BufferedReader reader = new BufferedReader(new InputStreamReader(darknet.getErrorStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Note: Darknet seems to print its progress information to std.err.
-                // However, "actual" errors will also show up in this output, e.g., if cfg/yolov3.cfg file is missing.
-//                System.err.println(line);
+        List<DetectedObject> detectedObjects = new ArrayList<>();
+        exec(imageFilepath, detectedObjects::add);
+        return detectedObjects;
+    }
+
+    /**
+     * Execute Darknet on the image specified by {@code imageFilepath}, reporting every detected object to
+     * {@code listener} as soon as Darknet prints it.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @param listener Receives the detected objects as Darknet reports them.
+     * @throws IOException if Darknet failed, or was killed ({@link InterruptedIOException}) as it exceeded the timeout
+     *                     or this {@code DarknetProcess} was closed. Objects may have been reported to
+     *                     {@code listener} before the failure.
+     * @throws InterruptedException if interrupted while waiting for an idle worker.
+     */
+    @Override
+    public void exec(String imageFilepath, DetectionListener listener) throws IOException, InterruptedException {
+        synchronized (this) {
+            if (mClosed) {
+                throw new IOException("DarknetProcess has been closed");
             }
+            mInFlight++;
         }
-        List<DetectedObject> detectedObjects = new ArrayList<>();
-        try(BufferedReader reader = new BufferedReader(new InputStreamReader(darknet.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                DetectedObject detectedObj = parseOutputLine(line);
-                if (detectedObj != null) {
-                    detectedObjects.add(detectedObj);
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            if (mWorkerPool != null) {
+                mWorkerPool.exec(imageFilepath, listener);
+            } else {
+                spawnAndExec(imageFilepath, listener);
+            }
+            succeeded = true;
+        } catch (InterruptedIOException e) {
+            mExecTimeouts.increment();
+            throw e;
+        } finally {
+            mExecLatency.recordSince(start);
+            if (!succeeded) {
+                mExecFailures.increment();
+            }
+            synchronized (this) {
+                if (--mInFlight == 0) {
+                    notifyAll();
                 }
             }
         }
-        return detectedObjects;
+    }
+
+    /**
+     * Execute Darknet on the file holding {@code image} (writing the image to disk if it is held in memory),
+     * reporting every detected object to {@code listener} as soon as Darknet prints it.
+     * @param image The image on which object detection is to be performed.
+     * @param listener Receives the detected objects as Darknet reports them.
+     * @throws IOException if the image could not be written to disk, or if Darknet failed or was killed
+     *                     ({@link InterruptedIOException}) as it exceeded the timeout.
+     * @throws InterruptedException if interrupted while waiting for an idle worker.
+     */
+    @Override
+    public void exec(ImageInput image, DetectionListener listener) throws IOException, InterruptedException {
+        exec(image.getFilepath(), listener);
+    }
+
+    /**
+     * Get the number of invocations of {@link #exec(String)} in progress, including those waiting for an idle worker.
+     * @return the number of detections in progress.
+     */
+    public synchronized int getInFlightCount() {
+        return mInFlight;
+    }
+
+    /**
+     * Get the metrics of this {@code DarknetProcess}: the time spent per invocation of {@link #exec(String)}
+     * ({@code exec}), the number of failed invocations ({@code execFailures}), the number of invocations that
+     * failed because Darknet exceeded the timeout ({@code execTimeouts}), the number of invocations in progress
+     * ({@code inFlight}), and the number of live Darknet processes ({@code liveProcesses}).
+     * @return the metrics of this {@code DarknetProcess}.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Spawn a new Darknet process for a single image.
+     */
+    private void spawnAndExec(String imageFilepath, DetectionListener listener) throws IOException {
+        Process darknet;
+        // ProcessBuilder is not thread safe, and its command is mutated per invocation.
+        synchronized (mProcessBuilder) {
+            List<String> command = command(mExtOutput);
+            command.add(imageFilepath);
+            mProcessBuilder.command(command);
+            darknet = ProcessSupervisor.start(mProcessBuilder, mChildren);
+        }
+        // Note: Darknet prints its progress information to std.err. It must be consumed concurrently with std.out as
+        // Darknet would otherwise block once either pipe buffer fills up.
+        ProcessSupervisor.drainInBackground(darknet.getErrorStream(), "darknet-stderr");
+        ProcessSupervisor.Deadline deadline = ProcessSupervisor.killAfter(darknet, mTimeoutMillis);
+        // Read the output as it arrives rather than waiting for the process to terminate, such that the listener
+        // learns of detected objects as early as possible.
+        try {
+            new DarknetOutputReader(darknet.getInputStream()).readUntil(null, listener);
+        } catch (IOException e) {
+            if (deadline.isExpired()) {
+                InterruptedIOException timeout = new InterruptedIOException(String.format(
+                        "Darknet killed after %d ms", deadline.getTimeoutMillis()));
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw e;
+        } finally {
+            deadline.cancel();
+            darknet.getInputStream().close();
+        }
+        if (deadline.isExpired()) {
+            throw new InterruptedIOException(String.format("Darknet killed after %d ms", deadline.getTimeoutMillis()));
+        }
+    }
+
+    /**
+     * Terminate all Darknet processes right away. Detections in progress fail, as do subsequent invocations of
+     * {@link #exec(String)}. Use {@link #close(long)} to let the detections in progress complete.
+     */
+    @Override
+    public void close() {
+        try {
+            close(0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop accepting images, let the detections in progress complete within the given time, and then terminate all
+     * Darknet processes: resident processes are asked to exit, and any process still running (e.g., a Darknet process
+     * working on an image when the time is up) is killed along with its descendants. Subsequent invocations of
+     * {@link #exec(String)} fail.
+     * @param timeoutMillis The maximum time to wait for the detections in progress to complete.
+     * @return {@code true} if all detections in progress completed in time, {@code false} if Darknet processes were
+     *         killed in the middle of a detection.
+     * @throws InterruptedException if interrupted while waiting. All Darknet processes are killed regardless.
+     */
+    @Override
+    public boolean close(long timeoutMillis) throws InterruptedException {
+        int inFlight = -1;
+        try {
+            inFlight = awaitIdle(timeoutMillis);
+        } finally {
+            if (mWorkerPool != null) {
+                // Closes the resident processes' std.in, upon which they exit.
+                mWorkerPool.close();
+            }
+            if (inFlight != 0) {
+                // Busy processes (or, if interrupted, all processes) are killed right away.
+                ProcessSupervisor.terminate(mChildren, 0);
+            }
+        }
+        if (inFlight > 0) {
+            LOGGER.warning(String.format("[ Killed Darknet as %d detections were still in progress after %d ms ]",
+                    inFlight, timeoutMillis));
+            return false;
+        }
+        // Idle processes are given a moment to exit on their own.
+        ProcessSupervisor.terminate(mChildren, EXIT_GRACE_MILLIS);
+        return true;
+    }
+
+    /**
+     * Stop accepting images and wait for the detections in progress to complete.
+     * @return the number of detections still in progress when the time is up.
+     */
+    private synchronized int awaitIdle(long timeoutMillis) throws InterruptedException {
+        mClosed = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long remaining;
+        while (mInFlight > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return mInFlight;
+    }
+
+    /**
+     * Build the Darknet command line, without the image path.
+     * @param extOutput {@code true} to have Darknet report bounding boxes.
+     * @return a mutable list holding the command and its arguments.
+     */
+    static List<String> command(boolean extOutput) {
+        List<String> command = new ArrayList<>();
+        Collections.addAll(command, "./darknet", "detect", "cfg/yolov3.cfg", "yolov3.weights");
+        if (extOutput) {
+            command.add("-ext_output");
+        }
+        return command;
     }
 
     /**
      * Parses a Darknet output line.
      * The output line is examined to detect if it contains information about an object detected by Darknet.
      * If yes, the information about the detected object is contained in the returned {@link DetectedObject}.
+     * <p>
+     * The line is parsed in place, so lines that do not describe a detected object are rejected without allocating.
+     * Object names may contain spaces (e.g., 'traffic light').
+     * </p>
      * @param line A Darknet output line.
      * @return A {@link DetectedObject} that holds information about the object detected by Darknet or
      * {@code null} if {@code line} is not an output line containing information about a detected object.
      */
-    private DetectedObject parseOutputLine(String line) {
-        String[] items = line.split(" ");
+    static DetectedObject parseOutputLine(CharSequence line) {
         // We are only interested in those lines of the output that indicate that an object was recognized.
-        // These are of the form 'objectname: confidence%', e.g., 'person: 95%'.
-        if (items.length == 2 && PERCENTAGE_PATTERN.matcher(items[1]).matches()) {
-            // Remove the colon from the object name.
-            String objName = items[0].substring(0, items[0].length()-1);
-            // Remove the percentage sign.
-            int confidence = Integer.parseInt(items[1].substring(0, items[1].length()-1));
-            return new DetectedObject(objName, confidence);
+        // These are of the form 'objectname: confidence%', e.g., 'person: 95%', optionally followed by the bounding
+        // box, e.g., 'person: 95%	(left_x:  129   top_y:  186   width:  188   height:  338)'. Scan from the end.
+        int end = trimmedEnd(line, line.length());
+        BoundingBox boundingBox = null;
+        if (end > 0 && line.charAt(end - 1) == ')') {
+            int open = end - 1;
+            while (open > 0 && line.charAt(open) != '(') {
+                open--;
+            }
+            boundingBox = parseBoundingBox(line, open + 1, end - 1);
+            if (boundingBox == null) {
+                return null;
+            }
+            end = trimmedEnd(line, open);
+        }
+        if (end < 4 || line.charAt(end - 1) != '%') {
+            return null;
+        }
+        int i = end - 2;
+        int confidence = 0;
+        int scale = 1;
+        while (i >= 0 && line.charAt(i) >= '0' && line.charAt(i) <= '9') {
+            confidence += (line.charAt(i) - '0') * scale;
+            scale *= 10;
+            i--;
+        }
+        // At least one and at most three digits, preceded by ': ' and a non-empty name.
+        int digits = end - 2 - i;
+        if (digits < 1 || digits > 3 || i < 2 || line.charAt(i) != ' ' || line.charAt(i - 1) != ':') {
+            return null;
+        }
+        int nameEnd = i - 1;
+        if (line.charAt(0) == ' ' || line.charAt(nameEnd - 1) == ' ') {
+            return null;
         }
-        return null;
+        for (int j = 0; j < nameEnd; j++) {
+            if (line.charAt(j) == ':') {
+                return null;
+            }
+        }
+        return new DetectedObject(line.subSequence(0, nameEnd).toString(), confidence, boundingBox);
+    }
+
+    /**
+     * Parse a bounding box of the form 'left_x: 129 top_y: 186 width: 188 height: 338' (with any amount of whitespace).
+     * @return the bounding box, or {@code null} if {@code line[start, end)} is not a bounding box.
+     */
+    private static BoundingBox parseBoundingBox(CharSequence line, int start, int end) {
+        int[] values = new int[BOUNDING_BOX_LABELS.length];
+        int i = start;
+        for (int field = 0; field < values.length; field++) {
+            String label = BOUNDING_BOX_LABELS[field];
+            while (i < end && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (end - i < label.length()) {
+                return null;
+            }
+            for (int j = 0; j < label.length(); j++) {
+                if (line.charAt(i++) != label.charAt(j)) {
+                    return null;
+                }
+            }
+            while (i < end && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            boolean negative = i < end && line.charAt(i) == '-';
+            if (negative) {
+                i++;
+            }
+            int digitsStart = i;
+            int value = 0;
+            while (i < end && line.charAt(i) >= '0' && line.charAt(i) <= '9' && i - digitsStart < 9) {
+                value = value * 10 + (line.charAt(i++) - '0');
+            }
+            if (i == digitsStart) {
+                return null;
+            }
+            values[field] = negative ? -value : value;
+        }
+        if (trimmedEnd(line, end) != i || values[2] < 0 || values[3] < 0) {
+            return null;
+        }
+        return new BoundingBox(values[0], values[1], values[2], values[3]);
+    }
+
+    /**
+     * Get the end of {@code line[0, end)} without trailing whitespace.
+     */
+    private static int trimmedEnd(CharSequence line, int end) {
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return end;
     }
 
     /**
@@ -107,10 +492,25 @@ public class DarknetProcess {
          * Darknet's confidence/certainty in its detection of this object (a percentage).
          */
         private final int mConfidence;
+        /**
+         * Where in the image the object was detected, or {@code null} if not reported by Darknet.
+         */
+        private final BoundingBox mBoundingBox;
 
         public DetectedObject(String objectName, int confidence) {
+            this(objectName, confidence, null);
+        }
+
+        /**
+         * Create a new {@code DetectedObject}.
+         * @param objectName Darknet's name/description of the detected object.
+         * @param confidence Darknet's confidence in its detection of the object (a percentage).
+         * @param boundingBox Where in the image the object was detected, or {@code null} if unknown.
+         */
+        public DetectedObject(String objectName, int confidence, BoundingBox boundingBox) {
             mObjectName = Objects.requireNonNull(objectName, "objectName cannot be null");
             mConfidence = confidence;
+            mBoundingBox = boundingBox;
         }
 
         /**
@@ -129,8 +529,21 @@ public class DarknetProcess {
             return mConfidence;
         }
 
+        /**
+         * Get where in the image this object was detected. Only reported by Darknet builds that print bounding boxes
+         * (e.g., AlexeyAB's fork when invoked with {@code -ext_output}).
+         * @return the bounding box of this object, or {@code null} if unknown.
+         */
+        public BoundingBox getBoundingBox() {
+            return mBoundingBox;
+        }
+
         @Override
         public String toString() {
+            if (mBoundingBox != null) {
+                return String.format("[ DetectedObject of type '%s' with confidence '%d' at %s ]", mObjectName,
+                        mConfidence, mBoundingBox);
+            }
             return String.format("[ DetectedObject of type '%s' with confidence '%d' ]", mObjectName, mConfidence);
         }
 
@@ -143,10 +556,14 @@ public class DarknetProcess {
                 return false;
             }
             DetectedObject other = (DetectedObject) obj;
-            return other.mObjectName.equals(this.mObjectName) && other.mConfidence == other.mConfidence;
+            return other.mObjectName.equals(this.mObjectName) && other.mConfidence == this.mConfidence &&
+                    Objects.equals(other.mBoundingBox, this.mBoundingBox);
         }
-    }
 
-    // TODO should also overwrite hashCode according to overwrite of equals.
+        @Override
+        public int hashCode() {
+            return (mObjectName.hashCode() * 31 + mConfidence) * 31 + Objects.hashCode(mBoundingBox);
+        }
+    }
 
-}
\ No newline at end of file
+}
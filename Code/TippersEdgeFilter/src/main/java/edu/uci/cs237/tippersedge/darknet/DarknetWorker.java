@@ -0,0 +1,159 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * A resident Darknet process that loads the YOLOv3 weights once and then performs object detection on any number of
+ * images.
+ * <p>
+ * When {@code ./darknet detect} is invoked <em>without</em> an image argument, Darknet enters an interactive loop in
+ * which it prints the prompt {@value #PROMPT} to std.out and reads the path of the next image from std.in. A worker
+ * exploits this by writing image paths to the process' std.in and collecting the output that Darknet prints to std.out
+ * until the next prompt appears.
+ * </p>
+ * A worker is <em>not</em> thread safe: it can only process a single image at a time. Use a {@link DarknetWorkerPool}
+ * to share workers between threads.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+class DarknetWorker {
+
+    /**
+     * The prompt printed by Darknet when it is ready to read the path of the next image.
+     * Note that Darknet does not print a newline after the prompt.
+     */
+    static final String PROMPT = "Enter Image Path: ";
+
+    /**
+     * Darknet reads image paths into a buffer of this size, so longer paths would be truncated.
+     */
+    private static final int MAX_PATH_LENGTH = 255;
+
+    /**
+     * The resident Darknet process.
+     */
+    private final Process mProcess;
+
+    /**
+     * Darknet's std.in, used for sending image paths to Darknet.
+     */
+    private final Writer mStdin;
+
+    /**
+     * Darknet's std.out, used for reading the detection results.
+     */
+    private final DarknetOutputReader mStdout;
+
+    /**
+     * Spawn a new resident Darknet process and block until it has loaded the network weights (i.e., until it is ready
+     * to process the first image).
+     * @param processBuilder Process builder configured with the Darknet directory and the command that starts Darknet
+     *                       in interactive mode.
+     * @param registry The live processes of the owning {@link DarknetProcess}; see
+     *                 {@link ProcessSupervisor#start(ProcessBuilder, Set)}.
+     * @param timeoutMillis The maximum time to wait for Darknet to become ready, or {@code 0} for no limit.
+     * @throws IOException if Darknet could not be started or terminated (or was killed) before it became ready.
+     */
+    DarknetWorker(ProcessBuilder processBuilder, Set<Process> registry, long timeoutMillis) throws IOException {
+        mProcess = ProcessSupervisor.start(processBuilder, registry);
+        mStdin = new BufferedWriter(new OutputStreamWriter(mProcess.getOutputStream(), StandardCharsets.UTF_8));
+        mStdout = new DarknetOutputReader(mProcess.getInputStream());
+        // Darknet prints its progress information to std.err. That output must be consumed as Darknet would otherwise
+        // block once the pipe buffer fills up.
+        ProcessSupervisor.drainInBackground(mProcess.getErrorStream(), "darknet-worker-stderr");
+        try {
+            // Loading the weights happens before the first prompt is printed.
+            readUntilPrompt(null, timeoutMillis);
+        } catch (IOException ioe) {
+            destroy();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Perform object detection on the image specified by {@code imageFilepath}.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @param listener Receives the detected objects as Darknet reports them.
+     * @param timeoutMillis The maximum time Darknet may spend on the image, or {@code 0} for no limit. If exceeded, the
+     *                      Darknet process is killed.
+     * @throws IOException if communication with the Darknet process fails, e.g., because the process died or was
+     *                     killed ({@link InterruptedIOException}) as it exceeded the timeout. The worker should be
+     *                     discarded if this happens.
+     */
+    void exec(String imageFilepath, DetectionListener listener, long timeoutMillis) throws IOException {
+        requireValidPath(imageFilepath);
+        mStdin.write(imageFilepath);
+        mStdin.write('\n');
+        mStdin.flush();
+        readUntilPrompt(listener, timeoutMillis);
+    }
+
+    /**
+     * Verify that an image path can be sent to a resident Darknet process.
+     * @param imageFilepath The image path to verify.
+     * @throws IllegalArgumentException if the path is too long for Darknet's input buffer or contains a newline.
+     */
+    static void requireValidPath(String imageFilepath) {
+        if (imageFilepath.length() > MAX_PATH_LENGTH || imageFilepath.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException(String.format("Path cannot be passed to resident Darknet: '%s'", imageFilepath));
+        }
+    }
+
+    /**
+     * Check if the underlying Darknet process is still running.
+     * @return {@code true} if the underlying Darknet process is still running.
+     */
+    boolean isAlive() {
+        return mProcess.isAlive();
+    }
+
+    /**
+     * Terminate the underlying Darknet process.
+     */
+    void destroy() {
+        try {
+            // Closing std.in makes Darknet exit its interactive loop.
+            mStdin.close();
+        } catch (IOException ioe) {
+            // Process probably already dead; fall through and make sure it is.
+        }
+        mProcess.destroy();
+    }
+
+    /**
+     * Read Darknet's std.out until the next prompt, parsing every complete line along the way.
+     * @param listener Receives the objects parsed from the output, or {@code null} if the output should be ignored.
+     * @param timeoutMillis The maximum time to wait for the prompt, or {@code 0} for no limit.
+     * @throws IOException if std.out is closed before the prompt is seen.
+     */
+    private void readUntilPrompt(DetectionListener listener, long timeoutMillis) throws IOException {
+        ProcessSupervisor.Deadline deadline = ProcessSupervisor.killAfter(mProcess, timeoutMillis);
+        try {
+            if (!mStdout.readUntil(PROMPT, listener)) {
+                throw new IOException("Resident Darknet process terminated unexpectedly");
+            }
+        } catch (IOException ioe) {
+            if (!deadline.cancel()) {
+                InterruptedIOException timeout = new InterruptedIOException(String.format(
+                        "Resident Darknet process killed after %d ms", deadline.getTimeoutMillis()));
+                timeout.initCause(ioe);
+                throw timeout;
+            }
+            throw ioe;
+        } catch (RuntimeException e) {
+            // Thrown by the listener.
+            deadline.cancel();
+            throw e;
+        }
+        // If the process was killed just as the prompt appeared, the output is still complete. The dead worker is
+        // discarded when it is returned to the pool.
+        deadline.cancel();
+    }
+
+}
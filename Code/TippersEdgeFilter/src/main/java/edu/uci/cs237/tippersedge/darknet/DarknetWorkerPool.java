@@ -0,0 +1,182 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of resident Darknet processes ({@link DarknetWorker}s). Requests are dispatched to idle workers, and callers
+ * block while all workers are busy.
+ * <p>
+ * Workers are spawned lazily (when a request arrives and no worker is idle) until the maximum number of workers has
+ * been reached. A worker that fails (e.g., because the Darknet process crashed) is discarded and replaced by a new
+ * worker when the next request arrives.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+class DarknetWorkerPool {
+
+    /**
+     * How often threads waiting for an idle worker check if they should spawn a replacement for a failed worker.
+     */
+    private static final long IDLE_POLL_MILLIS = 1_000;
+
+    /**
+     * Process builder for spawning resident Darknet processes.
+     */
+    private final ProcessBuilder mProcessBuilder;
+
+    /**
+     * The maximum number of resident Darknet processes.
+     */
+    private final int mMaxWorkers;
+
+    /**
+     * Workers that are currently not processing an image.
+     */
+    private final BlockingQueue<DarknetWorker> mIdleWorkers = new LinkedBlockingQueue<>();
+
+    /**
+     * All live workers, busy as well as idle. Also serves as the lock that guards {@link #mWorkerCount}.
+     */
+    private final List<DarknetWorker> mWorkers = new ArrayList<>();
+
+    /**
+     * The number of live workers plus the number of workers currently being spawned.
+     */
+    private int mWorkerCount = 0;
+
+    /**
+     * The maximum time a worker may spend on loading the network weights or on a single image, or {@code 0} for no
+     * limit.
+     */
+    private final long mTimeoutMillis;
+
+    /**
+     * The live processes of the owning {@link DarknetProcess}, to which the workers' processes are added.
+     */
+    private final Set<Process> mRegistry;
+
+    private volatile boolean mClosed = false;
+
+    DarknetWorkerPool(String darknetDir, int maxWorkers, long timeoutMillis, boolean extOutput,
+                      Set<Process> registry) {
+        if (maxWorkers < 1) {
+            throw new IllegalArgumentException("maxWorkers must be positive");
+        }
+        mMaxWorkers = maxWorkers;
+        mTimeoutMillis = timeoutMillis;
+        mRegistry = registry;
+        mProcessBuilder = new ProcessBuilder();
+        mProcessBuilder.directory(new File(darknetDir));
+        // Omitting the image argument makes Darknet read image paths from std.in.
+        mProcessBuilder.command(DarknetProcess.command(extOutput));
+    }
+
+    /**
+     * Perform object detection on the image specified by {@code imageFilepath} using an idle worker, blocking until a
+     * worker becomes available if all workers are busy.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @param listener Receives the detected objects as Darknet reports them.
+     * @throws IOException if a worker could not be spawned or failed while processing the image (e.g., because it
+     *                     exceeded the timeout and was killed), or if the pool has been closed.
+     * @throws InterruptedException if interrupted while waiting for an idle worker.
+     */
+    void exec(String imageFilepath, DetectionListener listener) throws IOException, InterruptedException {
+        DarknetWorker.requireValidPath(imageFilepath);
+        DarknetWorker worker = acquire();
+        try {
+            worker.exec(imageFilepath, listener, mTimeoutMillis);
+            release(worker);
+        } catch (IOException|RuntimeException e) {
+            discard(worker);
+            throw e;
+        }
+    }
+
+    /**
+     * Terminate all workers. Requests that are in progress will fail.
+     */
+    void close() {
+        mClosed = true;
+        synchronized (mWorkers) {
+            for (DarknetWorker worker : mWorkers) {
+                worker.destroy();
+            }
+            mWorkers.clear();
+            mWorkerCount = 0;
+        }
+        mIdleWorkers.clear();
+    }
+
+    private DarknetWorker acquire() throws IOException, InterruptedException {
+        while (true) {
+            if (mClosed) {
+                throw new IOException("Darknet worker pool has been closed");
+            }
+            DarknetWorker worker = mIdleWorkers.poll();
+            if (worker != null) {
+                return worker;
+            }
+            boolean spawn;
+            synchronized (mWorkers) {
+                spawn = mWorkerCount < mMaxWorkers;
+                if (spawn) {
+                    // Reserve the slot while the (slow) spawn takes place outside the lock.
+                    mWorkerCount++;
+                }
+            }
+            if (spawn) {
+                return spawn();
+            }
+            // Wake up periodically: a busy worker may fail rather than be returned to the pool, in which case this
+            // thread should spawn its replacement.
+            worker = mIdleWorkers.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (worker != null) {
+                return worker;
+            }
+        }
+    }
+
+    private DarknetWorker spawn() throws IOException {
+        DarknetWorker worker;
+        try {
+            worker = new DarknetWorker(mProcessBuilder, mRegistry, mTimeoutMillis);
+        } catch (IOException|RuntimeException e) {
+            synchronized (mWorkers) {
+                mWorkerCount--;
+            }
+            throw e;
+        }
+        synchronized (mWorkers) {
+            mWorkers.add(worker);
+        }
+        return worker;
+    }
+
+    private void release(DarknetWorker worker) {
+        if (mClosed) {
+            worker.destroy();
+        } else if (!worker.isAlive()) {
+            discard(worker);
+        } else {
+            mIdleWorkers.offer(worker);
+        }
+    }
+
+    private void discard(DarknetWorker worker) {
+        worker.destroy();
+        synchronized (mWorkers) {
+            if (mWorkers.remove(worker)) {
+                mWorkerCount--;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes the results of a {@link Detector} (typically a {@link DarknetProcess}) such that each image is only analyzed once, no matter how
+ * many times (or by how many threads) its detected objects are requested.
+ * <p>
+ * Results are keyed by the image (i.e., its file path, or the frame itself for images held in memory) <em>and</em> a
+ * hash of its contents, so a file that is overwritten with a new image (e.g., by
+ * {@link edu.uci.cs237.tippersedge.cameras.CameraRestClient#sample()} if called twice within the same millisecond) is
+ * analyzed anew. The cache holds at most a fixed number of results and evicts the least-recently used result when full.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class DetectionCache {
+
+    /**
+     * Performs the actual object detection on cache misses.
+     */
+    private final Detector mDetector;
+
+    /**
+     * Pending and completed detections, in access order. Pending detections are included such that concurrent requests
+     * for the same image wait for the ongoing detection rather than start another one.
+     * Access must be synchronized on the map itself.
+     */
+    private final Map<Key, CompletableFuture<List<DarknetProcess.DetectedObject>>> mResults;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * Create a new {@code DetectionCache}.
+     * @param detector The {@link Detector} to use for images whose detected objects are not in the cache.
+     * @param capacity The maximum number of images whose detected objects are kept in the cache.
+     */
+    public DetectionCache(Detector detector, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mDetector = Objects.requireNonNull(detector, "detector cannot be null");
+        mResults = new LinkedHashMap<Key, CompletableFuture<List<DarknetProcess.DetectedObject>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<List<DarknetProcess.DetectedObject>>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the objects detected in the image specified by {@code imageFilepath}, running Darknet on the image only if
+     * it has not been analyzed before (or if its result has since been evicted).
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @return An unmodifiable list of objects detected by Darknet.
+     * @throws IOException if the image could not be read or Darknet failed.
+     * @throws InterruptedException if interrupted while waiting for Darknet.
+     */
+    public List<DarknetProcess.DetectedObject> exec(String imageFilepath) throws IOException, InterruptedException {
+        return exec(ImageInput.ofFile(imageFilepath));
+    }
+
+    /**
+     * Get the objects detected in {@code image}, running the detector on the image only if it has not been analyzed
+     * before (or if its result has since been evicted). Images are identified by their {@link Object#equals(Object)}
+     * (e.g., by the file path for images created using {@link ImageInput#ofFile(String)}) and the hash of their
+     * contents.
+     * @param image The image on which object detection is to be performed.
+     * @return An unmodifiable list of detected objects.
+     * @throws IOException if the image could not be read or the detection failed.
+     * @throws InterruptedException if interrupted while waiting for the detector.
+     */
+    public List<DarknetProcess.DetectedObject> exec(ImageInput image) throws IOException, InterruptedException {
+        return exec(image, image.getContentHash());
+    }
+
+    /**
+     * Get the objects detected in the image specified by {@code imageFilepath}, running Darknet on the image only if
+     * it has not been analyzed before (or if its result has since been evicted).
+     * Use this variant if a hash of the image's contents is readily available, as it avoids reading the image.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @param contentHash A hash of the contents of the image.
+     * @return An unmodifiable list of objects detected by Darknet.
+     * @throws IOException if Darknet failed.
+     * @throws InterruptedException if interrupted while waiting for Darknet.
+     */
+    public List<DarknetProcess.DetectedObject> exec(String imageFilepath, long contentHash) throws IOException, InterruptedException {
+        return exec(ImageInput.ofFile(imageFilepath), contentHash);
+    }
+
+    private List<DarknetProcess.DetectedObject> exec(ImageInput image, long contentHash) throws IOException, InterruptedException {
+        Key key = new Key(image, contentHash);
+        CompletableFuture<List<DarknetProcess.DetectedObject>> result;
+        boolean owner = false;
+        synchronized (mResults) {
+            result = mResults.get(key);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                mResults.put(key, result);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            mHits.incrementAndGet();
+            return await(result);
+        }
+        mMisses.incrementAndGet();
+        try {
+            result.complete(Collections.unmodifiableList(mDetector.exec(image)));
+        } catch (IOException|InterruptedException|RuntimeException e) {
+            // Do not memoize failures: drop the entry such that the next request retries the detection.
+            synchronized (mResults) {
+                mResults.remove(key, result);
+            }
+            result.completeExceptionally(e);
+            throw e;
+        }
+        return await(result);
+    }
+
+    /**
+     * Get the number of requests that were served from the cache (including requests that waited for a concurrent
+     * detection of the same image).
+     * @return the number of cache hits.
+     */
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    /**
+     * Get the number of requests that required Darknet to be run.
+     * @return the number of cache misses.
+     */
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    private static List<DarknetProcess.DetectedObject> await(CompletableFuture<List<DarknetProcess.DetectedObject>> result)
+            throws IOException, InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                // It was the thread performing the detection that was interrupted, not this one.
+                throw new IOException("Detection was interrupted", cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Identifies an image by the image itself (e.g., its file path) and the hash of its contents.
+     */
+    private static final class Key {
+
+        private final ImageInput mImage;
+        private final long mContentHash;
+
+        private Key(ImageInput image, long contentHash) {
+            mImage = image;
+            mContentHash = contentHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return other.mContentHash == this.mContentHash && other.mImage.equals(this.mImage);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mImage.hashCode() + Long.hashCode(mContentHash);
+        }
+    }
+
+}
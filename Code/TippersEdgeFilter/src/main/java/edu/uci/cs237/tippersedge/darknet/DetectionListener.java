@@ -0,0 +1,19 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+/**
+ * Receives the objects detected in an image as they are reported by the detector, i.e., before the detection of the
+ * entire image has completed. See {@link Detector#exec(String, DetectionListener)}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+@FunctionalInterface
+public interface DetectionListener {
+
+    /**
+     * Invoked (on the thread that performs the detection) for every object detected in the image, in the order they
+     * are reported. Implementations should return quickly as they delay the rest of the detection.
+     * @param detectedObject The detected object.
+     */
+    void onObjectDetected(DarknetProcess.DetectedObject detectedObject);
+
+}
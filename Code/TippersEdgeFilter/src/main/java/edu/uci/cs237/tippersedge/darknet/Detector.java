@@ -0,0 +1,118 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interface for performing object detection on an image.
+ * Allows for dependency injection such that consumers of detection results (e.g., a
+ * {@link edu.uci.cs237.tippersedge.cameras.CameraSampleHandler}) need not know whether they talk to a
+ * {@link DarknetProcess} directly or to an engine shared between several consumers (e.g., a
+ * {@link FairDetectionScheduler}), nor which engine performs the detection: Darknet in a separate process
+ * ({@link DarknetProcess}), the same network in-process ({@link OpenCvDetector}), or a stand-in
+ * ({@link FakeDetector}). See {@link DetectorBackend} for selecting the engine by configuration.
+ * <p>
+ * Implementations only need to implement {@link #exec(String)}. In-process implementations should also override
+ * {@link #exec(ImageInput)} such that images held in memory are not written to disk for their sake.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public interface Detector extends AutoCloseable {
+
+    /**
+     * Perform object detection on the image specified by {@code imageFilepath}.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @return A list of objects detected in the image.
+     * @throws IOException if the image could not be read or the detection failed.
+     * @throws InterruptedException if interrupted while waiting for the detection to complete.
+     */
+    List<DarknetProcess.DetectedObject> exec(String imageFilepath) throws IOException, InterruptedException;
+
+    /**
+     * Perform object detection on the image specified by {@code imageFilepath}, reporting the detected objects to
+     * {@code listener} as they are found, such that the caller can act before the entire image has been analyzed.
+     * The default implementation reports the objects once the detection has completed; implementations that produce
+     * results incrementally (e.g., {@link DarknetProcess}) should override it.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @param listener Receives the detected objects, on the thread that performs the detection.
+     * @throws IOException if the image could not be read or the detection failed. Objects may have been reported to
+     *                     {@code listener} before the failure.
+     * @throws InterruptedException if interrupted while waiting for the detection to complete.
+     */
+    default void exec(String imageFilepath, DetectionListener listener) throws IOException, InterruptedException {
+        for (DarknetProcess.DetectedObject detectedObject : exec(imageFilepath)) {
+            listener.onObjectDetected(detectedObject);
+        }
+    }
+
+    /**
+     * Perform object detection on {@code image}. The default implementation performs the detection on the file
+     * holding the image (see {@link ImageInput#getFilepath()}), writing the image to disk if it is held in memory.
+     * @param image The image on which object detection is to be performed.
+     * @return A list of objects detected in the image.
+     * @throws IOException if the image could not be read or the detection failed.
+     * @throws InterruptedException if interrupted while waiting for the detection to complete.
+     */
+    default List<DarknetProcess.DetectedObject> exec(ImageInput image) throws IOException, InterruptedException {
+        return exec(image.getFilepath());
+    }
+
+    /**
+     * Perform object detection on {@code image}, reporting the detected objects to {@code listener} as they are found.
+     * The default implementation reports the result of {@link #exec(ImageInput)} once the detection has completed;
+     * implementations that produce results incrementally should override it.
+     * @param image The image on which object detection is to be performed.
+     * @param listener Receives the detected objects, on the thread that performs the detection.
+     * @throws IOException if the image could not be read or the detection failed. Objects may have been reported to
+     *                     {@code listener} before the failure.
+     * @throws InterruptedException if interrupted while waiting for the detection to complete.
+     */
+    default void exec(ImageInput image, DetectionListener listener) throws IOException, InterruptedException {
+        for (DarknetProcess.DetectedObject detectedObject : exec(image)) {
+            listener.onObjectDetected(detectedObject);
+        }
+    }
+
+    /**
+     * Perform object detection on several images, e.g., images from different cameras that are pending at the same
+     * time. Implementations that can analyze several images in a single inference call (e.g., {@link OpenCvDetector})
+     * should override it; the default implementation analyzes the images one at a time using {@link #exec(ImageInput)}.
+     * @param images The images on which object detection is to be performed.
+     * @return the objects detected in each image, in the order of {@code images}.
+     * @throws IOException if an image could not be read or the detection failed. Implementations may fail the entire
+     *                     batch if a single image fails.
+     * @throws InterruptedException if interrupted while waiting for the detection to complete.
+     */
+    default List<List<DarknetProcess.DetectedObject>> detectBatch(List<? extends ImageInput> images)
+            throws IOException, InterruptedException {
+        List<List<DarknetProcess.DetectedObject>> detectedObjects = new ArrayList<>(images.size());
+        for (ImageInput image : images) {
+            detectedObjects.add(exec(image));
+        }
+        return detectedObjects;
+    }
+
+    /**
+     * Release the resources held by this detector (e.g., resident processes or loaded networks). Subsequent
+     * detections may fail. The default implementation does nothing.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Stop accepting images, let the detections in progress complete within the given time, and then release the
+     * resources held by this detector, cancelling any detections still in progress. The default implementation does
+     * not wait, and merely invokes {@link #close()}.
+     * @param timeoutMillis The maximum time to wait for the detections in progress to complete.
+     * @return {@code true} if all detections in progress completed in time.
+     * @throws InterruptedException if interrupted while waiting. The resources are released regardless.
+     */
+    default boolean close(long timeoutMillis) throws InterruptedException {
+        close();
+        return true;
+    }
+
+}
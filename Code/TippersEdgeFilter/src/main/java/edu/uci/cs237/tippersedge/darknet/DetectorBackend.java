@@ -0,0 +1,39 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.util.Locale;
+
+/**
+ * The engines that can perform object detection; see {@link DarknetConfig#getDetectorBackend()}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public enum DetectorBackend {
+
+    /**
+     * Run the Darknet command line tool in separate processes ({@link DarknetProcess}). Images are handed to Darknet
+     * as files.
+     */
+    DARKNET,
+
+    /**
+     * Run the Darknet network in-process on the CPU using OpenCV's DNN module ({@link OpenCvDetector}). Images are
+     * decoded from memory, and no processes are spawned.
+     */
+    OPENCV,
+
+    /**
+     * Report a fixed set of objects for every image without looking at it ({@link FakeDetector}). For testing.
+     */
+    FAKE;
+
+    /**
+     * Parse the name of a backend as it appears in a properties file.
+     * @param name The name of the backend, case insensitive (e.g., {@code opencv}).
+     * @return the backend with the given name.
+     * @throws IllegalArgumentException if there is no backend with the given name.
+     */
+    public static DetectorBackend fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+}
@@ -0,0 +1,451 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares a single {@link Detector} (e.g., a {@link DarknetProcess} backed by a pool of resident Darknet processes)
+ * between several sources of images, e.g., one per camera.
+ * <p>
+ * Requests are queued per source, and a fixed number of dispatcher threads (typically the number of resident Darknet
+ * processes) serve the sources with pending requests in round-robin order. A camera that submits images faster than
+ * the detector can analyze them hence only delays its own images rather than starving the other cameras. Use
+ * {@link #forSource(String)} to obtain the {@link Detector} to be used by a particular source.
+ * </p>
+ * <p>
+ * Optionally, each dispatcher thread gathers up to a fixed number of pending requests (still taken from the sources in
+ * round-robin order) into a batch, and hands the batch to the detector in a single call (see
+ * {@link Detector#detectBatch(List)}). A dispatcher that finds fewer pending requests than the batch size lingers for
+ * a short while to let the batch fill up, trading a little latency for throughput. The results of a batch are
+ * delivered to each submitter individually, as if the image had been analyzed on its own.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class FairDetectionScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(FairDetectionScheduler.class.getName());
+
+    /**
+     * Performs the actual object detection.
+     */
+    private final Detector mDetector;
+
+    /**
+     * Pending requests, per source. Guarded by {@code this}.
+     */
+    private final Map<String, Deque<Request>> mQueues = new HashMap<>();
+
+    /**
+     * The sources that have pending requests, in the order they are to be served. A source appears at most once.
+     * Guarded by {@code this}.
+     */
+    private final Deque<String> mReadySources = new ArrayDeque<>();
+
+    private final List<Thread> mDispatchers = new ArrayList<>();
+
+    /**
+     * The maximum number of requests handed to the detector at once.
+     */
+    private final int mBatchSize;
+
+    /**
+     * The maximum time a dispatcher waits for a batch to fill up, in nanoseconds.
+     */
+    private final long mLingerNanos;
+
+    /**
+     * The number of pending requests across all sources. Guarded by {@code this}.
+     */
+    private int mPendingCount;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean mClosed;
+
+    private final AtomicLong mCompletedCount = new AtomicLong();
+
+    private final MetricSet mMetrics = new MetricSet();
+
+    private final Counter mBatches = mMetrics.counter("batches");
+
+    /**
+     * Create a new {@code FairDetectionScheduler} that hands images to the detector one at a time, and start its
+     * dispatcher threads.
+     * @param detector Performs the actual object detection. Must support {@code concurrency} concurrent invocations.
+     * @param concurrency The maximum number of concurrent invocations of {@code detector}.
+     */
+    public FairDetectionScheduler(Detector detector, int concurrency) {
+        this(detector, concurrency, 1, 0);
+    }
+
+    /**
+     * Create a new {@code FairDetectionScheduler} and start its dispatcher threads.
+     * @param detector Performs the actual object detection. Must support {@code concurrency} concurrent invocations.
+     * @param concurrency The maximum number of concurrent invocations of {@code detector}.
+     * @param batchSize The maximum number of images handed to {@code detector} in a single call. Use {@code 1} to
+     *                  disable batching.
+     * @param lingerMillis The maximum time a dispatcher waits for more requests when there are fewer pending requests
+     *                     than {@code batchSize}. Use {@code 0} to dispatch whatever is pending right away.
+     */
+    public FairDetectionScheduler(Detector detector, int concurrency, int batchSize, long lingerMillis) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("lingerMillis cannot be negative");
+        }
+        mBatchSize = batchSize;
+        mLingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        mDetector = Objects.requireNonNull(detector, "detector cannot be null");
+        for (int i = 0; i < concurrency; i++) {
+            Thread dispatcher = new Thread(this::dispatch, "detection-dispatcher-" + i);
+            dispatcher.setDaemon(true);
+            mDispatchers.add(dispatcher);
+            dispatcher.start();
+        }
+        mMetrics.gauge("pending", this::getPendingCount);
+        mMetrics.gauge("completed", this::getCompletedCount);
+    }
+
+    /**
+     * Get a {@link Detector} that submits its images to this scheduler on behalf of the given source.
+     * @param sourceId Identifies the source of the images, e.g., a camera.
+     * @return a {@link Detector} whose invocations block until the image has been analyzed.
+     */
+    public Detector forSource(String sourceId) {
+        Objects.requireNonNull(sourceId, "sourceId cannot be null");
+        return new Detector() {
+            @Override
+            public List<DarknetProcess.DetectedObject> exec(String imageFilepath)
+                    throws IOException, InterruptedException {
+                return FairDetectionScheduler.this.exec(sourceId, imageFilepath, null);
+            }
+
+            @Override
+            public void exec(String imageFilepath, DetectionListener listener)
+                    throws IOException, InterruptedException {
+                FairDetectionScheduler.this.exec(sourceId, imageFilepath, Objects.requireNonNull(listener));
+            }
+
+            @Override
+            public List<DarknetProcess.DetectedObject> exec(ImageInput image)
+                    throws IOException, InterruptedException {
+                return FairDetectionScheduler.this.exec(sourceId, image, null);
+            }
+
+            @Override
+            public void exec(ImageInput image, DetectionListener listener)
+                    throws IOException, InterruptedException {
+                FairDetectionScheduler.this.exec(sourceId, image, Objects.requireNonNull(listener));
+            }
+        };
+    }
+
+    /**
+     * Perform object detection on an image on behalf of the given source, blocking until the image has been analyzed.
+     * @param sourceId Identifies the source of the image, e.g., a camera.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @return A list of objects detected in the image.
+     * @throws IOException if the detection failed or the scheduler has been closed.
+     * @throws InterruptedException if interrupted while waiting. The request is withdrawn if it has not yet started.
+     */
+    public List<DarknetProcess.DetectedObject> exec(String sourceId, String imageFilepath)
+            throws IOException, InterruptedException {
+        return exec(sourceId, imageFilepath, null);
+    }
+
+    /**
+     * Perform object detection on an image on behalf of the given source, blocking until the image has been analyzed.
+     * @param sourceId Identifies the source of the image, e.g., a camera.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @param listener Receives the detected objects as they are found (on a dispatcher thread), or {@code null}.
+     * @return A list of objects detected in the image.
+     * @throws IOException if the detection failed or the scheduler has been closed.
+     * @throws InterruptedException if interrupted while waiting. The request is withdrawn if it has not yet started.
+     */
+    public List<DarknetProcess.DetectedObject> exec(String sourceId, String imageFilepath, DetectionListener listener)
+            throws IOException, InterruptedException {
+        return exec(sourceId, ImageInput.ofFile(imageFilepath), listener);
+    }
+
+    /**
+     * Perform object detection on an image on behalf of the given source, blocking until the image has been analyzed.
+     * The image is handed to the detector as is, so in-process detectors need not write in-memory images to disk.
+     * @param sourceId Identifies the source of the image, e.g., a camera.
+     * @param image The image on which object detection is to be performed.
+     * @param listener Receives the detected objects as they are found (on a dispatcher thread), or {@code null}.
+     * @return A list of objects detected in the image.
+     * @throws IOException if the detection failed or the scheduler has been closed.
+     * @throws InterruptedException if interrupted while waiting. The request is withdrawn if it has not yet started.
+     */
+    public List<DarknetProcess.DetectedObject> exec(String sourceId, ImageInput image, DetectionListener listener)
+            throws IOException, InterruptedException {
+        Request request = new Request(sourceId, Objects.requireNonNull(image, "image cannot be null"), listener);
+        synchronized (this) {
+            if (mClosed) {
+                throw new IOException("FairDetectionScheduler has been closed");
+            }
+            Deque<Request> queue = mQueues.computeIfAbsent(sourceId, id -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                mReadySources.addLast(sourceId);
+            }
+            queue.addLast(request);
+            mPendingCount++;
+            if (mBatchSize > 1) {
+                // Lingering dispatchers count the pending requests, so they must all learn of the new request.
+                notifyAll();
+            } else {
+                notify();
+            }
+        }
+        try {
+            return request.mResult.get();
+        } catch (InterruptedException e) {
+            withdraw(request);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Get the number of requests waiting to be dispatched to the detector.
+     * @return the number of pending requests across all sources.
+     */
+    public synchronized int getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * Get the number of requests that have been dispatched to the detector and completed (successfully or not).
+     * @return the number of completed requests.
+     */
+    public long getCompletedCount() {
+        return mCompletedCount.get();
+    }
+
+    /**
+     * Get the metrics of this scheduler: the number of pending ({@code pending}) and completed ({@code completed})
+     * requests, and the number of times the detector was invoked ({@code batches}); divide the number of completed
+     * requests by the number of batches to get the average batch size.
+     * @return the metrics of this scheduler.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Stop the dispatcher threads. Pending requests fail with an {@link IOException}, and requests that are being
+     * processed are allowed to complete. The underlying detector is not closed.
+     */
+    public void close() {
+        List<Request> pending = new ArrayList<>();
+        synchronized (this) {
+            mClosed = true;
+            for (Deque<Request> queue : mQueues.values()) {
+                pending.addAll(queue);
+                queue.clear();
+            }
+            mReadySources.clear();
+            mPendingCount = 0;
+            notifyAll();
+        }
+        for (Request request : pending) {
+            request.mResult.completeExceptionally(new IOException("FairDetectionScheduler has been closed"));
+        }
+    }
+
+    /**
+     * Main loop of the dispatcher threads.
+     */
+    private void dispatch() {
+        while (true) {
+            List<Request> batch;
+            try {
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == null) {
+                return;
+            }
+            mBatches.increment();
+            try {
+                if (batch.size() == 1) {
+                    execSingle(batch.get(0));
+                } else {
+                    execBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                for (Request request : batch) {
+                    request.mResult.completeExceptionally(new IOException("Detection was interrupted", e));
+                }
+                return;
+            } finally {
+                mCompletedCount.addAndGet(batch.size());
+            }
+        }
+    }
+
+    /**
+     * Wait for pending requests and take up to a batch of them, in round-robin order of their sources. Lingers for
+     * more requests if fewer than a batch are pending.
+     * @return the requests to dispatch, or {@code null} if the scheduler has been closed.
+     */
+    private synchronized List<Request> takeBatch() throws InterruptedException {
+        while (true) {
+            while (!mClosed && mReadySources.isEmpty()) {
+                wait();
+            }
+            if (mClosed) {
+                return null;
+            }
+            if (mBatchSize > 1 && mLingerNanos > 0) {
+                long deadline = System.nanoTime() + mLingerNanos;
+                long remaining = mLingerNanos;
+                while (!mClosed && mPendingCount > 0 && mPendingCount < mBatchSize && remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+                if (mClosed) {
+                    return null;
+                }
+                if (mReadySources.isEmpty()) {
+                    // Another dispatcher took the requests while this one lingered.
+                    continue;
+                }
+            }
+            List<Request> batch = new ArrayList<>(Math.min(mBatchSize, mPendingCount));
+            while (batch.size() < mBatchSize && !mReadySources.isEmpty()) {
+                // Take the oldest request of the next source, and move the source to the back of the line if it has
+                // more pending requests.
+                String sourceId = mReadySources.pollFirst();
+                Deque<Request> queue = mQueues.get(sourceId);
+                batch.add(queue.pollFirst());
+                mPendingCount--;
+                if (!queue.isEmpty()) {
+                    mReadySources.addLast(sourceId);
+                }
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Hand a single request to the detector, streaming the detected objects to the request's listener (if any).
+     */
+    private void execSingle(Request request) throws InterruptedException {
+        try {
+            if (request.mListener == null) {
+                request.mResult.complete(mDetector.exec(request.mImage));
+            } else {
+                List<DarknetProcess.DetectedObject> detectedObjects = new ArrayList<>();
+                mDetector.exec(request.mImage, detectedObject -> {
+                    detectedObjects.add(detectedObject);
+                    request.mListener.onObjectDetected(detectedObject);
+                });
+                request.mResult.complete(detectedObjects);
+            }
+        } catch (IOException|RuntimeException e) {
+            request.mResult.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Hand several requests to the detector in a single call, and deliver the results to each request. If the batch
+     * fails, the requests are retried one at a time such that a single bad image does not fail the entire batch.
+     */
+    private void execBatch(List<Request> batch) throws InterruptedException {
+        List<ImageInput> images = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            images.add(request.mImage);
+        }
+        List<List<DarknetProcess.DetectedObject>> results;
+        try {
+            results = mDetector.detectBatch(images);
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException(String.format("Detector returned %d results for %d images",
+                        results.size(), batch.size()));
+            }
+        } catch (IOException|RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("[ Batch detection of %d images failed, retrying individually ]",
+                    batch.size()), e);
+            for (Request request : batch) {
+                execSingle(request);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Request request = batch.get(i);
+            List<DarknetProcess.DetectedObject> detectedObjects = results.get(i);
+            try {
+                if (request.mListener != null) {
+                    for (DarknetProcess.DetectedObject detectedObject : detectedObjects) {
+                        request.mListener.onObjectDetected(detectedObject);
+                    }
+                }
+                request.mResult.complete(detectedObjects);
+            } catch (RuntimeException e) {
+                request.mResult.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Remove a request that has not yet been dispatched, e.g., because its submitter gave up waiting.
+     */
+    private synchronized void withdraw(Request request) {
+        Deque<Request> queue = mQueues.get(request.mSourceId);
+        if (queue != null && queue.remove(request)) {
+            mPendingCount--;
+            if (queue.isEmpty()) {
+                mReadySources.remove(request.mSourceId);
+            }
+        }
+    }
+
+    /**
+     * A request for object detection on an image.
+     */
+    private static final class Request {
+
+        private final String mSourceId;
+        private final ImageInput mImage;
+        private final DetectionListener mListener;
+        private final CompletableFuture<List<DarknetProcess.DetectedObject>> mResult = new CompletableFuture<>();
+
+        private Request(String sourceId, ImageInput image, DetectionListener listener) {
+            mSourceId = sourceId;
+            mImage = image;
+            mListener = listener;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for {@link DarknetProcess} in benchmarks and tests: "detects" a fixed set of objects after a configurable
+ * latency, such that the surrounding code can be exercised (and its cost measured) without Darknet installed.
+ * Select it using {@link DetectorBackend#FAKE}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class FakeDetector implements Detector {
+
+    /**
+     * The objects reported for every image.
+     */
+    private final List<DarknetProcess.DetectedObject> mScene;
+
+    private final long mLatencyNanos;
+
+    /**
+     * Create a new {@code FakeDetector} that reports a person, a bicycle and a car for every image.
+     * @param latencyMicros The time each invocation of {@link #exec(String)} takes.
+     */
+    public FakeDetector(long latencyMicros) {
+        this(latencyMicros, Arrays.asList(
+                new DarknetProcess.DetectedObject("person", 98),
+                new DarknetProcess.DetectedObject("bicycle", 91),
+                new DarknetProcess.DetectedObject("car", 77)));
+    }
+
+    /**
+     * Create a new {@code FakeDetector}.
+     * @param latencyMicros The time each invocation of {@link #exec(String)} takes.
+     * @param scene The objects reported for every image.
+     */
+    public FakeDetector(long latencyMicros, List<DarknetProcess.DetectedObject> scene) {
+        mLatencyNanos = latencyMicros * 1000;
+        mScene = Collections.unmodifiableList(new ArrayList<>(scene));
+    }
+
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(String imageFilepath) throws InterruptedException {
+        simulateLatency(mLatencyNanos);
+        return new ArrayList<>(mScene);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The image is not read, so images held in memory are not written to disk.
+     */
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(ImageInput image) throws InterruptedException {
+        simulateLatency(mLatencyNanos);
+        return new ArrayList<>(mScene);
+    }
+
+    /**
+     * Block for (at least) the given time without burning a core, as Darknet runs in a separate process. Shared by the
+     * stand-ins for Darknet, e.g., {@link edu.uci.cs237.tippersedge.simulation.ReplayDetector}.
+     * @param nanos The time to block.
+     * @throws InterruptedException if interrupted while blocking, e.g., because the detector is being shut down. The
+     *                              remaining time is then not waited for.
+     */
+    public static void simulateLatency(long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+}
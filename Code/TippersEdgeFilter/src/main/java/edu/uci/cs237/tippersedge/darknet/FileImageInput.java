@@ -0,0 +1,65 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * An {@link ImageInput} that reads an image file; see {@link ImageInput#ofFile(String)}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class FileImageInput implements ImageInput {
+
+    private final String mFilepath;
+
+    FileImageInput(String filepath) {
+        mFilepath = Objects.requireNonNull(filepath, "filepath cannot be null");
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(Paths.get(mFilepath));
+    }
+
+    @Override
+    public String getFilepath() {
+        return mFilepath;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The file is read anew on every invocation as it may have been overwritten in the meantime.
+     */
+    @Override
+    public long getContentHash() throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream input = openStream()) {
+            byte[] buffer = new byte[8192];
+            int readBytes;
+            while ((readBytes = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, readBytes);
+            }
+        }
+        return crc.getValue();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof FileImageInput && ((FileImageInput) obj).mFilepath.equals(mFilepath);
+    }
+
+    @Override
+    public int hashCode() {
+        return mFilepath.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mFilepath;
+    }
+
+}
@@ -0,0 +1,46 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An image to perform object detection on. Lets each {@link Detector} pick the cheapest way to get at the image:
+ * detectors that run in a separate process (e.g., {@link DarknetProcess}) need a file, whereas detectors that run
+ * in-process (e.g., {@link OpenCvDetector}) can decode the image straight from memory, such that images that never
+ * touched the disk need not be written to disk for object detection.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public interface ImageInput {
+
+    /**
+     * Open a stream that reads the raw (encoded, e.g., JPEG) bytes of the image.
+     * @return A stream of the raw bytes of the image. The caller must close it.
+     * @throws IOException if the image could not be opened.
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Get the location of the image on disk, writing it to disk first if it is only held in memory.
+     * @return the full path to a file holding the image.
+     * @throws IOException if the image could not be written to disk.
+     */
+    String getFilepath() throws IOException;
+
+    /**
+     * Get a hash of the contents of the image, suitable for detecting if two images are identical.
+     * @return a hash of the raw bytes of the image.
+     * @throws IOException if the image could not be read.
+     */
+    long getContentHash() throws IOException;
+
+    /**
+     * Wrap an image file. Two wrappers of the same file path are equal.
+     * @param filepath The full path to the image.
+     * @return An {@code ImageInput} that reads the image from {@code filepath}.
+     */
+    static ImageInput ofFile(String filepath) {
+        return new FileImageInput(filepath);
+    }
+
+}
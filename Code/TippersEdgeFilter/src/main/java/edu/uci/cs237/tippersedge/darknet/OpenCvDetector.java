@@ -0,0 +1,542 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+import org.opencv.core.CvException;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect2d;
+import org.opencv.core.Rect2d;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs object detection in-process on the CPU, using OpenCV's DNN module to run the same network (configuration and
+ * weights) as the Darknet command line tool. Compared to {@link DarknetProcess}, no processes are spawned and no
+ * output is parsed, and images held in memory are decoded from memory rather than handed over as files.
+ * <p>
+ * An OpenCV network must not be used by several threads at once, so this detector keeps a pool of networks: requests
+ * are served by idle networks, and callers block while all networks are busy. Networks are loaded lazily (except for
+ * the first, such that a broken model is reported by the constructor) until the maximum number of networks has been
+ * reached. Note that every network holds its own copy of the weights.
+ * </p>
+ * <p>
+ * The native OpenCV library is extracted from the {@code org.openpnp:opencv} jar and loaded when the first
+ * {@code OpenCvDetector} is created.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class OpenCvDetector implements Detector {
+
+    /**
+     * The default width and height that images are scaled to before they are fed to the network.
+     */
+    public static final int DEFAULT_INPUT_SIZE = 416;
+
+    /**
+     * The default minimum confidence (between 0 and 1) of reported objects; the same as Darknet's {@code detect}.
+     */
+    public static final double DEFAULT_CONFIDENCE_THRESHOLD = 0.5;
+
+    /**
+     * The default maximum intersection over union of two reported objects of the same type; the same as Darknet's.
+     */
+    public static final double DEFAULT_NMS_THRESHOLD = 0.45;
+
+    /**
+     * How often threads waiting for an idle network check if this detector has been closed.
+     */
+    private static final long IDLE_POLL_MILLIS = 1_000;
+
+    /**
+     * The index of the first class score in a row of the output of a YOLO layer. It is preceded by the center x,
+     * center y, width and height of the box (relative to the size of the image) and the objectness score.
+     */
+    private static final int FIRST_CLASS_SCORE = 5;
+
+    private static boolean sNativeLibraryLoaded = false;
+
+    private final String mModelConfig;
+
+    private final String mModelWeights;
+
+    /**
+     * The names of the classes the network detects, indexed by class id.
+     */
+    private final List<String> mClassNames;
+
+    private final int mMaxNetworks;
+
+    private final Size mInputSize;
+
+    private final float mConfidenceThreshold;
+
+    private final float mNmsThreshold;
+
+    /**
+     * Networks that are currently not processing an image.
+     */
+    private final BlockingQueue<Network> mIdleNetworks = new LinkedBlockingQueue<>();
+
+    /**
+     * The number of loaded networks plus the number of networks currently being loaded. Guarded by
+     * {@link #mIdleNetworks}.
+     */
+    private int mNetworkCount = 0;
+
+    private volatile boolean mClosed = false;
+
+    private final MetricSet mMetrics = new MetricSet();
+
+    /**
+     * Time spent per detection (or per batch), including time spent decoding the images and waiting for an idle
+     * network.
+     */
+    private final LatencyHistogram mExecLatency = mMetrics.histogram("exec");
+
+    private final Counter mExecFailures = mMetrics.counter("execFailures");
+
+    /**
+     * The number of images detected; divide by the number of {@code exec}s to get the average batch size.
+     */
+    private final Counter mImages = mMetrics.counter("images");
+
+    /**
+     * Create an {@code OpenCvDetector} that runs the network of a Darknet installation, i.e., the network that
+     * {@link DarknetProcess} runs ({@code cfg/yolov3.cfg} and {@code yolov3.weights}, detecting the classes listed in
+     * {@code data/coco.names}) with Darknet's default thresholds.
+     * @param darknetDir The directory where Darknet resides.
+     * @param maxNetworks The maximum number of networks (i.e., the maximum number of images processed in parallel).
+     * @throws IOException if the class names could not be read or the network could not be loaded.
+     */
+    public OpenCvDetector(String darknetDir, int maxNetworks) throws IOException {
+        this(darknetDir, maxNetworks, DEFAULT_INPUT_SIZE, DEFAULT_CONFIDENCE_THRESHOLD, DEFAULT_NMS_THRESHOLD);
+    }
+
+    /**
+     * Create an {@code OpenCvDetector} that runs the network of a Darknet installation, i.e., the network that
+     * {@link DarknetProcess} runs ({@code cfg/yolov3.cfg} and {@code yolov3.weights}, detecting the classes listed in
+     * {@code data/coco.names}).
+     * @param darknetDir The directory where Darknet resides.
+     * @param maxNetworks The maximum number of networks (i.e., the maximum number of images processed in parallel).
+     * @param inputSize The width and height that images are scaled to before they are fed to the network (a multiple
+     *                  of 32).
+     * @param confidenceThreshold The minimum confidence (between 0 and 1) of reported objects.
+     * @param nmsThreshold The maximum intersection over union (between 0 and 1) of the bounding boxes of two reported
+     *                     objects of the same type.
+     * @throws IOException if the class names could not be read or the network could not be loaded.
+     */
+    public OpenCvDetector(String darknetDir, int maxNetworks, int inputSize, double confidenceThreshold,
+                          double nmsThreshold) throws IOException {
+        this(new File(darknetDir, "cfg/yolov3.cfg").getPath(), new File(darknetDir, "yolov3.weights").getPath(),
+                new File(darknetDir, "data/coco.names").getPath(), maxNetworks, inputSize, confidenceThreshold,
+                nmsThreshold);
+    }
+
+    /**
+     * Create a new {@code OpenCvDetector}.
+     * @param modelConfig The path to the Darknet configuration file ({@code .cfg}) of a YOLO network.
+     * @param modelWeights The path to the weights ({@code .weights}) of the network.
+     * @param classNames The path to a file that lists the names of the classes the network detects, one per line.
+     * @param maxNetworks The maximum number of networks (i.e., the maximum number of images processed in parallel).
+     * @param inputSize The width and height that images are scaled to before they are fed to the network (a multiple
+     *                  of 32).
+     * @param confidenceThreshold The minimum confidence (between 0 and 1) of reported objects.
+     * @param nmsThreshold The maximum intersection over union (between 0 and 1) of the bounding boxes of two reported
+     *                     objects of the same type; the less confident of two more overlapping objects is suppressed.
+     * @throws IOException if the class names could not be read or the network could not be loaded.
+     */
+    public OpenCvDetector(String modelConfig, String modelWeights, String classNames, int maxNetworks, int inputSize,
+                          double confidenceThreshold, double nmsThreshold) throws IOException {
+        if (maxNetworks < 1) {
+            throw new IllegalArgumentException("maxNetworks must be positive");
+        }
+        if (inputSize < 32 || inputSize % 32 != 0) {
+            throw new IllegalArgumentException("inputSize must be a positive multiple of 32");
+        }
+        if (confidenceThreshold < 0 || confidenceThreshold > 1) {
+            throw new IllegalArgumentException("confidenceThreshold must be between 0 and 1");
+        }
+        if (nmsThreshold < 0 || nmsThreshold > 1) {
+            throw new IllegalArgumentException("nmsThreshold must be between 0 and 1");
+        }
+        mModelConfig = modelConfig;
+        mModelWeights = modelWeights;
+        mClassNames = Collections.unmodifiableList(
+                Files.readAllLines(new File(classNames).toPath(), StandardCharsets.UTF_8));
+        mMaxNetworks = maxNetworks;
+        mInputSize = new Size(inputSize, inputSize);
+        mConfidenceThreshold = (float) confidenceThreshold;
+        mNmsThreshold = (float) nmsThreshold;
+        loadNativeLibrary();
+        mNetworkCount = 1;
+        try {
+            mIdleNetworks.offer(loadNetwork());
+        } catch (CvException e) {
+            throw new IOException(String.format("Could not load network '%s' with weights '%s'", modelConfig,
+                    modelWeights), e);
+        }
+        mMetrics.gauge("networks", this::getNetworkCount);
+    }
+
+    /**
+     * Perform object detection on the image specified by {@code imageFilepath} using an idle network, blocking until
+     * a network becomes available if all networks are busy.
+     * @param imageFilepath The full path to the image on which object detection is to be performed.
+     * @return A list of detected objects, most confident first.
+     * @throws IOException if the image could not be read or decoded, OpenCV failed, or this detector has been closed.
+     * @throws InterruptedException if interrupted while waiting for an idle network.
+     */
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(String imageFilepath) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            Mat image = Imgcodecs.imread(imageFilepath, Imgcodecs.IMREAD_COLOR);
+            List<DarknetProcess.DetectedObject> detectedObjects = detect(Collections.singletonList(image),
+                    Collections.singletonList(imageFilepath)).get(0);
+            succeeded = true;
+            return detectedObjects;
+        } finally {
+            recordExec(start, succeeded, 1);
+        }
+    }
+
+    /**
+     * Perform object detection on {@code image} using an idle network, blocking until a network becomes available if
+     * all networks are busy. The image is decoded from memory; it is not written to disk.
+     * @param image The image on which object detection is to be performed.
+     * @return A list of detected objects, most confident first.
+     * @throws IOException if the image could not be read or decoded, OpenCV failed, or this detector has been closed.
+     * @throws InterruptedException if interrupted while waiting for an idle network.
+     */
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(ImageInput image) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            List<DarknetProcess.DetectedObject> detectedObjects = detect(Collections.singletonList(decode(image)),
+                    Collections.singletonList(image)).get(0);
+            succeeded = true;
+            return detectedObjects;
+        } finally {
+            recordExec(start, succeeded, 1);
+        }
+    }
+
+    /**
+     * Perform object detection on several images in a single inference call, using an idle network and blocking until
+     * a network becomes available if all networks are busy. Images are decoded from memory; they are not written to
+     * disk. Batching amortizes the per-call overhead of the network over the images of the batch, and lets OpenCV
+     * spread the work of a single call over more cores.
+     * @param images The images on which object detection is to be performed.
+     * @return the objects detected in each image (most confident first), in the order of {@code images}.
+     * @throws IOException if an image could not be read or decoded, OpenCV failed, or this detector has been closed.
+     *                     No results are returned for any image of the batch.
+     * @throws InterruptedException if interrupted while waiting for an idle network.
+     */
+    @Override
+    public List<List<DarknetProcess.DetectedObject>> detectBatch(List<? extends ImageInput> images)
+            throws IOException, InterruptedException {
+        if (images.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        List<Mat> decoded = new ArrayList<>(images.size());
+        try {
+            for (ImageInput image : images) {
+                decoded.add(decode(image));
+            }
+            List<List<DarknetProcess.DetectedObject>> detectedObjects = detect(decoded, images);
+            succeeded = true;
+            return detectedObjects;
+        } finally {
+            if (!succeeded) {
+                // The images are released by detect() if it got that far; releasing twice is harmless.
+                for (Mat image : decoded) {
+                    image.release();
+                }
+            }
+            recordExec(start, succeeded, images.size());
+        }
+    }
+
+    /**
+     * Get the metrics of this {@code OpenCvDetector}: the time spent per detection or batch of detections
+     * ({@code exec}), the number of failed detections or batches ({@code execFailures}), the number of images
+     * ({@code images}), and the number of loaded networks ({@code networks}).
+     * @return the metrics of this {@code OpenCvDetector}.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Get the number of networks that have been loaded.
+     * @return the number of loaded networks (busy as well as idle).
+     */
+    public int getNetworkCount() {
+        synchronized (mIdleNetworks) {
+            return mNetworkCount;
+        }
+    }
+
+    /**
+     * Unload the idle networks; busy networks are unloaded when they complete their current image. Subsequent
+     * detections will fail.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        mIdleNetworks.clear();
+    }
+
+    /**
+     * Decode an image held in memory (or read from disk).
+     * @return the decoded image, which is empty if the image could not be decoded.
+     */
+    private static Mat decode(ImageInput image) throws IOException {
+        MatOfByte encoded = new MatOfByte(readFully(image));
+        try {
+            return Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+        } finally {
+            encoded.release();
+        }
+    }
+
+    /**
+     * Feed decoded images to an idle network in a single call and collect the objects it detects in each image.
+     * @param images The decoded images. Released by this method.
+     * @param sources Identify the images in error messages.
+     */
+    private List<List<DarknetProcess.DetectedObject>> detect(List<Mat> images, List<?> sources)
+            throws IOException, InterruptedException {
+        Mat blob = null;
+        List<Mat> outputs = new ArrayList<>();
+        Network network = null;
+        try {
+            for (int i = 0; i < images.size(); i++) {
+                if (images.get(i).empty()) {
+                    throw new IOException(String.format("Could not decode image '%s'", sources.get(i)));
+                }
+            }
+            // Scale pixel values to [0, 1] and swap the channels, as OpenCV decodes images to BGR.
+            blob = images.size() == 1
+                    ? Dnn.blobFromImage(images.get(0), 1 / 255.0, mInputSize, new Scalar(0), true, false)
+                    : Dnn.blobFromImages(images, 1 / 255.0, mInputSize, new Scalar(0), true, false);
+            network = acquire();
+            network.mNet.setInput(blob);
+            network.mNet.forward(outputs, network.mOutputNames);
+            // The output of a YOLO layer has one row per box (and one plane per image if there are several images).
+            float[][] data = new float[outputs.size()][];
+            int[] columns = new int[outputs.size()];
+            for (int i = 0; i < outputs.size(); i++) {
+                Mat output = outputs.get(i);
+                columns[i] = output.size(output.dims() - 1);
+                data[i] = new float[(int) output.total()];
+                output.get(new int[output.dims()], data[i]);
+            }
+            List<List<DarknetProcess.DetectedObject>> detectedObjects = new ArrayList<>(images.size());
+            for (int i = 0; i < images.size(); i++) {
+                detectedObjects.add(decode(data, columns, i, images.size(), images.get(i).cols(),
+                        images.get(i).rows()));
+            }
+            return detectedObjects;
+        } catch (CvException e) {
+            throw new IOException(String.format("OpenCV failed to process image(s) %s", sources), e);
+        } finally {
+            if (network != null) {
+                release(network);
+            }
+            for (Mat output : outputs) {
+                output.release();
+            }
+            if (blob != null) {
+                blob.release();
+            }
+            for (Mat image : images) {
+                image.release();
+            }
+        }
+    }
+
+    /**
+     * Turn the outputs of the YOLO layers for one image of a batch into detected objects, suppressing overlapping
+     * detections of the same class.
+     */
+    private List<DarknetProcess.DetectedObject> decode(float[][] outputs, int[] outputColumns, int imageIndex,
+                                                       int batchSize, int imageWidth, int imageHeight) {
+        List<Rect2d> boxes = new ArrayList<>();
+        List<Float> scores = new ArrayList<>();
+        List<Integer> classIds = new ArrayList<>();
+        for (int output = 0; output < outputs.length; output++) {
+            float[] data = outputs[output];
+            int columns = outputColumns[output];
+            int rows = data.length / columns / batchSize;
+            for (int row = imageIndex * rows; row < (imageIndex + 1) * rows; row++) {
+                int offset = row * columns;
+                // Only report the most likely class of each box, as Darknet's detection output is per class anyway.
+                int classId = -1;
+                float score = mConfidenceThreshold;
+                for (int column = FIRST_CLASS_SCORE; column < columns; column++) {
+                    if (data[offset + column] >= score) {
+                        score = data[offset + column];
+                        classId = column - FIRST_CLASS_SCORE;
+                    }
+                }
+                if (classId < 0 || score <= 0) {
+                    continue;
+                }
+                double width = data[offset + 2] * imageWidth;
+                double height = data[offset + 3] * imageHeight;
+                double left = data[offset] * imageWidth - width / 2;
+                double top = data[offset + 1] * imageHeight - height / 2;
+                boxes.add(new Rect2d(left, top, width, height));
+                scores.add(score);
+                classIds.add(classId);
+            }
+        }
+        if (boxes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        MatOfRect2d boxesMat = new MatOfRect2d();
+        MatOfFloat scoresMat = new MatOfFloat();
+        MatOfInt classIdsMat = new MatOfInt();
+        MatOfInt kept = new MatOfInt();
+        try {
+            boxesMat.fromList(boxes);
+            scoresMat.fromList(scores);
+            classIdsMat.fromList(classIds);
+            Dnn.NMSBoxesBatched(boxesMat, scoresMat, classIdsMat, mConfidenceThreshold, mNmsThreshold, kept);
+            int[] indices = kept.toArray();
+            List<DarknetProcess.DetectedObject> detectedObjects = new ArrayList<>(indices.length);
+            for (int index : indices) {
+                Rect2d box = boxes.get(index);
+                detectedObjects.add(new DarknetProcess.DetectedObject(classNameOf(classIds.get(index)),
+                        Math.round(scores.get(index) * 100),
+                        new BoundingBox((int) Math.round(box.x), (int) Math.round(box.y),
+                                (int) Math.round(box.width), (int) Math.round(box.height))));
+            }
+            return detectedObjects;
+        } finally {
+            boxesMat.release();
+            scoresMat.release();
+            classIdsMat.release();
+            kept.release();
+        }
+    }
+
+    private String classNameOf(int classId) {
+        return classId < mClassNames.size() ? mClassNames.get(classId) : "class" + classId;
+    }
+
+    private Network acquire() throws IOException, InterruptedException {
+        while (true) {
+            if (mClosed) {
+                throw new IOException("OpenCvDetector has been closed");
+            }
+            Network network = mIdleNetworks.poll();
+            if (network != null) {
+                return network;
+            }
+            boolean load;
+            synchronized (mIdleNetworks) {
+                load = mNetworkCount < mMaxNetworks;
+                if (load) {
+                    // Reserve the slot while the (slow) load takes place outside the lock.
+                    mNetworkCount++;
+                }
+            }
+            if (load) {
+                try {
+                    return loadNetwork();
+                } catch (RuntimeException e) {
+                    synchronized (mIdleNetworks) {
+                        mNetworkCount--;
+                    }
+                    throw e;
+                }
+            }
+            network = mIdleNetworks.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (network != null) {
+                return network;
+            }
+        }
+    }
+
+    private void release(Network network) {
+        if (!mClosed) {
+            mIdleNetworks.offer(network);
+        }
+    }
+
+    private Network loadNetwork() {
+        Net net = Dnn.readNetFromDarknet(mModelConfig, mModelWeights);
+        net.setPreferableBackend(Dnn.DNN_BACKEND_OPENCV);
+        net.setPreferableTarget(Dnn.DNN_TARGET_CPU);
+        return new Network(net);
+    }
+
+    private void recordExec(long start, boolean succeeded, int images) {
+        mExecLatency.recordSince(start);
+        mImages.add(images);
+        if (!succeeded) {
+            mExecFailures.increment();
+        }
+    }
+
+    private static byte[] readFully(ImageInput image) throws IOException {
+        try (InputStream input = image.openStream()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(64 * 1024);
+            byte[] buffer = new byte[8192];
+            int readBytes;
+            while ((readBytes = input.read(buffer)) != -1) {
+                output.write(buffer, 0, readBytes);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    private static synchronized void loadNativeLibrary() {
+        if (!sNativeLibraryLoaded) {
+            nu.pattern.OpenCV.loadLocally();
+            sNativeLibraryLoaded = true;
+        }
+    }
+
+    /**
+     * A loaded network along with the names of its output (YOLO) layers.
+     */
+    private static final class Network {
+
+        private final Net mNet;
+        private final List<String> mOutputNames;
+
+        private Network(Net net) {
+            mNet = net;
+            mOutputNames = net.getUnconnectedOutLayersNames();
+        }
+    }
+
+}
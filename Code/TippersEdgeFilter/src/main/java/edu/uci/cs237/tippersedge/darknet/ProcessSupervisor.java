@@ -0,0 +1,199 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Helpers for supervising external processes: keeping track of the live child processes, consuming output that is of
+ * no interest such that the process does not block on a full pipe, and killing processes (along with their
+ * descendants) that do not complete in time or that are still running when their owner is closed, such that no
+ * orphaned Darknet process keeps the node's cores busy.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class ProcessSupervisor {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessSupervisor.class.getName());
+
+
+    /**
+     * Kills processes whose deadline expires. A single thread suffices as killing a process does not block.
+     */
+    private static final ScheduledThreadPoolExecutor WATCHDOG;
+
+    static {
+        WATCHDOG = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "darknet-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        // Nearly all deadlines are cancelled; do not let them pile up in the queue.
+        WATCHDOG.setRemoveOnCancelPolicy(true);
+    }
+
+    private ProcessSupervisor() {
+        // Make constructor private in order to prevent instantiation of class.
+    }
+
+    /**
+     * Start a process and track it until it exits.
+     * @param processBuilder Configured with the command to run.
+     * @param registry The live processes of the caller (e.g., of a {@link DarknetProcess}), to which the process is
+     *                 added until it exits. Must be thread safe.
+     * @return the started process.
+     * @throws IOException if the process could not be started.
+     */
+    static Process start(ProcessBuilder processBuilder, Set<Process> registry) throws IOException {
+        Process process = processBuilder.start();
+        registry.add(process);
+        process.onExit().thenRun(() -> registry.remove(process));
+        return process;
+    }
+
+    /**
+     * Kill a process along with its descendants (descendants first, such that they are not reparented and lost).
+     * @param process The process to kill.
+     * @param forcibly {@code true} to kill the processes right away ({@code SIGKILL}), {@code false} to ask them to
+     *                 terminate ({@code SIGTERM}).
+     */
+    static void destroyTree(Process process, boolean forcibly) {
+        process.descendants().forEach(descendant -> {
+            if (forcibly) {
+                descendant.destroyForcibly();
+            } else {
+                descendant.destroy();
+            }
+        });
+        if (forcibly) {
+            process.destroyForcibly();
+        } else {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Terminate processes (and their descendants) within a grace period: ask them to terminate, wait for them to exit,
+     * and kill those that are still alive when the grace period expires.
+     * @param processes The processes to terminate.
+     * @param graceMillis The time the processes are given to exit, or {@code 0} to kill them right away.
+     * @return the number of processes that had to be killed.
+     * @throws InterruptedException if interrupted while waiting for the processes to exit. The processes are killed
+     *                              before this exception is thrown.
+     */
+    static int terminate(Collection<Process> processes, long graceMillis) throws InterruptedException {
+        List<Process> remaining = new ArrayList<>(processes);
+        if (graceMillis > 0) {
+            for (Process process : remaining) {
+                destroyTree(process, false);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+            try {
+                for (Process process : remaining) {
+                    process.onExit().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+            } catch (TimeoutException|ExecutionException e) {
+                // Killed below.
+            } catch (InterruptedException e) {
+                for (Process process : remaining) {
+                    destroyTree(process, true);
+                }
+                throw e;
+            }
+        }
+        int killed = 0;
+        for (Process process : remaining) {
+            if (process.isAlive()) {
+                LOGGER.warning(String.format("[ Killing Darknet process %d as it did not exit in time ]", process.pid()));
+                destroyTree(process, true);
+                killed++;
+            }
+        }
+        return killed;
+    }
+
+    /**
+     * Consume and discard a stream (e.g., a process' std.err) on a background thread until it is closed.
+     * @param in The stream to consume.
+     * @param threadName The name of the background thread.
+     */
+    static void drainInBackground(InputStream in, String threadName) {
+        Thread drainer = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                while (in.read(buffer) != -1) {
+                    // Discard.
+                }
+            } catch (IOException ioe) {
+                // Stream closed as the process terminated.
+            }
+        }, threadName);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Forcibly kill a process unless the returned deadline is cancelled within the given time.
+     * @param process The process to kill.
+     * @param timeoutMillis The time the process is given, or {@code 0} for no limit.
+     * @return The deadline. Cancel it when the process has completed the task it was given the time for.
+     */
+    static Deadline killAfter(Process process, long timeoutMillis) {
+        return new Deadline(process, timeoutMillis);
+    }
+
+    /**
+     * A deadline for a process to complete a task, after which the process is killed.
+     */
+    static final class Deadline {
+
+        private final long mTimeoutMillis;
+
+        private final ScheduledFuture<?> mKill;
+
+        private volatile boolean mExpired;
+
+        private Deadline(Process process, long timeoutMillis) {
+            mTimeoutMillis = timeoutMillis;
+            mKill = timeoutMillis <= 0 ? null : WATCHDOG.schedule(() -> {
+                mExpired = true;
+                destroyTree(process, true);
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Cancel the deadline, i.e., do not kill the process.
+         * @return {@code true} if the deadline was cancelled in time, {@code false} if the process has been killed.
+         */
+        boolean cancel() {
+            // Fails if the kill has already started.
+            return mKill == null || mKill.cancel(false);
+        }
+
+        /**
+         * Check if the process was killed because the deadline expired.
+         * @return {@code true} if the process was killed.
+         */
+        boolean isExpired() {
+            return mExpired;
+        }
+
+        /**
+         * Get the time the process was given.
+         * @return the time the process was given (milliseconds).
+         */
+        long getTimeoutMillis() {
+            return mTimeoutMillis;
+        }
+    }
+
+}
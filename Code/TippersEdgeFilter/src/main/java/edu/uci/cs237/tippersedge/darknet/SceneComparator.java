@@ -0,0 +1,217 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides if two scenes (the objects detected in two images) are the same, regardless of the order in which the
+ * objects were reported and of small fluctuations in the detector's output.
+ * <p>
+ * Objects of the two scenes are paired up one-to-one: two objects can be paired if they have the same name, their
+ * confidences differ by at most the confidence tolerance, and, if both have a {@link BoundingBox}, their boxes overlap
+ * by at least the minimum intersection over union. Pairs are formed greedily, best match first (i.e., highest
+ * intersection over union, or closest confidence for objects without boxes). The scenes are the same if every object
+ * is paired. Objects whose confidence is below the minimum confidence are ignored, such that borderline detections
+ * that come and go between frames do not count as changes.
+ * </p>
+ * <p>
+ * Bounding boxes are reported by the {@link OpenCvDetector}, and by {@link DarknetProcess} only when running
+ * AlexeyAB's fork of Darknet with {@code -ext_output} enabled (see {@link DarknetConfig#isDarknetExtOutput()}). With
+ * the original Darknet, objects are paired by name and confidence alone, so an object that moves (or is replaced by
+ * another object of the same kind) is not a change.
+ * </p>
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class SceneComparator {
+
+    public static final int DEFAULT_MIN_CONFIDENCE = 0;
+    public static final int DEFAULT_CONFIDENCE_TOLERANCE = 25;
+    public static final double DEFAULT_MIN_INTERSECTION_OVER_UNION = 0.5;
+
+    private final int mMinConfidence;
+
+    private final int mConfidenceTolerance;
+
+    private final double mMinIntersectionOverUnion;
+
+    /**
+     * Create a {@code SceneComparator} with the default tolerances.
+     */
+    public SceneComparator() {
+        this(DEFAULT_MIN_CONFIDENCE, DEFAULT_CONFIDENCE_TOLERANCE, DEFAULT_MIN_INTERSECTION_OVER_UNION);
+    }
+
+    /**
+     * Create a new {@code SceneComparator}.
+     * @param minConfidence Objects detected with a lower confidence (percentage) are ignored.
+     * @param confidenceTolerance The maximum difference in confidence (percentage points) between two objects that are
+     *                            considered the same object. Use {@code 100} to ignore confidences.
+     * @param minIntersectionOverUnion The minimum intersection over union of the bounding boxes of two objects that are
+     *                                 considered the same object (between {@code 0} and {@code 1}). Ignored for objects
+     *                                 without bounding boxes.
+     */
+    public SceneComparator(int minConfidence, int confidenceTolerance, double minIntersectionOverUnion) {
+        if (confidenceTolerance < 0) {
+            throw new IllegalArgumentException("confidenceTolerance cannot be negative");
+        }
+        if (minIntersectionOverUnion < 0 || minIntersectionOverUnion > 1) {
+            throw new IllegalArgumentException("minIntersectionOverUnion must be between 0 and 1");
+        }
+        mMinConfidence = minConfidence;
+        mConfidenceTolerance = confidenceTolerance;
+        mMinIntersectionOverUnion = minIntersectionOverUnion;
+    }
+
+    /**
+     * Compare two scenes.
+     * @param oldScene The objects detected in the previous image.
+     * @param newScene The objects detected in the new image.
+     * @return The objects that disappeared from and appeared in the scene.
+     */
+    public SceneDiff compare(List<DarknetProcess.DetectedObject> oldScene,
+                             List<DarknetProcess.DetectedObject> newScene) {
+        List<DarknetProcess.DetectedObject> oldObjects = filter(oldScene);
+        List<DarknetProcess.DetectedObject> newObjects = filter(newScene);
+        // Every pair of objects that may be the same object, best match first.
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < oldObjects.size(); i++) {
+            for (int j = 0; j < newObjects.size(); j++) {
+                double score = score(oldObjects.get(i), newObjects.get(j));
+                if (score >= 0) {
+                    candidates.add(new Candidate(i, j, score));
+                }
+            }
+        }
+        candidates.sort((c1, c2) -> Double.compare(c2.mScore, c1.mScore));
+        boolean[] oldPaired = new boolean[oldObjects.size()];
+        boolean[] newPaired = new boolean[newObjects.size()];
+        for (Candidate candidate : candidates) {
+            if (!oldPaired[candidate.mOldIndex] && !newPaired[candidate.mNewIndex]) {
+                oldPaired[candidate.mOldIndex] = true;
+                newPaired[candidate.mNewIndex] = true;
+            }
+        }
+        return new SceneDiff(unpaired(oldObjects, oldPaired), unpaired(newObjects, newPaired));
+    }
+
+    /**
+     * Check if two scenes are the same; a shorthand for {@code compare(oldScene, newScene).isUnchanged()}.
+     * @param oldScene The objects detected in the previous image.
+     * @param newScene The objects detected in the new image.
+     * @return {@code true} if every object of each scene can be paired with an object of the other scene.
+     */
+    public boolean isSameScene(List<DarknetProcess.DetectedObject> oldScene,
+                               List<DarknetProcess.DetectedObject> newScene) {
+        return compare(oldScene, newScene).isUnchanged();
+    }
+
+    /**
+     * Score how well two objects match.
+     * @return a score between {@code 0} and {@code 1} (higher is better), or a negative number if the objects cannot
+     * be the same object.
+     */
+    private double score(DarknetProcess.DetectedObject oldObject, DarknetProcess.DetectedObject newObject) {
+        if (!oldObject.getName().equals(newObject.getName())) {
+            return -1;
+        }
+        int confidenceDifference = Math.abs(oldObject.getConfidence() - newObject.getConfidence());
+        if (confidenceDifference > mConfidenceTolerance) {
+            return -1;
+        }
+        BoundingBox oldBox = oldObject.getBoundingBox();
+        BoundingBox newBox = newObject.getBoundingBox();
+        if (oldBox != null && newBox != null) {
+            double intersectionOverUnion = oldBox.intersectionOverUnion(newBox);
+            return intersectionOverUnion >= mMinIntersectionOverUnion ? intersectionOverUnion : -1;
+        }
+        return 1 - confidenceDifference / 100.0;
+    }
+
+    private List<DarknetProcess.DetectedObject> filter(List<DarknetProcess.DetectedObject> scene) {
+        if (mMinConfidence <= 0) {
+            return scene;
+        }
+        List<DarknetProcess.DetectedObject> filtered = new ArrayList<>(scene.size());
+        for (DarknetProcess.DetectedObject detectedObject : scene) {
+            if (detectedObject.getConfidence() >= mMinConfidence) {
+                filtered.add(detectedObject);
+            }
+        }
+        return filtered;
+    }
+
+    private static List<DarknetProcess.DetectedObject> unpaired(List<DarknetProcess.DetectedObject> objects,
+                                                                boolean[] paired) {
+        List<DarknetProcess.DetectedObject> unpaired = new ArrayList<>();
+        for (int i = 0; i < paired.length; i++) {
+            if (!paired[i]) {
+                unpaired.add(objects.get(i));
+            }
+        }
+        return Collections.unmodifiableList(unpaired);
+    }
+
+    /**
+     * A pair of objects, one from each scene, that may be the same object.
+     */
+    private static final class Candidate {
+
+        private final int mOldIndex;
+        private final int mNewIndex;
+        private final double mScore;
+
+        private Candidate(int oldIndex, int newIndex, double score) {
+            mOldIndex = oldIndex;
+            mNewIndex = newIndex;
+            mScore = score;
+        }
+    }
+
+    /**
+     * The difference between two scenes.
+     */
+    public static final class SceneDiff {
+
+        private final List<DarknetProcess.DetectedObject> mDisappeared;
+        private final List<DarknetProcess.DetectedObject> mAppeared;
+
+        private SceneDiff(List<DarknetProcess.DetectedObject> disappeared,
+                          List<DarknetProcess.DetectedObject> appeared) {
+            mDisappeared = disappeared;
+            mAppeared = appeared;
+        }
+
+        /**
+         * Get the objects of the previous scene that could not be paired with an object of the new scene.
+         * @return an unmodifiable list of objects that disappeared (or moved, or changed confidence too much).
+         */
+        public List<DarknetProcess.DetectedObject> getDisappeared() {
+            return mDisappeared;
+        }
+
+        /**
+         * Get the objects of the new scene that could not be paired with an object of the previous scene.
+         * @return an unmodifiable list of objects that appeared (or moved, or changed confidence too much).
+         */
+        public List<DarknetProcess.DetectedObject> getAppeared() {
+            return mAppeared;
+        }
+
+        /**
+         * Check if the scenes are the same.
+         * @return {@code true} if every object of each scene was paired with an object of the other scene.
+         */
+        public boolean isUnchanged() {
+            return mDisappeared.isEmpty() && mAppeared.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[ SceneDiff: disappeared %s, appeared %s ]", mDisappeared, mAppeared);
+        }
+    }
+
+}
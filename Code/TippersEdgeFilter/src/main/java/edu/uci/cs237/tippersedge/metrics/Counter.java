@@ -0,0 +1,44 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count of events, e.g., the number of uploaded samples.
+ * Incrementing is cheap under contention as the count is striped across threads.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class Counter implements Metric {
+
+    private final LongAdder mCount = new LongAdder();
+
+    /**
+     * Count a single event.
+     */
+    public void increment() {
+        mCount.increment();
+    }
+
+    /**
+     * Count {@code n} events.
+     * @param n The number of events.
+     */
+    public void add(long n) {
+        mCount.add(n);
+    }
+
+    /**
+     * Get the number of events counted so far.
+     * @return the number of events counted so far.
+     */
+    public long get() {
+        return mCount.sum();
+    }
+
+    @Override
+    public void snapshot(String name, Map<String, Number> out) {
+        out.put(name, get());
+    }
+
+}
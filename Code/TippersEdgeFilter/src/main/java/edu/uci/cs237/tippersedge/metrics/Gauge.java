@@ -0,0 +1,37 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A value that is read on demand, e.g., the depth of a queue.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class Gauge implements Metric {
+
+    private final Supplier<? extends Number> mValue;
+
+    /**
+     * Create a new {@code Gauge}.
+     * @param value Reads the current value. Invoked whenever the gauge is exported, so it should be cheap.
+     */
+    public Gauge(Supplier<? extends Number> value) {
+        mValue = Objects.requireNonNull(value, "value cannot be null");
+    }
+
+    /**
+     * Get the current value of the gauge.
+     * @return the current value of the gauge.
+     */
+    public Number get() {
+        return mValue.get();
+    }
+
+    @Override
+    public void snapshot(String name, Map<String, Number> out) {
+        out.put(name, get());
+    }
+
+}
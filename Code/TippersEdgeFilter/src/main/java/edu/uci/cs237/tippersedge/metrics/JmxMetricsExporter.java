@@ -0,0 +1,111 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+
+/**
+ * Exposes the values of a {@link MetricSet} as read-only attributes of an MBean, such that they can be inspected using,
+ * e.g., JConsole or VisualVM. The set of attributes is determined anew whenever the MBean is queried, so metrics
+ * registered after the MBean are exposed as well.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class JmxMetricsExporter implements DynamicMBean {
+
+    /**
+     * The object name used by {@link #register(MetricSet)}.
+     */
+    public static final String DEFAULT_OBJECT_NAME = "edu.uci.cs237.tippersedge:type=Metrics";
+
+    private final MetricSet mMetrics;
+
+    private JmxMetricsExporter(MetricSet metrics) {
+        mMetrics = Objects.requireNonNull(metrics, "metrics cannot be null");
+    }
+
+    /**
+     * Register an MBean that exposes the given metrics with the platform MBean server under
+     * {@link #DEFAULT_OBJECT_NAME}.
+     * @param metrics The metrics to expose.
+     * @return the name of the registered MBean.
+     * @throws JMException if the MBean could not be registered, e.g., because the name is already taken.
+     */
+    public static ObjectName register(MetricSet metrics) throws JMException {
+        return register(metrics, DEFAULT_OBJECT_NAME);
+    }
+
+    /**
+     * Register an MBean that exposes the given metrics with the platform MBean server.
+     * @param metrics The metrics to expose.
+     * @param objectName The name of the MBean.
+     * @return the name of the registered MBean.
+     * @throws JMException if the MBean could not be registered, e.g., because the name is already taken.
+     */
+    public static ObjectName register(MetricSet metrics, String objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(new JmxMetricsExporter(metrics), new ObjectName(objectName)).getObjectName();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = mMetrics.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(String.format("Attribute '%s' is read-only", attribute.getName()));
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        SortedMap<String, Number> snapshot = mMetrics.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = snapshot.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        // All attributes are read-only.
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        SortedMap<String, Number> snapshot = mMetrics.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> entry : snapshot.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "TIPPERS edge filter metrics", attributes, null, null, null);
+    }
+
+}
@@ -0,0 +1,200 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, e.g., of the time spent uploading a sample, from which the mean, maximum and percentiles
+ * can be read.
+ * <p>
+ * Durations are recorded with microsecond resolution in logarithmic buckets: every power of two is split into four
+ * buckets, so percentiles are accurate to within 25%. Recording is constant time and lock-free, and the histogram has
+ * a fixed memory footprint regardless of the number of recorded durations.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class LatencyHistogram implements Metric {
+
+    /**
+     * Number of buckets per power of two (must be a power of two itself).
+     */
+    private static final int SUB_BUCKETS = 4;
+
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    /**
+     * Durations of {@code 2^MAX_EXPONENT} microseconds (about 19 hours) or more go in the last bucket.
+     */
+    private static final int MAX_EXPONENT = 36;
+
+    /**
+     * Buckets for each duration below {@code SUB_BUCKETS}, {@code SUB_BUCKETS} buckets per power of two up to
+     * {@code 2^MAX_EXPONENT}, and an overflow bucket.
+     */
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS + 1;
+
+    /**
+     * Percentiles included in {@link #snapshot(String, Map)}.
+     */
+    private static final double[] EXPORTED_PERCENTILES = { 50, 90, 99 };
+
+    private final LongAdder[] mBuckets = new LongAdder[BUCKET_COUNT];
+
+    private final LongAdder mCount = new LongAdder();
+
+    private final LongAdder mSumMicros = new LongAdder();
+
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Create an empty {@code LatencyHistogram}.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a duration.
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        mBuckets[bucketOf(micros)].increment();
+        mCount.increment();
+        mSumMicros.add(micros);
+        long max;
+        while (micros > (max = mMaxMicros.get())) {
+            if (mMaxMicros.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Record the time elapsed since {@code startNanos}.
+     * @param startNanos The start of the duration, as obtained from {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Add the durations recorded by another histogram to this histogram, e.g., to read percentiles over the handlers of
+     * several cameras. Durations recorded by {@code other} while it is being added may or may not be included.
+     * @param other The histogram whose durations to add. It is not modified.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i].add(other.mBuckets[i].sum());
+        }
+        mCount.add(other.mCount.sum());
+        mSumMicros.add(other.mSumMicros.sum());
+        long otherMax = other.mMaxMicros.get();
+        long max;
+        while (otherMax > (max = mMaxMicros.get())) {
+            if (mMaxMicros.compareAndSet(max, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the number of recorded durations.
+     * @return the number of recorded durations.
+     */
+    public long getCount() {
+        return mCount.sum();
+    }
+
+    /**
+     * Get the mean of the recorded durations.
+     * @return the mean duration in milliseconds, or {@code 0} if no durations have been recorded.
+     */
+    public double getMeanMillis() {
+        long count = mCount.sum();
+        return count == 0 ? 0 : mSumMicros.sum() / 1000.0 / count;
+    }
+
+    /**
+     * Get the longest recorded duration.
+     * @return the longest duration in milliseconds, or {@code 0} if no durations have been recorded.
+     */
+    public double getMaxMillis() {
+        return mMaxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Get (an upper bound of) the given percentile of the recorded durations.
+     * @param percentile The percentile, between 0 and 100.
+     * @return the duration in milliseconds that (at least) {@code percentile} percent of the recorded durations did
+     * not exceed, or {@code 0} if no durations have been recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long[] counts = new long[mBuckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = mBuckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Never report more than the maximum, which is exact.
+                return Math.min(upperBoundOf(i), mMaxMicros.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public void snapshot(String name, Map<String, Number> out) {
+        out.put(name + ".count", getCount());
+        out.put(name + ".meanMillis", getMeanMillis());
+        for (double percentile : EXPORTED_PERCENTILES) {
+            out.put(String.format("%s.p%dMillis", name, (int) percentile), getPercentileMillis(percentile));
+        }
+        out.put(name + ".maxMillis", getMaxMillis());
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        // The SUB_BUCKET_BITS bits following the most significant bit select the sub-bucket.
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the (exclusive) upper bound of the durations in a bucket, in microseconds.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        if (bucket == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+}
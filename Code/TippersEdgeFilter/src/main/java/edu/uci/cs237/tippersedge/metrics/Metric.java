@@ -0,0 +1,21 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import java.util.Map;
+
+/**
+ * A measurement that can be exported, e.g., a {@link Counter} or a {@link LatencyHistogram}. A metric exports one or
+ * more named values (attributes); see {@link #snapshot(String, Map)}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public interface Metric {
+
+    /**
+     * Add the current value(s) of this metric to {@code out}.
+     * @param name The name under which this metric is exported. Metrics with a single value use {@code name} as the
+     *             key, metrics with multiple values use keys of the form {@code name.attribute}.
+     * @param out Receives the values.
+     */
+    void snapshot(String name, Map<String, Number> out);
+
+}
@@ -0,0 +1,102 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * A named collection of metrics, e.g., all metrics of a sample handler. Metric sets can be nested: a metric set is
+ * itself a {@link Metric} whose values are exported under keys of the form {@code name.metricName}.
+ * <p>
+ * Components should look up their metrics once (e.g., when constructed) and keep references to them rather than look
+ * them up by name on every update.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class MetricSet implements Metric {
+
+    private final ConcurrentMap<String, Metric> mMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * Get the counter with the given name, creating it if it does not exist.
+     * @param name The name of the counter.
+     * @return the counter.
+     * @throws IllegalArgumentException if a metric of another type is registered under {@code name}.
+     */
+    public Counter counter(String name) {
+        return getOrCreate(name, Counter.class, Counter::new);
+    }
+
+    /**
+     * Get the histogram with the given name, creating it if it does not exist.
+     * @param name The name of the histogram.
+     * @return the histogram.
+     * @throws IllegalArgumentException if a metric of another type is registered under {@code name}.
+     */
+    public LatencyHistogram histogram(String name) {
+        return getOrCreate(name, LatencyHistogram.class, LatencyHistogram::new);
+    }
+
+    /**
+     * Register a gauge, replacing any metric previously registered under the same name.
+     * @param name The name of the gauge.
+     * @param value Reads the current value of the gauge.
+     */
+    public void gauge(String name, Supplier<? extends Number> value) {
+        register(name, new Gauge(value));
+    }
+
+    /**
+     * Register a metric (e.g., the {@code MetricSet} of a component), replacing any metric previously registered
+     * under the same name.
+     * @param name The name of the metric.
+     * @param metric The metric.
+     */
+    public void register(String name, Metric metric) {
+        mMetrics.put(Objects.requireNonNull(name, "name cannot be null"),
+                Objects.requireNonNull(metric, "metric cannot be null"));
+    }
+
+    /**
+     * Remove the metric registered under the given name, if any.
+     * @param name The name of the metric.
+     */
+    public void unregister(String name) {
+        mMetrics.remove(name);
+    }
+
+    /**
+     * Get the current values of all metrics in this set.
+     * @return the current values, sorted by key.
+     */
+    public SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> out = new TreeMap<>();
+        for (Map.Entry<String, Metric> entry : mMetrics.entrySet()) {
+            entry.getValue().snapshot(entry.getKey(), out);
+        }
+        return out;
+    }
+
+    @Override
+    public void snapshot(String name, Map<String, Number> out) {
+        for (Map.Entry<String, Metric> entry : mMetrics.entrySet()) {
+            entry.getValue().snapshot(name + "." + entry.getKey(), out);
+        }
+    }
+
+    private <M extends Metric> M getOrCreate(String name, Class<M> type, Supplier<M> factory) {
+        Metric metric = mMetrics.computeIfAbsent(Objects.requireNonNull(name, "name cannot be null"),
+                key -> factory.get());
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(String.format("Metric '%s' is a %s, not a %s", name,
+                    metric.getClass().getSimpleName(), type.getSimpleName()));
+        }
+        return type.cast(metric);
+    }
+
+}
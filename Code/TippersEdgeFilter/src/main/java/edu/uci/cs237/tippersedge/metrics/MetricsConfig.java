@@ -0,0 +1,75 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Loads the metrics configuration from resources and exposes its contents to the rest of the application as static
+ * methods. Unlike the other configuration files, the metrics configuration file is optional: all keys have defaults.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class MetricsConfig {
+
+    private static final String RESOURCE_FILENAME = "/cfg/metricsconfig.properties";
+
+    private static final Properties PROPERTIES;
+
+    // ==== Begin keys used in properties file ====
+    private static final String METRICS_JMX_ENABLED_KEY = "metricsJmxEnabled";
+    private static final String METRICS_HTTP_PORT_KEY = "metricsHttpPort";
+    private static final String METRICS_HTTP_BIND_ADDRESS_KEY = "metricsHttpBindAddress";
+    // ===== End keys used in properties file =====
+
+    // ==== Begin cached values of PROPERTIES contents ====
+    private static final boolean METRICS_JMX_ENABLED;
+    private static final int METRICS_HTTP_PORT;
+    private static final String METRICS_HTTP_BIND_ADDRESS;
+    // ===== End cached values of PROPERTIES contents =====
+
+    static {
+        PROPERTIES = new Properties();
+        try (InputStream input = MetricsConfig.class.getResourceAsStream(RESOURCE_FILENAME)) {
+            if (input != null) {
+                PROPERTIES.load(input);
+            }
+        } catch (IOException e) {
+            // Fall back to the defaults.
+            e.printStackTrace();
+        }
+        METRICS_JMX_ENABLED = Boolean.parseBoolean(PROPERTIES.getProperty(METRICS_JMX_ENABLED_KEY, "true"));
+        METRICS_HTTP_PORT = Integer.parseInt(PROPERTIES.getProperty(METRICS_HTTP_PORT_KEY, "9091"));
+        METRICS_HTTP_BIND_ADDRESS = PROPERTIES.getProperty(METRICS_HTTP_BIND_ADDRESS_KEY, "127.0.0.1");
+    }
+
+    private MetricsConfig() {
+        // Make constructor private in order to prevent instantiation of class.
+    }
+
+    /**
+     * Check if metrics are to be exposed through JMX.
+     * @return {@code true} if metrics are to be exposed through JMX (the default).
+     */
+    public static boolean isJmxEnabled() {
+        return METRICS_JMX_ENABLED;
+    }
+
+    /**
+     * Get the port on which metrics are served over HTTP.
+     * @return the port on which metrics are served over HTTP (defaults to 9091), or a negative number if metrics are
+     * not to be served over HTTP.
+     */
+    public static int getHttpPort() {
+        return METRICS_HTTP_PORT;
+    }
+
+    /**
+     * Get the address on which metrics are served over HTTP.
+     * @return the address on which metrics are served over HTTP (defaults to the loopback address).
+     */
+    public static String getHttpBindAddress() {
+        return METRICS_HTTP_BIND_ADDRESS;
+    }
+
+}
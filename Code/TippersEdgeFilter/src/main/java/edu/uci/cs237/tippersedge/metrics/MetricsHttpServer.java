@@ -0,0 +1,97 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the values of a {@link MetricSet} as plain text over HTTP, one {@code key value} pair per line, e.g.:
+ * <pre>
+ * camera.lobby.filter.count 1234
+ * camera.lobby.filterRatio 0.87
+ * </pre>
+ * The values are available at {@code /metrics}. Bind to the loopback address unless the metrics are to be scraped
+ * from another host, as the endpoint is not authenticated.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class MetricsHttpServer {
+
+    /**
+     * The path at which the metrics are served.
+     */
+    public static final String PATH = "/metrics";
+
+    private final MetricSet mMetrics;
+
+    private final HttpServer mServer;
+
+    private final ExecutorService mExecutor;
+
+    /**
+     * Create a {@code MetricsHttpServer} and start serving.
+     * @param metrics The metrics to serve.
+     * @param bindAddress The address to listen on, e.g., {@code 127.0.0.1}.
+     * @param port The port to listen on, or {@code 0} to pick an ephemeral port.
+     * @throws IOException if the server could not bind to the address.
+     */
+    public MetricsHttpServer(MetricSet metrics, String bindAddress, int port) throws IOException {
+        mMetrics = Objects.requireNonNull(metrics, "metrics cannot be null");
+        mServer = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        mServer.createContext(PATH, this::handle);
+        // Requests are rare and cheap, so a single (daemon) thread suffices.
+        mExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        });
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    /**
+     * Get the port the server listens on.
+     * @return the port the server listens on.
+     */
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving.
+     */
+    public void close() {
+        mServer.stop(0);
+        mExecutor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder body = new StringBuilder();
+            for (Map.Entry<String, Number> entry : mMetrics.snapshot().entrySet()) {
+                body.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
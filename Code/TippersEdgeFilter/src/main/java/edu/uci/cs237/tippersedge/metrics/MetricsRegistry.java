@@ -0,0 +1,22 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+/**
+ * The root {@link MetricSet} of the application, i.e., the metrics that are exported through JMX (see
+ * {@link JmxMetricsExporter}) and HTTP (see {@link MetricsHttpServer}). Components register their own metric sets
+ * under a name that identifies the component, e.g., {@code camera.lobby} or {@code darknet}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class MetricsRegistry extends MetricSet {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    /**
+     * Get the registry shared by the entire application.
+     * @return the registry shared by the entire application.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+}
@@ -0,0 +1,52 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import java.util.Objects;
+
+/**
+ * Combines {@link NumericFilter}s; see {@link NumericFilter#allOf(NumericFilter...)} and
+ * {@link NumericFilter#anyOf(NumericFilter...)}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class CompositeFilter implements NumericFilter {
+
+    private final NumericFilter[] mFilters;
+
+    /**
+     * {@code true} if all filters must include a reading, {@code false} if any filter suffices.
+     */
+    private final boolean mRequireAll;
+
+    CompositeFilter(NumericFilter[] filters, boolean requireAll) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("filters cannot be empty");
+        }
+        mFilters = filters.clone();
+        for (NumericFilter filter : mFilters) {
+            Objects.requireNonNull(filter, "filters cannot contain null");
+        }
+        mRequireAll = requireAll;
+    }
+
+    @Override
+    public boolean test(long timestampMillis, double value) {
+        boolean include = mRequireAll;
+        // Do not short-circuit: filters that track every reading must see every reading.
+        for (NumericFilter filter : mFilters) {
+            if (mRequireAll) {
+                include &= filter.test(timestampMillis, value);
+            } else {
+                include |= filter.test(timestampMillis, value);
+            }
+        }
+        return include;
+    }
+
+    @Override
+    public void onIncluded(long timestampMillis, double value) {
+        for (NumericFilter filter : mFilters) {
+            filter.onIncluded(timestampMillis, value);
+        }
+    }
+
+}
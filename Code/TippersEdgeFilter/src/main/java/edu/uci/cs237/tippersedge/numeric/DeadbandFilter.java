@@ -0,0 +1,42 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+/**
+ * Includes a reading if it differs from the last included reading by more than a fixed deadband, e.g., to only upload
+ * a temperature once it has changed by more than half a degree. The first reading is always included.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class DeadbandFilter implements NumericFilter {
+
+    private final double mDeadband;
+
+    private double mLastIncluded;
+
+    private boolean mHasIncluded = false;
+
+    /**
+     * Create a new {@code DeadbandFilter}.
+     * @param deadband The change (in the unit of the readings) that a reading must exceed to be included.
+     */
+    public DeadbandFilter(double deadband) {
+        if (!(deadband >= 0)) {
+            throw new IllegalArgumentException("deadband cannot be negative");
+        }
+        mDeadband = deadband;
+    }
+
+    @Override
+    public boolean test(long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            return false;
+        }
+        return !mHasIncluded || Math.abs(value - mLastIncluded) > mDeadband;
+    }
+
+    @Override
+    public void onIncluded(long timestampMillis, double value) {
+        mLastIncluded = value;
+        mHasIncluded = true;
+    }
+
+}
@@ -0,0 +1,227 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import edu.uci.cs237.tippersedge.DoubleRingBuffer;
+import edu.uci.cs237.tippersedge.DoubleSampleProvider;
+import edu.uci.cs237.tippersedge.TickScheduler;
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+import edu.uci.cs237.tippersedge.sensoria.NumericUploader;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The primitive counterpart of {@link NumericSampleHandler} for high-rate numeric sensors (e.g., sampled hundreds of
+ * times per second). Readings flow from the {@link DoubleSampleProvider} through the {@link NumericFilter} to the
+ * {@link NumericUploader} as primitive {@code double}s, and included readings are cached in a
+ * {@link DoubleRingBuffer}, so a tick allocates nothing: no boxed {@link Double}, no {@link NumericSample} and no
+ * lambda. The handler hence produces no garbage in steady state (except for what the uploader itself allocates).
+ * <p>
+ * Its metrics have the same names as those of {@link edu.uci.cs237.tippersedge.AbstractSampleHandler}, so the two
+ * kinds of handlers can be monitored alike. Upload spooling and adaptive sampling are not supported; use a
+ * {@link NumericSampleHandler} for sensors that need them.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class DoubleSampleHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(DoubleSampleHandler.class.getName());
+
+    /**
+     * Default number of included readings held by {@link #mSampleCache}.
+     */
+    public static final int DEFAULT_SAMPLE_CACHE_SIZE = 64;
+
+    private final String mSensorId;
+
+    private final DoubleSampleProvider mSensor;
+
+    /**
+     * The most recently included (and uploaded) readings.
+     */
+    protected final DoubleRingBuffer mSampleCache;
+
+    /**
+     * Decides which readings are uploaded. Not thread safe, so access must be synchronized on the filter itself.
+     */
+    private final NumericFilter mFilter;
+
+    private final NumericUploader mUploader;
+
+    /**
+     * Schedules the ticks on an executor that is either owned by this handler or shared with other handlers.
+     */
+    private final TickScheduler mTicks;
+
+    private final long mSampleRateMillis;
+
+    /**
+     * Samples once per tick. Created once, such that a tick allocates nothing.
+     */
+    private final Runnable mTick;
+
+    private final MetricSet mMetrics = new MetricSet();
+    private final LatencyHistogram mSampleLatency = mMetrics.histogram("sample");
+    private final Counter mSampleFailures = mMetrics.counter("sampleFailures");
+    private final LatencyHistogram mFilterLatency = mMetrics.histogram("filter");
+    private final Counter mIncluded = mMetrics.counter("included");
+    private final Counter mRejected = mMetrics.counter("rejected");
+    private final LatencyHistogram mUploadLatency = mMetrics.histogram("upload");
+    private final Counter mUploadFailures = mMetrics.counter("uploadFailures");
+
+    /**
+     * Create a {@code DoubleSampleHandler} with its own (single-threaded) scheduled executor.
+     * @param sensorId Identifies the sensor at the backend.
+     * @param sensor Provides the readings.
+     * @param sampleCacheSize The maximum number of cached readings.
+     * @param sampleRateMillis The sampling period.
+     * @param filter Decides which readings are uploaded. Must not be shared with other handlers.
+     * @param uploader Uploads the readings that pass the filter.
+     */
+    public DoubleSampleHandler(String sensorId, DoubleSampleProvider sensor, int sampleCacheSize,
+                               long sampleRateMillis, NumericFilter filter, NumericUploader uploader) {
+        this(sensorId, sensor, sampleCacheSize, sampleRateMillis, Executors.newSingleThreadScheduledExecutor(), true,
+                filter, uploader);
+    }
+
+    /**
+     * Create a {@code DoubleSampleHandler} whose ticks run on an executor shared with the handlers of other sensors.
+     * @param sensorId Identifies the sensor at the backend.
+     * @param sensor Provides the readings.
+     * @param sampleCacheSize The maximum number of cached readings.
+     * @param sampleRateMillis The sampling period.
+     * @param sharedScheduledExecutor The executor on which ticks are scheduled. It is <em>not</em> shut down by
+     *                                {@link #stopPeriodicSampling(boolean, long)}.
+     * @param filter Decides which readings are uploaded. Must not be shared with other handlers.
+     * @param uploader Uploads the readings that pass the filter.
+     */
+    public DoubleSampleHandler(String sensorId, DoubleSampleProvider sensor, int sampleCacheSize,
+                               long sampleRateMillis, ScheduledExecutorService sharedScheduledExecutor,
+                               NumericFilter filter, NumericUploader uploader) {
+        this(sensorId, sensor, sampleCacheSize, sampleRateMillis,
+                Objects.requireNonNull(sharedScheduledExecutor, "sharedScheduledExecutor cannot be null"), false,
+                filter, uploader);
+    }
+
+    private DoubleSampleHandler(String sensorId, DoubleSampleProvider sensor, int sampleCacheSize,
+                                long sampleRateMillis, ScheduledExecutorService scheduledExecutor,
+                                boolean ownsScheduledExecutor, NumericFilter filter, NumericUploader uploader) {
+        mSensorId = Objects.requireNonNull(sensorId, "sensorId cannot be null");
+        mSensor = Objects.requireNonNull(sensor, "sensor cannot be null");
+        mFilter = Objects.requireNonNull(filter, "filter cannot be null");
+        mUploader = Objects.requireNonNull(uploader, "uploader cannot be null");
+        mSampleCache = new DoubleRingBuffer(sampleCacheSize);
+        mSampleRateMillis = sampleRateMillis;
+        mTicks = new TickScheduler(scheduledExecutor, ownsScheduledExecutor);
+        mTick = mTicks.exclusive(this::sampleAndUpload);
+        // The fraction of filtered readings that were not uploaded, i.e., the backend traffic saved by the filter.
+        mMetrics.gauge("filterRatio", () -> {
+            long rejected = mRejected.get();
+            long decisions = rejected + mIncluded.get();
+            return decisions == 0 ? 0.0 : (double) rejected / decisions;
+        });
+        mMetrics.gauge("sampleCacheSize", mSampleCache::size);
+    }
+
+    /**
+     * Get the identifier of the sensor.
+     * @return the identifier of the sensor at the backend.
+     */
+    public String getSensorId() {
+        return mSensorId;
+    }
+
+    /**
+     * Get the metrics of this handler; see {@link edu.uci.cs237.tippersedge.AbstractSampleHandler#getMetrics()}.
+     * @return the metrics of this handler.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Get the most recently included (and uploaded) readings.
+     * @return the cache of included readings. Do not modify it.
+     */
+    public DoubleRingBuffer getSampleCache() {
+        return mSampleCache;
+    }
+
+    /**
+     * Sample the sensor and upload the reading if it passes the filter. Allocates nothing unless FINE logging is
+     * enabled.
+     */
+    public void sampleAndUpload() {
+        long start = System.nanoTime();
+        double value = mSensor.sampleAsDouble();
+        long timestampMillis = System.currentTimeMillis();
+        mSampleLatency.recordSince(start);
+        if (Double.isNaN(value)) {
+            mSampleFailures.increment();
+            return;
+        }
+
+        start = System.nanoTime();
+        boolean include;
+        synchronized (mFilter) {
+            include = mFilter.test(timestampMillis, value);
+            if (include) {
+                // The filter's reference moves on even if the upload fails, such that a flaky backend does not turn
+                // every subsequent reading into an upload.
+                mFilter.onIncluded(timestampMillis, value);
+            }
+        }
+        mFilterLatency.recordSince(start);
+        if (!include) {
+            mRejected.increment();
+            return;
+        }
+        mIncluded.increment();
+
+        start = System.nanoTime();
+        boolean uploaded = mUploader.uploadReading(mSensorId, timestampMillis, value);
+        mUploadLatency.recordSince(start);
+        if (uploaded) {
+            // Only cache reading if reading was persisted at the backend.
+            mSampleCache.add(timestampMillis, value);
+        } else {
+            mUploadFailures.increment();
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("[ Reading %f of sensor '%s' %s ]", value, mSensorId,
+                    uploaded ? "uploaded" : "could not be uploaded"));
+        }
+    }
+
+    /**
+     * Starts periodic sampling and upload.
+     */
+    public void startPeriodicSampling() {
+        mTicks.scheduleAtFixedRate(mTick, mSampleRateMillis);
+    }
+
+    /**
+     * Stops periodic sampling and upload, but lets the ongoing tick (if any) finish.
+     * @param awaitTermination Set to {@code true} if caller wishes to block while waiting for the ongoing tick.
+     * @param timeoutMillis The maximum number of milliseconds to wait. Ignored if {@code awaitTermination} is
+     *                      {@code false}.
+     */
+    public void stopPeriodicSampling(boolean awaitTermination, long timeoutMillis) {
+        mTicks.stop();
+        if (awaitTermination) {
+            try {
+                mTicks.awaitTermination(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.WARNING, String.format("[ Interrupted while waiting for sampling of sensor '%s' to " +
+                        "stop ]", mSensorId), e);
+            }
+        }
+    }
+
+}
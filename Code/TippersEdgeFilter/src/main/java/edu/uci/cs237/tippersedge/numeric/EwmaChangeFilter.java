@@ -0,0 +1,71 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+/**
+ * Includes a reading once the exponentially weighted moving average (EWMA) of the readings has drifted away from its
+ * value at the last included reading by more than a threshold. Smoothing makes the filter insensitive to sensor noise
+ * and single outliers, which a {@link DeadbandFilter} would pass on, while still catching slow, sustained drifts. The
+ * first reading is always included.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class EwmaChangeFilter implements NumericFilter {
+
+    private final double mAlpha;
+
+    private final double mThreshold;
+
+    private double mAverage;
+
+    /**
+     * The moving average when the last reading was included.
+     */
+    private double mIncludedAverage;
+
+    private boolean mHasReadings = false;
+
+    private boolean mHasIncluded = false;
+
+    /**
+     * Create a new {@code EwmaChangeFilter}.
+     * @param alpha The weight (between 0 exclusive and 1 inclusive) of a new reading in the moving average. Smaller
+     *              values smooth more, but react more slowly; {@code 1} disables smoothing.
+     * @param threshold The change of the moving average (in the unit of the readings) that must be exceeded for a
+     *                  reading to be included.
+     */
+    public EwmaChangeFilter(double alpha, double threshold) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("alpha must be greater than 0 and at most 1");
+        }
+        if (!(threshold >= 0)) {
+            throw new IllegalArgumentException("threshold cannot be negative");
+        }
+        mAlpha = alpha;
+        mThreshold = threshold;
+    }
+
+    @Override
+    public boolean test(long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            // Would poison the moving average for good.
+            return false;
+        }
+        mAverage = mHasReadings ? mAverage + mAlpha * (value - mAverage) : value;
+        mHasReadings = true;
+        return !mHasIncluded || Math.abs(mAverage - mIncludedAverage) > mThreshold;
+    }
+
+    @Override
+    public void onIncluded(long timestampMillis, double value) {
+        mIncludedAverage = mAverage;
+        mHasIncluded = true;
+    }
+
+    /**
+     * Get the current moving average.
+     * @return the moving average of the readings seen so far.
+     */
+    public double getAverage() {
+        return mAverage;
+    }
+
+}
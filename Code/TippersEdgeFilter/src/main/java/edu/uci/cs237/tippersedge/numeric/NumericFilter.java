@@ -0,0 +1,67 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+/**
+ * A streaming filter for the readings of a numeric sensor (e.g., temperature or occupancy): decides, reading by
+ * reading, if a reading carries enough new information to be uploaded to the TIPPERS backend.
+ * <p>
+ * Filters keep a constant amount of state that is updated incrementally, so a decision costs O(1) time and allocates
+ * nothing, regardless of the number of past readings. A decision is made in two steps such that filters can be
+ * combined (see {@link #allOf(NumericFilter...)} and {@link #anyOf(NumericFilter...)}):
+ * </p>
+ * <ol>
+ *     <li>{@link #test(long, double)} is invoked for <em>every</em> reading, in order of time;</li>
+ *     <li>{@link #onIncluded(long, double)} is invoked for the readings that are actually included.</li>
+ * </ol>
+ * <p>
+ * A {@link Double#NaN} reading (i.e., a failed reading; see {@link edu.uci.cs237.tippersedge.DoubleSampleProvider})
+ * is never included and leaves the filter's state untouched, such that a single failed reading cannot disable the
+ * filter. The handlers do not pass such readings on in the first place.
+ * </p>
+ * <p>
+ * Filters are not thread safe; a filter serves a single sensor.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public interface NumericFilter {
+
+    /**
+     * Decide if a reading should be included.
+     * @param timestampMillis When the reading was taken (epoch milliseconds). Never less than that of the previous
+     *                        reading.
+     * @param value The reading.
+     * @return {@code true} if this filter finds the reading worth uploading.
+     */
+    boolean test(long timestampMillis, double value);
+
+    /**
+     * Record that a reading was included, i.e., that it is bound to reach the backend. Filters that compare readings
+     * against the last included reading update their reference here. The default implementation does nothing.
+     * @param timestampMillis When the reading was taken (epoch milliseconds).
+     * @param value The reading.
+     */
+    default void onIncluded(long timestampMillis, double value) {
+    }
+
+    /**
+     * Combine filters such that a reading is only included if all of them find it worth uploading, e.g., a
+     * {@link DeadbandFilter} and a {@link RateLimitFilter} to upload significant changes, but no more often than the
+     * rate limit allows.
+     * @param filters The filters to combine. Every filter sees every reading.
+     * @return the combined filter.
+     */
+    static NumericFilter allOf(NumericFilter... filters) {
+        return new CompositeFilter(filters, true);
+    }
+
+    /**
+     * Combine filters such that a reading is included if any of them finds it worth uploading, e.g., an
+     * {@link EwmaChangeFilter} and a {@link DeadbandFilter} to catch both slow drifts and sudden jumps.
+     * @param filters The filters to combine. Every filter sees every reading.
+     * @return the combined filter.
+     */
+    static NumericFilter anyOf(NumericFilter... filters) {
+        return new CompositeFilter(filters, false);
+    }
+
+}
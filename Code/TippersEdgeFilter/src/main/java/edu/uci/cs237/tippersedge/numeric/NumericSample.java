@@ -0,0 +1,45 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+/**
+ * A single reading of a numeric sensor, time stamped when it was taken.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class NumericSample {
+
+    private final long mTimestampMillis;
+
+    private final double mValue;
+
+    /**
+     * Create a new {@code NumericSample}.
+     * @param timestampMillis When the reading was taken (epoch milliseconds).
+     * @param value The reading.
+     */
+    public NumericSample(long timestampMillis, double value) {
+        mTimestampMillis = timestampMillis;
+        mValue = value;
+    }
+
+    /**
+     * Get when the reading was taken.
+     * @return when the reading was taken (epoch milliseconds).
+     */
+    public long getTimestampMillis() {
+        return mTimestampMillis;
+    }
+
+    /**
+     * Get the reading.
+     * @return the reading.
+     */
+    public double getValue() {
+        return mValue;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s at %d", mValue, mTimestampMillis);
+    }
+
+}
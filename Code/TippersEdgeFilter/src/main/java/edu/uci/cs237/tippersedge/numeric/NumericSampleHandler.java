@@ -0,0 +1,108 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import edu.uci.cs237.tippersedge.AbstractPeriodicSampleHandler;
+import edu.uci.cs237.tippersedge.SampleProvider;
+import edu.uci.cs237.tippersedge.sensoria.NumericUploader;
+
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A concrete implementation of {@link AbstractPeriodicSampleHandler} for numeric sensors, e.g., temperature or
+ * occupancy sensors. Whether a reading is uploaded is decided by a {@link NumericFilter}, which keeps its own O(1)
+ * state rather than rescanning {@link #mSampleCache}. As there are typically many sensors per building, handlers
+ * should share a scheduled executor; see
+ * {@link #NumericSampleHandler(String, SampleProvider, long, ScheduledExecutorService, NumericFilter, NumericUploader)}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class NumericSampleHandler extends AbstractPeriodicSampleHandler<NumericSample> {
+
+    /**
+     * Readings are filtered using the filter's own state, so the sample cache only holds the most recent included
+     * reading.
+     */
+    private static final int SAMPLE_CACHE_SIZE = 1;
+
+    private final String mSensorId;
+
+    /**
+     * Decides which readings are uploaded. Not thread safe, so access must be synchronized on the filter itself.
+     */
+    private final NumericFilter mFilter;
+
+    private final NumericUploader mUploader;
+
+    /**
+     * Create a {@code NumericSampleHandler} with its own scheduled executor.
+     * @param sensorId Identifies the sensor at the backend.
+     * @param sensor Provides the readings.
+     * @param sampleRateMillis The sampling period.
+     * @param filter Decides which readings are uploaded. Must not be shared with other handlers.
+     * @param uploader Uploads the readings that pass the filter.
+     */
+    public NumericSampleHandler(String sensorId, SampleProvider<Double> sensor, long sampleRateMillis,
+                                NumericFilter filter, NumericUploader uploader) {
+        super(timestamped(sensor), SAMPLE_CACHE_SIZE, sampleRateMillis);
+        mSensorId = Objects.requireNonNull(sensorId, "sensorId cannot be null");
+        mFilter = Objects.requireNonNull(filter, "filter cannot be null");
+        mUploader = Objects.requireNonNull(uploader, "uploader cannot be null");
+    }
+
+    /**
+     * Create a {@code NumericSampleHandler} whose ticks run on an executor shared with the handlers of other sensors.
+     * @param sensorId Identifies the sensor at the backend.
+     * @param sensor Provides the readings.
+     * @param sampleRateMillis The sampling period.
+     * @param sharedScheduledExecutor The executor on which ticks are scheduled.
+     * @param filter Decides which readings are uploaded. Must not be shared with other handlers.
+     * @param uploader Uploads the readings that pass the filter.
+     */
+    public NumericSampleHandler(String sensorId, SampleProvider<Double> sensor, long sampleRateMillis,
+                                ScheduledExecutorService sharedScheduledExecutor, NumericFilter filter,
+                                NumericUploader uploader) {
+        super(timestamped(sensor), SAMPLE_CACHE_SIZE, sampleRateMillis, sharedScheduledExecutor);
+        mSensorId = Objects.requireNonNull(sensorId, "sensorId cannot be null");
+        mFilter = Objects.requireNonNull(filter, "filter cannot be null");
+        mUploader = Objects.requireNonNull(uploader, "uploader cannot be null");
+    }
+
+    /**
+     * Get the identifier of the sensor.
+     * @return the identifier of the sensor at the backend.
+     */
+    public String getSensorId() {
+        return mSensorId;
+    }
+
+    @Override
+    protected boolean shouldIncludeSample(NumericSample sample) {
+        synchronized (mFilter) {
+            boolean include = mFilter.test(sample.getTimestampMillis(), sample.getValue());
+            if (include) {
+                // The filter's reference moves on even if the upload fails, such that a flaky backend does not turn
+                // every subsequent reading into an upload.
+                mFilter.onIncluded(sample.getTimestampMillis(), sample.getValue());
+            }
+            return include;
+        }
+    }
+
+    @Override
+    protected boolean uploadSample(NumericSample sample) {
+        return mUploader.uploadReading(mSensorId, sample.getTimestampMillis(), sample.getValue());
+    }
+
+    /**
+     * Time stamp the readings of a sensor when they are taken. A {@link Double#NaN} reading is reported as a failed
+     * reading, as by {@link DoubleSampleHandler}.
+     */
+    private static SampleProvider<NumericSample> timestamped(SampleProvider<Double> sensor) {
+        Objects.requireNonNull(sensor, "sensor cannot be null");
+        return () -> {
+            Double value = sensor.sample();
+            return value != null && !value.isNaN() ? new NumericSample(System.currentTimeMillis(), value) : null;
+        };
+    }
+
+}
@@ -0,0 +1,86 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+/**
+ * Limits the rate at which readings are included using a token bucket: a token is earned per refill interval (up to
+ * a maximum burst), and every included reading spends a token. Combine it with a filter that decides which readings
+ * are worth uploading (see {@link NumericFilter#allOf(NumericFilter...)}) to cap the backend traffic of a noisy
+ * sensor.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class RateLimitFilter implements NumericFilter {
+
+    private final long mRefillIntervalMillis;
+
+    private final int mMaxBurst;
+
+    /**
+     * The number of tokens available at {@link #mRefillTimestampMillis}.
+     */
+    private int mTokens;
+
+    /**
+     * When the most recent token was earned, or {@code Long.MIN_VALUE} before the first reading.
+     */
+    private long mRefillTimestampMillis = Long.MIN_VALUE;
+
+    /**
+     * Create a {@code RateLimitFilter} that includes at most one reading per interval.
+     * @param minIntervalMillis The minimum time between included readings.
+     */
+    public RateLimitFilter(long minIntervalMillis) {
+        this(minIntervalMillis, 1);
+    }
+
+    /**
+     * Create a new {@code RateLimitFilter}.
+     * @param refillIntervalMillis The time it takes to earn a token, i.e., the long-term minimum time between included
+     *                             readings.
+     * @param maxBurst The maximum number of tokens, i.e., the number of readings that may be included in quick
+     *                 succession after a quiet period.
+     */
+    public RateLimitFilter(long refillIntervalMillis, int maxBurst) {
+        if (refillIntervalMillis < 1 || maxBurst < 1) {
+            throw new IllegalArgumentException("refillIntervalMillis and maxBurst must be positive");
+        }
+        mRefillIntervalMillis = refillIntervalMillis;
+        mMaxBurst = maxBurst;
+        mTokens = maxBurst;
+    }
+
+    @Override
+    public boolean test(long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            return false;
+        }
+        refill(timestampMillis);
+        return mTokens > 0;
+    }
+
+    @Override
+    public void onIncluded(long timestampMillis, double value) {
+        refill(timestampMillis);
+        if (mTokens > 0) {
+            mTokens--;
+        }
+    }
+
+    private void refill(long timestampMillis) {
+        if (mRefillTimestampMillis == Long.MIN_VALUE) {
+            mRefillTimestampMillis = timestampMillis;
+            return;
+        }
+        long earned = (timestampMillis - mRefillTimestampMillis) / mRefillIntervalMillis;
+        if (earned <= 0) {
+            return;
+        }
+        if (earned >= mMaxBurst - mTokens) {
+            mTokens = mMaxBurst;
+            mRefillTimestampMillis = timestampMillis;
+        } else {
+            mTokens += (int) earned;
+            mRefillTimestampMillis += earned * mRefillIntervalMillis;
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+/**
+ * Swinging-door trending compression: a reading is only included if the readings since the last included reading can
+ * no longer be approximated, within a deviation, by a straight line starting at the last included reading. Unlike a
+ * {@link DeadbandFilter}, a steady trend (e.g., a room warming up) is hence uploaded as its end points only.
+ * <p>
+ * The filter keeps the two "doors" (the steepest lower and the flattest upper slope through the last included
+ * reading that still cover all readings since) and includes a reading once the doors close, i.e., once the lower slope
+ * exceeds the upper slope. Classic swinging-door archiving stores the reading <em>before</em> the one that closes the
+ * doors; as a sample handler can only upload the current reading, this filter includes the reading that closes the
+ * doors instead, which bounds the error at the reading (rather than one reading) after the trend changes. Readings
+ * are also included once the maximum interval has passed, such that the backend notices that the sensor is alive.
+ * The first reading is always included.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class SwingingDoorFilter implements NumericFilter {
+
+    private final double mDeviation;
+
+    private final long mMaxIntervalMillis;
+
+    private long mIncludedTimestampMillis;
+
+    private double mIncludedValue;
+
+    private boolean mHasIncluded = false;
+
+    /**
+     * The steepest slope (per millisecond) through the last included reading that stays below all readings since,
+     * widened by the deviation.
+     */
+    private double mLowerSlope;
+
+    /**
+     * The flattest slope (per millisecond) through the last included reading that stays above all readings since,
+     * widened by the deviation.
+     */
+    private double mUpperSlope;
+
+    /**
+     * Create a {@code SwingingDoorFilter} without a maximum interval.
+     * @param deviation The maximum deviation (in the unit of the readings) of a left-out reading from the straight line
+     *                  between the included readings around it.
+     */
+    public SwingingDoorFilter(double deviation) {
+        this(deviation, Long.MAX_VALUE);
+    }
+
+    /**
+     * Create a new {@code SwingingDoorFilter}.
+     * @param deviation The maximum deviation (in the unit of the readings) of a left-out reading from the straight line
+     *                  between the included readings around it.
+     * @param maxIntervalMillis The maximum time between included readings.
+     */
+    public SwingingDoorFilter(double deviation, long maxIntervalMillis) {
+        if (!(deviation >= 0)) {
+            throw new IllegalArgumentException("deviation cannot be negative");
+        }
+        if (maxIntervalMillis < 1) {
+            throw new IllegalArgumentException("maxIntervalMillis must be positive");
+        }
+        mDeviation = deviation;
+        mMaxIntervalMillis = maxIntervalMillis;
+    }
+
+    @Override
+    public boolean test(long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            // Would jam the doors for good.
+            return false;
+        }
+        if (!mHasIncluded) {
+            return true;
+        }
+        long elapsedMillis = timestampMillis - mIncludedTimestampMillis;
+        if (elapsedMillis >= mMaxIntervalMillis) {
+            return true;
+        }
+        if (elapsedMillis <= 0) {
+            // Same instant as the last included reading: there is no slope, only the deviation.
+            return Math.abs(value - mIncludedValue) > mDeviation;
+        }
+        mUpperSlope = Math.min(mUpperSlope, (value + mDeviation - mIncludedValue) / elapsedMillis);
+        mLowerSlope = Math.max(mLowerSlope, (value - mDeviation - mIncludedValue) / elapsedMillis);
+        return mLowerSlope > mUpperSlope;
+    }
+
+    @Override
+    public void onIncluded(long timestampMillis, double value) {
+        mIncludedTimestampMillis = timestampMillis;
+        mIncludedValue = value;
+        mHasIncluded = true;
+        // Open the doors.
+        mUpperSlope = Double.POSITIVE_INFINITY;
+        mLowerSlope = Double.NEGATIVE_INFINITY;
+    }
+
+}
@@ -0,0 +1,385 @@
+package edu.uci.cs237.tippersedge.sensoria;
+
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link ImageUploader} that uploads images asynchronously and in batches using another {@link ImageUploader}
+ * (e.g., a {@link SensoriaImageUploader}) that performs the actual requests.
+ * <p>
+ * Images passed to {@link #uploadImageAsync(String)} are coalesced into a batch that is sent using
+ * {@link ImageUploader#uploadImages(List)} when it holds a maximum number of images, when it exceeds a maximum size
+ * in bytes, or when its oldest image has waited for the linger time, whichever comes first. At most a fixed number of
+ * requests are in flight at any time; further batches queue up. Failed requests are retried with exponential backoff
+ * (with jitter, such that edge nodes do not retry in lockstep after a backend outage) up to a maximum number of
+ * attempts, after which the images of the batch are reported as failed.
+ * </p>
+ * <p>
+ * Call {@link #close(long)} to send any pending images and release the threads.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class BatchingImageUploader implements ImageUploader {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchingImageUploader.class.getName());
+
+    public static final int DEFAULT_MAX_BATCH_COUNT = 16;
+    public static final long DEFAULT_MAX_BATCH_BYTES = 8 * 1024 * 1024;
+    public static final long DEFAULT_LINGER_MILLIS = 500;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 1_000;
+
+    /**
+     * Upper bound of the delay between two attempts, regardless of the number of attempts.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final ImageUploader mDelegate;
+    private final int mMaxBatchCount;
+    private final long mMaxBatchBytes;
+    private final long mLingerMillis;
+    private final int mMaxAttempts;
+    private final long mInitialBackoffMillis;
+
+    /**
+     * Sends batches. The number of threads is the maximum number of requests in flight.
+     */
+    private final ExecutorService mSenders;
+
+    /**
+     * Flushes lingering batches and schedules retries.
+     */
+    private final ScheduledExecutorService mTimer;
+
+    /**
+     * Images waiting to be batched. Guarded by {@code this}.
+     */
+    private List<PendingImage> mPending = new ArrayList<>();
+
+    /**
+     * Total size of {@link #mPending}. Guarded by {@code this}.
+     */
+    private long mPendingBytes;
+
+    /**
+     * Flushes {@link #mPending} when its oldest image has lingered long enough. Guarded by {@code this}.
+     */
+    private ScheduledFuture<?> mLingerTimer;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean mClosed;
+
+    /**
+     * The batches that have been sent (or are waiting to be sent or retried) but have not completed, such that
+     * {@link #close(long)} can report them as failed if they are dropped by the executors. Compared by identity.
+     * Guarded by {@code this}.
+     */
+    private final Set<List<PendingImage>> mOutstandingBatches = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final MetricSet mMetrics = new MetricSet();
+    private final Counter mBatches = mMetrics.counter("batches");
+    private final Counter mRetries = mMetrics.counter("retries");
+    private final Counter mFailedBatches = mMetrics.counter("failedBatches");
+    private final LatencyHistogram mRequestLatency = mMetrics.histogram("request");
+    private final Counter mBatchedImages = mMetrics.counter("images");
+
+    /**
+     * Create a {@code BatchingImageUploader} using the default batching, concurrency and retry settings.
+     * @param delegate Performs the actual requests.
+     */
+    public BatchingImageUploader(ImageUploader delegate) {
+        this(delegate, DEFAULT_MAX_BATCH_COUNT, DEFAULT_MAX_BATCH_BYTES, DEFAULT_LINGER_MILLIS, DEFAULT_MAX_IN_FLIGHT,
+                DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Create a new {@code BatchingImageUploader}.
+     * @param delegate Performs the actual requests.
+     * @param maxBatchCount The maximum number of images per request.
+     * @param maxBatchBytes A batch is sent as soon as its images total at least this many bytes.
+     * @param lingerMillis The maximum time an image waits for other images to be batched with.
+     * @param maxInFlight The maximum number of concurrent requests.
+     * @param maxAttempts The maximum number of attempts per batch (including the first).
+     * @param initialBackoffMillis The delay before the first retry. Doubles with every retry.
+     */
+    public BatchingImageUploader(ImageUploader delegate, int maxBatchCount, long maxBatchBytes, long lingerMillis,
+                                 int maxInFlight, int maxAttempts, long initialBackoffMillis) {
+        if (maxBatchCount < 1 || maxBatchBytes < 1 || maxInFlight < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("maxBatchCount, maxBatchBytes, maxInFlight and maxAttempts must be positive");
+        }
+        if (lingerMillis < 0 || initialBackoffMillis < 0) {
+            throw new IllegalArgumentException("lingerMillis and initialBackoffMillis cannot be negative");
+        }
+        mDelegate = Objects.requireNonNull(delegate, "delegate cannot be null");
+        mMaxBatchCount = maxBatchCount;
+        mMaxBatchBytes = maxBatchBytes;
+        mLingerMillis = lingerMillis;
+        mMaxAttempts = maxAttempts;
+        mInitialBackoffMillis = initialBackoffMillis;
+        AtomicInteger threadCount = new AtomicInteger();
+        mSenders = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread t = new Thread(r, "upload-sender-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        mTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "upload-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        mMetrics.gauge("pendingImages", this::getPendingImageCount);
+        mMetrics.gauge("outstandingBatches", this::getOutstandingBatchCount);
+    }
+
+    /**
+     * Uploads an image, blocking until the batch it is part of has been uploaded (or has failed).
+     * Prefer {@link #uploadImageAsync(String)}.
+     * @param imgFilepath The filepath to the image that is to be uploaded.
+     * @return {@code true} if upload was successful, {@code false} otherwise.
+     */
+    @Override
+    public boolean uploadImage(String imgFilepath) {
+        return uploadImageAsync(imgFilepath).join();
+    }
+
+    @Override
+    public boolean uploadImages(List<String> imgFilepaths) {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (String imgFilepath : imgFilepaths) {
+            results.add(uploadImageAsync(imgFilepath));
+        }
+        boolean uploaded = true;
+        for (CompletableFuture<Boolean> result : results) {
+            uploaded &= result.join();
+        }
+        return uploaded;
+    }
+
+    /**
+     * Queue an image for upload as part of a batch.
+     * @param imgFilepath The filepath to the image that is to be uploaded.
+     * @return A future that completes with {@code true} once the batch containing the image has been uploaded, or
+     * with {@code false} if all attempts failed or this uploader has been closed.
+     */
+    @Override
+    public CompletableFuture<Boolean> uploadImageAsync(String imgFilepath) {
+        PendingImage image = new PendingImage(imgFilepath, new File(imgFilepath).length());
+        List<PendingImage> batch = null;
+        synchronized (this) {
+            if (mClosed) {
+                return CompletableFuture.completedFuture(false);
+            }
+            mPending.add(image);
+            mPendingBytes += image.mSizeBytes;
+            if (mPending.size() >= mMaxBatchCount || mPendingBytes >= mMaxBatchBytes) {
+                batch = takePending();
+            } else if (mLingerTimer == null) {
+                mLingerTimer = mTimer.schedule(this::flush, mLingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            send(batch, 1);
+        }
+        return image.mResult;
+    }
+
+    /**
+     * Send the pending images now rather than wait for the batch to fill up or linger.
+     */
+    public void flush() {
+        List<PendingImage> batch;
+        synchronized (this) {
+            batch = mPending.isEmpty() ? null : takePending();
+        }
+        if (batch != null) {
+            send(batch, 1);
+        }
+    }
+
+    /**
+     * Send any pending images, wait for all batches to complete, and release the threads. Images queued after this
+     * method is invoked are reported as failed.
+     * @param timeoutMillis The maximum time to wait for batches to complete. Images of batches that have not completed
+     *                      by then (e.g., batches waiting to be retried) are reported as failed.
+     * @return {@code true} if all batches completed in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean close(long timeoutMillis) throws InterruptedException {
+        List<PendingImage> batch;
+        synchronized (this) {
+            mClosed = true;
+            batch = mPending.isEmpty() ? null : takePending();
+        }
+        if (batch != null) {
+            send(batch, 1);
+        }
+        boolean completed;
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining;
+            while (!mOutstandingBatches.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            completed = mOutstandingBatches.isEmpty();
+        }
+        // Queued sends and scheduled retries are dropped, so their batches would never complete.
+        mTimer.shutdownNow();
+        mSenders.shutdownNow();
+        List<List<PendingImage>> abandoned;
+        synchronized (this) {
+            abandoned = new ArrayList<>(mOutstandingBatches);
+        }
+        for (List<PendingImage> abandonedBatch : abandoned) {
+            complete(abandonedBatch, false);
+        }
+        return completed;
+    }
+
+    /**
+     * Get the number of images waiting to be batched.
+     * @return the number of images waiting to be batched.
+     */
+    public synchronized int getPendingImageCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Get the number of batches that are in flight, queued for sending, or waiting to be retried.
+     * @return the number of batches that have not completed.
+     */
+    public synchronized int getOutstandingBatchCount() {
+        return mOutstandingBatches.size();
+    }
+
+    /**
+     * Get the metrics of this uploader: the number of batches sent ({@code batches}), retried ({@code retries}) and
+     * given up on ({@code failedBatches}), the number of images in the batches sent ({@code images}), the request
+     * latency ({@code request}), and the number of pending images and outstanding batches.
+     * @return the metrics of this uploader.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Take the pending images as a new batch. Must hold the lock on {@code this}.
+     */
+    private List<PendingImage> takePending() {
+        List<PendingImage> batch = mPending;
+        mPending = new ArrayList<>();
+        mPendingBytes = 0;
+        if (mLingerTimer != null) {
+            mLingerTimer.cancel(false);
+            mLingerTimer = null;
+        }
+        mOutstandingBatches.add(batch);
+        return batch;
+    }
+
+    private void send(List<PendingImage> batch, int attempt) {
+        try {
+            mSenders.execute(() -> attempt(batch, attempt));
+        } catch (RejectedExecutionException e) {
+            // Closed while the batch was waiting to be retried.
+            complete(batch, false);
+        }
+    }
+
+    private void attempt(List<PendingImage> batch, int attempt) {
+        List<String> filepaths = new ArrayList<>(batch.size());
+        for (PendingImage image : batch) {
+            filepaths.add(image.mFilepath);
+        }
+        mBatches.increment();
+        mBatchedImages.add(batch.size());
+        long start = System.nanoTime();
+        boolean uploaded;
+        try {
+            uploaded = mDelegate.uploadImages(filepaths);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("[ Upload of a batch of %d images threw (attempt %d) ]",
+                    batch.size(), attempt), e);
+            uploaded = false;
+        }
+        mRequestLatency.recordSince(start);
+        if (uploaded) {
+            complete(batch, true);
+        } else if (attempt < mMaxAttempts) {
+            mRetries.increment();
+            try {
+                mTimer.schedule(() -> send(batch, attempt + 1), backoffMillis(attempt), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                complete(batch, false);
+            }
+        } else {
+            mFailedBatches.increment();
+            complete(batch, false);
+        }
+    }
+
+    /**
+     * Compute the delay before the next attempt: exponential in the number of attempts so far, capped, and randomized
+     * to between half and all of that.
+     */
+    private long backoffMillis(int attempt) {
+        long backoff = mInitialBackoffMillis << Math.min(attempt - 1, 30);
+        backoff = Math.min(Math.max(backoff, 0), MAX_BACKOFF_MILLIS);
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * Report the outcome of a batch, unless it has already been reported (e.g., by {@link #close(long)} while the
+     * batch was in flight).
+     */
+    private void complete(List<PendingImage> batch, boolean uploaded) {
+        synchronized (this) {
+            if (!mOutstandingBatches.remove(batch)) {
+                return;
+            }
+            notifyAll();
+        }
+        for (PendingImage image : batch) {
+            image.mResult.complete(uploaded);
+        }
+    }
+
+    /**
+     * An image waiting to be uploaded.
+     */
+    private static final class PendingImage {
+
+        private final String mFilepath;
+        private final long mSizeBytes;
+        private final CompletableFuture<Boolean> mResult = new CompletableFuture<>();
+
+        private PendingImage(String filepath, long sizeBytes) {
+            mFilepath = filepath;
+            mSizeBytes = sizeBytes;
+        }
+    }
+
+}
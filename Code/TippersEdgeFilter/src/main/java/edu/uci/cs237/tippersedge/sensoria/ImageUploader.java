@@ -1,5 +1,8 @@
 package edu.uci.cs237.tippersedge.sensoria;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for uploading an image.
  * Allows for dependency injection (see
@@ -18,4 +21,30 @@ public interface ImageUploader {
      */
     boolean uploadImage(String imgFilepath);
 
+    /**
+     * Uploads several images in a single request (e.g., a multi-part request), such that the per-request overhead is
+     * only paid once. The batch either succeeds or fails as a whole.
+     * The default implementation uploads the images one by one using {@link #uploadImage(String)}.
+     * @param imgFilepaths The filepaths to the images that are to be uploaded.
+     * @return {@code true} if all images were uploaded, {@code false} otherwise.
+     */
+    default boolean uploadImages(List<String> imgFilepaths) {
+        boolean uploaded = true;
+        for (String imgFilepath : imgFilepaths) {
+            uploaded &= uploadImage(imgFilepath);
+        }
+        return uploaded;
+    }
+
+    /**
+     * Uploads an image without blocking the calling thread (if supported by the implementation, e.g.,
+     * {@link BatchingImageUploader}). The image file must not be deleted until the returned future completes.
+     * The default implementation uploads the image synchronously using {@link #uploadImage(String)}.
+     * @param imgFilepath The filepath to the image that is to be uploaded.
+     * @return A future that completes with {@code true} if the upload was successful, {@code false} otherwise.
+     */
+    default CompletableFuture<Boolean> uploadImageAsync(String imgFilepath) {
+        return CompletableFuture.completedFuture(uploadImage(imgFilepath));
+    }
+
 }
@@ -1,20 +1,105 @@
 package edu.uci.cs237.tippersedge.sensoria;
 
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Mock implementation of {@link ImageUploader} for use during development/until we are granted access to the TIPPERS
- * REST API.
+ * REST API. Can simulate the latency and failures of a real backend.
  *
  * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
  */
 public class MockImageUploader implements ImageUploader {
 
     /**
-     * <p><b>Side-effect free mock implementation that does nothing.</b></p>
+     * Simulated round-trip time per request (regardless of the number of images in the request).
+     */
+    private final long mLatencyMillis;
+
+    /**
+     * Probability that a request fails.
+     */
+    private final double mFailureProbability;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mUploadedImages = new AtomicLong();
+
+    /**
+     * Create a {@code MockImageUploader} that succeeds instantly.
+     */
+    public MockImageUploader() {
+        this(0, 0);
+    }
+
+    /**
+     * Create a {@code MockImageUploader} that simulates a backend.
+     * @param latencyMillis The simulated round-trip time per request.
+     * @param failureProbability The probability (between 0 and 1) that a request fails.
+     */
+    public MockImageUploader(long latencyMillis, double failureProbability) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("latencyMillis cannot be negative");
+        }
+        if (failureProbability < 0 || failureProbability > 1) {
+            throw new IllegalArgumentException("failureProbability must be between 0 and 1");
+        }
+        mLatencyMillis = latencyMillis;
+        mFailureProbability = failureProbability;
+    }
+
+    /**
+     * <p><b>Mock implementation that uploads nothing, but takes the simulated latency and fails with the simulated
+     * probability.</b></p>
      *
      * {@inheritDoc}
      */
     @Override
     public boolean uploadImage(String imgFilepath) {
+        return simulateRequest(1);
+    }
+
+    /**
+     * <p><b>Mock implementation that uploads nothing, but takes the simulated latency (once for the entire batch) and
+     * fails with the simulated probability.</b></p>
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean uploadImages(List<String> imgFilepaths) {
+        return simulateRequest(imgFilepaths.size());
+    }
+
+    /**
+     * Get the number of requests made to the (simulated) backend.
+     * @return the number of requests made to the (simulated) backend.
+     */
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    /**
+     * Get the number of images in successful requests.
+     * @return the number of images that were (supposedly) uploaded.
+     */
+    public long getUploadedImageCount() {
+        return mUploadedImages.get();
+    }
+
+    private boolean simulateRequest(int images) {
+        mRequests.incrementAndGet();
+        if (mLatencyMillis > 0) {
+            try {
+                Thread.sleep(mLatencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (mFailureProbability > 0 && ThreadLocalRandom.current().nextDouble() < mFailureProbability) {
+            return false;
+        }
+        mUploadedImages.addAndGet(images);
         return true;
     }
 
@@ -0,0 +1,34 @@
+package edu.uci.cs237.tippersedge.sensoria;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mock implementation of {@link NumericUploader} for use during development/until we are granted access to the
+ * TIPPERS REST API. Uploads nothing, but counts the readings it is handed.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class MockNumericUploader implements NumericUploader {
+
+    private final AtomicLong mUploadedReadings = new AtomicLong();
+
+    /**
+     * <p><b>Mock implementation that uploads nothing and always succeeds.</b></p>
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean uploadReading(String sensorId, long timestampMillis, double value) {
+        mUploadedReadings.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get the number of readings that were (supposedly) uploaded.
+     * @return the number of readings that were (supposedly) uploaded.
+     */
+    public long getUploadedReadingCount() {
+        return mUploadedReadings.get();
+    }
+
+}
@@ -0,0 +1,20 @@
+package edu.uci.cs237.tippersedge.sensoria;
+
+/**
+ * Interface for uploading the readings of numeric sensors (e.g., temperature or occupancy sensors); the counterpart
+ * of {@link ImageUploader} for non-camera sensors.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public interface NumericUploader {
+
+    /**
+     * Uploads a reading.
+     * @param sensorId Identifies the sensor at the backend.
+     * @param timestampMillis When the reading was taken (epoch milliseconds).
+     * @param value The reading.
+     * @return {@code true} if upload was successful, {@code false} otherwise.
+     */
+    boolean uploadReading(String sensorId, long timestampMillis, double value);
+
+}
@@ -2,6 +2,7 @@ package edu.uci.cs237.tippersedge.sensoria;
 
 /**
  * Concrete implementation of {@link ImageUploader} that uploads images to Sensoria using the TIPPERS REST API.
+ * Wrap it in a {@link BatchingImageUploader} to upload images asynchronously and in batches.
  *
  * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
  */
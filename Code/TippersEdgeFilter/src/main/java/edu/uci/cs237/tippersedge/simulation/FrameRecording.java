@@ -0,0 +1,262 @@
+package edu.uci.cs237.tippersedge.simulation;
+
+import edu.uci.cs237.tippersedge.darknet.BoundingBox;
+import edu.uci.cs237.tippersedge.darknet.DarknetProcess;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * A sequence of JPEG encoded camera frames held in memory, each annotated with the objects in its scene, for replay
+ * through the filter without a camera (see {@link ReplayFrameProvider}) and without Darknet (see
+ * {@link ReplayDetector}). A recording is either loaded from a directory of recorded frames or generated.
+ * <p>
+ * Recordings are immutable and may be shared by any number of providers. The frames' bytes are shared with the
+ * frames served by the providers, so they must not be modified.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class FrameRecording {
+
+    /**
+     * Width and height of the grayscale thumbnails used to split recorded frames into scenes.
+     */
+    private static final int THUMBNAIL_SIZE = 16;
+
+    /**
+     * Minimum mean difference in thumbnail intensity (on a scale from 0 to 255) between two consecutive recorded
+     * frames for the second frame to start a new scene.
+     */
+    private static final int SCENE_CHANGE_THRESHOLD = 8;
+
+    /**
+     * The maximum number of people in a generated scene.
+     */
+    private static final int MAX_PEOPLE = 3;
+
+    /**
+     * The number of pixels perturbed in every generated frame to mimic sensor noise.
+     */
+    private static final int NOISY_PIXELS = 64;
+
+    private final List<byte[]> mFrames;
+
+    /**
+     * The objects in the scene of each frame, keyed by the frames' content hashes (see
+     * {@link edu.uci.cs237.tippersedge.darknet.ImageInput#getContentHash()}).
+     */
+    private final Map<Long, List<DarknetProcess.DetectedObject>> mScenes;
+
+    private final int mSceneCount;
+
+    private FrameRecording(List<byte[]> frames, List<List<DarknetProcess.DetectedObject>> scenes, int sceneCount) {
+        mFrames = Collections.unmodifiableList(frames);
+        Map<Long, List<DarknetProcess.DetectedObject>> byHash = new HashMap<>();
+        for (int i = 0; i < frames.size(); i++) {
+            // Identical frames are the same image and hence the same scene, so the first one wins.
+            byHash.putIfAbsent(contentHash(frames.get(i)), Collections.unmodifiableList(scenes.get(i)));
+        }
+        mScenes = byHash;
+        mSceneCount = sceneCount;
+    }
+
+    /**
+     * Load the JPEGs in a directory, in the order of their names (e.g., {@code img1540000000000.jpg}, as written by
+     * {@link edu.uci.cs237.tippersedge.cameras.CameraRestClient#sample()}).
+     * <p>
+     * A recording carries no ground truth, so frames are split into scenes by comparing thumbnails of consecutive
+     * frames: a frame that differs noticeably from its predecessor starts a new scene, and consecutive scenes are
+     * given a different number of people. This is a proxy for the decisions Darknet would make, which is good enough
+     * to exercise the filter (and to estimate its ratio) when planning capacity.
+     * </p>
+     * @param directory The directory holding the recorded frames.
+     * @param maxFrames The maximum number of frames to load (all frames are held in memory).
+     * @return the recording.
+     * @throws IOException if the directory holds no JPEGs, or if a JPEG could not be read.
+     */
+    public static FrameRecording fromDirectory(String directory, int maxFrames) throws IOException {
+        File[] files = new File(directory).listFiles((dir, name) -> name.toLowerCase().endsWith(".jpg"));
+        if (files == null || files.length == 0) {
+            throw new IOException(String.format("No JPEGs found in '%s'", directory));
+        }
+        Arrays.sort(files);
+        List<byte[]> frames = new ArrayList<>();
+        List<List<DarknetProcess.DetectedObject>> scenes = new ArrayList<>();
+        int[] previousThumbnail = null;
+        int scene = -1;
+        for (File file : Arrays.copyOf(files, Math.min(files.length, maxFrames))) {
+            byte[] jpeg = Files.readAllBytes(file.toPath());
+            BufferedImage img = ImageIO.read(file);
+            if (img == null) {
+                throw new IOException(String.format("Could not decode '%s'", file));
+            }
+            int[] thumbnail = thumbnail(img);
+            if (previousThumbnail == null || meanDifference(previousThumbnail, thumbnail) > SCENE_CHANGE_THRESHOLD) {
+                scene++;
+            }
+            previousThumbnail = thumbnail;
+            frames.add(jpeg);
+            // Consecutive scenes differ in the number of people.
+            scenes.add(people(scene % MAX_PEOPLE + 1));
+        }
+        return new FrameRecording(frames, scenes, scene + 1);
+    }
+
+    /**
+     * Generate frames showing up to {@value #MAX_PEOPLE} people (filled rectangles) in front of the bundled eagle
+     * image. Every frame carries a bit of noise, such that no two frames are identical, and the number of people
+     * changes from one frame to the next with the given probability.
+     * @param frameCount The number of frames to generate.
+     * @param sceneChangeProbability The probability (between 0 and 1) that a frame shows a different scene than its
+     *                               predecessor. Roughly one minus the filter ratio to expect.
+     * @param seed Seeds the random choices, such that runs can be compared.
+     * @return the recording.
+     * @throws IOException if the eagle image could not be read.
+     */
+    public static FrameRecording synthetic(int frameCount, double sceneChangeProbability, long seed)
+            throws IOException {
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("frameCount must be positive");
+        }
+        if (sceneChangeProbability < 0 || sceneChangeProbability > 1) {
+            throw new IllegalArgumentException("sceneChangeProbability must be between 0 and 1");
+        }
+        BufferedImage background;
+        try (InputStream input = FrameRecording.class.getResourceAsStream("/img/eagle.jpg")) {
+            if (input == null) {
+                throw new IOException("Could not find resource: /img/eagle.jpg");
+            }
+            background = ImageIO.read(input);
+        }
+        Random random = new Random(seed);
+        int width = background.getWidth();
+        int height = background.getHeight();
+        // Large enough to exceed PixelDiffPreFilter's default change threshold.
+        int size = Math.min(width, height) / 4;
+        List<byte[]> frames = new ArrayList<>();
+        List<List<DarknetProcess.DetectedObject>> scenes = new ArrayList<>();
+        List<DarknetProcess.DetectedObject> people = Collections.emptyList();
+        int sceneCount = 0;
+        for (int i = 0; i < frameCount; i++) {
+            if (i == 0 || random.nextDouble() < sceneChangeProbability) {
+                // A different number of people, such that the detector's output differs too.
+                int count;
+                do {
+                    count = random.nextInt(MAX_PEOPLE + 1);
+                } while (i > 0 && count == people.size());
+                people = new ArrayList<>();
+                for (int j = 0; j < count; j++) {
+                    BoundingBox box = new BoundingBox(random.nextInt(width - size), random.nextInt(height - size),
+                            size, size);
+                    people.add(new DarknetProcess.DetectedObject("person", 80 + random.nextInt(20), box));
+                }
+                sceneCount++;
+            }
+            BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = img.createGraphics();
+            g.drawImage(background, 0, 0, null);
+            g.setColor(Color.RED);
+            for (DarknetProcess.DetectedObject person : people) {
+                BoundingBox box = person.getBoundingBox();
+                g.fillRect(box.getLeft(), box.getTop(), box.getWidth(), box.getHeight());
+            }
+            g.dispose();
+            for (int j = 0; j < NOISY_PIXELS; j++) {
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                img.setRGB(x, y, img.getRGB(x, y) ^ 0x070707);
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageIO.write(img, "jpg", output);
+            frames.add(output.toByteArray());
+            scenes.add(people);
+        }
+        return new FrameRecording(frames, scenes, sceneCount);
+    }
+
+    /**
+     * Get the number of frames.
+     * @return the number of frames.
+     */
+    public int size() {
+        return mFrames.size();
+    }
+
+    /**
+     * Get the number of scenes, i.e., the number of frames (including the first) that differ from their predecessor.
+     * @return the number of scenes.
+     */
+    public int getSceneCount() {
+        return mSceneCount;
+    }
+
+    /**
+     * Get the raw JPEG bytes of a frame.
+     * @param index The index of the frame.
+     * @return the raw JPEG bytes of the frame. Must not be modified.
+     */
+    public byte[] getFrame(int index) {
+        return mFrames.get(index);
+    }
+
+    /**
+     * Get the objects in the scene of a frame.
+     * @param contentHash The content hash of the frame (see
+     *                    {@link edu.uci.cs237.tippersedge.darknet.ImageInput#getContentHash()}).
+     * @return the objects in the scene, or {@code null} if no frame of this recording has the given hash.
+     */
+    public List<DarknetProcess.DetectedObject> getScene(long contentHash) {
+        return mScenes.get(contentHash);
+    }
+
+    /**
+     * Compute the content hash of raw JPEG bytes the same way {@link edu.uci.cs237.tippersedge.cameras.CameraFrame}
+     * does.
+     */
+    private static long contentHash(byte[] jpeg) {
+        CRC32 crc = new CRC32();
+        crc.update(jpeg, 0, jpeg.length);
+        return crc.getValue();
+    }
+
+    private static List<DarknetProcess.DetectedObject> people(int count) {
+        List<DarknetProcess.DetectedObject> people = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            people.add(new DarknetProcess.DetectedObject("person", 90));
+        }
+        return people;
+    }
+
+    private static int[] thumbnail(BufferedImage img) {
+        BufferedImage thumbnail = new BufferedImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = thumbnail.createGraphics();
+        g.drawImage(img, 0, 0, THUMBNAIL_SIZE, THUMBNAIL_SIZE, null);
+        g.dispose();
+        return thumbnail.getRaster().getPixels(0, 0, THUMBNAIL_SIZE, THUMBNAIL_SIZE, (int[]) null);
+    }
+
+    private static double meanDifference(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return (double) sum / a.length;
+    }
+
+}
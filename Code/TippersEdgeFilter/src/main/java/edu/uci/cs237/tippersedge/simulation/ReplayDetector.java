@@ -0,0 +1,72 @@
+package edu.uci.cs237.tippersedge.simulation;
+
+import edu.uci.cs237.tippersedge.darknet.DarknetProcess;
+import edu.uci.cs237.tippersedge.darknet.Detector;
+import edu.uci.cs237.tippersedge.darknet.FakeDetector;
+import edu.uci.cs237.tippersedge.darknet.ImageInput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for {@link DarknetProcess} when replaying a {@link FrameRecording}: reports the objects the recording
+ * attributes to each frame after a configurable latency, such that the filter makes the same decisions as it would
+ * with Darknet in the loop (as far as the recording's scenes are accurate) without Darknet installed.
+ * <p>
+ * Frames are identified by their content hashes. Images that are not part of the recording are reported as empty
+ * scenes.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class ReplayDetector implements Detector {
+
+    private final FrameRecording mRecording;
+
+    private final long mLatencyNanos;
+
+    private final AtomicLong mDetections = new AtomicLong();
+
+    /**
+     * Create a new {@code ReplayDetector}.
+     * @param recording Holds the objects in the scene of each frame.
+     * @param latencyMillis The time each detection takes, e.g., as measured for Darknet on the target hardware.
+     */
+    public ReplayDetector(FrameRecording recording, long latencyMillis) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException("latencyMillis cannot be negative");
+        }
+        mRecording = Objects.requireNonNull(recording, "recording cannot be null");
+        mLatencyNanos = latencyMillis * 1_000_000;
+    }
+
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(String imageFilepath) throws IOException, InterruptedException {
+        return exec(ImageInput.ofFile(imageFilepath));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only the image's content hash is read, so images held in memory are not written to disk.
+     */
+    @Override
+    public List<DarknetProcess.DetectedObject> exec(ImageInput image) throws IOException, InterruptedException {
+        List<DarknetProcess.DetectedObject> scene = mRecording.getScene(image.getContentHash());
+        FakeDetector.simulateLatency(mLatencyNanos);
+        mDetections.incrementAndGet();
+        return scene != null ? new ArrayList<>(scene) : Collections.emptyList();
+    }
+
+    /**
+     * Get the number of detections performed.
+     * @return the number of detections performed.
+     */
+    public long getDetectionCount() {
+        return mDetections.get();
+    }
+
+}
@@ -0,0 +1,81 @@
+package edu.uci.cs237.tippersedge.simulation;
+
+import edu.uci.cs237.tippersedge.SampleProvider;
+import edu.uci.cs237.tippersedge.cameras.CameraFrame;
+
+import java.util.Objects;
+
+/**
+ * Stand-in for {@link edu.uci.cs237.tippersedge.cameras.CameraRestClient} that serves the frames of a
+ * {@link FrameRecording} in order, as in-memory frames time stamped with the time they are served. The replay speed is
+ * set by the sampling period of the handler: a recording made at one frame every two seconds is replayed ten times
+ * faster by a handler that samples every 200 milliseconds.
+ * <p>
+ * Several providers may replay the same recording, e.g., one per simulated camera, starting at different frames such
+ * that the cameras do not change scenes in lockstep.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class ReplayFrameProvider implements SampleProvider<CameraFrame> {
+
+    private final FrameRecording mRecording;
+
+    private final boolean mLoop;
+
+    private final String mSpillDirectory;
+
+    /**
+     * The index of the next frame to serve. Guarded by {@code this}.
+     */
+    private int mNext;
+
+    /**
+     * The number of frames served. Guarded by {@code this}.
+     */
+    private long mServed = 0;
+
+    /**
+     * Create a new {@code ReplayFrameProvider}.
+     * @param recording The frames to serve.
+     * @param firstFrame The index of the first frame to serve.
+     * @param loop If {@code true}, the recording is replayed from the start once it has been served in its entirety.
+     *             If {@code false}, {@link #sample()} returns {@code null} from then on.
+     * @param spillDirectory Where frames are written when a file is required (e.g., for upload).
+     */
+    public ReplayFrameProvider(FrameRecording recording, int firstFrame, boolean loop, String spillDirectory) {
+        mRecording = Objects.requireNonNull(recording, "recording cannot be null");
+        if (firstFrame < 0 || firstFrame >= recording.size()) {
+            throw new IllegalArgumentException("firstFrame out of bounds");
+        }
+        mNext = firstFrame;
+        mLoop = loop;
+        mSpillDirectory = Objects.requireNonNull(spillDirectory, "spillDirectory cannot be null");
+    }
+
+    /**
+     * {@inheritDoc}
+     * The frame shares its bytes with the recording rather than copying them.
+     */
+    @Override
+    public synchronized CameraFrame sample() {
+        if (mNext == mRecording.size()) {
+            if (!mLoop) {
+                return null;
+            }
+            mNext = 0;
+        }
+        byte[] jpeg = mRecording.getFrame(mNext++);
+        mServed++;
+        return CameraFrame.inMemory(jpeg, jpeg.length, null, mSpillDirectory, System.currentTimeMillis());
+    }
+
+    /**
+     * Get the number of frames served by {@link #sample()}.
+     * @return the number of frames served.
+     */
+    public synchronized long getServedFrameCount() {
+        return mServed;
+    }
+
+}
@@ -0,0 +1,238 @@
+package edu.uci.cs237.tippersedge.simulation;
+
+import edu.uci.cs237.tippersedge.ExecutionMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Loads the configuration of {@link SimulationRunner} from resources and exposes its contents to the rest of the
+ * application as static methods. Like the metrics configuration file, the simulation configuration file is optional:
+ * all keys have defaults.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class SimulationConfig {
+
+    private static final String RESOURCE_FILENAME = "/cfg/simulationconfig.properties";
+
+    private static final Properties PROPERTIES;
+
+    // ==== Begin keys used in properties file ====
+    /**
+     * Directory of recorded frames to replay. If not set, frames are generated.
+     */
+    private static final String SIMULATION_FRAME_DIRECTORY_KEY = "simulationFrameDirectory";
+    private static final String SIMULATION_MAX_FRAMES_KEY = "simulationMaxFrames";
+    /**
+     * The number of generated frames, and the probability that a generated frame shows a different scene than its
+     * predecessor. Ignored when replaying recorded frames.
+     */
+    private static final String SIMULATION_SYNTHETIC_FRAMES_KEY = "simulationSyntheticFrames";
+    private static final String SIMULATION_SCENE_CHANGE_PROBABILITY_KEY = "simulationSceneChangeProbability";
+    /**
+     * Comma separated numbers of cameras; a run is made for each.
+     */
+    private static final String SIMULATION_CAMERAS_KEY = "simulationCameras";
+    /**
+     * The sampling period at which the frames were recorded (or are assumed to be recorded), and the factor by which
+     * replay is sped up.
+     */
+    private static final String SIMULATION_RECORDED_PERIOD_KEY = "simulationRecordedPeriodMillis";
+    private static final String SIMULATION_SPEED_UP_KEY = "simulationSpeedUp";
+    private static final String SIMULATION_DURATION_KEY = "simulationDurationSeconds";
+    private static final String SIMULATION_SAMPLE_CACHE_SIZE_KEY = "simulationSampleCacheSize";
+    private static final String SIMULATION_EXECUTION_MODE_KEY = "simulationExecutionMode";
+    private static final String SIMULATION_SCHEDULER_THREADS_KEY = "simulationSchedulerThreads";
+    /**
+     * The latency of the fake detector (as measured for Darknet on the target hardware), the number of concurrent
+     * detections (e.g., the number of resident Darknet processes), and the round-trip time of the fake backend.
+     */
+    private static final String SIMULATION_DETECTOR_LATENCY_KEY = "simulationDetectorLatencyMillis";
+    private static final String SIMULATION_DETECTION_CONCURRENCY_KEY = "simulationDetectionConcurrency";
+    private static final String SIMULATION_UPLOAD_LATENCY_KEY = "simulationUploadLatencyMillis";
+    // ===== End keys used in properties file =====
+
+    // ==== Begin cached values of PROPERTIES contents ====
+    private static final String SIMULATION_FRAME_DIRECTORY;
+    private static final int SIMULATION_MAX_FRAMES;
+    private static final int SIMULATION_SYNTHETIC_FRAMES;
+    private static final double SIMULATION_SCENE_CHANGE_PROBABILITY;
+    private static final int[] SIMULATION_CAMERAS;
+    private static final long SIMULATION_RECORDED_PERIOD;
+    private static final double SIMULATION_SPEED_UP;
+    private static final long SIMULATION_DURATION;
+    private static final int SIMULATION_SAMPLE_CACHE_SIZE;
+    private static final ExecutionMode SIMULATION_EXECUTION_MODE;
+    private static final int SIMULATION_SCHEDULER_THREADS;
+    private static final long SIMULATION_DETECTOR_LATENCY;
+    private static final int SIMULATION_DETECTION_CONCURRENCY;
+    private static final long SIMULATION_UPLOAD_LATENCY;
+    // ===== End cached values of PROPERTIES contents =====
+
+    static {
+        PROPERTIES = new Properties();
+        try (InputStream input = SimulationConfig.class.getResourceAsStream(RESOURCE_FILENAME)) {
+            if (input != null) {
+                PROPERTIES.load(input);
+            }
+        } catch (IOException e) {
+            // Fall back to the defaults.
+            e.printStackTrace();
+        }
+        String frameDirectory = PROPERTIES.getProperty(SIMULATION_FRAME_DIRECTORY_KEY, "").trim();
+        SIMULATION_FRAME_DIRECTORY = frameDirectory.isEmpty() ? null : frameDirectory;
+        SIMULATION_MAX_FRAMES = Integer.parseInt(PROPERTIES.getProperty(SIMULATION_MAX_FRAMES_KEY, "1000"));
+        SIMULATION_SYNTHETIC_FRAMES = Integer.parseInt(PROPERTIES.getProperty(SIMULATION_SYNTHETIC_FRAMES_KEY, "256"));
+        SIMULATION_SCENE_CHANGE_PROBABILITY = Double.parseDouble(
+                PROPERTIES.getProperty(SIMULATION_SCENE_CHANGE_PROBABILITY_KEY, "0.1"));
+        SIMULATION_CAMERAS = parseCameraCounts(PROPERTIES.getProperty(SIMULATION_CAMERAS_KEY, "1,2,4,8"));
+        SIMULATION_RECORDED_PERIOD = Long.parseLong(PROPERTIES.getProperty(SIMULATION_RECORDED_PERIOD_KEY, "2000"));
+        SIMULATION_SPEED_UP = Double.parseDouble(PROPERTIES.getProperty(SIMULATION_SPEED_UP_KEY, "10"));
+        SIMULATION_DURATION = Long.parseLong(PROPERTIES.getProperty(SIMULATION_DURATION_KEY, "30"));
+        SIMULATION_SAMPLE_CACHE_SIZE = Integer.parseInt(PROPERTIES.getProperty(SIMULATION_SAMPLE_CACHE_SIZE_KEY, "300"));
+        SIMULATION_EXECUTION_MODE = ExecutionMode.fromName(PROPERTIES.getProperty(SIMULATION_EXECUTION_MODE_KEY,
+                ExecutionMode.PLATFORM.name()));
+        SIMULATION_SCHEDULER_THREADS = Integer.parseInt(PROPERTIES.getProperty(SIMULATION_SCHEDULER_THREADS_KEY, "8"));
+        SIMULATION_DETECTOR_LATENCY = Long.parseLong(PROPERTIES.getProperty(SIMULATION_DETECTOR_LATENCY_KEY, "200"));
+        SIMULATION_DETECTION_CONCURRENCY = Integer.parseInt(PROPERTIES.getProperty(SIMULATION_DETECTION_CONCURRENCY_KEY,
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        SIMULATION_UPLOAD_LATENCY = Long.parseLong(PROPERTIES.getProperty(SIMULATION_UPLOAD_LATENCY_KEY, "100"));
+    }
+
+    private SimulationConfig() {
+        // Make constructor private in order to prevent instantiation of class.
+    }
+
+    /**
+     * Parse a comma separated list of camera counts, e.g., {@code 1,2,4,8}.
+     * @param cameraCounts The list to parse.
+     * @return the camera counts.
+     * @throws IllegalArgumentException if a count is not a positive number.
+     */
+    static int[] parseCameraCounts(String cameraCounts) {
+        int[] counts = Arrays.stream(cameraCounts.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+        for (int count : counts) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Camera counts must be positive");
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Get the directory of recorded frames to replay.
+     * @return the directory of recorded frames, or {@code null} if frames are to be generated (the default).
+     */
+    public static String getFrameDirectory() {
+        return SIMULATION_FRAME_DIRECTORY;
+    }
+
+    /**
+     * Get the maximum number of recorded frames to load.
+     * @return the maximum number of recorded frames to load (defaults to 1000).
+     */
+    public static int getMaxFrames() {
+        return SIMULATION_MAX_FRAMES;
+    }
+
+    /**
+     * Get the number of frames to generate if no directory of recorded frames is specified.
+     * @return the number of frames to generate (defaults to 256).
+     */
+    public static int getSyntheticFrameCount() {
+        return SIMULATION_SYNTHETIC_FRAMES;
+    }
+
+    /**
+     * Get the probability that a generated frame shows a different scene than its predecessor.
+     * @return the scene change probability (defaults to 0.1).
+     */
+    public static double getSceneChangeProbability() {
+        return SIMULATION_SCENE_CHANGE_PROBABILITY;
+    }
+
+    /**
+     * Get the numbers of cameras to simulate, one run for each.
+     * @return the numbers of cameras (defaults to 1, 2, 4 and 8).
+     */
+    public static int[] getCameraCounts() {
+        return SIMULATION_CAMERAS.clone();
+    }
+
+    /**
+     * Get the sampling period at which the frames were recorded.
+     * @return the recorded sampling period in milliseconds (defaults to 2000).
+     */
+    public static long getRecordedPeriodMillis() {
+        return SIMULATION_RECORDED_PERIOD;
+    }
+
+    /**
+     * Get the factor by which replay is sped up relative to the recorded sampling period.
+     * @return the speed-up (defaults to 10).
+     */
+    public static double getSpeedUp() {
+        return SIMULATION_SPEED_UP;
+    }
+
+    /**
+     * Get the duration of each run.
+     * @return the duration of each run in seconds (defaults to 30).
+     */
+    public static long getDurationSeconds() {
+        return SIMULATION_DURATION;
+    }
+
+    /**
+     * Get the maximum number of cached images per simulated camera.
+     * @return the sample cache size (defaults to 300, as for real cameras).
+     */
+    public static int getSampleCacheSize() {
+        return SIMULATION_SAMPLE_CACHE_SIZE;
+    }
+
+    /**
+     * Get the kind of threads that run the simulated cameras' ticks.
+     * @return the execution mode (defaults to {@link ExecutionMode#PLATFORM}).
+     */
+    public static ExecutionMode getExecutionMode() {
+        return SIMULATION_EXECUTION_MODE;
+    }
+
+    /**
+     * Get the number of threads shared by the simulated cameras for sampling and filtering. Ignored in
+     * {@link ExecutionMode#VIRTUAL} mode, where each tick runs on a virtual thread of its own.
+     * @return the number of scheduler threads (defaults to 8).
+     */
+    public static int getSchedulerThreadCount() {
+        return SIMULATION_SCHEDULER_THREADS;
+    }
+
+    /**
+     * Get the time each detection by the fake detector takes.
+     * @return the detector latency in milliseconds (defaults to 200).
+     */
+    public static long getDetectorLatencyMillis() {
+        return SIMULATION_DETECTOR_LATENCY;
+    }
+
+    /**
+     * Get the maximum number of concurrent detections.
+     * @return the detection concurrency (defaults to the number of available processors).
+     */
+    public static int getDetectionConcurrency() {
+        return SIMULATION_DETECTION_CONCURRENCY;
+    }
+
+    /**
+     * Get the round-trip time of the fake backend per upload request.
+     * @return the upload latency in milliseconds (defaults to 100).
+     */
+    public static long getUploadLatencyMillis() {
+        return SIMULATION_UPLOAD_LATENCY;
+    }
+
+}
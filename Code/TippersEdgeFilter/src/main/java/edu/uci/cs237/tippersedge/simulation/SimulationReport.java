@@ -0,0 +1,134 @@
+package edu.uci.cs237.tippersedge.simulation;
+
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+
+/**
+ * The outcome of a {@link SimulationRunner} run.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class SimulationReport {
+
+    private final int mCameras;
+
+    private final long mElapsedMillis;
+
+    private final double mTargetFramesPerSecond;
+
+    private final long mIncluded;
+
+    private final long mRejected;
+
+    private final LatencyHistogram mDecisionLatency;
+
+    private final long mUploadedImages;
+
+    private final long mPeakHeapBytes;
+
+    SimulationReport(int cameras, long elapsedMillis, double targetFramesPerSecond, long included, long rejected,
+                     LatencyHistogram decisionLatency, long uploadedImages, long peakHeapBytes) {
+        mCameras = cameras;
+        mElapsedMillis = elapsedMillis;
+        mTargetFramesPerSecond = targetFramesPerSecond;
+        mIncluded = included;
+        mRejected = rejected;
+        mDecisionLatency = decisionLatency;
+        mUploadedImages = uploadedImages;
+        mPeakHeapBytes = peakHeapBytes;
+    }
+
+    /**
+     * Get the number of simulated cameras.
+     * @return the number of simulated cameras.
+     */
+    public int getCameras() {
+        return mCameras;
+    }
+
+    /**
+     * Get the duration of the run, from the start of sampling until all ticks had completed.
+     * @return the duration of the run in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return mElapsedMillis;
+    }
+
+    /**
+     * Get the number of frames decided upon (included or rejected) per second.
+     * @return the throughput in frames per second.
+     */
+    public double getFramesPerSecond() {
+        return mElapsedMillis == 0 ? 0 : (mIncluded + mRejected) * 1000.0 / mElapsedMillis;
+    }
+
+    /**
+     * Get the number of frames per second the cameras were sampled at. A throughput that falls short of this means
+     * that the node cannot keep up with this many cameras.
+     * @return the target throughput in frames per second.
+     */
+    public double getTargetFramesPerSecond() {
+        return mTargetFramesPerSecond;
+    }
+
+    /**
+     * Get the number of frames included by the filter.
+     * @return the number of included frames.
+     */
+    public long getIncluded() {
+        return mIncluded;
+    }
+
+    /**
+     * Get the number of frames rejected by the filter.
+     * @return the number of rejected frames.
+     */
+    public long getRejected() {
+        return mRejected;
+    }
+
+    /**
+     * Get the fraction of frames that were rejected, i.e., the backend traffic saved by the filter.
+     * @return the filter ratio.
+     */
+    public double getFilterRatio() {
+        long decisions = mIncluded + mRejected;
+        return decisions == 0 ? 0.0 : (double) mRejected / decisions;
+    }
+
+    /**
+     * Get the time the handlers took to decide on a frame, including the wait for object detection, over all
+     * cameras.
+     * @return the decision latencies.
+     */
+    public LatencyHistogram getDecisionLatency() {
+        return mDecisionLatency;
+    }
+
+    /**
+     * Get the number of images received by the fake backend.
+     * @return the number of uploaded images.
+     */
+    public long getUploadedImages() {
+        return mUploadedImages;
+    }
+
+    /**
+     * Get (an upper bound of) the largest heap usage during the run, as the sum of the peak usages of the heap's
+     * memory pools.
+     * @return the peak heap usage in bytes.
+     */
+    public long getPeakHeapBytes() {
+        return mPeakHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[ %d cameras: %.1f frames/s (target %.1f), filter ratio %.2f, decision latency " +
+                        "p50 %.1f ms p90 %.1f ms p99 %.1f ms max %.1f ms, %d uploaded, peak heap %d MiB ]",
+                mCameras, getFramesPerSecond(), mTargetFramesPerSecond, getFilterRatio(),
+                mDecisionLatency.getPercentileMillis(50), mDecisionLatency.getPercentileMillis(90),
+                mDecisionLatency.getPercentileMillis(99), mDecisionLatency.getMaxMillis(), mUploadedImages,
+                mPeakHeapBytes / (1024 * 1024));
+    }
+
+}
@@ -0,0 +1,237 @@
+package edu.uci.cs237.tippersedge.simulation;
+
+import edu.uci.cs237.tippersedge.ExecutionMode;
+import edu.uci.cs237.tippersedge.cameras.CameraSampleHandler;
+import edu.uci.cs237.tippersedge.cameras.PixelDiffPreFilter;
+import edu.uci.cs237.tippersedge.darknet.FairDetectionScheduler;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+import edu.uci.cs237.tippersedge.sensoria.BatchingImageUploader;
+import edu.uci.cs237.tippersedge.sensoria.MockImageUploader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays a {@link FrameRecording} through the full camera pipeline, with a {@link ReplayDetector} in place of Darknet
+ * and a {@link MockImageUploader} in place of the TIPPERS backend, such that the capacity of a node (the number of
+ * cameras it can filter at a given sampling period) can be estimated on a laptop without cameras and without a
+ * backend.
+ * <p>
+ * The simulated cameras are set up like those of a {@link edu.uci.cs237.tippersedge.cameras.MultiCameraSampler}: they
+ * share a scheduled executor, a {@link FairDetectionScheduler} in front of the detector, and a batching uploader, and
+ * every camera has its own {@link PixelDiffPreFilter}. Each run reports the throughput, the filter ratio, the
+ * decision latency percentiles and the peak heap usage; see {@link SimulationReport}. A run whose throughput falls
+ * short of its target throughput has more cameras than the node can keep up with.
+ * </p>
+ * <p>
+ * Run {@link #main(String[])} (e.g., using {@code gradle simulate}) to simulate the camera counts configured in
+ * {@link SimulationConfig}, or pass the camera counts as arguments.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class SimulationRunner {
+
+    private static final Logger LOGGER = Logger.getLogger(SimulationRunner.class.getName());
+
+    /**
+     * The maximum time to wait for each stage of the pipeline to drain at the end of a run.
+     */
+    private static final long DRAIN_TIMEOUT_MILLIS = 30_000;
+
+    private final FrameRecording mRecording;
+
+    private final long mSamplePeriodMillis;
+
+    private final int mSampleCacheSize;
+
+    private final ExecutionMode mExecutionMode;
+
+    private final int mSchedulerThreads;
+
+    private final long mDetectorLatencyMillis;
+
+    private final int mDetectionConcurrency;
+
+    private final long mUploadLatencyMillis;
+
+    /**
+     * Create a new {@code SimulationRunner}.
+     * @param recording The frames to replay.
+     * @param recordedPeriodMillis The sampling period at which the frames were recorded.
+     * @param speedUp The factor by which replay is sped up, e.g., {@code 10} to sample each camera ten times as often
+     *                as when the frames were recorded. Use this to compress a long recording into a short run, or to
+     *                simulate a shorter sampling period.
+     * @param sampleCacheSize The maximum number of cached images per camera.
+     * @param executionMode The kind of threads that run the cameras' ticks.
+     * @param schedulerThreads The number of threads shared by all cameras for sampling and filtering. Ignored in
+     *                         {@link ExecutionMode#VIRTUAL} mode, where each tick runs on a virtual thread of its own.
+     * @param detectorLatencyMillis The time each detection takes, e.g., as measured for Darknet on the target hardware.
+     * @param detectionConcurrency The maximum number of concurrent detections, e.g., the number of resident Darknet
+     *                             processes.
+     * @param uploadLatencyMillis The round-trip time of the backend per upload request.
+     */
+    public SimulationRunner(FrameRecording recording, long recordedPeriodMillis, double speedUp, int sampleCacheSize,
+                            ExecutionMode executionMode, int schedulerThreads, long detectorLatencyMillis,
+                            int detectionConcurrency, long uploadLatencyMillis) {
+        if (recordedPeriodMillis < 1) {
+            throw new IllegalArgumentException("recordedPeriodMillis must be positive");
+        }
+        if (!(speedUp > 0)) {
+            throw new IllegalArgumentException("speedUp must be positive");
+        }
+        if (schedulerThreads < 1) {
+            throw new IllegalArgumentException("schedulerThreads must be positive");
+        }
+        mRecording = Objects.requireNonNull(recording, "recording cannot be null");
+        mSamplePeriodMillis = Math.max(1, Math.round(recordedPeriodMillis / speedUp));
+        mSampleCacheSize = sampleCacheSize;
+        mExecutionMode = Objects.requireNonNull(executionMode, "executionMode cannot be null");
+        mSchedulerThreads = schedulerThreads;
+        mDetectorLatencyMillis = detectorLatencyMillis;
+        mDetectionConcurrency = detectionConcurrency;
+        mUploadLatencyMillis = uploadLatencyMillis;
+    }
+
+    /**
+     * Simulate the camera counts given as arguments (e.g., {@code 1 2 4 8}), or those configured in
+     * {@link SimulationConfig} if no arguments are given, and print a report for each.
+     * @param args The numbers of cameras to simulate.
+     * @throws IOException if the frames could not be loaded or generated.
+     * @throws InterruptedException if interrupted while running.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        FrameRecording recording;
+        if (SimulationConfig.getFrameDirectory() != null) {
+            recording = FrameRecording.fromDirectory(SimulationConfig.getFrameDirectory(),
+                    SimulationConfig.getMaxFrames());
+        } else {
+            recording = FrameRecording.synthetic(SimulationConfig.getSyntheticFrameCount(),
+                    SimulationConfig.getSceneChangeProbability(), 42);
+        }
+        LOGGER.info(String.format("[ Replaying %d frames (%d scenes) ]", recording.size(), recording.getSceneCount()));
+        SimulationRunner runner = new SimulationRunner(recording, SimulationConfig.getRecordedPeriodMillis(),
+                SimulationConfig.getSpeedUp(), SimulationConfig.getSampleCacheSize(),
+                SimulationConfig.getExecutionMode(), SimulationConfig.getSchedulerThreadCount(),
+                SimulationConfig.getDetectorLatencyMillis(), SimulationConfig.getDetectionConcurrency(),
+                SimulationConfig.getUploadLatencyMillis());
+        int[] cameraCounts = args.length > 0 ?
+                SimulationConfig.parseCameraCounts(String.join(",", args)) : SimulationConfig.getCameraCounts();
+        List<SimulationReport> reports = new ArrayList<>();
+        for (int cameras : cameraCounts) {
+            reports.add(runner.run(cameras, TimeUnit.SECONDS.toMillis(SimulationConfig.getDurationSeconds())));
+        }
+        for (SimulationReport report : reports) {
+            System.out.println(report);
+        }
+    }
+
+    /**
+     * Get the sampling period of each simulated camera, i.e., the recorded sampling period divided by the speed-up.
+     * @return the sampling period in milliseconds.
+     */
+    public long getSamplePeriodMillis() {
+        return mSamplePeriodMillis;
+    }
+
+    /**
+     * Sample the given number of simulated cameras for the given time, then let the pipeline drain.
+     * @param cameras The number of cameras to simulate.
+     * @param durationMillis How long to sample for.
+     * @return the outcome of the run.
+     * @throws IOException if the directory for spilled frames could not be created.
+     * @throws InterruptedException if interrupted while running. The pipeline is shut down regardless.
+     */
+    public SimulationReport run(int cameras, long durationMillis) throws IOException, InterruptedException {
+        if (cameras < 1) {
+            throw new IllegalArgumentException("cameras must be positive");
+        }
+        File spillDirectory = Files.createTempDirectory("simulation").toFile();
+        ReplayDetector detector = new ReplayDetector(mRecording, mDetectorLatencyMillis);
+        FairDetectionScheduler detectionScheduler = new FairDetectionScheduler(detector, mDetectionConcurrency);
+        MockImageUploader backend = new MockImageUploader(mUploadLatencyMillis, 0);
+        BatchingImageUploader imageUploader = new BatchingImageUploader(backend);
+        ScheduledExecutorService scheduledExecutor = mExecutionMode.newScheduledExecutor("simulation-tick",
+                mSchedulerThreads);
+        List<CameraSampleHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < cameras; i++) {
+            // Spread the cameras over the recording, such that they do not change scenes in lockstep.
+            ReplayFrameProvider provider = new ReplayFrameProvider(mRecording,
+                    (int) ((long) i * mRecording.size() / cameras), true, spillDirectory.getPath());
+            handlers.add(new CameraSampleHandler(provider, mSampleCacheSize, mSamplePeriodMillis, scheduledExecutor,
+                    detectionScheduler.forSource("camera" + i), new PixelDiffPreFilter(), imageUploader));
+        }
+        // Start from a clean heap, such that the peak reflects this run only.
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        LOGGER.info(String.format("[ Simulating %d cameras sampled every %d ms for %d ms ]", cameras,
+                mSamplePeriodMillis, durationMillis));
+        long start = System.currentTimeMillis();
+        long elapsedMillis;
+        try {
+            for (CameraSampleHandler handler : handlers) {
+                handler.startPeriodicSampling();
+            }
+            Thread.sleep(durationMillis);
+        } finally {
+            for (CameraSampleHandler handler : handlers) {
+                handler.stopPeriodicSampling(true, DRAIN_TIMEOUT_MILLIS);
+            }
+            elapsedMillis = System.currentTimeMillis() - start;
+            detectionScheduler.close();
+            scheduledExecutor.shutdown();
+            imageUploader.close(DRAIN_TIMEOUT_MILLIS);
+            deleteSpilledFrames(spillDirectory);
+        }
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+        LatencyHistogram decisionLatency = new LatencyHistogram();
+        long included = 0;
+        long rejected = 0;
+        for (CameraSampleHandler handler : handlers) {
+            MetricSet metrics = handler.getMetrics();
+            decisionLatency.add(metrics.histogram("filter"));
+            included += metrics.counter("included").get();
+            rejected += metrics.counter("rejected").get();
+        }
+        double targetFramesPerSecond = cameras * 1000.0 / mSamplePeriodMillis;
+        return new SimulationReport(cameras, elapsedMillis, targetFramesPerSecond, included, rejected,
+                decisionLatency, backend.getUploadedImageCount(), peakHeapBytes);
+    }
+
+    /**
+     * Delete the frames still spilled once the run is over (e.g., those held by the sample caches), and the directory.
+     */
+    private static void deleteSpilledFrames(File spillDirectory) {
+        File[] files = spillDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        if (!spillDirectory.delete() && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("[ Could not delete spill directory '%s' ]", spillDirectory));
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+package edu.uci.cs237.tippersedge.spool;
+
+import java.io.IOException;
+
+/**
+ * Converts samples to and from the bytes stored in an {@link UploadSpool}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ * @param <S> The type of sample.
+ */
+public interface SpoolCodec<S> {
+
+    /**
+     * Serialize a sample. The sample is not modified or released.
+     * @param sample The sample to serialize.
+     * @return The bytes to store in the spool.
+     * @throws IOException if the sample could not be read.
+     */
+    byte[] encode(S sample) throws IOException;
+
+    /**
+     * Deserialize a sample. The returned sample is owned by the caller.
+     * @param payload Bytes previously returned by {@link #encode(Object)}. The codec may keep a reference to the array.
+     * @return The sample.
+     * @throws IOException if {@code payload} is not a valid sample.
+     */
+    S decode(byte[] payload) throws IOException;
+
+}
@@ -0,0 +1,121 @@
+package edu.uci.cs237.tippersedge.spool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Loads the upload spool configuration from resources and exposes its contents to the rest of the application as
+ * static methods. The spool configuration file is optional: all keys have defaults, and the spool is disabled by
+ * default.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public final class SpoolConfig {
+
+    private static final String RESOURCE_FILENAME = "/cfg/spoolconfig.properties";
+
+    private static final Properties PROPERTIES;
+
+    // ==== Begin keys used in properties file ====
+    private static final String SPOOL_ENABLED_KEY = "spoolEnabled";
+    private static final String SPOOL_DIR_KEY = "spoolDir";
+    private static final String SPOOL_SEGMENT_BYTES_KEY = "spoolSegmentBytes";
+    private static final String SPOOL_MAX_BYTES_KEY = "spoolMaxBytes";
+    private static final String SPOOL_MAX_AGE_KEY = "spoolMaxAgeMillis";
+    private static final String SPOOL_SYNC_KEY = "spoolSync";
+    private static final String SPOOL_DRAIN_WINDOW_KEY = "spoolDrainWindow";
+    // ===== End keys used in properties file =====
+
+    // ==== Begin cached values of PROPERTIES contents ====
+    private static final boolean SPOOL_ENABLED;
+    private static final String SPOOL_DIR;
+    private static final long SPOOL_SEGMENT_BYTES;
+    private static final long SPOOL_MAX_BYTES;
+    private static final long SPOOL_MAX_AGE;
+    private static final boolean SPOOL_SYNC;
+    private static final int SPOOL_DRAIN_WINDOW;
+    // ===== End cached values of PROPERTIES contents =====
+
+    static {
+        PROPERTIES = new Properties();
+        try (InputStream input = SpoolConfig.class.getResourceAsStream(RESOURCE_FILENAME)) {
+            if (input != null) {
+                PROPERTIES.load(input);
+            }
+        } catch (IOException e) {
+            // Fall back to the defaults.
+            e.printStackTrace();
+        }
+        SPOOL_ENABLED = Boolean.parseBoolean(PROPERTIES.getProperty(SPOOL_ENABLED_KEY, "false"));
+        SPOOL_DIR = PROPERTIES.getProperty(SPOOL_DIR_KEY, "spool");
+        SPOOL_SEGMENT_BYTES = Long.parseLong(PROPERTIES.getProperty(SPOOL_SEGMENT_BYTES_KEY,
+                Long.toString(16L * 1024 * 1024)));
+        SPOOL_MAX_BYTES = Long.parseLong(PROPERTIES.getProperty(SPOOL_MAX_BYTES_KEY,
+                Long.toString(1024L * 1024 * 1024)));
+        SPOOL_MAX_AGE = Long.parseLong(PROPERTIES.getProperty(SPOOL_MAX_AGE_KEY, Long.toString(24L * 60 * 60 * 1000)));
+        SPOOL_SYNC = Boolean.parseBoolean(PROPERTIES.getProperty(SPOOL_SYNC_KEY, "true"));
+        SPOOL_DRAIN_WINDOW = Integer.parseInt(PROPERTIES.getProperty(SPOOL_DRAIN_WINDOW_KEY, "16"));
+    }
+
+    private SpoolConfig() {
+        // Make constructor private in order to prevent instantiation of class.
+    }
+
+    /**
+     * Check if approved samples are to be spooled to disk before upload.
+     * @return {@code true} if the upload spool is enabled (defaults to {@code false}).
+     */
+    public static boolean isEnabled() {
+        return SPOOL_ENABLED;
+    }
+
+    /**
+     * Get the directory holding the spools. Each camera gets its own subdirectory.
+     * @return the directory holding the spools (defaults to {@code spool}).
+     */
+    public static String getDirectory() {
+        return SPOOL_DIR;
+    }
+
+    /**
+     * Get the size at which a spool segment is closed and a new segment is started.
+     * @return the maximum size of a spool segment in bytes (defaults to 16 MiB).
+     */
+    public static long getSegmentBytes() {
+        return SPOOL_SEGMENT_BYTES;
+    }
+
+    /**
+     * Get the size budget of a spool. The oldest samples are dropped to stay within the budget.
+     * @return the maximum size of a spool in bytes (defaults to 1 GiB).
+     */
+    public static long getMaxBytes() {
+        return SPOOL_MAX_BYTES;
+    }
+
+    /**
+     * Get the maximum age of spooled samples. Older samples are skipped rather than uploaded.
+     * @return the maximum age of spooled samples in milliseconds (defaults to 24 hours).
+     */
+    public static long getMaxAgeMillis() {
+        return SPOOL_MAX_AGE;
+    }
+
+    /**
+     * Check if spooled samples are to be forced to stable storage.
+     * @return {@code true} if every append and acknowledgement is flushed to disk (the default).
+     */
+    public static boolean isSync() {
+        return SPOOL_SYNC;
+    }
+
+    /**
+     * Get the maximum number of spooled samples that are uploaded concurrently.
+     * @return the maximum number of spooled samples that are uploaded concurrently (defaults to 16).
+     */
+    public static int getDrainWindow() {
+        return SPOOL_DRAIN_WINDOW;
+    }
+
+}
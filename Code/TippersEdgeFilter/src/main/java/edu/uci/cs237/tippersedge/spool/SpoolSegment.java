@@ -0,0 +1,348 @@
+package edu.uci.cs237.tippersedge.spool;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A single append-only file of an {@link UploadSpool}.
+ * <p>
+ * Each record consists of a 16 byte header followed by the payload. The header holds the length of the payload, a
+ * CRC32 of the rest of the record, and the time the record was appended. A record whose CRC does not match, e.g.,
+ * because the process crashed while appending it, marks the end of the segment; see {@link #recover(File, long)}.
+ * </p>
+ * <p>
+ * Not thread safe; {@link UploadSpool} serializes all access.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+final class SpoolSegment {
+
+    private static final Logger LOGGER = Logger.getLogger(SpoolSegment.class.getName());
+
+    /**
+     * Length (4 bytes), CRC32 (4 bytes) and append time (8 bytes).
+     */
+    static final int HEADER_BYTES = 16;
+
+    private static final String FILENAME_PREFIX = "segment-";
+    private static final String FILENAME_SUFFIX = ".log";
+
+    private final File mFile;
+
+    private final long mSequenceNumber;
+
+    private final FileChannel mChannel;
+
+    private final ByteBuffer mHeader = ByteBuffer.allocate(HEADER_BYTES);
+
+    /**
+     * The number of bytes of valid records, i.e., the offset of the next record to be appended.
+     */
+    private long mSizeBytes;
+
+    private int mRecordCount;
+
+    private SpoolSegment(File file, long sequenceNumber, FileChannel channel, long sizeBytes, int recordCount) {
+        mFile = file;
+        mSequenceNumber = sequenceNumber;
+        mChannel = channel;
+        mSizeBytes = sizeBytes;
+        mRecordCount = recordCount;
+    }
+
+    /**
+     * Create a new, empty segment.
+     * @param directory The directory of the spool.
+     * @param sequenceNumber Orders the segments of the spool.
+     * @return The new segment.
+     * @throws IOException if the file could not be created.
+     */
+    static SpoolSegment create(File directory, long sequenceNumber) throws IOException {
+        File file = new File(directory, filenameOf(sequenceNumber));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return new SpoolSegment(file, sequenceNumber, channel, 0, 0);
+    }
+
+    /**
+     * Open an existing segment, validating its records and truncating the file after the last valid record.
+     * @param file The segment file.
+     * @param sequenceNumber The sequence number of the segment (see {@link #sequenceNumberOf(String)}).
+     * @return The segment.
+     * @throws IOException if the file could not be read or truncated.
+     */
+    static SpoolSegment recover(File file, long sequenceNumber) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SpoolSegment segment = new SpoolSegment(file, sequenceNumber, channel, channel.size(), 0);
+        long offset = 0;
+        int count = 0;
+        try {
+            while (offset < segment.mSizeBytes) {
+                Record record = segment.read(offset);
+                if (record == null) {
+                    break;
+                }
+                offset = record.getNextOffset();
+                count++;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (offset < channel.size()) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+        segment.mSizeBytes = offset;
+        segment.mRecordCount = count;
+        return segment;
+    }
+
+    /**
+     * Get the name of the file of the segment with the given sequence number. Names sort in sequence number order.
+     */
+    static String filenameOf(long sequenceNumber) {
+        return String.format("%s%020d%s", FILENAME_PREFIX, sequenceNumber, FILENAME_SUFFIX);
+    }
+
+    /**
+     * Parse the sequence number of a segment file name.
+     * @param filename The name of a file in the spool directory.
+     * @return the sequence number, or {@code -1} if the file is not a segment.
+     */
+    static long sequenceNumberOf(String filename) {
+        if (!filename.startsWith(FILENAME_PREFIX) || !filename.endsWith(FILENAME_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(filename.substring(FILENAME_PREFIX.length(),
+                    filename.length() - FILENAME_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Append a record.
+     * @param appendedMillis The time the record is appended (epoch milliseconds).
+     * @param payload The payload of the record.
+     * @param force {@code true} if the record must be on stable storage when this method returns.
+     * @return The number of bytes added to the segment.
+     * @throws IOException if the record could not be written. The segment is left unchanged (as seen by readers).
+     */
+    long append(long appendedMillis, byte[] payload, boolean force) throws IOException {
+        ByteBuffer header = mHeader;
+        header.clear();
+        header.putInt(payload.length).putInt(crcOf(appendedMillis, payload)).putLong(appendedMillis).flip();
+        ByteBuffer[] record = { header, ByteBuffer.wrap(payload) };
+        long position = mSizeBytes;
+        long recordBytes = HEADER_BYTES + payload.length;
+        try {
+            long written = 0;
+            while (written < recordBytes) {
+                mChannel.position(position + written);
+                written += mChannel.write(record);
+            }
+            if (force) {
+                mChannel.force(false);
+            }
+        } catch (IOException e) {
+            // Drop the partial record such that the next record is appended in its place.
+            mChannel.truncate(position);
+            throw e;
+        }
+        mSizeBytes += recordBytes;
+        mRecordCount++;
+        return recordBytes;
+    }
+
+    /**
+     * Read the record at the given offset.
+     * @param offset The offset of a record, i.e., {@code 0} or the {@link Record#getNextOffset()} of a record.
+     * @return the record, or {@code null} if there is no valid record at {@code offset}.
+     * @throws IOException if the file could not be read.
+     */
+    Record read(long offset) throws IOException {
+        if (offset + HEADER_BYTES > mSizeBytes) {
+            return null;
+        }
+        ByteBuffer header = mHeader;
+        header.clear();
+        if (!readFully(header, offset)) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        long appendedMillis = header.getLong();
+        if (length < 0 || offset + HEADER_BYTES + length > mSizeBytes) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        if (!readFully(ByteBuffer.wrap(payload), offset + HEADER_BYTES) || crc != crcOf(appendedMillis, payload)) {
+            return null;
+        }
+        return new Record(mSequenceNumber, offset, offset + HEADER_BYTES + length, appendedMillis, payload);
+    }
+
+    /**
+     * Count the records that precede the given offset.
+     * @param offset The offset of a record (or the end of the segment).
+     * @return The number of records before {@code offset}.
+     * @throws IOException if the file could not be read.
+     */
+    int countRecordsBefore(long offset) throws IOException {
+        int count = 0;
+        long position = 0;
+        while (position < offset) {
+            mHeader.clear();
+            mHeader.limit(Integer.BYTES);
+            if (!readFully(mHeader, position)) {
+                break;
+            }
+            mHeader.flip();
+            position += HEADER_BYTES + mHeader.getInt();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get the sequence number of this segment.
+     * @return the sequence number of this segment.
+     */
+    long getSequenceNumber() {
+        return mSequenceNumber;
+    }
+
+    /**
+     * Get the size of this segment.
+     * @return the number of bytes of valid records.
+     */
+    long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Get the number of records in this segment.
+     * @return the number of records in this segment.
+     */
+    int getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Close the file, keeping it on disk.
+     */
+    void close() {
+        try {
+            mChannel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("[ Could not close spool segment '%s' ]", mFile), e);
+        }
+    }
+
+    /**
+     * Close and delete the file.
+     */
+    void delete() {
+        close();
+        if (!mFile.delete()) {
+            LOGGER.warning(String.format("[ Could not delete spool segment '%s' ]", mFile));
+        }
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int readBytes = mChannel.read(buffer, position);
+            if (readBytes < 0) {
+                return false;
+            }
+            position += readBytes;
+        }
+        return true;
+    }
+
+    private static int crcOf(long appendedMillis, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (appendedMillis >>> shift));
+        }
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return mFile.getPath();
+    }
+
+    /**
+     * A record read from a segment.
+     */
+    static final class Record {
+
+        private final long mSegment;
+        private final long mOffset;
+        private final long mNextOffset;
+        private final long mAppendedMillis;
+        private final byte[] mPayload;
+
+        private Record(long segment, long offset, long nextOffset, long appendedMillis, byte[] payload) {
+            mSegment = segment;
+            mOffset = offset;
+            mNextOffset = nextOffset;
+            mAppendedMillis = appendedMillis;
+            mPayload = payload;
+        }
+
+        /**
+         * Get the sequence number of the segment holding this record.
+         * @return the sequence number of the segment holding this record.
+         */
+        long getSegment() {
+            return mSegment;
+        }
+
+        /**
+         * Get the offset of this record in its segment.
+         * @return the offset of this record in its segment.
+         */
+        long getOffset() {
+            return mOffset;
+        }
+
+        /**
+         * Get the offset of the record following this record in the same segment.
+         * @return the offset of the next record.
+         */
+        long getNextOffset() {
+            return mNextOffset;
+        }
+
+        /**
+         * Get the time this record was appended.
+         * @return the time this record was appended (epoch milliseconds).
+         */
+        long getAppendedMillis() {
+            return mAppendedMillis;
+        }
+
+        /**
+         * Get the payload of this record.
+         * @return the payload of this record.
+         */
+        byte[] getPayload() {
+            return mPayload;
+        }
+    }
+
+}
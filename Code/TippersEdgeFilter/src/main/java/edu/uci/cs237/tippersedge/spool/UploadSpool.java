@@ -0,0 +1,649 @@
+package edu.uci.cs237.tippersedge.spool;
+
+import edu.uci.cs237.tippersedge.metrics.Counter;
+import edu.uci.cs237.tippersedge.metrics.LatencyHistogram;
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent, append-only queue of samples awaiting upload, such that samples that have been approved for upload
+ * survive backend outages, network outages and restarts.
+ * <p>
+ * Samples are serialized by a {@link SpoolCodec} and appended to segment files in the spool directory. A drainer
+ * thread (see {@link #startDraining(Function, Consumer)}) uploads the samples in the order they were appended, and
+ * acknowledges each sample once it has been uploaded. When an upload fails, the drainer backs off exponentially and
+ * retries the same sample, so the spool simply grows while the backend is unreachable and is replayed in order when
+ * connectivity returns. Fully acknowledged segments are deleted.
+ * </p>
+ * <p>
+ * The position of the oldest unacknowledged sample is persisted in a small index file. When the spool is reopened
+ * (e.g., after a crash), segments are validated record by record (every record carries a CRC), a partially written
+ * record at the end of a segment is truncated, and draining resumes from the persisted position. Delivery is hence
+ * at-least-once: a sample whose upload succeeded right before a crash is uploaded again.
+ * </p>
+ * <p>
+ * The spool is bounded in size and age: when appending a sample would exceed the size budget, the oldest segments are
+ * dropped, and samples older than the maximum age are skipped by the drainer rather than uploaded.
+ * </p>
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ * @param <S> The type of sample.
+ */
+public class UploadSpool<S> {
+
+    private static final Logger LOGGER = Logger.getLogger(UploadSpool.class.getName());
+
+    private static final String INDEX_FILENAME = "spool.index";
+
+    /**
+     * Segment sequence number (8 bytes), offset (8 bytes) and a CRC32 of those (4 bytes).
+     */
+    private static final int INDEX_BYTES = 20;
+
+    /**
+     * Upper bound of the delay between two upload attempts of the drainer.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+
+    private final File mDirectory;
+
+    private final SpoolCodec<S> mCodec;
+
+    private final long mSegmentBytes;
+
+    private final long mMaxBytes;
+
+    private final long mMaxAgeMillis;
+
+    private final boolean mSync;
+
+    private final int mDrainWindow;
+
+    /**
+     * The segments, keyed by sequence number. Guarded by {@code this}.
+     */
+    private final TreeMap<Long, SpoolSegment> mSegments = new TreeMap<>();
+
+    /**
+     * The segment that samples are appended to (the last entry of {@link #mSegments}). Guarded by {@code this}.
+     */
+    private SpoolSegment mWriteSegment;
+
+    /**
+     * The position of the oldest unacknowledged record. Guarded by {@code this}.
+     */
+    private long mReadSegment;
+    private long mReadOffset;
+
+    /**
+     * The number of records in the segment {@link #mReadSegment} before {@link #mReadOffset}. Guarded by {@code this}.
+     */
+    private int mReadRecordIndex;
+
+    private final FileChannel mIndexChannel;
+
+    private final ByteBuffer mIndexBuffer = ByteBuffer.allocate(INDEX_BYTES);
+
+    /**
+     * The total size of all segments. Guarded by {@code this}.
+     */
+    private long mSizeBytes;
+
+    /**
+     * The number of unacknowledged records. Guarded by {@code this}.
+     */
+    private long mPendingCount;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean mClosed;
+
+    private Thread mDrainer;
+
+    private final MetricSet mMetrics = new MetricSet();
+    private final Counter mAppended = mMetrics.counter("appended");
+    private final Counter mAppendFailures = mMetrics.counter("appendFailures");
+    private final Counter mDrained = mMetrics.counter("drained");
+    private final Counter mDrainFailures = mMetrics.counter("drainFailures");
+    private final Counter mExpired = mMetrics.counter("expired");
+    private final Counter mDropped = mMetrics.counter("dropped");
+    private final Counter mCorrupt = mMetrics.counter("corrupt");
+    private final LatencyHistogram mAppendLatency = mMetrics.histogram("append");
+
+    /**
+     * Open (or create) a spool, recovering its contents if it already exists.
+     * @param directory The directory holding the spool's files. Must not be shared with other spools.
+     * @param codec Serializes and deserializes samples.
+     * @param segmentBytes The size at which a segment is closed and a new segment is started.
+     * @param maxBytes The maximum total size of the spool. The oldest samples are dropped to stay within this budget.
+     * @param maxAgeMillis Samples that have been in the spool for longer than this are skipped rather than uploaded.
+     * @param sync {@code true} if every appended sample and every acknowledgement is to be forced to stable storage
+     *             (which survives power loss, but costs a disk flush per sample).
+     * @param drainWindow The maximum number of samples the drainer uploads concurrently (e.g., to fill the batches of
+     *                    a {@link edu.uci.cs237.tippersedge.sensoria.BatchingImageUploader}).
+     * @throws IOException if the spool could not be opened.
+     */
+    public UploadSpool(File directory, SpoolCodec<S> codec, long segmentBytes, long maxBytes, long maxAgeMillis,
+                       boolean sync, int drainWindow) throws IOException {
+        if (segmentBytes < 1 || maxBytes < segmentBytes || maxAgeMillis < 1 || drainWindow < 1) {
+            throw new IllegalArgumentException("segmentBytes, maxAgeMillis and drainWindow must be positive, " +
+                    "and maxBytes cannot be less than segmentBytes");
+        }
+        mDirectory = directory;
+        mCodec = Objects.requireNonNull(codec, "codec cannot be null");
+        mSegmentBytes = segmentBytes;
+        mMaxBytes = maxBytes;
+        mMaxAgeMillis = maxAgeMillis;
+        mSync = sync;
+        mDrainWindow = drainWindow;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Could not create spool directory '%s'", directory));
+        }
+        mIndexChannel = FileChannel.open(new File(directory, INDEX_FILENAME).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            recover();
+        } catch (IOException e) {
+            for (SpoolSegment segment : mSegments.values()) {
+                segment.close();
+            }
+            mIndexChannel.close();
+            throw e;
+        }
+        mMetrics.gauge("pending", this::getPendingCount);
+        mMetrics.gauge("sizeBytes", this::getSizeBytes);
+    }
+
+    /**
+     * Durably append a sample. The sample is not modified or released; the drainer uploads a copy.
+     * @param sample The sample to append.
+     * @return {@code true} if the sample was appended, {@code false} if it could not be serialized or written, or if
+     * the spool has been closed.
+     */
+    public boolean append(S sample) {
+        long start = System.nanoTime();
+        byte[] payload;
+        try {
+            payload = mCodec.encode(sample);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("[ Could not encode '%s' for spool '%s' ]", sample, mDirectory), e);
+            mAppendFailures.increment();
+            return false;
+        }
+        long recordBytes = SpoolSegment.HEADER_BYTES + payload.length;
+        synchronized (this) {
+            if (mClosed || recordBytes > mMaxBytes) {
+                mAppendFailures.increment();
+                return false;
+            }
+            try {
+                if (mWriteSegment.getSizeBytes() > 0 && mWriteSegment.getSizeBytes() + recordBytes > mSegmentBytes) {
+                    startSegment();
+                }
+                while (mSizeBytes + recordBytes > mMaxBytes && mSegments.size() > 1) {
+                    dropOldestSegment();
+                }
+                mSizeBytes += mWriteSegment.append(System.currentTimeMillis(), payload, mSync);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("[ Could not append '%s' to spool '%s' ]", sample, mDirectory),
+                        e);
+                mAppendFailures.increment();
+                return false;
+            }
+            mPendingCount++;
+            notifyAll();
+        }
+        mAppended.increment();
+        mAppendLatency.recordSince(start);
+        return true;
+    }
+
+    /**
+     * Start the drainer thread, which uploads the spooled samples in order until the spool is closed.
+     * @param upload Uploads a sample, completing with {@code true} if the upload succeeded. Invoked with samples
+     *               deserialized by the codec.
+     * @param release Invoked with each deserialized sample once its upload has completed, e.g., to free its resources.
+     */
+    public synchronized void startDraining(Function<? super S, CompletableFuture<Boolean>> upload,
+                                           Consumer<? super S> release) {
+        if (mDrainer != null) {
+            throw new IllegalStateException("Already draining");
+        }
+        Objects.requireNonNull(upload, "upload cannot be null");
+        Objects.requireNonNull(release, "release cannot be null");
+        mDrainer = new Thread(() -> drain(upload, release), "spool-drainer-" + mDirectory.getName());
+        mDrainer.setDaemon(true);
+        mDrainer.start();
+    }
+
+    /**
+     * Get the number of samples that have not yet been uploaded.
+     * @return the number of unacknowledged samples.
+     */
+    public synchronized long getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * Get the size of the spool on disk.
+     * @return the total size of the spool's segments in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Get the metrics of this spool: the number of samples appended ({@code appended}), uploaded by the drainer
+     * ({@code drained}), skipped because they were too old ({@code expired}), dropped to stay within the size budget
+     * ({@code dropped}) or because they could not be deserialized ({@code corrupt}), the number of failed appends
+     * ({@code appendFailures}) and uploads ({@code drainFailures}), the time taken to append a sample
+     * ({@code append}), and the number of pending samples and size of the spool.
+     * @return the metrics of this spool.
+     */
+    public MetricSet getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Stop the drainer and close the spool's files. Samples that have not been acknowledged remain in the spool and
+     * are uploaded when the spool is reopened.
+     * @param timeoutMillis The maximum time to wait for the drainer to stop.
+     * @throws InterruptedException if interrupted while waiting for the drainer.
+     */
+    public void close(long timeoutMillis) throws InterruptedException {
+        Thread drainer;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            drainer = mDrainer;
+            notifyAll();
+        }
+        if (drainer != null) {
+            drainer.interrupt();
+            drainer.join(timeoutMillis);
+        }
+        synchronized (this) {
+            for (SpoolSegment segment : mSegments.values()) {
+                segment.close();
+            }
+            try {
+                mIndexChannel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("[ Could not close the index of spool '%s' ]", mDirectory), e);
+            }
+        }
+    }
+
+    /**
+     * Main loop of the drainer thread. Uploads up to {@link #mDrainWindow} samples at a time, and acknowledges them
+     * in order. A failed upload is retried (after a delay) along with every later sample in the window, so samples are
+     * never acknowledged out of order.
+     */
+    private void drain(Function<? super S, CompletableFuture<Boolean>> upload, Consumer<? super S> release) {
+        Deque<InFlight<S>> window = new ArrayDeque<>();
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        try {
+            while (true) {
+                // Read ahead up to the window size, but do not wait for new samples while uploads are in flight.
+                SpoolSegment.Record last = window.isEmpty() ? null : window.peekLast().mRecord;
+                while (window.size() < mDrainWindow) {
+                    SpoolSegment.Record record = next(last, window.isEmpty());
+                    if (record == null) {
+                        break;
+                    }
+                    last = record;
+                    InFlight<S> inFlight = submit(record, upload);
+                    if (inFlight != null) {
+                        window.addLast(inFlight);
+                    }
+                }
+                if (window.isEmpty()) {
+                    // Closed.
+                    return;
+                }
+                InFlight<S> head = window.peekFirst();
+                boolean uploaded = head.await();
+                window.pollFirst();
+                if (head.mSample != null) {
+                    release.accept(head.mSample);
+                }
+                if (uploaded) {
+                    acknowledge(head.mRecord);
+                    if (head.mSample != null) {
+                        mDrained.increment();
+                    }
+                    backoffMillis = INITIAL_BACKOFF_MILLIS;
+                    continue;
+                }
+                // Give up on the rest of the window; it is read (and uploaded) again after the delay.
+                mDrainFailures.increment();
+                for (InFlight<S> inFlight : window) {
+                    inFlight.await();
+                    if (inFlight.mSample != null) {
+                        release.accept(inFlight.mSample);
+                    }
+                }
+                window.clear();
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(String.format("[ Spool upload FAILED; retrying in %d ms ]", backoffMillis));
+                }
+                synchronized (this) {
+                    if (!mClosed) {
+                        wait(backoffMillis);
+                    }
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // Closed.
+            for (InFlight<S> inFlight : window) {
+                if (inFlight.mSample != null) {
+                    inFlight.mUpload.whenComplete((result, error) -> release.accept(inFlight.mSample));
+                }
+            }
+        }
+    }
+
+    /**
+     * Start uploading a record, or skip it if it is too old or cannot be deserialized.
+     * @return the in-flight upload, or {@code null} if the record was skipped (and acknowledged).
+     */
+    private InFlight<S> submit(SpoolSegment.Record record, Function<? super S, CompletableFuture<Boolean>> upload) {
+        if (System.currentTimeMillis() - record.getAppendedMillis() > mMaxAgeMillis) {
+            mExpired.increment();
+            return new InFlight<>(record, null, CompletableFuture.completedFuture(true));
+        }
+        S sample;
+        try {
+            sample = mCodec.decode(record.getPayload());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("[ Skipping undecodable record at offset %d of segment %d of " +
+                    "spool '%s' ]", record.getOffset(), record.getSegment(), mDirectory), e);
+            mCorrupt.increment();
+            return new InFlight<>(record, null, CompletableFuture.completedFuture(true));
+        }
+        CompletableFuture<Boolean> result;
+        try {
+            result = upload.apply(sample);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("[ Upload of spooled '%s' threw ]", sample), e);
+            result = CompletableFuture.completedFuture(false);
+        }
+        return new InFlight<>(record, sample, result);
+    }
+
+    /**
+     * Read the record following {@code previous}, or the oldest unacknowledged record if {@code previous} is
+     * {@code null} or has been dropped.
+     * @param block {@code true} to wait for a record to be appended if there is none.
+     * @return the record, or {@code null} if there is none (and {@code block} is {@code false}) or the spool has been
+     * closed.
+     */
+    private synchronized SpoolSegment.Record next(SpoolSegment.Record previous, boolean block)
+            throws InterruptedException {
+        long segmentNumber = mReadSegment;
+        long offset = mReadOffset;
+        if (previous != null && (previous.getSegment() > mReadSegment ||
+                (previous.getSegment() == mReadSegment && previous.getOffset() >= mReadOffset))) {
+            segmentNumber = previous.getSegment();
+            offset = previous.getNextOffset();
+        }
+        while (!mClosed) {
+            Map.Entry<Long, SpoolSegment> entry = mSegments.ceilingEntry(segmentNumber);
+            SpoolSegment segment = entry.getValue();
+            if (entry.getKey() != segmentNumber) {
+                offset = 0;
+            }
+            if (offset < segment.getSizeBytes()) {
+                try {
+                    SpoolSegment.Record record = segment.read(offset);
+                    if (record != null) {
+                        return record;
+                    }
+                    // Unreadable despite having been validated; give up on the rest of the segment.
+                    LOGGER.warning(String.format("Skipping unreadable records in spool segment '%s'", segment));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, String.format("Skipping unreadable records in spool segment '%s'",
+                            segment), e);
+                }
+                offset = segment.getSizeBytes();
+            }
+            if (segment != mWriteSegment) {
+                segmentNumber = mSegments.higherKey(entry.getKey());
+                offset = 0;
+            } else if (block) {
+                segmentNumber = entry.getKey();
+                wait();
+            } else {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Acknowledge the oldest unacknowledged record, deleting its segment if the segment has been fully acknowledged.
+     * Does nothing if the record has already been dropped.
+     */
+    private synchronized void acknowledge(SpoolSegment.Record record) {
+        if (mClosed || record.getSegment() < mReadSegment) {
+            return;
+        }
+        while (mReadSegment < record.getSegment()) {
+            // The rest of the read segment was skipped as unreadable.
+            SpoolSegment skipped = mSegments.pollFirstEntry().getValue();
+            mPendingCount -= skipped.getRecordCount() - mReadRecordIndex;
+            mSizeBytes -= skipped.getSizeBytes();
+            skipped.delete();
+            mReadSegment = mSegments.firstKey();
+            mReadOffset = 0;
+            mReadRecordIndex = 0;
+        }
+        SpoolSegment segment = mSegments.get(mReadSegment);
+        if (record.getOffset() != mReadOffset) {
+            // Records between mReadOffset and the record were skipped as unreadable.
+            try {
+                int recordIndex = segment.countRecordsBefore(record.getOffset());
+                mPendingCount -= recordIndex - mReadRecordIndex;
+                mReadRecordIndex = recordIndex;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("[ Could not count the records skipped in spool segment " +
+                        "'%s'; the pending count may be off ]", segment), e);
+            }
+        }
+        mReadOffset = record.getNextOffset();
+        mReadRecordIndex++;
+        mPendingCount--;
+        if (mReadOffset >= segment.getSizeBytes() && segment != mWriteSegment) {
+            mSegments.remove(mReadSegment);
+            mSizeBytes -= segment.getSizeBytes();
+            segment.delete();
+            mReadSegment = mSegments.firstKey();
+            mReadOffset = 0;
+            mReadRecordIndex = 0;
+        }
+        writeIndex();
+    }
+
+    /**
+     * Open the existing segments (if any), restore the read position from the index, and start a new segment for
+     * appending.
+     */
+    private void recover() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long sequenceNumber = SpoolSegment.sequenceNumberOf(file.getName());
+                if (sequenceNumber >= 0) {
+                    SpoolSegment segment = SpoolSegment.recover(file, sequenceNumber);
+                    mSegments.put(sequenceNumber, segment);
+                    mSizeBytes += segment.getSizeBytes();
+                    mPendingCount += segment.getRecordCount();
+                }
+            }
+        }
+        // Restore the read position, unless the index is missing, corrupt, or refers to a segment that was dropped.
+        long readSegment = -1;
+        long readOffset = 0;
+        mIndexBuffer.clear();
+        while (mIndexBuffer.hasRemaining() && mIndexChannel.read(mIndexBuffer, mIndexBuffer.position()) > 0) {
+            // Keep reading.
+        }
+        if (!mIndexBuffer.hasRemaining()) {
+            mIndexBuffer.flip();
+            long segment = mIndexBuffer.getLong();
+            long offset = mIndexBuffer.getLong();
+            if (mIndexBuffer.getInt() == crcOf(segment, offset)) {
+                readSegment = segment;
+                readOffset = offset;
+            }
+        }
+        // Delete segments that were fully acknowledged before the restart.
+        while (!mSegments.isEmpty() && mSegments.firstKey() < readSegment) {
+            SpoolSegment segment = mSegments.pollFirstEntry().getValue();
+            mSizeBytes -= segment.getSizeBytes();
+            mPendingCount -= segment.getRecordCount();
+            segment.delete();
+        }
+        long nextSequenceNumber = mSegments.isEmpty() ? Math.max(0, readSegment) : mSegments.lastKey() + 1;
+        mWriteSegment = SpoolSegment.create(mDirectory, nextSequenceNumber);
+        mSegments.put(nextSequenceNumber, mWriteSegment);
+        mReadSegment = mSegments.firstKey();
+        mReadOffset = 0;
+        mReadRecordIndex = 0;
+        if (mReadSegment == readSegment) {
+            SpoolSegment segment = mSegments.get(mReadSegment);
+            mReadOffset = Math.min(readOffset, segment.getSizeBytes());
+            mReadRecordIndex = segment.countRecordsBefore(mReadOffset);
+            mPendingCount -= mReadRecordIndex;
+        }
+        // Delete segments without unacknowledged records, e.g., the segment appended to before the restart.
+        while (mReadSegment != mWriteSegment.getSequenceNumber() &&
+                mReadOffset >= mSegments.get(mReadSegment).getSizeBytes()) {
+            SpoolSegment segment = mSegments.pollFirstEntry().getValue();
+            mSizeBytes -= segment.getSizeBytes();
+            segment.delete();
+            mReadSegment = mSegments.firstKey();
+            mReadOffset = 0;
+            mReadRecordIndex = 0;
+        }
+        writeIndex();
+        if (mPendingCount > 0) {
+            LOGGER.info(String.format("Recovered %d spooled samples (%d bytes) from '%s'", mPendingCount, mSizeBytes,
+                    mDirectory));
+        }
+    }
+
+    /**
+     * Close the segment being appended to and start a new one.
+     */
+    private void startSegment() throws IOException {
+        SpoolSegment segment = SpoolSegment.create(mDirectory, mWriteSegment.getSequenceNumber() + 1);
+        mSegments.put(segment.getSequenceNumber(), segment);
+        mWriteSegment = segment;
+    }
+
+    /**
+     * Drop the oldest segment (which is not the segment being appended to) to make room for new samples.
+     */
+    private void dropOldestSegment() throws IOException {
+        SpoolSegment segment = mSegments.pollFirstEntry().getValue();
+        int droppedCount = segment.getRecordCount();
+        if (segment.getSequenceNumber() == mReadSegment) {
+            droppedCount -= mReadRecordIndex;
+            mReadSegment = mSegments.firstKey();
+            mReadOffset = 0;
+            mReadRecordIndex = 0;
+            writeIndex();
+        }
+        mSizeBytes -= segment.getSizeBytes();
+        mPendingCount -= droppedCount;
+        mDropped.add(droppedCount);
+        segment.delete();
+        if (droppedCount > 0) {
+            LOGGER.warning(String.format("Spool '%s' is full; dropped %d samples", mDirectory, droppedCount));
+        }
+    }
+
+    /**
+     * Persist the read position. A failure to do so is not fatal, but may cause samples to be uploaded again after a
+     * restart.
+     */
+    private void writeIndex() {
+        mIndexBuffer.clear();
+        mIndexBuffer.putLong(mReadSegment).putLong(mReadOffset).putInt(crcOf(mReadSegment, mReadOffset)).flip();
+        try {
+            while (mIndexBuffer.hasRemaining()) {
+                mIndexChannel.write(mIndexBuffer, mIndexBuffer.position());
+            }
+            if (mSync) {
+                mIndexChannel.force(false);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("[ Could not write the index of spool '%s' ]", mDirectory), e);
+        }
+    }
+
+    private static int crcOf(long segment, long offset) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(16).putLong(segment).putLong(offset).array());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A record that is being uploaded by the drainer.
+     */
+    private static final class InFlight<S> {
+
+        private final SpoolSegment.Record mRecord;
+
+        /**
+         * The deserialized sample, or {@code null} if the record is skipped.
+         */
+        private final S mSample;
+
+        private final CompletableFuture<Boolean> mUpload;
+
+        private InFlight(SpoolSegment.Record record, S sample, CompletableFuture<Boolean> upload) {
+            mRecord = record;
+            mSample = sample;
+            mUpload = upload;
+        }
+
+        /**
+         * Wait for the upload to complete.
+         * @return {@code true} if the upload succeeded.
+         */
+        private boolean await() throws InterruptedException {
+            try {
+                return Boolean.TRUE.equals(mUpload.get());
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "[ Upload of spooled sample failed exceptionally ]", e.getCause());
+                return false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package edu.uci.cs237.tippersedge;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the adaptive ticks of {@link AbstractPeriodicSampleHandler} when filtering takes longer than the sampling
+ * period.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class AbstractPeriodicSampleHandlerTest {
+
+    private static final long PERIOD_MILLIS = 5;
+
+    private static final long FILTER_MILLIS = 40;
+
+    private final ScheduledExecutorService mSharedExecutor =
+            ExecutionMode.PLATFORM.newScheduledExecutor("test-tick", 4);
+
+    private final ScheduledExecutorService mVirtualExecutor = ExecutionMode.VIRTUAL.newScheduledExecutor("test-tick", 1);
+
+    @After
+    public void shutDown() {
+        mSharedExecutor.shutdownNow();
+        mVirtualExecutor.shutdownNow();
+    }
+
+    @Test(timeout = 5000)
+    public void slowAdaptiveTicksDoNotOverlapOnOwnedExecutor() throws InterruptedException {
+        assertTicksDoNotOverlap(new SlowHandler());
+    }
+
+    @Test(timeout = 5000)
+    public void slowAdaptiveTicksDoNotOverlapOnSharedExecutor() throws InterruptedException {
+        assertTicksDoNotOverlap(new SlowHandler(mSharedExecutor));
+    }
+
+    @Test(timeout = 5000)
+    public void slowAdaptiveTicksDoNotOverlapOnVirtualThreads() throws InterruptedException {
+        assertTicksDoNotOverlap(new SlowHandler(mVirtualExecutor));
+    }
+
+    @Test(timeout = 5000)
+    public void slowHandlerDoesNotStarveOtherHandlersOfSharedExecutor() throws InterruptedException {
+        ScheduledExecutorService sharedExecutor = ExecutionMode.PLATFORM.newScheduledExecutor("test-tick", 2);
+        try {
+            SlowHandler slow = new SlowHandler(sharedExecutor);
+            slow.setAdaptiveSampling(new AdaptiveSamplingPolicy(PERIOD_MILLIS, PERIOD_MILLIS));
+            SlowHandler fast = new SlowHandler(sharedExecutor, 0);
+            fast.setAdaptiveSampling(new AdaptiveSamplingPolicy(20, 20));
+            slow.startPeriodicSampling();
+            fast.startPeriodicSampling();
+            Thread.sleep(500);
+            slow.stopPeriodicSampling(true, 1000);
+            fast.stopPeriodicSampling(true, 1000);
+            // Overlapping ticks of the slow handler would block on its tick permit and occupy both threads.
+            assertTrue(fast.mTicks.get() >= 10);
+        } finally {
+            sharedExecutor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void fastAdaptiveTicksKeepThePeriod() throws InterruptedException {
+        SlowHandler handler = new SlowHandler(mSharedExecutor, 0);
+        handler.setAdaptiveSampling(new AdaptiveSamplingPolicy(20, 20));
+        handler.startPeriodicSampling();
+        Thread.sleep(500);
+        handler.stopPeriodicSampling(true, 1000);
+        // 25 periods; allow for a slow machine, but not for a period stretched by the ticks themselves.
+        assertTrue(handler.mTicks.get() >= 10);
+        assertTrue(handler.mTicks.get() <= 27);
+    }
+
+    private static void assertTicksDoNotOverlap(SlowHandler handler) throws InterruptedException {
+        // Every tick includes its sample, so the policy stays at its minimum period, which is far below the filter time.
+        handler.setAdaptiveSampling(new AdaptiveSamplingPolicy(PERIOD_MILLIS, PERIOD_MILLIS));
+        handler.startPeriodicSampling();
+        Thread.sleep(10 * FILTER_MILLIS);
+        handler.stopPeriodicSampling(true, 1000);
+        assertEquals(1, handler.mMaxConcurrentTicks.get());
+        // Ticks follow each other back to back rather than piling up.
+        assertTrue(handler.mTicks.get() >= 3);
+        assertTrue(handler.mTicks.get() <= 11);
+    }
+
+    /**
+     * Includes every sample after filtering it for {@link #mFilterMillis}.
+     */
+    private static class SlowHandler extends AbstractPeriodicSampleHandler<Integer> {
+
+        private final long mFilterMillis;
+
+        private final AtomicInteger mRunning = new AtomicInteger();
+
+        private final AtomicInteger mMaxConcurrentTicks = new AtomicInteger();
+
+        private final AtomicInteger mTicks = new AtomicInteger();
+
+        SlowHandler() {
+            super(() -> 1, 4, PERIOD_MILLIS);
+            mFilterMillis = FILTER_MILLIS;
+        }
+
+        SlowHandler(ScheduledExecutorService sharedExecutor) {
+            this(sharedExecutor, FILTER_MILLIS);
+        }
+
+        SlowHandler(ScheduledExecutorService sharedExecutor, long filterMillis) {
+            super(() -> 1, 4, PERIOD_MILLIS, sharedExecutor);
+            mFilterMillis = filterMillis;
+        }
+
+        @Override
+        protected boolean shouldIncludeSample(Integer sample) {
+            int running = mRunning.incrementAndGet();
+            mMaxConcurrentTicks.accumulateAndGet(running, Math::max);
+            mTicks.incrementAndGet();
+            try {
+                Thread.sleep(mFilterMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                mRunning.decrementAndGet();
+            }
+            return true;
+        }
+
+        @Override
+        protected boolean uploadSample(Integer sample) {
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,140 @@
+package edu.uci.cs237.tippersedge;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link SampleRingBuffer}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class SampleRingBufferTest {
+
+    @Test
+    public void emptyBufferHasNoSamples() {
+        SampleRingBuffer<Integer> buffer = new SampleRingBuffer<>(3);
+        assertNull(buffer.latest());
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getAppendCount());
+        assertTrue(buffer.snapshot().isEmpty());
+    }
+
+    @Test
+    public void wrapsAroundOverwritingTheOldestSamples() {
+        SampleRingBuffer<Integer> buffer = new SampleRingBuffer<>(3);
+        assertNull(buffer.add(1));
+        assertNull(buffer.add(2));
+        assertNull(buffer.add(3));
+        assertEquals(Arrays.asList(1, 2, 3), buffer.snapshot());
+        // Full: every append now evicts the oldest sample.
+        assertEquals(Integer.valueOf(1), buffer.add(4));
+        assertEquals(Integer.valueOf(2), buffer.add(5));
+        assertEquals(Arrays.asList(3, 4, 5), buffer.snapshot());
+        assertEquals(Integer.valueOf(5), buffer.latest());
+        assertEquals(3, buffer.size());
+        assertEquals(5, buffer.getAppendCount());
+        // Several laps around the buffer.
+        for (int i = 6; i <= 100; i++) {
+            assertEquals(Integer.valueOf(i - 3), buffer.add(i));
+        }
+        assertEquals(Arrays.asList(98, 99, 100), buffer.snapshot());
+    }
+
+    @Test
+    public void capacityOfOneKeepsOnlyTheLatestSample() {
+        SampleRingBuffer<String> buffer = new SampleRingBuffer<>(1);
+        assertNull(buffer.add("a"));
+        assertEquals("a", buffer.add("b"));
+        assertEquals(Arrays.asList("b"), buffer.snapshot());
+        assertEquals("b", buffer.latest());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new SampleRingBuffer<>(0);
+    }
+
+    /**
+     * Writers append while a reader takes snapshots: every snapshot must be ordered and within capacity, and every
+     * appended sample must be either evicted exactly once or still buffered at the end.
+     */
+    @Test(timeout = 30_000)
+    public void concurrentAppendsAndSnapshotsLoseNothing() throws InterruptedException {
+        final int capacity = 8;
+        final int writers = 4;
+        final int appendsPerWriter = 50_000;
+        SampleRingBuffer<Long> buffer = new SampleRingBuffer<>(capacity);
+        ConcurrentLinkedQueue<Long> evicted = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> readerFailure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            while (writing.get() && readerFailure.get() == null) {
+                List<Long> snapshot = buffer.snapshot();
+                if (snapshot.size() > capacity) {
+                    readerFailure.set("snapshot exceeds capacity: " + snapshot);
+                }
+                // Samples encode (writer, counter); each writer's samples must appear in the order it appended them.
+                long[] last = new long[writers];
+                Arrays.fill(last, -1);
+                for (long sample : snapshot) {
+                    int writer = (int) (sample / appendsPerWriter);
+                    long counter = sample % appendsPerWriter;
+                    if (counter <= last[writer]) {
+                        readerFailure.set("snapshot out of order: " + snapshot);
+                    }
+                    last[writer] = counter;
+                }
+            }
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final long base = (long) w * appendsPerWriter;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < appendsPerWriter; i++) {
+                    Long old = buffer.add(base + i);
+                    if (old != null) {
+                        evicted.add(old);
+                    }
+                }
+            }));
+        }
+        reader.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writing.set(false);
+        reader.join();
+        assertNull(readerFailure.get(), readerFailure.get());
+        assertEquals((long) writers * appendsPerWriter, buffer.getAppendCount());
+        List<Long> remaining = buffer.snapshot();
+        assertEquals(capacity, remaining.size());
+        assertEquals((long) writers * appendsPerWriter - capacity, evicted.size());
+        Set<Long> seen = new HashSet<>(evicted);
+        seen.addAll(remaining);
+        assertEquals("a sample was evicted twice or lost", (long) writers * appendsPerWriter, seen.size());
+    }
+
+}
@@ -0,0 +1,115 @@
+package edu.uci.cs237.tippersedge;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the scheduled executor of {@link ExecutionMode#VIRTUAL}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class VirtualTickExecutorTest {
+
+    private final ScheduledExecutorService mExecutor = ExecutionMode.VIRTUAL.newScheduledExecutor("test", 1);
+
+    @After
+    public void shutDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test(timeout = 5000)
+    public void ticksRunOnVirtualThreads() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(3);
+        AtomicBoolean platform = new AtomicBoolean();
+        mExecutor.scheduleAtFixedRate(() -> {
+            if (!Thread.currentThread().isVirtual()) {
+                platform.set(true);
+            }
+            ran.countDown();
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertFalse(platform.get());
+    }
+
+    @Test(timeout = 5000)
+    public void blockedTicksDoNotHoldUpOtherTicks() throws InterruptedException {
+        // Far more blocked ticks than platform threads were asked for.
+        int ticks = 100;
+        CountDownLatch started = new CountDownLatch(ticks);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < ticks; i++) {
+            mExecutor.schedule(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 0, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test(timeout = 5000)
+    public void runsOfPeriodicTaskDoNotOverlap() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch ran = new CountDownLatch(5);
+        mExecutor.scheduleAtFixedRate(() -> {
+            if (running.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            try {
+                // Longer than the period.
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            ran.countDown();
+        }, 0, 5, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertFalse(overlapped.get());
+    }
+
+    @Test(timeout = 5000)
+    public void cancelledTaskIsRemovedFromQueue() {
+        ScheduledFuture<?> task = mExecutor.schedule(() -> { }, 1, TimeUnit.HOURS);
+        assertTrue(task.cancel(false));
+        assertTrue(task.isCancelled());
+        assertTrue(((ScheduledThreadPoolExecutor) mExecutor).getQueue().isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void awaitTerminationWaitsForRunningTick() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        mExecutor.schedule(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            finished.set(true);
+        }, 0, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(2, TimeUnit.SECONDS));
+        assertTrue(finished.get());
+        assertTrue(mExecutor.isTerminated());
+    }
+
+}
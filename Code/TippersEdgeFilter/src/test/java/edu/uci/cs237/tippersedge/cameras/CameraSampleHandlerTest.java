@@ -0,0 +1,101 @@
+package edu.uci.cs237.tippersedge.cameras;
+
+import edu.uci.cs237.tippersedge.SampleProvider;
+import edu.uci.cs237.tippersedge.darknet.DarknetProcess;
+import edu.uci.cs237.tippersedge.darknet.Detector;
+import edu.uci.cs237.tippersedge.darknet.ImageInput;
+import edu.uci.cs237.tippersedge.sensoria.MockImageUploader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link CameraSampleHandler} releases the frames evicted from its sample cache.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class CameraSampleHandlerTest {
+
+    private File mSpillDirectory;
+
+    @Before
+    public void createSpillDirectory() throws IOException {
+        mSpillDirectory = Files.createTempDirectory("spill").toFile();
+    }
+
+    @After
+    public void deleteSpillDirectory() {
+        File[] files = mSpillDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mSpillDirectory.delete();
+    }
+
+    @Test
+    public void evictionReleasesTheEvictedFrame() throws IOException {
+        FrameBufferPool pool = new FrameBufferPool(16, 4);
+        List<CameraFrame> frames = new ArrayList<>();
+        List<byte[]> buffers = new ArrayList<>();
+        SampleProvider<CameraFrame> camera = () -> {
+            // Every frame has different contents and hence a different scene.
+            byte[] buffer = pool.acquire(16);
+            buffer[0] = (byte) frames.size();
+            buffers.add(buffer);
+            CameraFrame frame = CameraFrame.inMemory(buffer, 16, pool, mSpillDirectory.getPath(),
+                    System.currentTimeMillis());
+            frames.add(frame);
+            return frame;
+        };
+        CameraSampleHandler handler = new CameraSampleHandler(camera, 2, 1_000, new SceneOfContents(), null,
+                new MockImageUploader());
+        handler.sampleAndUpload();
+        handler.sampleAndUpload();
+        CameraFrame first = frames.get(0);
+        String firstFile = first.getFilepath();
+        assertTrue(first.isReferenced());
+        assertTrue(new File(firstFile).exists());
+
+        // The third included frame evicts the first from the cache of two.
+        handler.sampleAndUpload();
+        assertEquals(3, handler.getMetrics().counter("included").get());
+        assertFalse("evicted frame still referenced", first.isReferenced());
+        assertFalse("spilled file of evicted frame not deleted", new File(firstFile).exists());
+        assertTrue(frames.get(1).isReferenced());
+        assertTrue(frames.get(2).isReferenced());
+        // The evicted frame's buffer went back to the pool.
+        assertSame(buffers.get(0), pool.acquire(16));
+    }
+
+    /**
+     * Reports a scene that is derived from the image's contents, such that different images are different scenes.
+     */
+    private static final class SceneOfContents implements Detector {
+
+        @Override
+        public List<DarknetProcess.DetectedObject> exec(String imageFilepath) throws IOException {
+            return exec(ImageInput.ofFile(imageFilepath));
+        }
+
+        @Override
+        public List<DarknetProcess.DetectedObject> exec(ImageInput image) throws IOException {
+            return Collections.singletonList(
+                    new DarknetProcess.DetectedObject("object" + image.getContentHash(), 90));
+        }
+    }
+
+}
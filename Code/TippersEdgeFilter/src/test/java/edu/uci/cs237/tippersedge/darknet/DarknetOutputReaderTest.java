@@ -0,0 +1,165 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link DarknetOutputReader}, using transcripts of Darknet's std.out for single images and for a resident
+ * Darknet process, where each detection is framed by the {@link DarknetWorker#PROMPT prompt}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class DarknetOutputReaderTest {
+
+    private static final String PROMPT = DarknetWorker.PROMPT;
+
+    /**
+     * Std.out of {@code ./darknet detect cfg/yolov3.cfg yolov3.weights data/dog.jpg} (progress goes to std.err).
+     */
+    private static final String PLAIN_OUTPUT =
+            "data/dog.jpg: Predicted in 22.104400 seconds.\n" +
+            "dog: 99%\n" +
+            "truck: 92%\n" +
+            "bicycle: 99%\n";
+
+    /**
+     * Std.out of AlexeyAB's fork invoked with {@code -ext_output}, with Windows line endings.
+     */
+    private static final String EXT_OUTPUT =
+            " Detection layer: 82 - type = 28 \r\n" +
+            "data/dog.jpg: Predicted in 30.542000 milli-seconds.\r\n" +
+            "bicycle: 92%\t(left_x:  114   top_y:  128   width:  458   height:  299)\r\n" +
+            "dog: 98%\t(left_x:  129   top_y:  225   width:  184   height:  316)\r\n" +
+            "truck: 92%\t(left_x:  464   top_y:   77   width:  221   height:   93)\r\n";
+
+    @Test
+    public void plainOutputIsReadToTheEnd() throws IOException {
+        DarknetOutputReader reader = new DarknetOutputReader(stream(PLAIN_OUTPUT));
+        List<DarknetProcess.DetectedObject> detected = new ArrayList<>();
+        assertFalse(reader.readUntil(null, detected::add));
+        assertEquals(Arrays.asList(object("dog", 99, null), object("truck", 92, null), object("bicycle", 99, null)),
+                detected);
+    }
+
+    @Test
+    public void extOutputIsReadToTheEnd() throws IOException {
+        DarknetOutputReader reader = new DarknetOutputReader(stream(EXT_OUTPUT));
+        List<DarknetProcess.DetectedObject> detected = new ArrayList<>();
+        assertFalse(reader.readUntil(null, detected::add));
+        assertEquals(Arrays.asList(object("bicycle", 92, new BoundingBox(114, 128, 458, 299)),
+                object("dog", 98, new BoundingBox(129, 225, 184, 316)),
+                object("truck", 92, new BoundingBox(464, 77, 221, 93))), detected);
+    }
+
+    @Test
+    public void finalLineWithoutNewlineIsParsed() throws IOException {
+        DarknetOutputReader reader = new DarknetOutputReader(stream("dog: 99%\nperson: 87%"));
+        List<DarknetProcess.DetectedObject> detected = new ArrayList<>();
+        assertFalse(reader.readUntil(null, detected::add));
+        assertEquals(Arrays.asList(object("dog", 99, null), object("person", 87, null)), detected);
+    }
+
+    @Test
+    public void malformedLinesAreSkipped() throws IOException {
+        String output = "dog 99%\n" +
+                "dog: 1000%\n" +
+                "cat: 80%\t(left_x:  1   top_y:  2   width:  3)\n" +
+                "\n" +
+                "person: 87%\n";
+        DarknetOutputReader reader = new DarknetOutputReader(stream(output));
+        List<DarknetProcess.DetectedObject> detected = new ArrayList<>();
+        assertFalse(reader.readUntil(null, detected::add));
+        assertEquals(Collections.singletonList(object("person", 87, null)), detected);
+    }
+
+    @Test
+    public void residentOutputIsFramedByPrompt() throws IOException {
+        // A resident process prints the prompt on start-up and after every image.
+        String output = "Loading weights from yolov3.weights...Done!\n" +
+                PROMPT +
+                "data/dog.jpg: Predicted in 0.029000 seconds.\n" +
+                "dog: 99%\n" +
+                "truck: 92%\n" +
+                PROMPT +
+                "data/eagle.jpg: Predicted in 0.028000 seconds.\n" +
+                "bird: 97%\n" +
+                PROMPT;
+        DarknetOutputReader reader = new DarknetOutputReader(stream(output));
+        assertTrue(reader.readUntil(PROMPT, null));
+
+        List<DarknetProcess.DetectedObject> first = new ArrayList<>();
+        assertTrue(reader.readUntil(PROMPT, first::add));
+        assertEquals(Arrays.asList(object("dog", 99, null), object("truck", 92, null)), first);
+
+        List<DarknetProcess.DetectedObject> second = new ArrayList<>();
+        assertTrue(reader.readUntil(PROMPT, second::add));
+        assertEquals(Collections.singletonList(object("bird", 97, null)), second);
+
+        // The process exits (e.g., std.in was closed) before printing another prompt.
+        assertFalse(reader.readUntil(PROMPT, second::add));
+        assertEquals(1, second.size());
+    }
+
+    @Test
+    public void outputIgnoredWithoutListener() throws IOException {
+        DarknetOutputReader reader = new DarknetOutputReader(stream("dog: 99%\n" + PROMPT + "cat: 50%\n"));
+        assertTrue(reader.readUntil(PROMPT, null));
+        List<DarknetProcess.DetectedObject> detected = new ArrayList<>();
+        assertFalse(reader.readUntil(PROMPT, detected::add));
+        assertEquals(Collections.singletonList(object("cat", 50, null)), detected);
+    }
+
+    @Test
+    public void promptIsFoundAcrossReads() throws IOException {
+        // Deliver the output one byte at a time, as a pipe might.
+        String output = "dog: 99%\n" + PROMPT + "cat: 50%\n" + PROMPT;
+        InputStream trickle = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        DarknetOutputReader reader = new DarknetOutputReader(trickle);
+        List<DarknetProcess.DetectedObject> detected = new ArrayList<>();
+        assertTrue(reader.readUntil(PROMPT, detected::add));
+        assertTrue(reader.readUntil(PROMPT, detected::add));
+        assertEquals(Arrays.asList(object("dog", 99, null), object("cat", 50, null)), detected);
+    }
+
+    @Test
+    public void outputLargerThanBufferIsRead() throws IOException {
+        StringBuilder output = new StringBuilder();
+        List<DarknetProcess.DetectedObject> expected = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            output.append("    ").append(i).append(" conv     32  3 x 3 / 1   416 x 416 x   3   ->   416 x 416 x  32\n");
+            if (i % 100 == 0) {
+                output.append("person: ").append(i % 101).append("%\n");
+                expected.add(object("person", i % 101, null));
+            }
+        }
+        output.append(PROMPT);
+        DarknetOutputReader reader = new DarknetOutputReader(stream(output.toString()));
+        List<DarknetProcess.DetectedObject> detected = new ArrayList<>();
+        assertTrue(reader.readUntil(PROMPT, detected::add));
+        assertEquals(expected, detected);
+    }
+
+    private static InputStream stream(String output) {
+        return new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static DarknetProcess.DetectedObject object(String name, int confidence, BoundingBox box) {
+        return new DarknetProcess.DetectedObject(name, confidence, box);
+    }
+
+}
@@ -0,0 +1,126 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Table-driven tests of {@link DarknetProcess#parseOutputLine(CharSequence)} against lines of actual Darknet output,
+ * both in the plain format and in the {@code -ext_output} format of AlexeyAB's fork.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class DarknetProcessTest {
+
+    /**
+     * Lines that describe a detected object, and the object they describe.
+     */
+    private static final Object[][] DETECTIONS = {
+            // Plain format (pjreddie/darknet).
+            { "dog: 99%", object("dog", 99, null) },
+            { "truck: 92%", object("truck", 92, null) },
+            { "person: 100%", object("person", 100, null) },
+            { "cat: 7%", object("cat", 7, null) },
+            { "traffic light: 58%", object("traffic light", 58, null) },
+            { "dog: 99%\r", object("dog", 99, null) },
+            // -ext_output format (AlexeyAB/darknet).
+            { "bicycle: 92%\t(left_x:  114   top_y:  128   width:  458   height:  299)",
+                    object("bicycle", 92, new BoundingBox(114, 128, 458, 299)) },
+            { "dog: 98%\t(left_x:  129   top_y:  225   width:  184   height:  316)",
+                    object("dog", 98, new BoundingBox(129, 225, 184, 316)) },
+            { "truck: 92%\t(left_x:  464   top_y:   77   width:  221   height:   93)",
+                    object("truck", 92, new BoundingBox(464, 77, 221, 93)) },
+            { "traffic light: 61%\t(left_x:  216   top_y:   98   width:   16   height:   36)",
+                    object("traffic light", 61, new BoundingBox(216, 98, 16, 36)) },
+            // Boxes of objects cut off by the edge of the image start at negative coordinates.
+            { "person: 88%\t(left_x:   -2   top_y:   17   width:   95   height:  402)",
+                    object("person", 88, new BoundingBox(-2, 17, 95, 402)) },
+            { "car: 75%\t(left_x:  1 top_y: 2 width: 3 height: 4)\r\n",
+                    object("car", 75, new BoundingBox(1, 2, 3, 4)) },
+    };
+
+    /**
+     * Lines of Darknet output that do not describe a detected object, including malformed detections.
+     */
+    private static final String[] NOT_DETECTIONS = {
+            "",
+            "   ",
+            "layer     filters    size              input                output",
+            "    0 conv     32  3 x 3 / 1   416 x 416 x   3   ->   416 x 416 x  32  0.299 BFLOPs",
+            "  106 yolo",
+            "Loading weights from yolov3.weights...Done!",
+            "data/dog.jpg: Predicted in 22.104400 seconds.",
+            "data/dog.jpg: Predicted in 30.542000 milli-seconds.",
+            "Enter Image Path: ",
+            "Enter Image Path: data/dog.jpg: Predicted in 0.029000 seconds.",
+            " mAP@0.50 = 0.5%",
+            // Malformed detections.
+            "dog 99%",
+            "dog:99%",
+            "dog: %",
+            "dog: 1000%",
+            "dog: 99",
+            ": 99%",
+            " dog: 99%",
+            "dog : 99%",
+            "data/dog.jpg: dog: 99%",
+            "dog: 9x%",
+            "dog: 99%\t(left_x:  129   top_y:  225   width:  184)",
+            "dog: 99%\t(left_x:  129   top_y:  225   width:  184   height:  -316)",
+            "dog: 99%\t(left_x:  129   top_y:  225   width:  184   height:  316",
+            "dog: 99%\t(left_x:  abc   top_y:  225   width:  184   height:  316)",
+            "dog: 99%\t(top_y:  225   left_x:  129   width:  184   height:  316)",
+            "dog: 99%\t(left_x:  129   top_y:  225   width:  184   height:  316   extra)",
+            "(left_x:  129   top_y:  225   width:  184   height:  316)",
+    };
+
+    @Test
+    public void detectionsAreParsed() {
+        for (Object[] row : DETECTIONS) {
+            String line = (String) row[0];
+            assertEquals(line, row[1], DarknetProcess.parseOutputLine(line));
+        }
+    }
+
+    @Test
+    public void boundingBoxesAreParsed() {
+        for (Object[] row : DETECTIONS) {
+            String line = (String) row[0];
+            DarknetProcess.DetectedObject expected = (DarknetProcess.DetectedObject) row[1];
+            BoundingBox box = DarknetProcess.parseOutputLine(line).getBoundingBox();
+            assertEquals(line, expected.getBoundingBox(), box);
+        }
+    }
+
+    @Test
+    public void otherLinesAreRejected() {
+        for (String line : NOT_DETECTIONS) {
+            assertNull(line, DarknetProcess.parseOutputLine(line));
+        }
+    }
+
+    @Test
+    public void reusedLineBufferIsParsed() {
+        // DarknetOutputReader passes the same StringBuilder for every line.
+        StringBuilder line = new StringBuilder("data/dog.jpg: Predicted in 30.542000 milli-seconds.");
+        assertNull(DarknetProcess.parseOutputLine(line));
+        line.setLength(0);
+        line.append("dog: 98%\t(left_x:  129   top_y:  225   width:  184   height:  316)");
+        assertEquals(object("dog", 98, new BoundingBox(129, 225, 184, 316)), DarknetProcess.parseOutputLine(line));
+    }
+
+    @Test
+    public void extOutputIsPassedBeforeImagePath() {
+        assertEquals(Arrays.asList("./darknet", "detect", "cfg/yolov3.cfg", "yolov3.weights"),
+                DarknetProcess.command(false));
+        assertEquals(Arrays.asList("./darknet", "detect", "cfg/yolov3.cfg", "yolov3.weights", "-ext_output"),
+                DarknetProcess.command(true));
+    }
+
+    private static DarknetProcess.DetectedObject object(String name, int confidence, BoundingBox box) {
+        return new DarknetProcess.DetectedObject(name, confidence, box);
+    }
+
+}
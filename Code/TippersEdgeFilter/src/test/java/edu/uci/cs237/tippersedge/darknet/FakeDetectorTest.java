@@ -0,0 +1,59 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the simulated Darknet latency of {@link FakeDetector} (and hence of
+ * {@link edu.uci.cs237.tippersedge.simulation.ReplayDetector}).
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class FakeDetectorTest {
+
+    @Test
+    public void detectionTakesLatency() throws InterruptedException {
+        FakeDetector detector = new FakeDetector(TimeUnit.MILLISECONDS.toMicros(50));
+        long start = System.nanoTime();
+        assertEquals(3, detector.exec("image.jpg").size());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test(timeout = 5000)
+    public void interruptEndsLatency() {
+        FakeDetector detector = new FakeDetector(TimeUnit.HOURS.toMicros(1));
+        Thread.currentThread().interrupt();
+        try {
+            detector.exec("image.jpg");
+            fail("Expected InterruptedException");
+        } catch (InterruptedException expected) {
+            // The interrupt is reported by the exception rather than by the interrupt status.
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void interruptFromAnotherThreadEndsLatency() throws InterruptedException {
+        Thread detecting = Thread.currentThread();
+        Thread interrupter = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            detecting.interrupt();
+        });
+        interrupter.start();
+        try {
+            FakeDetector.simulateLatency(TimeUnit.HOURS.toNanos(1));
+            fail("Expected InterruptedException");
+        } catch (InterruptedException expected) {
+            // Expected.
+        }
+        interrupter.join();
+    }
+
+}
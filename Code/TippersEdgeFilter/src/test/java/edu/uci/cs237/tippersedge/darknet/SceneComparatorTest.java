@@ -0,0 +1,159 @@
+package edu.uci.cs237.tippersedge.darknet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the decisions made by {@link SceneComparator}: objects are counted per name, and paired by confidence and,
+ * if both have bounding boxes, by intersection over union.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class SceneComparatorTest {
+
+    private final SceneComparator mComparator = new SceneComparator();
+
+    @Test
+    public void sameObjectsInAnyOrderAreSameScene() {
+        List<DarknetProcess.DetectedObject> scene = Arrays.asList(object("person", 90), object("dog", 80),
+                object("person", 70));
+        List<DarknetProcess.DetectedObject> reordered = Arrays.asList(object("person", 72), object("person", 88),
+                object("dog", 81));
+        assertTrue(mComparator.isSameScene(scene, reordered));
+        assertTrue(mComparator.isSameScene(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    public void objectAppearing() {
+        SceneComparator.SceneDiff diff = mComparator.compare(Collections.singletonList(object("person", 90)),
+                Arrays.asList(object("person", 90), object("person", 85)));
+        assertFalse(diff.isUnchanged());
+        assertEquals(Collections.emptyList(), diff.getDisappeared());
+        assertEquals(1, diff.getAppeared().size());
+        assertEquals("person", diff.getAppeared().get(0).getName());
+    }
+
+    @Test
+    public void objectDisappearing() {
+        SceneComparator.SceneDiff diff = mComparator.compare(Arrays.asList(object("car", 95), object("truck", 60)),
+                Collections.singletonList(object("car", 93)));
+        assertEquals(Collections.singletonList(object("truck", 60)), diff.getDisappeared());
+        assertEquals(Collections.emptyList(), diff.getAppeared());
+    }
+
+    @Test
+    public void objectReplacedByOtherKind() {
+        SceneComparator.SceneDiff diff = mComparator.compare(Collections.singletonList(object("dog", 90)),
+                Collections.singletonList(object("cat", 90)));
+        assertEquals(Collections.singletonList(object("dog", 90)), diff.getDisappeared());
+        assertEquals(Collections.singletonList(object("cat", 90)), diff.getAppeared());
+    }
+
+    @Test
+    public void confidenceTolerance() {
+        SceneComparator comparator = new SceneComparator(0, 10, 0.5);
+        assertTrue(comparator.isSameScene(Collections.singletonList(object("person", 90)),
+                Collections.singletonList(object("person", 80))));
+        assertFalse(comparator.isSameScene(Collections.singletonList(object("person", 90)),
+                Collections.singletonList(object("person", 79))));
+    }
+
+    @Test
+    public void closestConfidencesArePaired() {
+        // Pairing 50 with 60 first would leave 40 and 70 unpaired.
+        SceneComparator comparator = new SceneComparator(0, 10, 0.5);
+        assertTrue(comparator.isSameScene(Arrays.asList(object("person", 50), object("person", 70)),
+                Arrays.asList(object("person", 60), object("person", 42))));
+    }
+
+    @Test
+    public void objectsBelowMinConfidenceAreIgnored() {
+        SceneComparator comparator = new SceneComparator(50, 25, 0.5);
+        assertTrue(comparator.isSameScene(Collections.singletonList(object("person", 90)),
+                Arrays.asList(object("person", 90), object("person", 30))));
+        assertFalse(comparator.isSameScene(Collections.singletonList(object("person", 90)),
+                Arrays.asList(object("person", 90), object("person", 50))));
+    }
+
+    @Test
+    public void overlappingBoxesAreSameObject() {
+        // Shifted by 2 of 20 pixels: intersection over union 0.82.
+        assertTrue(mComparator.isSameScene(Collections.singletonList(object("person", 90, 100, 100, 20, 40)),
+                Collections.singletonList(object("person", 90, 102, 100, 20, 40))));
+    }
+
+    @Test
+    public void movedObjectIsChange() {
+        // Same name and confidence, but the boxes only overlap by a third.
+        DarknetProcess.DetectedObject before = object("person", 90, 0, 0, 10, 10);
+        DarknetProcess.DetectedObject after = object("person", 90, 5, 0, 10, 10);
+        SceneComparator.SceneDiff diff = mComparator.compare(Collections.singletonList(before),
+                Collections.singletonList(after));
+        assertEquals(Collections.singletonList(before), diff.getDisappeared());
+        assertEquals(Collections.singletonList(after), diff.getAppeared());
+        // Accepted with a lower threshold.
+        assertTrue(new SceneComparator(0, 25, 0.3).isSameScene(Collections.singletonList(before),
+                Collections.singletonList(after)));
+    }
+
+    @Test
+    public void objectsSwappingPlacesAreSameScene() {
+        List<DarknetProcess.DetectedObject> scene = Arrays.asList(object("person", 90, 0, 0, 10, 20),
+                object("person", 90, 100, 0, 10, 20));
+        List<DarknetProcess.DetectedObject> reordered = Arrays.asList(object("person", 90, 101, 0, 10, 20),
+                object("person", 90, 1, 0, 10, 20));
+        assertTrue(mComparator.isSameScene(scene, reordered));
+    }
+
+    @Test
+    public void bestOverlapIsPaired() {
+        // The new box overlaps both old boxes enough, but the first one better. Pairing the new box with the second
+        // old box would leave the first one unpaired.
+        List<DarknetProcess.DetectedObject> before = Arrays.asList(object("car", 90, 0, 0, 100, 100),
+                object("car", 90, 30, 0, 100, 100));
+        List<DarknetProcess.DetectedObject> after = Arrays.asList(object("car", 90, 10, 0, 100, 100),
+                object("car", 90, 45, 0, 100, 100));
+        assertTrue(mComparator.isSameScene(before, after));
+    }
+
+    @Test
+    public void objectWithoutBoxIsPairedByConfidence() {
+        assertTrue(mComparator.isSameScene(Collections.singletonList(object("person", 90, 0, 0, 10, 10)),
+                Collections.singletonList(object("person", 85))));
+    }
+
+    @Test
+    public void intersectionOverUnion() {
+        BoundingBox box = new BoundingBox(0, 0, 10, 10);
+        assertEquals(1.0, box.intersectionOverUnion(new BoundingBox(0, 0, 10, 10)), 1e-9);
+        assertEquals(1.0 / 3, box.intersectionOverUnion(new BoundingBox(5, 0, 10, 10)), 1e-9);
+        assertEquals(0.25, box.intersectionOverUnion(new BoundingBox(0, 0, 5, 5)), 1e-9);
+        assertEquals(0.0, box.intersectionOverUnion(new BoundingBox(10, 0, 10, 10)), 1e-9);
+        assertEquals(0.0, box.intersectionOverUnion(new BoundingBox(-20, -20, 5, 5)), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMinIntersectionOverUnion() {
+        new SceneComparator(0, 25, 1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeConfidenceTolerance() {
+        new SceneComparator(0, -1, 0.5);
+    }
+
+    private static DarknetProcess.DetectedObject object(String name, int confidence) {
+        return new DarknetProcess.DetectedObject(name, confidence);
+    }
+
+    private static DarknetProcess.DetectedObject object(String name, int confidence, int left, int top, int width,
+                                                        int height) {
+        return new DarknetProcess.DetectedObject(name, confidence, new BoundingBox(left, top, width, height));
+    }
+
+}
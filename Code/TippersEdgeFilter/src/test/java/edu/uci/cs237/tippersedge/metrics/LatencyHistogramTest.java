@@ -0,0 +1,130 @@
+package edu.uci.cs237.tippersedge.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the bucketing and percentile math of {@link LatencyHistogram}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMillis(), 0);
+        assertEquals(0, histogram.getMaxMillis(), 0);
+        assertEquals(0, histogram.getPercentileMillis(50), 0);
+    }
+
+    @Test
+    public void smallDurationsAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 0; micros < 4; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        // Durations below four microseconds each have a bucket of their own, reported by its (exclusive) upper bound.
+        assertEquals(0.001, histogram.getPercentileMillis(25), 1e-9);
+        assertEquals(0.002, histogram.getPercentileMillis(50), 1e-9);
+        assertEquals(0.003, histogram.getPercentileMillis(75), 1e-9);
+        // Capped at the exact maximum.
+        assertEquals(0.003, histogram.getPercentileMillis(100), 1e-9);
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5_000);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMaxMillis(), 0);
+    }
+
+    /**
+     * Percentiles are upper bounds that exceed the true percentile by at most 25%, and never exceed the maximum.
+     */
+    @Test
+    public void percentilesAreUpperBoundsWithinAQuarter() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMeanMillis(), 1e-9);
+        assertEquals(1000, histogram.getMaxMillis(), 0);
+        double[][] expected = { { 1, 10 }, { 50, 500 }, { 90, 900 }, { 99, 990 }, { 100, 1000 } };
+        double previous = 0;
+        for (double[] percentile : expected) {
+            double reported = histogram.getPercentileMillis(percentile[0]);
+            assertTrue(String.format("p%s = %s below %s", percentile[0], reported, percentile[1]),
+                    reported >= percentile[1]);
+            assertTrue(String.format("p%s = %s more than 25%% above %s", percentile[0], reported, percentile[1]),
+                    reported <= percentile[1] * 1.25);
+            assertTrue(reported <= histogram.getMaxMillis());
+            assertTrue("percentiles must not decrease", reported >= previous);
+            previous = reported;
+        }
+    }
+
+    @Test
+    public void durationsBeyondTheLastBucketAreReportedAsTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        // 2^36 microseconds is about 19 hours; anything longer goes in the overflow bucket.
+        long hundredHours = TimeUnit.HOURS.toNanos(100);
+        histogram.record(hundredHours);
+        histogram.record(TimeUnit.HOURS.toNanos(50));
+        assertTrue(histogram.getPercentileMillis(30) <= 5 * 1.25);
+        // The overflow bucket has no upper bound, so the (exact) maximum is reported instead.
+        assertEquals(TimeUnit.HOURS.toMillis(100), histogram.getPercentileMillis(100), 0);
+        assertEquals(TimeUnit.HOURS.toMillis(100), histogram.getPercentileMillis(90), 0);
+        assertEquals(TimeUnit.HOURS.toMillis(100), histogram.getMaxMillis(), 0);
+    }
+
+    @Test
+    public void addMergesCountsSumsMaximaAndBuckets() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        LatencyHistogram all = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            fast.record(TimeUnit.MILLISECONDS.toNanos(millis));
+            all.record(TimeUnit.MILLISECONDS.toNanos(millis));
+            slow.record(TimeUnit.MILLISECONDS.toNanos(1000 + millis));
+            all.record(TimeUnit.MILLISECONDS.toNanos(1000 + millis));
+        }
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.add(fast);
+        merged.add(slow);
+        assertEquals(200, merged.getCount());
+        assertEquals(all.getMeanMillis(), merged.getMeanMillis(), 1e-9);
+        assertEquals(1100, merged.getMaxMillis(), 0);
+        for (double percentile : new double[] { 1, 25, 50, 51, 75, 99, 100 }) {
+            assertEquals(all.getPercentileMillis(percentile), merged.getPercentileMillis(percentile), 0);
+        }
+        // The added histograms are left as they were.
+        assertEquals(100, fast.getCount());
+        assertEquals(100, fast.getMaxMillis(), 0);
+    }
+
+    @Test
+    public void addKeepsTheLargerMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+        LatencyHistogram smaller = new LatencyHistogram();
+        smaller.record(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.add(smaller);
+        assertEquals(50, histogram.getMaxMillis(), 0);
+        assertEquals(2, histogram.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentilesAboveOneHundred() {
+        new LatencyHistogram().getPercentileMillis(101);
+    }
+
+}
@@ -0,0 +1,94 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import edu.uci.cs237.tippersedge.DoubleSampleProvider;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of stopping a {@link DoubleSampleHandler} whose ticks run on a shared executor.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class DoubleSampleHandlerTest {
+
+    @Test(timeout = 5000)
+    public void stopWaitsForOngoingTickWithoutShuttingDownSharedExecutor() throws InterruptedException {
+        ScheduledExecutorService shared = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch ticking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DoubleSampleHandler handler = newHandler(shared, () -> {
+            ticking.countDown();
+            awaitUninterruptibly(release);
+            return 21.0;
+        });
+        handler.startPeriodicSampling();
+        assertTrue(ticking.await(1, TimeUnit.SECONDS));
+        // The tick occupies the shared executor's only thread, so release it from another one.
+        new Thread(() -> {
+            sleep(100);
+            release.countDown();
+        }).start();
+        handler.stopPeriodicSampling(true, 2000);
+        assertEquals(1, handler.getMetrics().counter("included").get());
+        assertFalse(shared.isShutdown());
+        shared.shutdownNow();
+    }
+
+    @Test(timeout = 5000)
+    public void interruptedStopRestoresInterruptFlag() throws InterruptedException {
+        ScheduledExecutorService shared = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch ticking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DoubleSampleHandler handler = newHandler(shared, () -> {
+            ticking.countDown();
+            awaitUninterruptibly(release);
+            return 21.0;
+        });
+        handler.startPeriodicSampling();
+        assertTrue(ticking.await(1, TimeUnit.SECONDS));
+        Thread.currentThread().interrupt();
+        try {
+            handler.stopPeriodicSampling(true, 2000);
+            assertTrue(Thread.interrupted());
+        } finally {
+            release.countDown();
+            shared.shutdownNow();
+        }
+    }
+
+    private static DoubleSampleHandler newHandler(ScheduledExecutorService shared,
+                                                  DoubleSampleProvider sensor) {
+        return new DoubleSampleHandler("sensor", sensor, DoubleSampleHandler.DEFAULT_SAMPLE_CACHE_SIZE, 10, shared,
+                new DeadbandFilter(0.5), (sensorId, timestampMillis, value) -> true);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import org.junit.Test;
+
+import static edu.uci.cs237.tippersedge.numeric.SwingingDoorFilterTest.offer;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link DeadbandFilter}, {@link EwmaChangeFilter} and {@link RateLimitFilter}, and of their combination
+ * using {@link NumericFilter#allOf(NumericFilter...)} and {@link NumericFilter#anyOf(NumericFilter...)}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class NumericFilterTest {
+
+    @Test
+    public void deadbandIncludesFirstReading() {
+        assertTrue(offer(new DeadbandFilter(0.5), 0, 21.0));
+    }
+
+    @Test
+    public void deadbandComparesAgainstLastIncludedReading() {
+        DeadbandFilter filter = new DeadbandFilter(0.5);
+        assertTrue(offer(filter, 0, 21.0));
+        assertFalse(offer(filter, 1, 21.5));
+        assertFalse(offer(filter, 2, 20.6));
+        // A slow drift is included once it adds up to more than the deadband.
+        assertFalse(offer(filter, 3, 21.4));
+        assertTrue(offer(filter, 4, 21.6));
+        assertFalse(offer(filter, 5, 21.2));
+        assertTrue(offer(filter, 6, 21.0));
+    }
+
+    @Test
+    public void deadbandIgnoresNan() {
+        DeadbandFilter filter = new DeadbandFilter(0.5);
+        assertFalse(offer(filter, 0, Double.NaN));
+        assertTrue(offer(filter, 1, 21.0));
+        assertFalse(offer(filter, 2, Double.NaN));
+        assertFalse(offer(filter, 3, 21.2));
+        assertTrue(offer(filter, 4, 22.0));
+    }
+
+    @Test
+    public void ewmaIncludesFirstReading() {
+        assertTrue(offer(new EwmaChangeFilter(0.25, 1.0), 0, 10.0));
+    }
+
+    @Test
+    public void ewmaIgnoresOutlierButCatchesDrift() {
+        EwmaChangeFilter filter = new EwmaChangeFilter(0.25, 1.0);
+        assertTrue(offer(filter, 0, 10.0));
+        // A single outlier moves the average by 0.75.
+        assertFalse(offer(filter, 1, 13.0));
+        assertFalse(offer(filter, 2, 10.0));
+        // A sustained shift of two moves the average past the threshold after a few readings.
+        assertFalse(offer(filter, 3, 12.0));
+        assertTrue(offer(filter, 4, 12.0));
+        assertEquals(11.19, filter.getAverage(), 0.01);
+    }
+
+    @Test
+    public void ewmaIgnoresNan() {
+        EwmaChangeFilter filter = new EwmaChangeFilter(0.5, 1.0);
+        assertFalse(offer(filter, 0, Double.NaN));
+        assertTrue(offer(filter, 1, 10.0));
+        assertFalse(offer(filter, 2, Double.NaN));
+        assertEquals(10.0, filter.getAverage(), 0.0);
+        assertTrue(offer(filter, 3, 13.0));
+    }
+
+    @Test
+    public void rateLimitIncludesAtMostOneReadingPerInterval() {
+        RateLimitFilter filter = new RateLimitFilter(1_000);
+        assertTrue(offer(filter, 0, 1.0));
+        assertFalse(offer(filter, 999, 2.0));
+        assertTrue(offer(filter, 1_000, 3.0));
+        assertFalse(offer(filter, 1_500, 4.0));
+        assertTrue(offer(filter, 5_000, 5.0));
+    }
+
+    @Test
+    public void rateLimitAllowsBurstAfterQuietPeriod() {
+        RateLimitFilter filter = new RateLimitFilter(1_000, 3);
+        assertTrue(offer(filter, 0, 1.0));
+        assertTrue(offer(filter, 1, 1.0));
+        assertTrue(offer(filter, 2, 1.0));
+        assertFalse(offer(filter, 3, 1.0));
+        // Quiet for long enough to earn more tokens than the burst.
+        assertTrue(offer(filter, 10_000, 1.0));
+        assertTrue(offer(filter, 10_001, 1.0));
+        assertTrue(offer(filter, 10_002, 1.0));
+        assertFalse(offer(filter, 10_003, 1.0));
+    }
+
+    @Test
+    public void rateLimitIgnoresNan() {
+        RateLimitFilter filter = new RateLimitFilter(1_000);
+        assertFalse(offer(filter, 0, Double.NaN));
+        assertTrue(offer(filter, 1, 1.0));
+    }
+
+    @Test
+    public void allOfRequiresEveryFilter() {
+        NumericFilter filter = NumericFilter.allOf(new DeadbandFilter(0.5), new RateLimitFilter(1_000));
+        assertTrue(offer(filter, 0, 10.0));
+        // Significant, but too soon.
+        assertFalse(offer(filter, 500, 20.0));
+        // Soon enough, but insignificant.
+        assertFalse(offer(filter, 1_000, 10.2));
+        assertTrue(offer(filter, 1_500, 20.0));
+    }
+
+    @Test
+    public void anyOfRequiresAnyFilter() {
+        NumericFilter filter = NumericFilter.anyOf(new DeadbandFilter(5.0), new SwingingDoorFilter(0.5, 10_000));
+        assertTrue(offer(filter, 0, 10.0));
+        assertFalse(offer(filter, 1_000, 10.1));
+        // Heartbeat of the swinging door filter.
+        assertTrue(offer(filter, 10_000, 10.1));
+        // Jump caught by the deadband filter (and the swinging door filter).
+        assertTrue(offer(filter, 10_001, 20.0));
+    }
+
+    @Test
+    public void compositeDoesNotShortCircuit() {
+        EwmaChangeFilter ewma = new EwmaChangeFilter(0.5, 100.0);
+        NumericFilter filter = NumericFilter.allOf(new RateLimitFilter(1_000), ewma);
+        assertTrue(offer(filter, 0, 10.0));
+        // Rejected by the rate limit, but the moving average still sees the reading.
+        assertFalse(offer(filter, 1, 20.0));
+        assertEquals(15.0, ewma.getAverage(), 0.0);
+    }
+
+    @Test
+    public void compositeIgnoresNan() {
+        NumericFilter filter = NumericFilter.anyOf(new DeadbandFilter(0.5), new RateLimitFilter(1_000));
+        assertFalse(offer(filter, 0, Double.NaN));
+        assertTrue(offer(filter, 1, 10.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyComposite() {
+        NumericFilter.allOf();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidAlpha() {
+        new EwmaChangeFilter(0.0, 1.0);
+    }
+
+}
@@ -0,0 +1,97 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import edu.uci.cs237.tippersedge.metrics.MetricSet;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link NumericSampleHandler}, driven one reading at a time through
+ * {@link NumericSampleHandler#sampleAndUpload()}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class NumericSampleHandlerTest {
+
+    private final Deque<Double> mReadings = new ArrayDeque<>();
+
+    private final List<Double> mUploaded = new ArrayList<>();
+
+    private boolean mUploadSucceeds = true;
+
+    @Test
+    public void firstReadingIsUploaded() {
+        NumericSampleHandler handler = newHandler(new DeadbandFilter(0.5));
+        sample(handler, 21.0);
+        assertEquals(Arrays.asList(21.0), mUploaded);
+        assertEquals(1, handler.getMetrics().counter("included").get());
+    }
+
+    @Test
+    public void onlyReadingsPassingFilterAreUploaded() {
+        NumericSampleHandler handler = newHandler(new SwingingDoorFilter(0.5));
+        // Flat, then a jump out of the corridor.
+        sample(handler, 21.0, 21.2, 20.9, 21.1, 25.0, 25.1);
+        assertEquals(Arrays.asList(21.0, 25.0), mUploaded);
+        MetricSet metrics = handler.getMetrics();
+        assertEquals(2, metrics.counter("included").get());
+        assertEquals(4, metrics.counter("rejected").get());
+    }
+
+    @Test
+    public void nanReadingIsSampleFailure() {
+        NumericSampleHandler handler = newHandler(new DeadbandFilter(0.5));
+        sample(handler, Double.NaN, 21.0, Double.NaN, 21.2, 22.0);
+        assertEquals(Arrays.asList(21.0, 22.0), mUploaded);
+        MetricSet metrics = handler.getMetrics();
+        assertEquals(2, metrics.counter("sampleFailures").get());
+        assertEquals(2, metrics.counter("included").get());
+        assertEquals(1, metrics.counter("rejected").get());
+    }
+
+    @Test
+    public void missingReadingIsSampleFailure() {
+        NumericSampleHandler handler = newHandler(new DeadbandFilter(0.5));
+        sample(handler, (Double) null);
+        assertTrue(mUploaded.isEmpty());
+        assertEquals(1, handler.getMetrics().counter("sampleFailures").get());
+    }
+
+    @Test
+    public void filterMovesOnWhenUploadFails() {
+        NumericSampleHandler handler = newHandler(new DeadbandFilter(0.5));
+        mUploadSucceeds = false;
+        sample(handler, 21.0);
+        mUploadSucceeds = true;
+        // Compared against the failed reading, so not a significant change.
+        sample(handler, 21.2);
+        assertEquals(Arrays.asList(21.0), mUploaded);
+        assertEquals(1, handler.getMetrics().counter("uploadFailures").get());
+    }
+
+    private NumericSampleHandler newHandler(NumericFilter filter) {
+        // Sampling is never started (the executor starts no threads), as the tests sample directly.
+        return new NumericSampleHandler("sensor", mReadings::poll, 1_000, filter,
+                (sensorId, timestampMillis, value) -> {
+                    mUploaded.add(value);
+                    return mUploadSucceeds;
+                });
+    }
+
+    private void sample(NumericSampleHandler handler, Double... readings) {
+        for (Double reading : readings) {
+            mReadings.clear();
+            if (reading != null) {
+                mReadings.add(reading);
+            }
+            handler.sampleAndUpload();
+        }
+    }
+
+}
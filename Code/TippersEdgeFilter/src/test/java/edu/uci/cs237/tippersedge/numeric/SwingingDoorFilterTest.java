@@ -0,0 +1,114 @@
+package edu.uci.cs237.tippersedge.numeric;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link SwingingDoorFilter}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class SwingingDoorFilterTest {
+
+    @Test
+    public void firstReadingIsIncluded() {
+        assertTrue(offer(new SwingingDoorFilter(1.0), 0, 42.0));
+    }
+
+    @Test
+    public void steadyTrendIsNotIncluded() {
+        SwingingDoorFilter filter = new SwingingDoorFilter(1.0);
+        assertTrue(offer(filter, 0, 10.0));
+        // A room warming up by one degree per second, with up to half a degree of noise.
+        for (int i = 1; i <= 100; i++) {
+            double noise = i % 2 == 0 ? 0.5 : -0.5;
+            assertFalse("reading " + i, offer(filter, i * 1000L, 10.0 + i + noise));
+        }
+    }
+
+    @Test
+    public void readingThatBreaksCorridorIsIncluded() {
+        SwingingDoorFilter filter = new SwingingDoorFilter(1.0);
+        assertTrue(offer(filter, 0, 0.0));
+        assertFalse(offer(filter, 1, 0.5));
+        assertFalse(offer(filter, 2, 1.0));
+        assertFalse(offer(filter, 3, 1.5));
+        // Jumps out of the corridor around the slope of 0.5 per millisecond.
+        assertTrue(offer(filter, 4, 10.0));
+        // The doors reopen at the included reading.
+        assertFalse(offer(filter, 5, 10.0));
+        assertFalse(offer(filter, 6, 10.5));
+    }
+
+    @Test
+    public void changeOfTrendIsIncluded() {
+        SwingingDoorFilter filter = new SwingingDoorFilter(1.0);
+        assertTrue(offer(filter, 0, 10.0));
+        int included = 0;
+        long includedAt = -1;
+        // Rises by one per second for 100 seconds, then stays flat.
+        for (int i = 1; i <= 200; i++) {
+            double value = 10.0 + Math.min(i, 100);
+            if (offer(filter, i * 1000L, value)) {
+                included++;
+                includedAt = i;
+            }
+        }
+        assertEquals(1, included);
+        // The plateau departs from the trend line by more than the deviation after a few readings.
+        assertTrue(includedAt > 100 && includedAt < 110);
+    }
+
+    @Test
+    public void deviationWithinSameInstant() {
+        SwingingDoorFilter filter = new SwingingDoorFilter(1.0);
+        assertTrue(offer(filter, 0, 10.0));
+        assertFalse(offer(filter, 0, 10.9));
+        assertTrue(offer(filter, 0, 11.1));
+    }
+
+    @Test
+    public void readingIsIncludedAfterMaxInterval() {
+        SwingingDoorFilter filter = new SwingingDoorFilter(1.0, 5_000);
+        assertTrue(offer(filter, 0, 10.0));
+        assertFalse(offer(filter, 4_999, 10.0));
+        assertTrue(offer(filter, 5_000, 10.0));
+        assertFalse(offer(filter, 9_999, 10.0));
+        assertTrue(offer(filter, 10_000, 10.0));
+    }
+
+    @Test
+    public void nanIsIgnored() {
+        SwingingDoorFilter filter = new SwingingDoorFilter(1.0);
+        assertFalse(offer(filter, 0, Double.NaN));
+        assertTrue(offer(filter, 1, 0.0));
+        assertFalse(offer(filter, 2, Double.NaN));
+        assertFalse(offer(filter, 3, 0.5));
+        assertFalse(offer(filter, 4, Double.NaN));
+        // The doors still close as they would have without the failed readings.
+        assertTrue(offer(filter, 5, 10.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDeviation() {
+        new SwingingDoorFilter(-1.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nanDeviation() {
+        new SwingingDoorFilter(Double.NaN);
+    }
+
+    /**
+     * Offer a reading to a filter as a handler would.
+     */
+    static boolean offer(NumericFilter filter, long timestampMillis, double value) {
+        boolean include = filter.test(timestampMillis, value);
+        if (include) {
+            filter.onIncluded(timestampMillis, value);
+        }
+        return include;
+    }
+
+}
@@ -0,0 +1,78 @@
+package edu.uci.cs237.tippersedge.sensoria;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link BatchingImageUploader}.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class BatchingImageUploaderTest {
+
+    @Test(timeout = 10_000)
+    public void closeCompletesBatchWaitingToBeRetried() throws Exception {
+        // Every request fails, and the first retry is scheduled far beyond the close timeout.
+        BatchingImageUploader uploader = new BatchingImageUploader(imgFilepaths -> false, 16, Long.MAX_VALUE, 0, 1,
+                5, 60_000);
+        CompletableFuture<Boolean> result = uploader.uploadImageAsync("missing.jpg");
+        uploader.flush();
+        while (uploader.getMetrics().counter("retries").get() == 0) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, uploader.getOutstandingBatchCount());
+
+        assertFalse(uploader.close(50));
+        assertEquals(Boolean.FALSE, result.get(1, TimeUnit.SECONDS));
+        assertEquals(0, uploader.getOutstandingBatchCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void closeCompletesBatchQueuedBehindRequestInFlight() throws Exception {
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        ImageUploader blocking = new ImageUploader() {
+            @Override
+            public boolean uploadImage(String imgFilepath) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean uploadImages(List<String> imgFilepaths) {
+                release.join();
+                return true;
+            }
+        };
+        // One image per batch and one request in flight, so the second batch queues up behind the first.
+        BatchingImageUploader uploader = new BatchingImageUploader(blocking, 1, Long.MAX_VALUE, 0, 1, 1, 0);
+        CompletableFuture<Boolean> inFlight = uploader.uploadImageAsync("first.jpg");
+        CompletableFuture<Boolean> queued = uploader.uploadImageAsync("second.jpg");
+
+        assertFalse(uploader.close(50));
+        assertEquals(Boolean.FALSE, queued.get(1, TimeUnit.SECONDS));
+        assertEquals(Boolean.FALSE, inFlight.get(1, TimeUnit.SECONDS));
+        // The request in flight completing late does not change the outcome reported by close.
+        release.complete(null);
+        assertEquals(0, uploader.getOutstandingBatchCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void closeSendsLingeringImages() throws Exception {
+        MockImageUploader backend = new MockImageUploader();
+        BatchingImageUploader uploader = new BatchingImageUploader(backend, 16, Long.MAX_VALUE, 60_000, 1, 1, 0);
+        CompletableFuture<Boolean> first = uploader.uploadImageAsync("first.jpg");
+        CompletableFuture<Boolean> second = uploader.uploadImageAsync("second.jpg");
+        assertEquals(2, uploader.getPendingImageCount());
+
+        assertTrue(uploader.close(5_000));
+        assertEquals(Boolean.TRUE, first.get());
+        assertEquals(Boolean.TRUE, second.get());
+        assertEquals(1, backend.getRequestCount());
+        assertEquals(Boolean.FALSE, uploader.uploadImageAsync("late.jpg").get());
+    }
+
+}
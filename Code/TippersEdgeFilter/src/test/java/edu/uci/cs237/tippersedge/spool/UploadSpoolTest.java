@@ -0,0 +1,209 @@
+package edu.uci.cs237.tippersedge.spool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link UploadSpool} recovery and size bounds.
+ *
+ * @author Janus Varmarken {@literal <jvarmark@uci.edu>}
+ */
+public class UploadSpoolTest {
+
+    private static final SpoolCodec<String> CODEC = new SpoolCodec<String>() {
+        @Override
+        public byte[] encode(String sample) {
+            return sample.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] payload) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    };
+
+    private static final long MAX_AGE_MILLIS = 60_000;
+
+    private File mDirectory;
+
+    private final List<UploadSpool<String>> mSpools = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("spooltest").toFile();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        for (UploadSpool<String> spool : mSpools) {
+            spool.close(1_000);
+        }
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test(timeout = 10_000)
+    public void truncatedTrailingRecordIsSkippedOnReopen() throws Exception {
+        UploadSpool<String> spool = open(1024, 4096, 1);
+        appendAll(spool, "a", "b", "c");
+        spool.close(1_000);
+        File segment = firstSegment();
+        long length = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Cut the last record short, as if the process crashed while appending it.
+            file.setLength(length - 1);
+        }
+
+        UploadSpool<String> reopened = open(1024, 4096, 1);
+        assertEquals(2, reopened.getPendingCount());
+        // The partial record is truncated, so records appended after the restart are intact.
+        assertTrue(reopened.append("d"));
+        assertEquals(Arrays.asList("a", "b", "d"), drain(reopened, 3));
+    }
+
+    @Test(timeout = 10_000)
+    public void trailingRecordWithBadCrcIsSkippedOnReopen() throws Exception {
+        UploadSpool<String> spool = open(1024, 4096, 1);
+        appendAll(spool, "a", "b", "c");
+        spool.close(1_000);
+        File segment = firstSegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Corrupt the payload of the last record.
+            file.seek(segment.length() - 1);
+            file.write('x');
+        }
+
+        UploadSpool<String> reopened = open(1024, 4096, 1);
+        assertEquals(2, reopened.getPendingCount());
+        assertEquals(Arrays.asList("a", "b"), drain(reopened, 2));
+    }
+
+    @Test(timeout = 10_000)
+    public void drainingResumesFromIndexAfterUncleanShutdown() throws Exception {
+        UploadSpool<String> spool = open(1024, 4096, 1);
+        appendAll(spool, "a", "b", "c");
+        List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+        // "a" is acknowledged; the upload of "b" is in flight when the process dies.
+        spool.startDraining(sample -> {
+            uploaded.add(sample);
+            return "a".equals(sample) ? CompletableFuture.completedFuture(true) : new CompletableFuture<>();
+        }, sample -> { });
+        while (uploaded.size() < 2) {
+            Thread.sleep(5);
+        }
+
+        // Reopen without closing the spool.
+        UploadSpool<String> reopened = open(1024, 4096, 1);
+        assertEquals(2, reopened.getPendingCount());
+        assertEquals(Arrays.asList("b", "c"), drain(reopened, 2));
+    }
+
+    @Test(timeout = 10_000)
+    public void corruptIndexIsRebuiltFromOldestSegment() throws Exception {
+        UploadSpool<String> spool = open(1024, 4096, 1);
+        appendAll(spool, "a", "b", "c");
+        List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+        spool.startDraining(sample -> {
+            uploaded.add(sample);
+            return "a".equals(sample) ? CompletableFuture.completedFuture(true) : new CompletableFuture<>();
+        }, sample -> { });
+        while (uploaded.size() < 2) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, spool.getPendingCount());
+        spool.close(1_000);
+        try (RandomAccessFile index = new RandomAccessFile(new File(mDirectory, "spool.index"), "rw")) {
+            index.seek(0);
+            index.write(0xFF);
+        }
+
+        // Delivery is at-least-once: without a valid index, the segment is replayed from the start.
+        UploadSpool<String> reopened = open(1024, 4096, 1);
+        assertEquals(3, reopened.getPendingCount());
+        assertEquals(Arrays.asList("a", "b", "c"), drain(reopened, 3));
+        reopened.close(1_000);
+
+        // Draining rewrote the index, so nothing is replayed after the next restart.
+        UploadSpool<String> again = open(1024, 4096, 1);
+        assertEquals(0, again.getPendingCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void oldestSegmentIsDroppedWhenFull() throws Exception {
+        long recordBytes = SpoolSegment.HEADER_BYTES + 1;
+        // Two records per segment, four records in total.
+        UploadSpool<String> spool = open(2 * recordBytes, 4 * recordBytes, 1);
+        appendAll(spool, "a", "b", "c", "d");
+        assertEquals(4 * recordBytes, spool.getSizeBytes());
+        assertEquals(0, spool.getMetrics().counter("dropped").get());
+
+        assertTrue(spool.append("e"));
+        assertEquals(2, spool.getMetrics().counter("dropped").get());
+        assertEquals(3, spool.getPendingCount());
+        assertEquals(3 * recordBytes, spool.getSizeBytes());
+        assertTrue(spool.append("f"));
+        assertEquals(Arrays.asList("c", "d", "e", "f"), drain(spool, 4));
+    }
+
+    @Test(timeout = 10_000)
+    public void sampleLargerThanSpoolIsRejected() throws Exception {
+        UploadSpool<String> spool = open(SpoolSegment.HEADER_BYTES + 1, SpoolSegment.HEADER_BYTES + 1, 1);
+        assertFalse(spool.append("too large"));
+        assertEquals(1, spool.getMetrics().counter("appendFailures").get());
+        assertEquals(0, spool.getPendingCount());
+    }
+
+    private UploadSpool<String> open(long segmentBytes, long maxBytes, int drainWindow) throws IOException {
+        UploadSpool<String> spool = new UploadSpool<>(mDirectory, CODEC, segmentBytes, maxBytes, MAX_AGE_MILLIS,
+                false, drainWindow);
+        mSpools.add(spool);
+        return spool;
+    }
+
+    private static void appendAll(UploadSpool<String> spool, String... samples) {
+        for (String sample : samples) {
+            assertTrue(spool.append(sample));
+        }
+    }
+
+    /**
+     * Drain the spool until the given number of samples have been uploaded, acknowledging every upload.
+     */
+    private static List<String> drain(UploadSpool<String> spool, int count) throws InterruptedException {
+        List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+        spool.startDraining(sample -> {
+            uploaded.add(sample);
+            return CompletableFuture.completedFuture(true);
+        }, sample -> { });
+        while (uploaded.size() < count || spool.getPendingCount() > 0) {
+            Thread.sleep(5);
+        }
+        return new ArrayList<>(uploaded);
+    }
+
+    private File firstSegment() {
+        File segment = new File(mDirectory, SpoolSegment.filenameOf(0));
+        assertTrue(segment.isFile());
+        return segment;
+    }
+
+}